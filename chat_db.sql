@@ -73,4 +73,32 @@ ALTER TABLE messages
 -- 3. Setting up proper backup systems for media
 
 ALTER TABLE `groups` ADD COLUMN profile_picture_url VARCHAR(255) DEFAULT '/images/default_group.png';
-ALTER TABLE messages ADD COLUMN original_message_id BIGINT;
\ No newline at end of file
+ALTER TABLE messages ADD COLUMN original_message_id BIGINT;
+-- Messages de groupe stockés une seule fois : numéro de séquence par groupe
+-- et curseur de livraison par membre (dernier numéro délivré)
+ALTER TABLE messages ADD COLUMN group_seq BIGINT;
+CREATE INDEX idx_messages_group_seq ON messages (group_id, group_seq);
+
+CREATE TABLE IF NOT EXISTS group_cursors (
+    user_id BIGINT NOT NULL,
+    group_id BIGINT NOT NULL,
+    last_delivered_seq BIGINT NOT NULL,
+    PRIMARY KEY (user_id, group_id),
+    FOREIGN KEY (user_id) REFERENCES users(id),
+    FOREIGN KEY (group_id) REFERENCES `groups`(id)
+) ENGINE=InnoDB;
+
+-- Numéro de séquence par conversation (paire d'utilisateurs ou groupe) : la
+-- table des messages sert d'historique, relu par rang à la synchronisation
+ALTER TABLE messages CHANGE COLUMN group_seq seq BIGINT;
+CREATE INDEX idx_messages_direct_seq ON messages (sender_user_id, receiver_user_id, seq);
+
+-- Journal des ajouts et retraits de membres, écrit avec la modification : le
+-- serveur le relit pour invalider son cache des membres de groupe
+CREATE TABLE IF NOT EXISTS group_membership_changes (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    group_id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL,
+    changed_at DATETIME NOT NULL,
+    INDEX idx_group_membership_changes_at (changed_at)
+) ENGINE=InnoDB;
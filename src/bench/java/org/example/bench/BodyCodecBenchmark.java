@@ -0,0 +1,129 @@
+package org.example.bench;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.example.shared.model.CallSignal;
+import org.example.shared.model.Message;
+import org.example.shared.model.enums.MessageType;
+import org.example.shared.protocol.BodyCodec;
+import org.example.shared.protocol.FrameCompression;
+import org.example.shared.protocol.JacksonBodyCodec;
+import org.example.shared.protocol.Protocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * Compare les codecs de corps (JSON, Smile) en coût d'encodage et de décodage
+ * pour trois profils de trafic : message texte, message média (métadonnées de
+ * fichier) et signal d'appel.
+ * <p>
+ * Les octets sur le fil ne sont pas une mesure de temps : {@link #main} les
+ * affiche, bruts et après compression deflate telle que négociée en v2, avant
+ * de lancer JMH.
+ *
+ * <pre>
+ * mvn -Pbench compile
+ * java -cp target/classes:$(cat cp.txt) org.example.bench.BodyCodecBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BodyCodecBenchmark {
+
+    @Param({"json", "smile"})
+    public String codecName;
+
+    @Param({"text", "media", "callSignal"})
+    public String traffic;
+
+    private BodyCodec codec;
+    private Object body;
+    private Class<?> bodyType;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        codec = codec(codecName);
+        body = sample(traffic);
+        bodyType = body.getClass();
+        encoded = codec.encode(body);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return codec.encode(body);
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+        return codec.decode(encoded, 0, encoded.length, bodyType);
+    }
+
+    private static BodyCodec codec(final String name) {
+        return Protocol.SMILE.equals(name)
+                ? JacksonBodyCodec.smile()
+                : JacksonBodyCodec.json(new ObjectMapper().registerModule(new JavaTimeModule()));
+    }
+
+    static Object sample(final String traffic) {
+        switch (traffic) {
+            case "media":
+                return Message.newDirectMediaMessage(1042L, 2077L,
+                        "uploads/2077/4f1c9a7e-2b0d-4c55-9d51-6f0e3a1b8c2d.jpg", MessageType.IMAGE,
+                        "vacances-plage-2024.jpg", 2_481_337L, "image/jpeg");
+            case "callSignal":
+                final CallSignal signal = new CallSignal();
+                signal.setSessionId("b6a7e1f0-3c2d-4e5f-8a9b-0c1d2e3f4a5b");
+                signal.setSenderUserId(1042L);
+                signal.setReceiverUserId(2077L);
+                signal.setType(CallSignal.SignalType.CALL_REQUEST);
+                signal.setIpAddress("192.168.1.27");
+                signal.setPort(50_432);
+                signal.setTimestamp(LocalDateTime.now());
+                return signal;
+            case "text":
+            default:
+                return Message.newDirectMessage(1042L, 2077L, "Salut ! On se retrouve à 18h devant la gare ?");
+        }
+    }
+
+    /**
+     * Affiche la taille des corps par codec et profil, puis lance les mesures JMH.
+     */
+    public static void main(final String[] args) throws Exception {
+        System.out.printf("%-12s %-6s %8s %10s%n", "trafic", "codec", "octets", "deflate*");
+        for (final String traffic : new String[] {"text", "media", "callSignal"}) {
+            for (final String name : new String[] {"json", "smile"}) {
+                final BodyCodec codec = codec(name);
+                // Deflate sur un flux déjà amorcé par 100 corps semblables, comme sur une connexion établie
+                final FrameCompression compression = new FrameCompression();
+                byte[] compressed = null;
+                for (int i = 0; i <= 100; i++) {
+                    compressed = compression.compress(codec.encode(sample(traffic)));
+                }
+                System.out.printf("%-12s %-6s %8d %10d%n", traffic, name, codec.encode(sample(traffic)).length,
+                        compressed.length);
+            }
+        }
+        System.out.println("* taille d'un corps de plus sur un flux compressé en cours");
+        org.openjdk.jmh.Main.main(args.length > 0 ? args : new String[] {BodyCodecBenchmark.class.getSimpleName()});
+    }
+}
@@ -0,0 +1,174 @@
+package org.example.bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.example.server.transport.ClientConnection;
+import org.example.server.transport.ConnectionHandler;
+import org.example.server.transport.Transport;
+import org.example.server.transport.Transports;
+
+/**
+ * Mesure combien de sessions inactives puis actives une JVM tient selon le
+ * mode de transport (blocking, virtual, nio), en nombre de threads et en tas.
+ * Les threads de plateforme viennent de {@link ThreadMXBean}, qui ignore les
+ * threads virtuels : ceux-ci sont comptés dans un vidage de threads
+ * (équivalent de {@code jcmd <pid> Thread.dump_to_file}, JDK 21 et plus ;
+ * « n/d » avant). Le serveur tourne dans la JVM avec un handler d'écho, sans base de données ;
+ * les clients sont des SocketChannel bloquants pilotés par le thread principal,
+ * ils n'ajoutent donc aucun thread au décompte.
+ *
+ * <pre>
+ * mvn -Pbench,java21 compile
+ * java -Xss512k -cp target/classes:$(cat cp.txt) org.example.bench.ConnectionCountBenchmark virtual 20000 20
+ * </pre>
+ * Arguments : mode, nombre de connexions (défaut 5000), tours d'écho actifs (défaut 10).
+ * Penser à relever la limite de descripteurs (ulimit -n) : deux par session.
+ */
+public class ConnectionCountBenchmark {
+
+    private static final int PORT = 5900;
+    private static final byte[] PING = "ping\n".getBytes(StandardCharsets.UTF_8);
+
+    public static void main(final String[] args) throws Exception {
+        final String mode = args.length > 0 ? args[0] : "blocking";
+        final int target = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        final int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        final Transport transport = Transports.create(mode, PORT, EchoHandler::new);
+        transport.start();
+        report(mode, "démarrage", 0, transport);
+
+        final List<SocketChannel> clients = new ArrayList<>(target);
+        try {
+            for (int i = 0; i < target; i++) {
+                final SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", PORT));
+                channel.socket().setTcpNoDelay(true);
+                clients.add(channel);
+                if ((i + 1) % Math.max(1, target / 10) == 0) {
+                    report(mode, "ouverture", clients.size(), transport);
+                }
+            }
+        } catch (final IOException | OutOfMemoryError e) {
+            System.out.println("Arrêt de l'ouverture après " + clients.size() + " connexions: " + e);
+        }
+
+        // Laisser le transport enregistrer les dernières connexions
+        Thread.sleep(1000);
+        System.gc();
+        report(mode, "inactives", clients.size(), transport);
+
+        final ByteBuffer readBuffer = ByteBuffer.allocate(64);
+        final long start = System.nanoTime();
+        long echoed = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (final SocketChannel channel : clients) {
+                channel.write(ByteBuffer.wrap(PING));
+            }
+            for (final SocketChannel channel : clients) {
+                readLine(channel, readBuffer);
+                echoed++;
+            }
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        report(mode, "actives", clients.size(), transport);
+        System.out.printf("[%s] %d échos en %.2f s, %.0f msg/s%n", mode, echoed, seconds, echoed / seconds);
+
+        for (final SocketChannel channel : clients) {
+            channel.close();
+        }
+        transport.stop();
+        System.exit(0);
+    }
+
+    private static void readLine(final SocketChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (true) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Connexion fermée par le serveur");
+            }
+            if (buffer.position() > 0 && buffer.get(buffer.position() - 1) == '\n') {
+                return;
+            }
+        }
+    }
+
+    private static void report(final String mode, final String phase, final int sessions, final Transport transport) {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        final long heapMb = memory.getHeapMemoryUsage().getUsed() / (1024 * 1024);
+        final long virtualThreads = countVirtualThreads();
+        System.out.printf("[%s] %-10s sessions=%6d serveur=%6d threads=%5d (pic %5d) virtuels=%6s tas=%5d Mo%n",
+                mode, phase, sessions, transport.getConnectionCount(),
+                threads.getThreadCount(), threads.getPeakThreadCount(),
+                virtualThreads < 0 ? "n/d" : String.valueOf(virtualThreads), heapMb);
+    }
+
+    /**
+     * Compte les threads virtuels vivants à partir d'un vidage de threads au
+     * format texte, où l'en-tête de chacun se termine par « virtual ».
+     *
+     * @return Le nombre de threads virtuels, ou -1 si la JVM ne sait pas les vider
+     */
+    private static long countVirtualThreads() {
+        Path dump = null;
+        try {
+            dump = Files.createTempFile("threads", ".txt");
+            Files.delete(dump);
+            ManagementFactory.getPlatformMBeanServer().invoke(
+                    new ObjectName("com.sun.management:type=DiagnosticCommand"), "threadDumpToFile",
+                    new Object[]{new String[]{dump.toString()}}, new String[]{String[].class.getName()});
+            try (Stream<String> lines = Files.lines(dump)) {
+                return lines.filter(line -> line.startsWith("#") && line.endsWith(" virtual")).count();
+            }
+        } catch (final IOException | JMException e) {
+            return -1;
+        } finally {
+            if (dump != null) {
+                try {
+                    Files.deleteIfExists(dump);
+                } catch (final IOException e) {
+                    System.err.println("Impossible de supprimer le vidage de threads: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Renvoie chaque ligne reçue, sans autre traitement.
+     */
+    private static class EchoHandler implements ConnectionHandler {
+        private final ClientConnection connection;
+
+        EchoHandler(final ClientConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void onLine(final String line) {
+            try {
+                connection.send(line);
+            } catch (final IOException e) {
+                connection.close();
+            }
+        }
+
+        @Override
+        public void onClosed() {
+        }
+    }
+}
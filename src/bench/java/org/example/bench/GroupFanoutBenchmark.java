@@ -0,0 +1,78 @@
+package org.example.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.example.server.broker.GroupFanout;
+import org.example.shared.model.Message;
+import org.example.shared.protocol.EnvelopeCodec;
+import org.example.shared.protocol.FrameCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * Coût de diffusion d'un message de groupe selon la taille du groupe, jusqu'à
+ * la trame prête à écrire (sans réseau ni base) :
+ * <ul>
+ *   <li>{@code copyPerMember} : une copie {@link Message} et une sérialisation par membre (ancien chemin) ;</li>
+ *   <li>{@code serializeOnce} : corps encodé une fois, en-tête de routage propre à chaque membre.</li>
+ * </ul>
+ *
+ * <pre>
+ * mvn -Pbench compile
+ * java -cp target/classes:$(cat cp.txt) org.openjdk.jmh.Main GroupFanoutBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupFanoutBenchmark {
+
+    @Param({"10", "100", "500", "2000"})
+    public int groupSize;
+
+    private EnvelopeCodec codec;
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        codec = new EnvelopeCodec(new ObjectMapper().registerModule(new JavaTimeModule()));
+        message = Message.newGroupMessage(1042L, 77L,
+                "Réunion décalée à 15h, même salle. Pensez à apporter les chiffres du trimestre !");
+    }
+
+    @Benchmark
+    public void copyPerMember(final Blackhole blackhole) throws IOException {
+        for (long member = 1; member <= groupSize; member++) {
+            final Message copy = Message.copyForReceiver(message, member);
+            final byte[] payload = codec.encodeMessage(copy);
+            blackhole.consume(FrameCodec.HEADER_LENGTH + payload.length);
+        }
+    }
+
+    @Benchmark
+    public void serializeOnce(final Blackhole blackhole) throws IOException {
+        final GroupFanout fanout = new GroupFanout(message, 1);
+        for (long member = 1; member <= groupSize; member++) {
+            final byte[] header = fanout.headerFor(member);
+            final byte[] body = fanout.bodyFor(codec.getBodyCodec());
+            blackhole.consume(FrameCodec.HEADER_LENGTH + header.length + body.length);
+        }
+    }
+}
@@ -6,10 +6,13 @@ import java.io.InputStream;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -27,8 +30,11 @@ import org.example.shared.model.CallSignal;
 import org.example.shared.model.Group;
 import org.example.shared.model.Message;
 import org.example.shared.model.User;
+import org.example.shared.model.enums.MessageStatus;
 import org.example.shared.model.enums.MessageType;
+import org.example.shared.protocol.ControlCommand;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.collections.FXCollections;
@@ -69,6 +75,7 @@ import javafx.scene.shape.Circle;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
+import javafx.util.Duration;
 
 import javax.sound.sampled.LineUnavailableException;
 
@@ -105,6 +112,8 @@ public class ChatController {
 
     @FXML
     private Label groupMembersLabel;
+    @FXML
+    private Label typingLabel;
 
     // Éléments d'interface pour les appels
     @FXML
@@ -124,6 +133,8 @@ public class ChatController {
 
     private ChatService chatService;
     private String userEmail;
+    // Lu une fois à l'ouverture : sert à chaque message reçu
+    private long currentUserId;
     private User selectedContactUser;
     private Group selectedGroup;
 
@@ -140,7 +151,26 @@ public class ChatController {
 
     private final Object loadLock = new Object();
 
+    // Écriture des messages reçus dans l'historique local, hors du thread JavaFX : un seul
+    // thread, pour garder leur ordre, qui enregistre d'un coup tout ce qui s'est accumulé
+    private final ExecutorService historyWriter = Executors.newSingleThreadExecutor(task -> {
+        final Thread thread = new Thread(task, "chat-history-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Messages reçus en attente d'écriture, protégés par eux-mêmes
+    private final List<Message> receivedMessages = new ArrayList<>();
+
     private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm");
+    // Durée d'affichage d'un indicateur de saisie dont l'annonce ne précise pas la sienne
+    private static final long TYPING_DEFAULT_TTL_MILLIS = 6000;
+
+    // Efface l'indicateur de saisie faute de nouvelle annonce (thread JavaFX)
+    private final PauseTransition typingExpiry = new PauseTransition();
+    // Marques (envoyé, reçu, lu) des messages envoyés affichés, le message en userData (thread JavaFX)
+    private final List<Label> markLabels = new ArrayList<>();
+    // Rang du dernier message reçu affiché dans la conversation directe ouverte (thread JavaFX)
+    private long lastReceivedSequence;
 
     // Media attachment state
     private File selectedMediaFile;
@@ -213,6 +243,9 @@ public class ChatController {
 
         contactListView.getSelectionModel().selectedItemProperty().addListener((obs, old, sel) -> {
             if (sel != null) {
+                // Saisie abandonnée dans la conversation quittée
+                announceTyping(false);
+                clearTypingIndicator();
                 groupListView.getSelectionModel().clearSelection();
                 selectedContactUser = sel;
                 selectedGroup = null;
@@ -231,6 +264,8 @@ public class ChatController {
 
         groupListView.getSelectionModel().selectedItemProperty().addListener((obs, old, sel) -> {
             if (sel != null) {
+                announceTyping(false);
+                clearTypingIndicator();
                 contactListView.getSelectionModel().clearSelection();
                 selectedGroup = sel;
                 selectedContactUser = null;
@@ -247,6 +282,12 @@ public class ChatController {
         });
 
         messageField.setOnAction(this::handleSendMessage);
+        // Chaque frappe annonce la saisie (regroupées par le service) ; un champ vidé l'arrête
+        messageField.textProperty().addListener((obs, old, text) -> announceTyping(!text.trim().isEmpty()));
+        typingExpiry.setOnFinished(e -> showTypingText(""));
+        showTypingText("");
+        // Défiler jusqu'en bas de la conversation vaut lecture
+        chatScrollPane.vvalueProperty().addListener((obs, old, value) -> markConversationRead());
 
         // Initialiser l'interface d'appel
         initCallUI();
@@ -295,12 +336,18 @@ public class ChatController {
     public void initData(final ChatService service, final String userEmail) {
         this.chatService = service;
         this.userEmail = userEmail;
+        this.currentUserId = service.getCurrentUserId();
+        groupService.setMembershipListener(chatService::notifyGroupChanged);
         userEmailLabel.setText(userEmail);
 
         chatService.setMessageConsumer(this::handleIncomingMessage);
         chatService.setCallSignalConsumer(this::handleCallSignal);
+        chatService.setTypingConsumer(this::handleTypingNotice);
+        chatService.setReceiptConsumer(this::handleReceiptNotice);
         loadContacts();
         loadGroups();
+        // Après le chargement des listes (file du thread JavaFX) : rattraper ce qui a été perdu hors ligne
+        Platform.runLater(this::syncConversations);
 
         // Démarrer le rafraîchissement périodique des statuts
         startContactStatusUpdater();
@@ -806,6 +853,8 @@ public class ChatController {
             final User currentUser = userService.getUserByEmail(userEmail);
             final boolean isMine = message.getSenderUserId() == currentUser.getId();
             final boolean isGroup = message.getGroupId() != null;
+            // Accusés de réception : conversations directes seulement
+            final Label markLabel = isMine && !isGroup ? createMarkLabel(message) : null;
 
             final HBox messageContainer = new HBox(10);
             messageContainer.getStyleClass().add("message-container");
@@ -849,6 +898,9 @@ public class ChatController {
 
                 // Assembler le conteneur de message
                 contentTimeContainer.getChildren().addAll(contentLabel, timeLabel);
+                if (markLabel != null) {
+                    contentTimeContainer.getChildren().add(markLabel);
+                }
                 contentBox.getChildren().add(contentTimeContainer);
             }
             // For media messages, create appropriate media preview
@@ -879,6 +931,9 @@ public class ChatController {
                 final Label timeLabel = new Label(message.getTimestamp().format(TIME_FMT));
                 timeLabel.getStyleClass().add("message-time");
                 timeContainer.getChildren().add(timeLabel);
+                if (markLabel != null) {
+                    timeContainer.getChildren().add(markLabel);
+                }
                 contentBox.getChildren().add(timeContainer);
             }
 
@@ -889,6 +944,9 @@ public class ChatController {
 
             Platform.runLater(() -> {
                 chatHistoryContainer.getChildren().add(messageContainer);
+                if (markLabel != null) {
+                    markLabels.add(markLabel);
+                }
                 scrollToBottom();
             });
         } catch (final IOException e) {
@@ -1216,10 +1274,31 @@ public class ChatController {
         }
     }
 
+    /**
+     * Demande au serveur, pour chaque contact et chaque groupe, les messages
+     * postérieurs au dernier rang enregistré localement : seul l'écart est transféré.
+     */
+    private void syncConversations() {
+        try {
+            final Map<Long, Long> contactSequences = localRepo.getLastContactSequences(userEmail, currentUserId);
+            final Map<Long, Long> groupSequences = localRepo.getLastGroupSequences(userEmail);
+            for (final User contact : contacts) {
+                chatService.syncConversation(contact.getId(), contactSequences.getOrDefault(contact.getId(), 0L));
+            }
+            for (final Group group : groups) {
+                chatService.syncGroup(group.getId(), groupSequences.getOrDefault(group.getId(), 0L));
+            }
+        } catch (final IOException e) {
+            setStatus("Erreur lors de la synchronisation des conversations : " + e.getMessage());
+        }
+    }
+
     private void loadContactConversation(final User contactUser) {
         Platform.runLater(() -> {
             synchronized (loadLock) {
                 chatHistoryContainer.getChildren().clear();
+                markLabels.clear();
+                lastReceivedSequence = 0;
                 try {
                     // Effacer l'affichage des membres car on est dans une conversation individuelle
                     groupMembersLabel.setText("");
@@ -1228,7 +1307,14 @@ public class ChatController {
                     final long contactId = contactUser.getId();
                     final List<Message> contactMessages = localRepo.loadContactMessages(userEmail, myId, contactId);
                     contactMessages.forEach(this::addMessageToChat);
+                    for (final Message message : contactMessages) {
+                        if (message.getSenderUserId() == contactId) {
+                            lastReceivedSequence = Math.max(lastReceivedSequence, message.getSequence());
+                        }
+                    }
                     scrollToBottom();
+                    // Après le défilement : la conversation ouverte est lue
+                    Platform.runLater(this::markConversationRead);
 
                     // Activer le bouton d'appel pour les conversations individuelles
                     callButton.setDisable(false);
@@ -1245,6 +1331,8 @@ public class ChatController {
         Platform.runLater(() -> {
             synchronized (loadLock) {
                 chatHistoryContainer.getChildren().clear();
+                markLabels.clear();
+                lastReceivedSequence = 0;
                 try {
                     // Afficher les membres du groupe dans l'en-tête
                     displayGroupMembers(group);
@@ -1421,58 +1509,290 @@ public class ChatController {
         }
     }
 
-    private void handleIncomingMessage(final Message message) {
+    /**
+     * Annonce que l'utilisateur écrit, ou a cessé d'écrire, dans la conversation affichée.
+     */
+    private void announceTyping(final boolean active) {
+        if (chatService == null) {
+            return;
+        }
+        if (selectedContactUser != null) {
+            chatService.sendTyping(selectedContactUser.getId(), active);
+        } else if (selectedGroup != null) {
+            chatService.sendGroupTyping(selectedGroup.getId(), active);
+        }
+    }
+
+    /**
+     * Affiche l'indicateur de saisie reçu s'il concerne la conversation
+     * affichée. Il s'efface de lui-même faute de nouvelle annonce dans le délai
+     * indiqué par le serveur.
+     */
+    private void handleTypingNotice(final ControlCommand command) {
         Platform.runLater(() -> {
+            final String text;
+            final long ttlMillis;
             try {
-                localRepo.addLocalMessage(userEmail, message);
-
-                // Message de groupe
-                if (message.getGroupId() != null) {
-                    // Vérifier si le groupe est déjà dans la liste, sinon recharger les groupes
-                    final boolean groupExists = groups.stream()
-                            .anyMatch(g -> g.getId() == message.getGroupId());
-                    if (!groupExists) {
-                        loadGroups();
-                    } else {
-                        groupListView.refresh();
-                    }
+                text = typingText(command);
+                final String ttl = command.getParam(ControlCommand.PARAM_TTL);
+                ttlMillis = ttl != null ? Long.parseLong(ttl) : TYPING_DEFAULT_TTL_MILLIS;
+            } catch (final NumberFormatException e) {
+                return;
+            }
+            if (text == null) {
+                return;
+            }
+            typingExpiry.stop();
+            showTypingText(text);
+            if (!text.isEmpty()) {
+                typingExpiry.setDuration(Duration.millis(ttlMillis));
+                typingExpiry.playFromStart();
+            }
+        });
+    }
 
-                    // Afficher le message si le groupe est actuellement sélectionné
-                    if (selectedGroup != null && selectedGroup.getId() == message.getGroupId()) {
-                        addMessageToChat(message);
-                    }
-                    setStatus("Nouveau message de groupe reçu");
+    /**
+     * @return Le texte de l'indicateur, vide s'il faut l'effacer, ou null si
+     *         l'annonce concerne une autre conversation
+     */
+    private String typingText(final ControlCommand command) {
+        final String groupParam = command.getParam(ControlCommand.PARAM_GROUP_ID);
+        if (groupParam == null) {
+            final long userId = Long.parseLong(command.getParam(ControlCommand.PARAM_USER_ID));
+            if (selectedContactUser == null || selectedContactUser.getId() != userId) {
+                return null;
+            }
+            return "false".equals(command.getParam(ControlCommand.PARAM_ACTIVE)) ? ""
+                    : shortName(userId) + " écrit…";
+        }
+        if (selectedGroup == null || selectedGroup.getId() != Long.parseLong(groupParam)) {
+            return null;
+        }
+        // Le destinataire peut figurer parmi les membres qui écrivent : il n'est pas affiché
+        int others = Integer.parseInt(command.getParam(ControlCommand.PARAM_COUNT));
+        final List<String> names = new ArrayList<>();
+        final String ids = command.getParam(ControlCommand.PARAM_USER_IDS);
+        if (ids != null && !ids.isEmpty()) {
+            for (final String id : ids.split(",")) {
+                final long userId = Long.parseLong(id);
+                if (userId == currentUserId) {
+                    others--;
+                } else {
+                    names.add(shortName(userId));
                 }
-                // Message direct
-                else {
-                    final User sender = userService.getUserById(message.getSenderUserId());
+            }
+        }
+        if (others <= 0) {
+            return "";
+        }
+        if (names.size() < others) {
+            return others + " membres écrivent…";
+        }
+        return String.join(", ", names) + (others == 1 ? " écrit…" : " écrivent…");
+    }
 
-                    // Ajouter le contact s'il n'existe pas
-                    if (sender != null && !contacts.contains(sender)) {
-                        contacts.add(sender);
-                    }
-                    contactListView.refresh();
+    private String shortName(final long userId) {
+        try {
+            return userService.getUserById(userId).getDisplayNameOrEmail().split("@")[0];
+        } catch (final IOException e) {
+            return "Inconnu";
+        }
+    }
 
-                    // Afficher le message si la conversation est actuellement sélectionnée
-                    if (selectedContactUser != null &&
-                            sender.getId() == selectedContactUser.getId()) {
-                        addMessageToChat(message);
-                    }
+    private Label createMarkLabel(final Message message) {
+        final Label markLabel = new Label();
+        markLabel.getStyleClass().add("message-mark");
+        markLabel.setUserData(message);
+        updateMarkLabel(markLabel);
+        return markLabel;
+    }
 
-                    if (message.isTextMessage()) {
-                        setStatus("Nouveau message reçu");
-                    } else {
-                        setStatus("Nouveau média reçu");
+    private void updateMarkLabel(final Label markLabel) {
+        final MessageStatus status = ((Message) markLabel.getUserData()).getStatus();
+        markLabel.setText(status == MessageStatus.READ ? "✓✓ Lu" : status == MessageStatus.DELIVERED ? "✓✓" : "✓");
+        markLabel.getStyleClass().remove("message-mark-read");
+        if (status == MessageStatus.READ) {
+            markLabel.getStyleClass().add("message-mark-read");
+        }
+    }
+
+    /**
+     * Applique un accusé du serveur à l'historique local et aux messages
+     * affichés : rang attribué à un message envoyé (SENT), ou réception et
+     * lecture par un contact jusqu'à un rang (RECEIPT).
+     */
+    private void handleReceiptNotice(final ControlCommand command) {
+        Platform.runLater(() -> {
+            try {
+                if (ControlCommand.SENT.equals(command.getCommand())) {
+                    final String clientMessageId = command.getParam(ControlCommand.PARAM_CLIENT_MESSAGE_ID);
+                    if (clientMessageId != null) {
+                        applySent(UUID.fromString(clientMessageId),
+                                Long.parseLong(command.getParam(ControlCommand.PARAM_SEQ)));
                     }
+                    return;
                 }
-
-                scrollToBottom();
+                final String status = command.getParam(ControlCommand.PARAM_STATUS);
+                if (!MessageStatus.DELIVERED.name().equals(status) && !MessageStatus.READ.name().equals(status)) {
+                    return;
+                }
+                applyReceipt(Long.parseLong(command.getParam(ControlCommand.PARAM_USER_ID)),
+                        MessageStatus.valueOf(status), Long.parseLong(command.getParam(ControlCommand.PARAM_UP_TO_SEQ)));
+            } catch (final IllegalArgumentException e) {
+                System.err.println("Accusé invalide: " + command.getCommand());
             } catch (final IOException e) {
-                setStatus("Erreur lors du traitement du message : " + e.getMessage());
+                setStatus("Erreur lors de l'enregistrement d'un accusé : " + e.getMessage());
             }
         });
     }
 
+    private void applySent(final UUID clientMessageId, final long sequence) throws IOException {
+        localRepo.assignSequence(userEmail, clientMessageId, sequence);
+        for (final Label markLabel : markLabels) {
+            final Message message = (Message) markLabel.getUserData();
+            if (clientMessageId.equals(message.getClientMessageId()) && message.getSequence() == 0) {
+                message.setSequence(sequence);
+            }
+        }
+    }
+
+    private void applyReceipt(final long contactId, final MessageStatus status, final long upToSequence)
+            throws IOException {
+        localRepo.applyReceipt(userEmail, currentUserId, contactId, status, upToSequence);
+        for (final Label markLabel : markLabels) {
+            if (JsonLocalMessageRepository.applyReceipt((Message) markLabel.getUserData(), currentUserId, contactId,
+                    status, upToSequence)) {
+                updateMarkLabel(markLabel);
+            }
+        }
+    }
+
+    /**
+     * Déclare lus les messages reçus de la conversation directe ouverte, si sa
+     * fin est visible.
+     */
+    private void markConversationRead() {
+        if (chatService == null || selectedContactUser == null || lastReceivedSequence <= 0) {
+            return;
+        }
+        final boolean atBottom = chatScrollPane.getVvalue() >= chatScrollPane.getVmax()
+                || chatHistoryContainer.getHeight() <= chatScrollPane.getViewportBounds().getHeight();
+        if (atBottom) {
+            chatService.markRead(selectedContactUser.getId(), lastReceivedSequence);
+        }
+    }
+
+    private void clearTypingIndicator() {
+        typingExpiry.stop();
+        showTypingText("");
+    }
+
+    /**
+     * Affiche le texte de l'indicateur de saisie ; vide, le libellé est masqué
+     * et ne prend plus de place dans l'en-tête.
+     */
+    private void showTypingText(final String text) {
+        typingLabel.setText(text);
+        final boolean shown = !text.isEmpty();
+        typingLabel.setVisible(shown);
+        typingLabel.setManaged(shown);
+    }
+
+    /**
+     * Reçoit un message (en direct, rejoué ou synchronisé) sur le thread de
+     * lecture : il attend l'écriture du lot en cours, puis le suivant l'emporte
+     * avec ceux arrivés entre-temps (une page de synchronisation entière, le
+     * plus souvent).
+     */
+    private void handleIncomingMessage(final Message message) {
+        synchronized (receivedMessages) {
+            receivedMessages.add(message);
+            if (receivedMessages.size() > 1) {
+                // Écriture déjà demandée, pas encore commencée
+                return;
+            }
+        }
+        historyWriter.execute(this::storeReceivedMessages);
+    }
+
+    private void storeReceivedMessages() {
+        final List<Message> batch;
+        synchronized (receivedMessages) {
+            batch = new ArrayList<>(receivedMessages);
+            receivedMessages.clear();
+        }
+        final List<Message> added;
+        try {
+            added = localRepo.addLocalMessages(userEmail, currentUserId, batch);
+        } catch (final IOException e) {
+            setStatus("Erreur lors du traitement du message : " + e.getMessage());
+            return;
+        }
+        if (!added.isEmpty()) {
+            Platform.runLater(() -> {
+                try {
+                    for (final Message message : added) {
+                        showIncomingMessage(message);
+                    }
+                } catch (final IOException e) {
+                    setStatus("Erreur lors du traitement du message : " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    private void showIncomingMessage(final Message message) throws IOException {
+        // Ses propres messages (envoyés depuis un autre poste) restent dans l'historique, sans annonce
+        if (message.getSenderUserId() == currentUserId) {
+            return;
+        }
+
+        // Message de groupe
+        if (message.getGroupId() != null) {
+            // Vérifier si le groupe est déjà dans la liste, sinon recharger les groupes
+            final boolean groupExists = groups.stream()
+                    .anyMatch(g -> g.getId() == message.getGroupId());
+            if (!groupExists) {
+                loadGroups();
+            } else {
+                groupListView.refresh();
+            }
+
+            // Afficher le message si le groupe est actuellement sélectionné
+            if (selectedGroup != null && selectedGroup.getId() == message.getGroupId()) {
+                addMessageToChat(message);
+            }
+            setStatus("Nouveau message de groupe reçu");
+        }
+        // Message direct
+        else {
+            final User sender = userService.getUserById(message.getSenderUserId());
+
+            // Ajouter le contact s'il n'existe pas
+            if (sender != null && !contacts.contains(sender)) {
+                contacts.add(sender);
+            }
+            contactListView.refresh();
+
+            // Afficher le message si la conversation est actuellement sélectionnée
+            if (selectedContactUser != null &&
+                    message.getSenderUserId() == selectedContactUser.getId()) {
+                addMessageToChat(message);
+                lastReceivedSequence = Math.max(lastReceivedSequence, message.getSequence());
+                // Après l'ajout et le défilement : lu s'il est visible
+                Platform.runLater(this::markConversationRead);
+            }
+
+            if (message.isTextMessage()) {
+                setStatus("Nouveau message reçu");
+            } else {
+                setStatus("Nouveau média reçu");
+            }
+        }
+
+        scrollToBottom();
+    }
+
     @FXML
     private void handleAddContact() {
         final String email = newContactField.getText().trim();
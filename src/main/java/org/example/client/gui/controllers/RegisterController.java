@@ -7,6 +7,7 @@ import java.util.Scanner;
 import java.util.concurrent.CompletableFuture;
 
 import org.example.shared.dto.RegistrationDTO;
+import org.example.shared.protocol.Protocol;
 import org.example.shared.util.ValidationUtils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -149,6 +150,9 @@ public class RegisterController {
                             showError("Erreur d'interface", "Impossible d'ouvrir la fenêtre de connexion: " + e.getMessage());
                             rebindRegisterButton();
                         }
+                    } else if (Protocol.BUSY.equals(Protocol.command(response))) {
+                        showError("Serveur occupé", "Le serveur est momentanément surchargé. Réessayez dans quelques secondes.");
+                        rebindRegisterButton();
                     } else {
                         showError("Échec de l'inscription", response);
                         rebindRegisterButton();
@@ -6,11 +6,16 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 import org.example.shared.model.Message;
+import org.example.shared.model.enums.MessageStatus;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -21,6 +26,9 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
  * Classe de persistance locale pour l'historique des messages d'un utilisateur.
  * L'historique est stocké sous forme de fichier JSON dans le dossier
  * "src/main/resources/client_data".
+ * <p>
+ * Chaque opération lit (et réécrit) le fichier entier : elles sont exclusives,
+ * le fichier étant aussi écrit hors du thread JavaFX (messages reçus).
  */
 public class JsonLocalMessageRepository {
     // Utilisation du répertoire de projet pour stocker les données clients
@@ -60,7 +68,7 @@ public class JsonLocalMessageRepository {
     /**
      * Charge la liste des messages locaux pour l'utilisateur.
      */
-    public List<Message> loadLocalMessages(final String userEmail) throws IOException {
+    public synchronized List<Message> loadLocalMessages(final String userEmail) throws IOException {
         final String filePath = getUserFilePath(userEmail);
         final File file = new File(filePath);
         if (!file.exists()) {
@@ -74,7 +82,7 @@ public class JsonLocalMessageRepository {
     /**
      * Enregistre la liste des messages locaux pour l'utilisateur.
      */
-    public void saveLocalMessages(final String userEmail, final List<Message> messages) throws IOException {
+    public synchronized void saveLocalMessages(final String userEmail, final List<Message> messages) throws IOException {
         final String filePath = getUserFilePath(userEmail);
         objectMapper.writeValue(new File(filePath), messages);
     }
@@ -82,18 +90,176 @@ public class JsonLocalMessageRepository {
     /**
      * Ajoute un nouveau message dans l'historique local pour l'utilisateur.
      * message envoyé et recue
+     *
+     * @return false si le message y était déjà (même rang dans la même
+     *         conversation : reçu à la fois en direct et par la synchronisation)
      */
-    public void addLocalMessage(final String userEmail, final Message message) throws IOException {
+    public synchronized boolean addLocalMessage(final String userEmail, final Message message) throws IOException {
         final List<Message> messages = loadLocalMessages(userEmail);
+        if (message.getSequence() > 0
+                && messages.stream().anyMatch(m -> m.getSequence() == message.getSequence()
+                        && sameConversation(m, message))) {
+            return false;
+        }
         messages.add(message);
         saveLocalMessages(userEmail, messages);
+        return true;
+    }
+
+    /**
+     * Ajoute des messages reçus (en direct ou par la synchronisation) en une
+     * seule réécriture du fichier. Un message de l'utilisateur lui-même renvoyé
+     * par la synchronisation numérote sa copie locale encore sans rang (même
+     * conversation, même contenu), ou est ajouté s'il n'y en a pas (envoyé
+     * depuis un autre poste).
+     *
+     * @return Les messages ajoutés, dans leur ordre ; sans les doublons ni les
+     *         copies locales numérotées
+     */
+    public synchronized List<Message> addLocalMessages(final String userEmail, final long myId,
+                                                       final List<Message> received) throws IOException {
+        final List<Message> messages = loadLocalMessages(userEmail);
+        final List<Message> added = new ArrayList<>();
+        boolean changed = false;
+        for (final Message message : received) {
+            if (message.getSequence() > 0
+                    && messages.stream().anyMatch(m -> m.getSequence() == message.getSequence()
+                            && sameConversation(m, message))) {
+                continue;
+            }
+            if (message.getSenderUserId() == myId && message.getSequence() > 0) {
+                final Optional<Message> local = messages.stream()
+                        .filter(m -> m.getSenderUserId() == myId && m.getSequence() == 0
+                                && sameConversation(m, message)
+                                && Objects.equals(m.getContent(), message.getContent()))
+                        .findFirst();
+                if (local.isPresent()) {
+                    local.get().setSequence(message.getSequence());
+                    changed = true;
+                    continue;
+                }
+            }
+            messages.add(message);
+            added.add(message);
+            changed = true;
+        }
+        if (changed) {
+            saveLocalMessages(userEmail, messages);
+        }
+        return added;
+    }
+
+    private static boolean sameConversation(final Message a, final Message b) {
+        if (a.getGroupId() != null || b.getGroupId() != null) {
+            return Objects.equals(a.getGroupId(), b.getGroupId());
+        }
+        final long aPeer = a.getReceiverUserId() != null ? a.getReceiverUserId() : 0;
+        final long bPeer = b.getReceiverUserId() != null ? b.getReceiverUserId() : 0;
+        return (a.getSenderUserId() == b.getSenderUserId() && aPeer == bPeer)
+                || (a.getSenderUserId() == bPeer && aPeer == b.getSenderUserId());
+    }
+
+    /**
+     * Dernier rang connu dans chaque conversation directe de l'utilisateur,
+     * dans les deux sens (rang d'un message envoyé compris, connu par l'accusé
+     * SENT ou la synchronisation), pour ne demander au serveur que la suite :
+     * une conversation où seul l'utilisateur a écrit ne repart pas de zéro.
+     *
+     * @return ID du contact vers dernier rang (conversations sans message numéroté absentes)
+     */
+    public synchronized Map<Long, Long> getLastContactSequences(final String userEmail, final long myId)
+            throws IOException {
+        final Map<Long, Long> sequences = new HashMap<>();
+        for (final Message msg : loadLocalMessages(userEmail)) {
+            if (msg.getGroupId() == null && msg.getReceiverUserId() != null && msg.getSequence() > 0) {
+                final long contactId = msg.getSenderUserId() == myId ? msg.getReceiverUserId() : msg.getSenderUserId();
+                sequences.merge(contactId, msg.getSequence(), Math::max);
+            }
+        }
+        return sequences;
+    }
+
+    /**
+     * Enregistre le rang attribué par le serveur à un message envoyé.
+     *
+     * @return false si le message est introuvable ou déjà numéroté
+     */
+    public synchronized boolean assignSequence(final String userEmail, final UUID clientMessageId, final long sequence)
+            throws IOException {
+        final List<Message> messages = loadLocalMessages(userEmail);
+        for (final Message msg : messages) {
+            if (clientMessageId.equals(msg.getClientMessageId()) && msg.getSequence() == 0) {
+                msg.setSequence(sequence);
+                saveLocalMessages(userEmail, messages);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Applique l'accusé d'un contact aux messages qui lui ont été envoyés.
+     *
+     * @return true si un message a changé de statut
+     */
+    public synchronized boolean applyReceipt(final String userEmail, final long myId, final long contactId,
+                                final MessageStatus status, final long upToSequence) throws IOException {
+        final List<Message> messages = loadLocalMessages(userEmail);
+        boolean changed = false;
+        for (final Message msg : messages) {
+            changed |= applyReceipt(msg, myId, contactId, status, upToSequence);
+        }
+        if (changed) {
+            saveLocalMessages(userEmail, messages);
+        }
+        return changed;
+    }
+
+    /**
+     * Passe un message envoyé au contact au statut de l'accusé s'il est numéroté
+     * et couvert par lui ; un statut ne recule jamais (un message lu reste lu).
+     *
+     * @return true si le statut du message a changé
+     */
+    public static boolean applyReceipt(final Message message, final long myId, final long contactId,
+                                       final MessageStatus status, final long upToSequence) {
+        if (message.getGroupId() != null || message.getSenderUserId() != myId
+                || message.getReceiverUserId() == null || message.getReceiverUserId() != contactId
+                || message.getSequence() <= 0 || message.getSequence() > upToSequence
+                || receiptRank(message.getStatus()) >= receiptRank(status)) {
+            return false;
+        }
+        message.setStatus(status);
+        return true;
+    }
+
+    private static int receiptRank(final MessageStatus status) {
+        if (status == MessageStatus.READ) {
+            return 2;
+        }
+        return status == MessageStatus.DELIVERED ? 1 : 0;
+    }
+
+    /**
+     * Comme {@link #getLastContactSequences}, pour les groupes.
+     *
+     * @return ID du groupe vers dernier rang
+     */
+    public synchronized Map<Long, Long> getLastGroupSequences(final String userEmail) throws IOException {
+        final Map<Long, Long> sequences = new HashMap<>();
+        for (final Message msg : loadLocalMessages(userEmail)) {
+            if (msg.getGroupId() != null && msg.getSequence() > 0) {
+                sequences.merge(msg.getGroupId(), msg.getSequence(), Math::max);
+            }
+        }
+        return sequences;
     }
 
     /**
      * Retourne la conversation entre deux utilisateurs en filtrant les messages
      * directs (sans groupId).
      */
-    public List<Message> loadContactMessages(final String userEmail, final long myId, final long contactId)
+    public synchronized List<Message> loadContactMessages(final String userEmail, final long myId, final long contactId)
             throws IOException {
         final List<Message> allMessages = loadLocalMessages(userEmail);
         final List<Message> contactMessages = allMessages.stream()
@@ -112,7 +278,7 @@ public class JsonLocalMessageRepository {
      * correspond
      * au groupe passé.
      */
-    public List<Message> loadGroupMessages(final String userEmail, final long groupId) throws IOException {
+    public synchronized List<Message> loadGroupMessages(final String userEmail, final long groupId) throws IOException {
         final List<Message> allMessages = loadLocalMessages(userEmail);
         final List<Message> groupMessages = new ArrayList<>();
         for (final Message msg : allMessages) {
@@ -126,7 +292,7 @@ public class JsonLocalMessageRepository {
     /**
      * Supprime un message de l'historique local pour l'utilisateur.
      */
-    public void removeConversation(final String userEmail, final long myId, final long contactId) throws IOException {
+    public synchronized void removeConversation(final String userEmail, final long myId, final long contactId) throws IOException {
         final List<Message> messages = loadLocalMessages(userEmail);
         messages.removeIf(m -> (m.getSenderUserId() == myId && m.getReceiverUserId() != null
                 && m.getReceiverUserId() == contactId)
@@ -138,7 +304,7 @@ public class JsonLocalMessageRepository {
     /**
      * Récupère le dernier message échangé avec un contact spécifique.
      */
-    public Optional<Message> getLastContactMessage(final String userEmail, final long myId, final long contactId) throws IOException {
+    public synchronized Optional<Message> getLastContactMessage(final String userEmail, final long myId, final long contactId) throws IOException {
         return loadContactMessages(userEmail, myId, contactId).stream()
                 .max(Comparator.comparing(Message::getTimestamp));
     }
@@ -146,7 +312,7 @@ public class JsonLocalMessageRepository {
     /**
      * Récupère le dernier message d'un groupe spécifique.
      */
-    public Optional<Message> getLastGroupMessage(final String userEmail, final long groupId) throws IOException {
+    public synchronized Optional<Message> getLastGroupMessage(final String userEmail, final long groupId) throws IOException {
         return loadGroupMessages(userEmail, groupId).stream()
                 .max(Comparator.comparing(Message::getTimestamp));
     }
@@ -4,7 +4,12 @@ import java.io.*;
 import java.net.ConnectException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 import org.example.shared.dao.GroupDAO;
@@ -15,24 +20,55 @@ import org.example.shared.model.CallSession;
 import org.example.shared.model.CallSignal;
 import org.example.shared.model.Message;
 import org.example.shared.model.User;
+import org.example.shared.protocol.ControlCommand;
+import org.example.shared.protocol.Envelope;
+import org.example.shared.protocol.EnvelopeCodec;
+import org.example.shared.protocol.EnvelopeDispatcher;
+import org.example.shared.protocol.Frame;
+import org.example.shared.protocol.FrameCodec;
+import org.example.shared.protocol.FrameCompression;
+import org.example.shared.protocol.FrameType;
+import org.example.shared.protocol.JacksonBodyCodec;
+import org.example.shared.protocol.Protocol;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.example.shared.model.enums.MessageStatus;
 import org.example.shared.model.enums.MessageType;
 
 public class ChatService {
     private static final String SERVER_ADDRESS = "localhost";
     private static final int SERVER_PORT = 5000;
-
-    private Socket socket;
-    private PrintWriter out;
-    private BufferedReader in;
+    private static final int MAX_BUSY_ATTEMPTS = 5;
+    private static final long DEFAULT_BUSY_RETRY_MILLIS = 1000;
+    // Renouvellement des annonces de saisie, en deçà de leur durée de vie sur le serveur
+    private static final long TYPING_REFRESH_MILLIS = 2000;
+    // Délais entre les tentatives de reprise de session après une coupure
+    private static final long[] RESUME_BACKOFF_MILLIS = {500, 1000, 2000, 4000, 8000};
+
+    // Connexion courante et réglages négociés, remplacés d'un bloc (null hors connexion)
+    private volatile ServerConnection connection;
     private String userEmail;
+    // Ticket de reprise envoyé par le serveur (v2), conservé après une coupure réseau
+    private volatile String sessionTicket;
+    private volatile long sessionTicketExpiresAt;
     private final ObjectMapper objectMapper;
+    private final EnvelopeCodec jsonCodec;
+    private final EnvelopeDispatcher dispatcher;
     private Consumer<Message> messageConsumer;
     private Consumer<CallSignal> callSignalConsumer;
+    private Consumer<ControlCommand> typingConsumer;
+    private Consumer<ControlCommand> receiptConsumer;
+    // Plus haut rang reçu par expéditeur depuis le dernier accusé (thread d'écoute uniquement)
+    private final Map<Long, Long> unacknowledged = new HashMap<>();
+    // Dernier rang déclaré lu par contact
+    private final Map<Long, Long> readMarks = new ConcurrentHashMap<>();
+    // Dernière annonce de saisie par conversation ("u<id>" ou "g<id>"), en nanosecondes
+    private final Map<String, Long> typingSentAt = new ConcurrentHashMap<>();
     private Thread listenerThread;
     private boolean isRunning = false;
+    // Déconnexion volontaire en cours : une coupure n'entraîne pas de reprise
+    private volatile boolean closing;
 
     // Instances DAO pour la persistance locale
     private final MessageDAO messageDAO;
@@ -44,6 +80,12 @@ public class ChatService {
 
     public ChatService() {
         this.objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        this.jsonCodec = new EnvelopeCodec(objectMapper);
+        this.dispatcher = new EnvelopeDispatcher(envelope -> { /* Nature non gérée par ce client : ignorée */ })
+                .on(FrameType.MESSAGE, this::dispatchMessage)
+                .on(FrameType.MESSAGE_BATCH, this::dispatchMessageBatch)
+                .on(FrameType.CALL_SIGNAL, this::dispatchCallSignal)
+                .on(FrameType.CONTROL, this::dispatchControl);
         this.messageDAO = new MessageDAO();
         this.groupDAO = new GroupDAO();
         this.userDAO = new UserDAO();
@@ -52,34 +94,103 @@ public class ChatService {
 
     // resp : initie la connexion avec le serveur / l'authentification
     public boolean connect(final Credentials credentials) throws IOException {
+        closing = false;
+        // Envoyer la commande de connexion (avec la version de protocole souhaitée)
+        // pour différencier des requêtes d'inscription, puis les identifiants
+        final boolean success = handshake(requestLine(Protocol.LOGIN), objectMapper.writeValueAsString(credentials));
+        if (success) {
+            this.userEmail = credentials.getEmail();
+            System.out.println("Authentification réussie pour " + userEmail);
+        } else {
+            System.out.println("Échec de l'authentification");
+        }
+        return success;
+    }
+
+    /**
+     * Reprend la session après une coupure avec le ticket reçu à la dernière
+     * connexion, en un seul aller-retour et sans renvoyer les identifiants.
+     *
+     * @return false si aucun ticket valide n'est disponible : il faut alors appeler {@link #connect(Credentials)}
+     */
+    public boolean resumeSession() throws IOException {
+        final String ticket = sessionTicket;
+        if (ticket == null || sessionTicketExpiresAt <= System.currentTimeMillis() / 1000) {
+            return false;
+        }
+        closeResources();
+        final boolean success = handshake(requestLine(Protocol.RESUME), ticket);
+        if (success) {
+            System.out.println("Session reprise pour " + userEmail);
+        } else {
+            // Ticket refusé (expiré, clé du serveur changée) : ne plus le présenter
+            sessionTicket = null;
+        }
+        return success;
+    }
+
+    private static String requestLine(final String command) {
+        final String line = Protocol.withVersion(command, Protocol.CURRENT_VERSION);
+        final List<String> options = new ArrayList<>();
+        if (Boolean.parseBoolean(System.getProperty("chat.compression", "true"))) {
+            options.add(Protocol.DEFLATE);
+        }
+        // -Dchat.codec=json pour garder des corps lisibles (débogage)
+        if (Protocol.SMILE.equals(System.getProperty("chat.codec", Protocol.SMILE))) {
+            options.add(Protocol.SMILE);
+        }
+        options.add(Protocol.BATCH);
+        return Protocol.withOptions(line, options.toArray(new String[0]));
+    }
+
+    private boolean handshake(final String request, final String authentication) throws IOException {
         try {
-            // resp 1 : etablissement de la connexion avec le serveur (creation de la socket coté serveur)
-            System.out.println("Connexion au serveur " + SERVER_ADDRESS + ":" + SERVER_PORT);
-            socket = new Socket(SERVER_ADDRESS, SERVER_PORT);
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-            // Envoyer la commande de connexion pour différencier des requêtes d'inscription
-            out.println("LOGIN");
-
-            // Envoyer les identifiants
-            final String jsonCredentials = objectMapper.writeValueAsString(credentials);
-            out.println(jsonCredentials);
-
-            // Attendre la réponse du serveur
-            final String response = in.readLine();
-            final boolean success = "AUTH_SUCCESS".equals(response);
-
-            if (success) {
-                this.userEmail = credentials.getEmail();
-                startMessageListener();
-                System.out.println("Authentification réussie pour " + userEmail);
-            } else {
-                System.out.println("Échec de l'authentification");
-                disconnect();
-            }
+            for (int attempt = 1; ; attempt++) {
+                // resp 1 : etablissement de la connexion avec le serveur (creation de la socket coté serveur)
+                System.out.println("Connexion au serveur " + SERVER_ADDRESS + ":" + SERVER_PORT);
+                // Publiée seulement une fois la session acceptée et les réglages négociés
+                final ServerConnection opening = new ServerConnection(new Socket(SERVER_ADDRESS, SERVER_PORT),
+                        jsonCodec);
+
+                final String response;
+                try {
+                    writeLine(opening, request);
+                    writeLine(opening, authentication);
+
+                    // Attendre la réponse du serveur : elle indique la version retenue
+                    // (un serveur ancien répond sans version et reste en lignes JSON)
+                    response = FrameCodec.readLine(opening.in);
+                } catch (final IOException e) {
+                    opening.close();
+                    throw e;
+                }
 
-            return success;
+                // Serveur surchargé : réessayer après le délai indiqué (il inclut une gigue)
+                if (Protocol.BUSY.equals(Protocol.command(response)) && attempt < MAX_BUSY_ATTEMPTS) {
+                    opening.close();
+                    final long retryAfter = Protocol.parseRetryAfter(response, DEFAULT_BUSY_RETRY_MILLIS);
+                    System.out.println("Serveur occupé, nouvel essai dans " + retryAfter + " ms");
+                    Thread.sleep(retryAfter);
+                    continue;
+                }
+
+                final boolean success = Protocol.AUTH_SUCCESS.equals(Protocol.command(response));
+
+                if (success) {
+                    final ServerConnection negotiated = opening.negotiated(
+                            Protocol.negotiate(Protocol.parseVersion(response)),
+                            Protocol.hasOption(response, Protocol.DEFLATE) ? new FrameCompression() : null,
+                            Protocol.hasOption(response, Protocol.SMILE)
+                                    ? new EnvelopeCodec(objectMapper, JacksonBodyCodec.smile())
+                                    : jsonCodec);
+                    connection = negotiated;
+                    startMessageListener(negotiated);
+                } else {
+                    opening.close();
+                }
+
+                return success;
+            }
         } catch (final ConnectException e) {
             throw new IOException(
                     "Impossible de se connecter au serveur. Assurez-vous que le serveur est démarré et accessible sur "
@@ -91,15 +202,22 @@ public class ChatService {
     }
 
     public void disconnect() throws IOException {
-        if (socket == null || socket.isClosed() || out == null) {
+        // Avant tout : une reprise en cours ou à venir doit s'arrêter
+        closing = true;
+        final ServerConnection conn = connection;
+        if (conn == null || !conn.isOpen()) {
             return; // Déjà déconnecté
         }
 
-        // Créer un message LOGOUT explicite
-        Message logoutMsg = new Message();
-        logoutMsg.setSenderUserId(getCurrentUserId());
-        logoutMsg.setContent("LOGOUT");
-        sendMessage(logoutMsg);
+        if (conn.isFramed()) {
+            send(conn, FrameType.CONTROL, conn.codec.encodeControl(new ControlCommand(ControlCommand.LOGOUT)));
+        } else {
+            // Créer un message LOGOUT explicite (protocole v1)
+            Message logoutMsg = new Message();
+            logoutMsg.setSenderUserId(getCurrentUserId());
+            logoutMsg.setContent("LOGOUT");
+            sendMessage(logoutMsg);
+        }
 
         // Attendre un court instant pour que le serveur traite le message
         try {
@@ -110,31 +228,24 @@ public class ChatService {
 
         closeResources();
         userEmail = null;
+        // Déconnexion volontaire : la session ne doit plus pouvoir être reprise
+        sessionTicket = null;
         messageConsumer = null;
         callSignalConsumer = null;
         isRunning = false;
         System.out.println("Déconnexion complète");
     }
 
+    /**
+     * Retire la connexion courante puis la ferme, sans attendre le verrou
+     * d'écriture : un envoi bloqué sur la socket échoue aussitôt.
+     */
     private void closeResources() {
-        try {
-            if (out != null)
-                out.close();
-        } catch (final Exception e) {
-            /* Ignorer */ }
-        try {
-            if (in != null)
-                in.close();
-        } catch (final Exception e) {
-            /* Ignorer */ }
-        try {
-            if (socket != null && !socket.isClosed())
-                socket.close();
-        } catch (final IOException e) {
-            /* Ignorer */ }
-        out = null;
-        in = null;
-        socket = null;
+        final ServerConnection closed = connection;
+        connection = null;
+        if (closed != null) {
+            closed.close();
+        }
     }
 
     public long getCurrentUserId() {
@@ -243,15 +354,70 @@ public class ChatService {
     }
     // resp : envoi des messages au serveur via socket
 
+    /**
+     * Envoie un message. Il reçoit un identifiant d'envoi s'il n'en a pas
+     * encore : renvoyer le même objet après un échec garde cet identifiant, et
+     * le serveur ignore le doublon si le premier envoi lui était parvenu.
+     */
     public boolean sendMessage(final Message message) throws IOException {
-        if (socket == null || socket.isClosed() || out == null) {
+        final ServerConnection conn = connection;
+        if (conn == null || !conn.isOpen()) {
             throw new IOException("Non connecté au serveur");
         }
-        final String jsonMessage = objectMapper.writeValueAsString(message);
-        out.println(jsonMessage);
+        if (message.getClientMessageId() == null) {
+            message.setClientMessageId(UUID.randomUUID());
+        }
+        if (conn.isFramed()) {
+            send(conn, FrameType.MESSAGE, conn.codec.encodeMessage(message));
+            // Le message envoyé met fin à la saisie annoncée
+            if (message.getGroupId() != null) {
+                sendGroupTyping(message.getGroupId(), false);
+            } else if (message.getReceiverUserId() != null) {
+                sendTyping(message.getReceiverUserId(), false);
+            }
+        } else {
+            writeLine(conn, conn.codec.encodeLine(message));
+        }
         return true;
     }
 
+    /**
+     * Envoie une enveloppe v2 déjà encodée (par le codec de cette connexion)
+     * dans une trame. Échoue si la connexion a été fermée entre-temps.
+     */
+    private synchronized void send(final ServerConnection conn, final FrameType type, final byte[] payload)
+            throws IOException {
+        if (conn.compression != null && FrameCompression.shouldCompress(payload.length)) {
+            // Compressé sous le verrou d'écriture : le flux deflate suit l'ordre d'envoi
+            conn.out.write(FrameCodec.encode((byte) (type.getCode() | FrameCompression.COMPRESSED_FLAG),
+                    conn.compression.compress(payload)));
+        } else {
+            conn.out.write(FrameCodec.encode(type.getCode(), payload));
+        }
+        conn.out.flush();
+    }
+
+    private synchronized void writeLine(final ServerConnection conn, final String line) throws IOException {
+        conn.out.write(FrameCodec.encodeLine(line));
+        conn.out.flush();
+    }
+
+    /**
+     * @return La connexion courante si elle est ouverte en v2, sinon null
+     */
+    private ServerConnection framedConnection() {
+        final ServerConnection conn = connection;
+        return conn != null && conn.isOpen() && conn.isFramed() ? conn : null;
+    }
+
+    private ServerConnection requireConnection() throws IOException {
+        final ServerConnection conn = connection;
+        if (conn == null) {
+            throw new IOException("Non connecté au serveur");
+        }
+        return conn;
+    }
+
     /**
      * Gets the file associated with a media message.
      *
@@ -283,31 +449,33 @@ public class ChatService {
         this.callSignalConsumer = consumer;
     }
 
+    /**
+     * Reçoit les commandes TYPING du serveur (voir {@link ControlCommand#TYPING}),
+     * sur le thread d'écoute.
+     */
+    public void setTypingConsumer(final Consumer<ControlCommand> consumer) {
+        this.typingConsumer = consumer;
+    }
+
+    /**
+     * Reçoit les accusés de réception et de lecture des contacts (voir
+     * {@link ControlCommand#RECEIPT}) et les rangs attribués aux messages
+     * envoyés auxquels ils s'appliquent ({@link ControlCommand#SENT}), sur le
+     * thread d'écoute.
+     */
+    public void setReceiptConsumer(final Consumer<ControlCommand> consumer) {
+        this.receiptConsumer = consumer;
+    }
+
     // resp : initie une boucle qui reagit a tous message recue
-    private void startMessageListener() {
+    private void startMessageListener(final ServerConnection conn) {
         isRunning = true;
         listenerThread = new Thread(() -> {
             try {
-                String jsonData;
-                while (isRunning && (jsonData = in.readLine()) != null) {
-                    try {
-                        // Vérifier si c'est un signal d'appel ou un message normal
-                        if (jsonData.contains("\"type\":\"CALL_")) {
-                            // C'est un signal d'appel
-                            final CallSignal signal = objectMapper.readValue(jsonData, CallSignal.class);
-                            if (callSignalConsumer != null) {
-                                callSignalConsumer.accept(signal);
-                            }
-                        } else {
-                            // C'est un message normal
-                            final Message message = objectMapper.readValue(jsonData, Message.class);
-                            if (messageConsumer != null) {
-                                messageConsumer.accept(message);
-                            }
-                        }
-                    } catch (final Exception e) {
-                        System.err.println("Erreur lors du traitement du message: " + e.getMessage());
-                    }
+                if (conn.isFramed()) {
+                    readFrames(conn);
+                } else {
+                    readLines(conn);
                 }
             } catch (final IOException e) {
                 if (isRunning) {
@@ -316,11 +484,267 @@ public class ChatService {
             } finally {
                 isRunning = false;
             }
+            if (!closing) {
+                resumeAfterConnectionLoss();
+            }
         });
         listenerThread.setDaemon(true);
         listenerThread.start();
     }
 
+    /**
+     * Reprend la session avec le ticket courant après une coupure réseau, en
+     * espaçant les tentatives. Sans ticket (v1, ticket refusé ou expiré), il
+     * faut se reconnecter avec ses identifiants.
+     */
+    private void resumeAfterConnectionLoss() {
+        for (final long delay : RESUME_BACKOFF_MILLIS) {
+            if (closing || sessionTicket == null) {
+                break;
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                // Le fil d'écoute de la nouvelle connexion prend le relais
+                if (!closing && resumeSession()) {
+                    return;
+                }
+            } catch (final IOException e) {
+                System.err.println("Reprise de session impossible: " + e.getMessage());
+            }
+        }
+        if (!closing) {
+            System.err.println("Session perdue : reconnexion avec identifiants nécessaire");
+        }
+    }
+
+    // Protocole v2 : la nature de l'enveloppe est l'octet de type de trame, le tampon est réutilisé
+    private void readFrames(final ServerConnection conn) throws IOException {
+        final Frame frame = new Frame();
+        while (isRunning && FrameCodec.readFrame(conn.in, frame) != null) {
+            // Décompresser hors du try : un flux deflate corrompu ne peut pas être rattrapé
+            final Frame plain = conn.compression != null ? conn.compression.decompress(frame) : frame;
+            try {
+                dispatcher.dispatch(conn.codec.decode(plain));
+                // Plus rien en attente de lecture : un accusé par conversation pour toute la rafale
+                if (!unacknowledged.isEmpty() && conn.in.available() == 0) {
+                    acknowledgeDelivered(conn);
+                }
+            } catch (final Exception e) {
+                System.err.println("Erreur lors du traitement du message: " + e.getMessage());
+            }
+        }
+    }
+
+    private void acknowledgeDelivered(final ServerConnection conn) throws IOException {
+        for (final Map.Entry<Long, Long> mark : unacknowledged.entrySet()) {
+            send(conn, FrameType.CONTROL, conn.codec.encodeControl(receipt(mark.getKey(), MessageStatus.DELIVERED,
+                    mark.getValue())));
+        }
+        unacknowledged.clear();
+    }
+
+    private static ControlCommand receipt(final long contactId, final MessageStatus status, final long upToSequence) {
+        return new ControlCommand(ControlCommand.RECEIPT)
+                .withParam(ControlCommand.PARAM_USER_ID, String.valueOf(contactId))
+                .withParam(ControlCommand.PARAM_STATUS, status.name())
+                .withParam(ControlCommand.PARAM_UP_TO_SEQ, String.valueOf(upToSequence));
+    }
+
+    // Protocole v1 : une ligne JSON par message, analysée une seule fois
+    private void readLines(final ServerConnection conn) throws IOException {
+        String jsonData;
+        while (isRunning && (jsonData = FrameCodec.readLine(conn.in)) != null) {
+            try {
+                dispatcher.dispatch(conn.codec.decodeLine(jsonData));
+            } catch (final Exception e) {
+                System.err.println("Erreur lors du traitement du message: " + e.getMessage());
+            }
+        }
+    }
+
+    private void dispatchMessage(final Envelope envelope) throws IOException {
+        final ServerConnection conn = requireConnection();
+        final Message message = conn.codec.readMessage(envelope);
+        if (conn.isFramed() && message.isDirectMessage() && message.getSequence() > 0) {
+            unacknowledged.merge(message.getSenderUserId(), message.getSequence(), Math::max);
+        }
+        if (messageConsumer != null) {
+            messageConsumer.accept(message);
+        }
+    }
+
+    // Rejeu des messages reçus hors ligne : une trame pour toute une page
+    private void dispatchMessageBatch(final Envelope envelope) throws IOException {
+        for (final Envelope message : requireConnection().codec.decodeBatch(envelope)) {
+            dispatchMessage(message);
+        }
+    }
+
+    private void dispatchCallSignal(final Envelope envelope) throws IOException {
+        final CallSignal signal = requireConnection().codec.readBody(envelope, CallSignal.class);
+        if (callSignalConsumer != null) {
+            callSignalConsumer.accept(signal);
+        }
+    }
+
+    private void dispatchControl(final Envelope envelope) throws IOException {
+        final ServerConnection conn = requireConnection();
+        final ControlCommand command = conn.codec.readBody(envelope, ControlCommand.class);
+        if (ControlCommand.SESSION_TICKET.equals(command.getCommand())) {
+            sessionTicketExpiresAt = Long.parseLong(command.getParam(ControlCommand.PARAM_EXPIRES_AT));
+            sessionTicket = command.getParam(ControlCommand.PARAM_TICKET);
+        } else if (ControlCommand.PING.equals(command.getCommand())) {
+            // Sans réponse, le serveur considère la session morte et la ferme
+            send(conn, FrameType.CONTROL, conn.codec.encodeControl(new ControlCommand(ControlCommand.PONG)));
+        } else if (ControlCommand.SYNC_END.equals(command.getCommand())
+                && Boolean.parseBoolean(command.getParam(ControlCommand.PARAM_MORE))) {
+            // Page suivante : les paramètres de fin de page désignent la suite de la conversation
+            command.setCommand(ControlCommand.SYNC);
+            command.getParams().remove(ControlCommand.PARAM_MORE);
+            send(conn, FrameType.CONTROL, conn.codec.encodeControl(command));
+        } else if (ControlCommand.THROTTLED.equals(command.getCommand())) {
+            // Envoi abandonné par le serveur : débit dépassé
+            System.err.println("Envoi refusé par le serveur (" + command.getParam(ControlCommand.PARAM_BUDGET)
+                    + "), nouvel essai possible dans " + command.getParam(ControlCommand.PARAM_RETRY_AFTER) + " ms");
+        } else if (ControlCommand.TYPING.equals(command.getCommand()) && typingConsumer != null) {
+            typingConsumer.accept(command);
+        } else if ((ControlCommand.RECEIPT.equals(command.getCommand())
+                || ControlCommand.SENT.equals(command.getCommand())) && receiptConsumer != null) {
+            receiptConsumer.accept(command);
+        }
+    }
+
+    /**
+     * Demande au serveur les messages de la conversation avec un contact de rang
+     * supérieur au dernier connu localement ; ils arrivent comme des messages
+     * reçus, page par page. Sans effet en v1.
+     *
+     * @param contactId     L'ID du contact
+     * @param afterSequence Dernier rang reçu dans cette conversation (0 pour tout l'historique)
+     */
+    public void syncConversation(final long contactId, final long afterSequence) {
+        requestSync(new ControlCommand(ControlCommand.SYNC)
+                .withParam(ControlCommand.PARAM_USER_ID, String.valueOf(contactId)), afterSequence);
+    }
+
+    /**
+     * Comme {@link #syncConversation(long, long)}, pour un groupe.
+     */
+    public void syncGroup(final long groupId, final long afterSequence) {
+        requestSync(new ControlCommand(ControlCommand.SYNC)
+                .withParam(ControlCommand.PARAM_GROUP_ID, String.valueOf(groupId)), afterSequence);
+    }
+
+    private void requestSync(final ControlCommand command, final long afterSequence) {
+        final ServerConnection conn = framedConnection();
+        if (conn == null) {
+            return;
+        }
+        try {
+            send(conn, FrameType.CONTROL, conn.codec.encodeControl(
+                    command.withParam(ControlCommand.PARAM_AFTER_SEQ, String.valueOf(afterSequence))));
+        } catch (final IOException e) {
+            System.err.println("Impossible de demander la synchronisation: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Déclare lus les messages d'un contact jusqu'au rang donné (le dernier
+     * affiché de la conversation) : un seul accusé couvre tous les messages
+     * précédents. Sans effet si ce rang est déjà déclaré lu, et en v1.
+     *
+     * @param contactId    L'ID du contact
+     * @param upToSequence Rang du dernier message lu dans la conversation
+     */
+    public void markRead(final long contactId, final long upToSequence) {
+        final ServerConnection conn = framedConnection();
+        if (conn == null || upToSequence <= 0) {
+            return;
+        }
+        final Long previous = readMarks.get(contactId);
+        if (previous != null && previous >= upToSequence) {
+            return;
+        }
+        readMarks.put(contactId, upToSequence);
+        try {
+            send(conn, FrameType.CONTROL, conn.codec.encodeControl(receipt(contactId, MessageStatus.READ, upToSequence)));
+        } catch (final IOException e) {
+            System.err.println("Impossible d'envoyer l'accusé de lecture: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Annonce que l'utilisateur écrit (à appeler à chaque frappe) ou a cessé
+     * d'écrire dans la conversation avec un contact. Les frappes rapprochées ne
+     * partent qu'une fois toutes les {@link #TYPING_REFRESH_MILLIS} ms. Sans effet en v1.
+     *
+     * @param contactId L'ID du contact
+     * @param active    false quand la saisie est abandonnée ou le message envoyé
+     */
+    public void sendTyping(final long contactId, final boolean active) {
+        sendTyping("u" + contactId, new ControlCommand(ControlCommand.TYPING)
+                .withParam(ControlCommand.PARAM_USER_ID, String.valueOf(contactId)), active);
+    }
+
+    /**
+     * Comme {@link #sendTyping(long, boolean)}, dans un groupe.
+     */
+    public void sendGroupTyping(final long groupId, final boolean active) {
+        sendTyping("g" + groupId, new ControlCommand(ControlCommand.TYPING)
+                .withParam(ControlCommand.PARAM_GROUP_ID, String.valueOf(groupId)), active);
+    }
+
+    private void sendTyping(final String conversation, final ControlCommand command, final boolean active) {
+        final ServerConnection conn = framedConnection();
+        if (conn == null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        if (active) {
+            final Long sentAt = typingSentAt.get(conversation);
+            if (sentAt != null && now - sentAt < TYPING_REFRESH_MILLIS * 1_000_000L) {
+                return;
+            }
+            typingSentAt.put(conversation, now);
+        } else if (typingSentAt.remove(conversation) == null) {
+            // Saisie jamais annoncée : rien à retirer
+            return;
+        }
+        try {
+            send(conn, FrameType.CONTROL, conn.codec.encodeControl(
+                    command.withParam(ControlCommand.PARAM_ACTIVE, String.valueOf(active))));
+        } catch (final IOException e) {
+            // Éphémère : une annonce perdue expire d'elle-même chez les destinataires
+        }
+    }
+
+    /**
+     * Prévient le serveur qu'un membre a été ajouté ou retiré d'un groupe, pour
+     * qu'il invalide son cache des membres sans attendre de relire le journal
+     * des appartenances. Sans effet en v1.
+     *
+     * @param groupId L'ID du groupe modifié
+     * @param userId  L'ID du membre ajouté ou retiré
+     */
+    public void notifyGroupChanged(final long groupId, final long userId) {
+        final ServerConnection conn = framedConnection();
+        if (conn == null) {
+            return;
+        }
+        try {
+            send(conn, FrameType.CONTROL, conn.codec.encodeControl(new ControlCommand(ControlCommand.GROUP_CHANGED)
+                    .withParam(ControlCommand.PARAM_GROUP_ID, String.valueOf(groupId))
+                    .withParam(ControlCommand.PARAM_USER_ID, String.valueOf(userId))));
+        } catch (final IOException e) {
+            System.err.println("Impossible de signaler la modification du groupe " + groupId + ": " + e.getMessage());
+        }
+    }
+
     /**
      * Envoie un signal d'appel au serveur.
      *
@@ -329,11 +753,15 @@ public class ChatService {
      * @throws IOException En cas d'erreur de communication
      */
     public boolean sendCallSignal(final CallSignal signal) throws IOException {
-        if (socket == null || socket.isClosed() || out == null) {
+        final ServerConnection conn = connection;
+        if (conn == null || !conn.isOpen()) {
             throw new IOException("Non connecté au serveur");
         }
-        final String jsonSignal = objectMapper.writeValueAsString(signal);
-        out.println(jsonSignal);
+        if (conn.isFramed()) {
+            send(conn, FrameType.CALL_SIGNAL, conn.codec.encodeCallSignal(signal));
+        } else {
+            writeLine(conn, conn.codec.encodeLine(signal));
+        }
         return true;
     }
 
@@ -431,4 +859,68 @@ public class ChatService {
                 user.getId(),
                 otherUserId);
     }
+
+    /**
+     * Socket, flux et réglages négociés d'une connexion au serveur, immuables
+     * et publiés ensemble : un thread qui envoie pendant une reprise de
+     * session voit l'ancienne connexion (fermée, l'envoi échoue), aucune ou la
+     * nouvelle, jamais un mélange des deux.
+     */
+    private static final class ServerConnection {
+        private final Socket socket;
+        private final OutputStream out;
+        private final InputStream in;
+        private final int protocolVersion;
+        // Compression des trames si le serveur l'a acceptée (désactivable par -Dchat.compression=false)
+        private final FrameCompression compression;
+        // Codec négocié à la connexion (corps JSON ou Smile)
+        private final EnvelopeCodec codec;
+
+        ServerConnection(final Socket socket, final EnvelopeCodec codec) throws IOException {
+            this(socket, new BufferedOutputStream(socket.getOutputStream()),
+                    new BufferedInputStream(socket.getInputStream()), Protocol.VERSION_LINES, null, codec);
+        }
+
+        private ServerConnection(final Socket socket, final OutputStream out, final InputStream in,
+                                 final int protocolVersion, final FrameCompression compression,
+                                 final EnvelopeCodec codec) {
+            this.socket = socket;
+            this.out = out;
+            this.in = in;
+            this.protocolVersion = protocolVersion;
+            this.compression = compression;
+            this.codec = codec;
+        }
+
+        /**
+         * @return La même connexion avec les réglages retenus par le serveur
+         */
+        ServerConnection negotiated(final int version, final FrameCompression negotiatedCompression,
+                                    final EnvelopeCodec negotiatedCodec) {
+            return new ServerConnection(socket, out, in, version, negotiatedCompression, negotiatedCodec);
+        }
+
+        boolean isOpen() {
+            return !socket.isClosed();
+        }
+
+        boolean isFramed() {
+            return protocolVersion >= Protocol.VERSION_FRAMED;
+        }
+
+        void close() {
+            try {
+                out.close();
+            } catch (final IOException e) {
+                /* Ignorer */ }
+            try {
+                in.close();
+            } catch (final IOException e) {
+                /* Ignorer */ }
+            try {
+                socket.close();
+            } catch (final IOException e) {
+                /* Ignorer */ }
+        }
+    }
 }
@@ -2,6 +2,7 @@ package org.example.client.gui.service;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 import org.example.shared.dao.GroupDAO;
 import org.example.shared.dao.GroupMembershipDAO;
@@ -12,10 +13,21 @@ public class GroupService {
 
     private final GroupDAO groupDAO;
     private final GroupMembershipDAO groupMembershipDAO;
+    // Prévenu (groupe, membre) après chaque ajout ou retrait de membre
+    private BiConsumer<Long, Long> membershipListener;
 
     public GroupService() {
         this.groupDAO = new GroupDAO();
         this.groupMembershipDAO = new GroupMembershipDAO();
+        this.membershipListener = (groupId, userId) -> { };
+    }
+
+    /**
+     * @param listener Prévenu avec l'ID du groupe et celui du membre après chaque
+     *                 ajout ou retrait (ex: {@link ChatService#notifyGroupChanged})
+     */
+    public void setMembershipListener(final BiConsumer<Long, Long> listener) {
+        this.membershipListener = listener;
     }
 
     public Group createGroup(final String groupName, final long ownerUserId) {
@@ -24,6 +36,7 @@ public class GroupService {
         if (group.getId() > 0) {
             final GroupMembership membership = new GroupMembership(ownerUserId, group.getId());
             groupMembershipDAO.createGroupMembership(membership);
+            membershipListener.accept(group.getId(), ownerUserId);
         }
         return group;
     }
@@ -32,6 +45,7 @@ public class GroupService {
         if (groupMembershipDAO.findGroupMembership(userId, groupId) == null) {
             final GroupMembership membership = new GroupMembership(userId, groupId);
             groupMembershipDAO.createGroupMembership(membership);
+            membershipListener.accept(groupId, userId);
             return true;
         }
         return false;
@@ -52,6 +66,10 @@ public class GroupService {
      * Supprime un membre d'un groupe
      */
     public boolean removeMemberFromGroup(final long groupId, final long userId) {
-        return groupMembershipDAO.removeGroupMembership(userId, groupId);
+        final boolean removed = groupMembershipDAO.removeGroupMembership(userId, groupId);
+        if (removed) {
+            membershipListener.accept(groupId, userId);
+        }
+        return removed;
     }
 }
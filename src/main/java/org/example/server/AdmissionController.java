@@ -0,0 +1,126 @@
+package org.example.server;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.example.server.transport.ConnectionAdmission;
+import org.example.shared.protocol.Protocol;
+
+/**
+ * Contrôle d'admission du serveur, pour encaisser une vague de reconnexions
+ * (après un redémarrage par exemple) sans saturer la base :
+ * <ul>
+ *   <li>plafond de connexions simultanées, vérifié dès l'acceptation ;</li>
+ *   <li>plafond d'authentifications simultanées (lecture de l'utilisateur,
+ *       vérification du mot de passe), les suivantes attendant un créneau ;</li>
+ *   <li>délestage selon la profondeur de cette file d'attente : au-delà, les
+ *       authentifications et les nouvelles connexions sont refusées aussitôt,
+ *       ce qui laisse la base aux utilisateurs déjà connectés.</li>
+ * </ul>
+ * Les refus répondent BUSY avec un délai de base plus une gigue aléatoire,
+ * pour que les clients ne reviennent pas tous au même instant.
+ */
+public class AdmissionController implements ConnectionAdmission {
+
+    private final int maxConnections;
+    private final Semaphore authPermits;
+    private final int maxAuthBacklog;
+    private final long authWaitMillis;
+    private final long retryAfterMillis;
+
+    private final AtomicInteger authWaiting;
+    private final AtomicLong refusedConnections;
+    private final AtomicLong shedAuthentications;
+
+    private static class Holder {
+        private static final AdmissionController INSTANCE = new AdmissionController(
+                ServerConfig.maxConnections(),
+                ServerConfig.maxConcurrentAuthentications(),
+                ServerConfig.maxAuthenticationBacklog(),
+                "nio".equals(ServerConfig.transport()) ? 0 : ServerConfig.authenticationWaitMillis(),
+                ServerConfig.busyRetryAfterMillis());
+    }
+
+    public static AdmissionController getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    AdmissionController(final int maxConnections,
+                        final int maxConcurrentAuth,
+                        final int maxAuthBacklog,
+                        final long authWaitMillis,
+                        final long retryAfterMillis) {
+        this.maxConnections = maxConnections;
+        this.authPermits = new Semaphore(Math.max(1, maxConcurrentAuth));
+        this.maxAuthBacklog = maxAuthBacklog;
+        this.authWaitMillis = authWaitMillis;
+        this.retryAfterMillis = retryAfterMillis;
+        this.authWaiting = new AtomicInteger();
+        this.refusedConnections = new AtomicLong();
+        this.shedAuthentications = new AtomicLong();
+    }
+
+    @Override
+    public String refuse(final int openConnections) {
+        if (openConnections >= maxConnections || authWaiting.get() >= maxAuthBacklog) {
+            refusedConnections.incrementAndGet();
+            return busyResponse();
+        }
+        return null;
+    }
+
+    /**
+     * Réserve un créneau d'authentification, en attendant au plus le délai
+     * configuré. À libérer par {@link #releaseAuthentication()}.
+     *
+     * @return false si le serveur est surchargé : répondre {@link #busyResponse()}
+     */
+    public boolean acquireAuthentication() {
+        if (authPermits.tryAcquire()) {
+            return true;
+        }
+        if (authWaiting.incrementAndGet() > maxAuthBacklog) {
+            authWaiting.decrementAndGet();
+            shedAuthentications.incrementAndGet();
+            return false;
+        }
+        try {
+            if (authPermits.tryAcquire(authWaitMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            shedAuthentications.incrementAndGet();
+            return false;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            authWaiting.decrementAndGet();
+        }
+    }
+
+    public void releaseAuthentication() {
+        authPermits.release();
+    }
+
+    /**
+     * @return La réponse BUSY, avec un délai tiré entre la base et le double de la base
+     */
+    public String busyResponse() {
+        return Protocol.busy(retryAfterMillis + ThreadLocalRandom.current().nextLong(retryAfterMillis + 1));
+    }
+
+    public long getRefusedConnections() {
+        return refusedConnections.get();
+    }
+
+    public long getShedAuthentications() {
+        return shedAuthentications.get();
+    }
+
+    public int getAuthenticationBacklog() {
+        return authWaiting.get();
+    }
+}
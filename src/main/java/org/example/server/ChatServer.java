@@ -1,22 +1,24 @@
 package org.example.server;
 
-import java.net.ServerSocket;
-import java.net.Socket;
+import org.example.server.transport.Transport;
+import org.example.server.transport.Transports;
 
 public class ChatServer {
     private static final int PORT = 5000;
     public static void main(final String[] args) throws Exception {
+        ServerConfig.applyArgs(args);
+
         // Démarrer le serveur UDP pour les appels audio
         UdpCallServer.getInstance().start();
-        
-        final ServerSocket server = new ServerSocket(PORT);
-        System.out.println("Server TCP started on port " + PORT);
-        System.out.println("Waiting for clients...");
 
-        while (true) {
-            final Socket client = server.accept();
-            final ClientHandler clientHandler = new ClientHandler(client);
-            new Thread(clientHandler).start();
-        }
+        // Répertoires des médias créés une fois pour toutes : les messages directs
+        // relayés tels quels ne sont plus inspectés un par un
+        new ServerFileService().ensureMediaDirectoriesExist();
+
+        final Transport transport = Transports.create(ServerConfig.transport(), PORT, ClientHandler::new,
+                AdmissionController.getInstance());
+        transport.start();
+        System.out.println("Server TCP started on port " + PORT + " (transport: " + ServerConfig.transport() + ")");
+        System.out.println("Waiting for clients...");
     }
-}
\ No newline at end of file
+}
@@ -1,93 +1,259 @@
 package org.example.server;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.example.server.broker.ForwardedMessage;
+import org.example.server.broker.GroupFanout;
 import org.example.server.broker.MessageBroker;
+import org.example.server.transport.ClientConnection;
+import org.example.server.transport.ConnectionHandler;
+import org.example.server.transport.OutboundPriority;
+import org.example.server.transport.OutboundStats;
+import org.example.server.transport.WriteFailureListener;
 import org.example.shared.dao.UserDAO;
 import org.example.shared.dto.Credentials;
 import org.example.shared.dto.RegistrationDTO;
 import org.example.shared.model.CallSignal;
 import org.example.shared.model.Message;
 import org.example.shared.model.User;
+import org.example.shared.model.enums.MessageStatus;
+import org.example.shared.model.enums.MessageType;
+import org.example.shared.protocol.ControlCommand;
+import org.example.shared.protocol.Envelope;
+import org.example.shared.protocol.EnvelopeCodec;
+import org.example.shared.protocol.EnvelopeDispatcher;
+import org.example.shared.protocol.Frame;
+import org.example.shared.protocol.FrameCodec;
+import org.example.shared.protocol.FrameCompression;
+import org.example.shared.protocol.FrameType;
+import org.example.shared.protocol.JacksonBodyCodec;
+import org.example.shared.protocol.Protocol;
 import org.example.shared.util.PasswordUtils;
 import org.example.shared.util.ValidationUtils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
-public class ClientHandler implements Runnable {
+/**
+ * Session d'un client connecté. Indépendante du transport : les lignes et
+ * trames reçues arrivent par {@link #onLine(String)} et {@link #onFrame(Frame)},
+ * les réponses partent par la {@link ClientConnection}. La version du protocole
+ * (lignes JSON ou trames binaires) est négociée à la connexion.
+ */
+public class ClientHandler implements ConnectionHandler {
 
-    private final Socket clientSocket;
+    private enum State {
+        AWAITING_REQUEST,      // Première ligne : REGISTER, LOGIN ou RESUME
+        AWAITING_REGISTRATION, // Données d'inscription attendues
+        AWAITING_CREDENTIALS,  // Identifiants attendus
+        AWAITING_TICKET,       // Ticket de session attendu (reprise)
+        AUTHENTICATED,         // Échange de messages
+        CLOSED
+    }
+
+    private final ClientConnection connection;
     private final MessageBroker broker;
     private final UserDAO userDAO;
+    private final SessionTicketService tickets;
+    private final PresenceTracker presence;
+    private final AdmissionController admission;
+    private final RateLimiter rateLimiter;
+    private final MessageIdGenerator messageIds;
     private final ObjectMapper mapper;
+    private volatile EnvelopeCodec codec;
+    private final EnvelopeDispatcher dispatcher;
     private final ServerFileService fileService;
 
     private String clientEmail;
     private long clientId;
-    private PrintWriter output;
-    private BufferedReader input;
-    private volatile boolean isConnected;
+    private volatile State state;
+    private int requestedVersion;
+    private boolean compressionRequested;
+    private boolean smileRequested;
+    private boolean batchRequested;
+    // Le client lit les trames MESSAGE_BATCH (fixé avant l'enregistrement de la session)
+    private volatile boolean batchFrames;
+    // Dernière trame reçue (System.nanoTime), lue par la roue temporelle
+    private volatile long lastActivityNanos;
+    private volatile TimingWheel.Timeout heartbeat;
+    private volatile int protocolVersion;
+    // Budgets de débit de la connexion, ouverts à l'authentification
+    private volatile RateLimiter.Session rateBudget;
+    // Déconnexion demandée par le client : hors ligne tout de suite, tickets révoqués
+    private volatile boolean loggedOut;
+    // Renvois de messages déjà routés, ignorés par le broker ; écrit par le seul thread de traitement
+    private volatile long duplicateSends;
 
-    public ClientHandler(final Socket socket) {
-        this.clientSocket = socket;
+    public ClientHandler(final ClientConnection connection) {
+        this.connection = connection;
         this.broker = MessageBroker.getInstance();
         this.userDAO = new UserDAO();
+        this.tickets = SessionTicketService.getInstance();
+        this.presence = PresenceTracker.getInstance();
+        this.admission = AdmissionController.getInstance();
+        this.rateLimiter = RateLimiter.getInstance();
+        this.messageIds = MessageIdGenerator.getInstance();
         this.mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        this.codec = new EnvelopeCodec(mapper);
+        this.dispatcher = new EnvelopeDispatcher(this::handleUnsupported)
+                .on(FrameType.MESSAGE, this::handleChat)
+                .on(FrameType.CALL_SIGNAL, this::handleCallSignal)
+                .on(FrameType.CONTROL, this::handleControl);
         this.fileService = new ServerFileService();
+        this.state = State.AWAITING_REQUEST;
+        this.protocolVersion = Protocol.VERSION_LINES;
     }
 
     @Override
-    public void run() {
-        try (
-                BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true)) {
-            this.input = in;
-            this.output = out;
-
-            // Lire la première ligne pour déterminer le type de requête
-            final String requestType = input.readLine();
-            
-            if ("REGISTER".equals(requestType)) {
-                handleRegistration();
-            } else {
-                // Traiter comme une demande d'authentification normale
-                if (!authenticateUser()) {
-                    sendResponse("AUTH_FAILED");
+    public void onLine(final String line) {
+        lastActivityNanos = System.nanoTime();
+        switch (state) {
+            case AWAITING_REQUEST:
+                // Lire la première ligne pour déterminer le type de requête et la version du client
+                if (Protocol.REGISTER.equals(line)) {
+                    state = State.AWAITING_REGISTRATION;
+                } else if (Protocol.RESUME.equals(Protocol.command(line))) {
+                    state = State.AWAITING_TICKET;
+                } else {
+                    state = State.AWAITING_CREDENTIALS;
+                }
+                requestedVersion = Protocol.parseVersion(line);
+                compressionRequested = Protocol.hasOption(line, Protocol.DEFLATE);
+                smileRequested = Protocol.hasOption(line, Protocol.SMILE);
+                batchRequested = Protocol.hasOption(line, Protocol.BATCH);
+                break;
+
+            case AWAITING_REGISTRATION:
+                if (admission.acquireAuthentication()) {
+                    try {
+                        handleRegistration(line);
+                    } finally {
+                        admission.releaseAuthentication();
+                    }
+                } else {
+                    sendResponse(admission.busyResponse());
+                }
+                terminateSession();
+                break;
+
+            case AWAITING_CREDENTIALS:
+                // Authentification limitée en concurrence : la base ne doit pas s'effondrer
+                // sous une vague de reconnexions
+                if (!admission.acquireAuthentication()) {
+                    sendResponse(admission.busyResponse());
+                    terminateSession();
+                    return;
+                }
+                final boolean authenticated;
+                try {
+                    authenticated = authenticateUser(line);
+                } finally {
+                    admission.releaseAuthentication();
+                }
+                if (!authenticated) {
+                    sendResponse(Protocol.AUTH_FAILED);
+                    terminateSession();
                     return;
                 }
-                sendResponse("AUTH_SUCCESS");
-                
-                handleUserLogin(clientEmail);
-                initializeSubscription();
-                processMessages();
+                completeAuthentication();
+                break;
+
+            case AWAITING_TICKET:
+                // Reprise de session : aucun accès à la base pour authentifier
+                if (!resumeSession(line)) {
+                    sendResponse(Protocol.AUTH_FAILED);
+                    terminateSession();
+                    return;
+                }
+                completeAuthentication();
+                break;
+
+            case AUTHENTICATED:
+                try {
+                    final Envelope envelope = codec.decodeLine(line);
+                    if (admit(envelope)) {
+                        dispatcher.dispatch(envelope);
+                    }
+                } catch (final IOException e) {
+                    System.out.println("Invalid message format: " + line);
+                }
+                break;
+
+            case CLOSED:
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void onFrame(final Frame frame) {
+        lastActivityNanos = System.nanoTime();
+        if (state != State.AUTHENTICATED) {
+            return;
+        }
+        try {
+            final Envelope envelope = codec.decode(frame);
+            if (admit(envelope)) {
+                dispatcher.dispatch(envelope);
             }
         } catch (final IOException e) {
-            System.out.println("Client connection error: " + e.getMessage());
-        } finally {
-            if (clientEmail != null) {
-                handleUserLogout(clientEmail);
+            System.out.println("Invalid frame from " + clientEmail + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onClosed() {
+        state = State.CLOSED;
+        final TimingWheel.Timeout pendingHeartbeat = heartbeat;
+        if (pendingHeartbeat != null) {
+            pendingHeartbeat.cancel();
+        }
+        final FrameCompression compression = connection.getCompression();
+        if (compression != null) {
+            System.out.println("Compression " + clientEmail + ": " + compression);
+        }
+        final OutboundStats outboundStats = connection.getOutboundStats();
+        if (outboundStats.getCongestionCount() > 0 || outboundStats.getRejectedFrames() > 0) {
+            // Client lent à un moment de la session : garder la trace de son retard
+            System.out.println("Outbound " + clientEmail + ": " + outboundStats);
+        }
+        if (duplicateSends > 0) {
+            // Renvois après une coupure : utile pour régler la fenêtre de déduplication
+            System.out.println("Duplicates " + clientEmail + ": session=" + duplicateSends
+                    + ", total=" + broker.getDuplicateSends());
+        }
+        final RateLimiter.Session budget = rateBudget;
+        if (budget != null) {
+            if (budget.wasThrottled()) {
+                System.out.println("Throttled " + clientEmail + ": messages="
+                        + budget.getThrottled(RateLimiter.Budget.MESSAGES)
+                        + ", media=" + budget.getThrottled(RateLimiter.Budget.MEDIA)
+                        + ", call signals=" + budget.getThrottled(RateLimiter.Budget.CALL_SIGNALS));
+                // Totaux du serveur : refus par connexion ou par utilisateur, pour ajuster les limites
+                System.out.println("Rate limiter: " + rateLimiter);
             }
-            cleanup();
-            try {
-                if (clientSocket != null && !clientSocket.isClosed()) {
-                    clientSocket.close();
-                }
-            } catch (final IOException e) {
-                System.err.println("Erreur lors de la fermeture du socket: " + e.getMessage());
+            budget.close();
+        }
+        // Une session morte fermée après la reconnexion de l'utilisateur ne doit pas le marquer hors ligne
+        if (cleanup()) {
+            if (loggedOut || protocolVersion < Protocol.VERSION_FRAMED) {
+                handleUserLogout(clientEmail);
+            } else {
+                // Coupure d'une session reprenable : hors ligne seulement si elle n'est pas reprise à temps
+                final String email = clientEmail;
+                presence.markOfflineLater(clientId, () -> handleUserLogout(email));
             }
         }
     }
 
-    private void handleRegistration() throws IOException {
+    private void handleRegistration(final String registrationData) {
         try {
             // Lire les données d'inscription
-            final RegistrationDTO registrationDTO = mapper.readValue(input.readLine(), RegistrationDTO.class);
+            final RegistrationDTO registrationDTO = mapper.readValue(registrationData, RegistrationDTO.class);
 
             // Valider l'email
             if (!ValidationUtils.isValidEmail(registrationDTO.getEmail())) {
@@ -135,8 +301,14 @@ public class ClientHandler implements Runnable {
         }
     }
 
-    private boolean authenticateUser() throws IOException {
-        final Credentials credentials = mapper.readValue(input.readLine(), Credentials.class);
+    private boolean authenticateUser(final String credentialsData) {
+        final Credentials credentials;
+        try {
+            credentials = mapper.readValue(credentialsData, Credentials.class);
+        } catch (final IOException e) {
+            System.out.println("Invalid credentials format from " + connection.getRemoteAddress());
+            return false;
+        }
         final User user = userDAO.findUserByEmail(credentials.getEmail());
         if (user != null && PasswordUtils.verifyPassword(credentials.getPassword(), user.getPasswordHash())) {
             this.clientEmail = user.getEmail();
@@ -146,37 +318,313 @@ public class ClientHandler implements Runnable {
         return false;
     }
 
-    private void initializeSubscription() throws IOException {
+    /**
+     * Vérifie un ticket de session. Réservé au protocole v2, seul à recevoir des tickets.
+     */
+    private boolean resumeSession(final String ticketValue) {
+        final SessionTicketService.Ticket ticket = tickets.verify(ticketValue);
+        if (ticket == null || requestedVersion < Protocol.VERSION_FRAMED) {
+            System.out.println("Invalid or expired session ticket from " + connection.getRemoteAddress());
+            return false;
+        }
+        this.clientEmail = ticket.getEmail();
+        this.clientId = ticket.getUserId();
+        return true;
+    }
+
+    private void completeAuthentication() {
+        protocolVersion = Protocol.negotiate(requestedVersion);
+        String response = Protocol.withVersion(Protocol.AUTH_SUCCESS, protocolVersion);
+        if (protocolVersion >= Protocol.VERSION_FRAMED) {
+            // Basculer la lecture avant la réponse : le client enverra des trames dès sa réception
+            connection.expectFrames();
+            if (acceptCompression()) {
+                connection.enableCompression();
+                response = Protocol.withOptions(response, Protocol.DEFLATE);
+            }
+            // Changer de codec avant l'enregistrement de la session : toute livraison l'utilisera
+            if (smileRequested && ServerConfig.smileCodec()) {
+                codec = new EnvelopeCodec(mapper, JacksonBodyCodec.smile());
+                response = Protocol.withOptions(response, Protocol.SMILE);
+            }
+            if (batchRequested) {
+                batchFrames = true;
+                response = Protocol.withOptions(response, Protocol.BATCH);
+            }
+        }
+        sendResponse(response);
+        if (protocolVersion >= Protocol.VERSION_FRAMED) {
+            // Nouveau ticket à chaque connexion : la session reste reprenable tant que le client se reconnecte
+            issueSessionTicket();
+        }
+
+        // Reconnexion dans le délai de grâce (le cas d'une reprise par ticket) : le statut
+        // en base est resté « en ligne », rien à écrire
+        if (!presence.cancelOffline(clientId)) {
+            handleUserLogin(clientEmail);
+        }
+        initializeSubscription();
+    }
+
+    private boolean acceptCompression() {
+        return compressionRequested
+                && ServerConfig.compression()
+                && (!connection.isLoopback() || ServerConfig.compressionOnLocalhost());
+    }
+
+    private void issueSessionTicket() {
+        final SessionTicketService.Ticket ticket = tickets.issue(clientId, clientEmail);
+        final ControlCommand command = new ControlCommand(ControlCommand.SESSION_TICKET)
+                .withParam(ControlCommand.PARAM_TICKET, ticket.getValue())
+                .withParam(ControlCommand.PARAM_EXPIRES_AT, String.valueOf(ticket.getExpiresAt()));
+        try {
+            connection.sendFrame(FrameType.CONTROL.getCode(), codec.encodeControl(command),
+                    OutboundPriority.CONTROL, null);
+        } catch (final IOException e) {
+            System.err.println("Error sending session ticket: " + e.getMessage());
+        }
+    }
+
+    private void initializeSubscription() {
+        rateBudget = rateLimiter.open(clientId);
+        state = State.AUTHENTICATED;
         broker.registerListener(clientId, this);
-        isConnected = true;
+        if (protocolVersion >= Protocol.VERSION_FRAMED) {
+            // Les clients v1 ne savent pas répondre à un PING : pas de détection pour eux
+            scheduleHeartbeat();
+        }
+    }
+
+    private void scheduleHeartbeat() {
+        heartbeat = TimingWheel.getInstance().schedule(this::checkHeartbeat,
+                ServerConfig.heartbeatIntervalSeconds() * 1000);
+    }
+
+    /**
+     * Exécuté par la roue temporelle à chaque intervalle : relance un client
+     * silencieux par un PING, ferme la session s'il ne donne plus signe de vie.
+     * Une seule échéance par session, replanifiée à chaque passage.
+     */
+    private void checkHeartbeat() {
+        if (state != State.AUTHENTICATED) {
+            return;
+        }
+        final long idleSeconds = (System.nanoTime() - lastActivityNanos) / 1_000_000_000L;
+        if (idleSeconds >= ServerConfig.heartbeatTimeoutSeconds()) {
+            System.out.println("No heartbeat from " + clientEmail + " for " + idleSeconds + "s, closing session");
+            state = State.CLOSED;
+            // Fermeture immédiate : le socket est probablement à moitié ouvert, inutile d'y vider la file
+            connection.abort();
+            return;
+        }
+        if (idleSeconds >= ServerConfig.heartbeatIntervalSeconds()) {
+            sendControl(new ControlCommand(ControlCommand.PING), OutboundPriority.CONTROL);
+        }
+        scheduleHeartbeat();
+    }
+
+    /**
+     * @param priority Classe de la trame : celle des trames qu'elle ne doit pas dépasser (SYNC_END suit sa page)
+     */
+    private void sendControl(final ControlCommand command, final OutboundPriority priority) {
+        try {
+            connection.sendFrame(FrameType.CONTROL.getCode(), codec.encodeControl(command), priority, null);
+        } catch (final IOException e) {
+            // Connexion fermée ou client lent : le prochain passage tranchera
+        }
+    }
+
+    /**
+     * Vérifie le budget d'un envoi d'après son seul en-tête de routage : le
+     * corps d'un envoi refusé n'est jamais décodé. Un média annoncé par son
+     * en-tête est débité des deux budgets, messages et médias.
+     *
+     * @return false si l'envoi dépasse le débit du client et doit être abandonné
+     */
+    private boolean admit(final Envelope envelope) {
+        switch (envelope.getKind()) {
+            case MESSAGE:
+                return admit(RateLimiter.Budget.MESSAGES, rateLimiter.messageCost(envelope.isGroup()))
+                        && (!envelope.isMedia() || admit(RateLimiter.Budget.MEDIA, 1));
+            case CALL_SIGNAL:
+                return admit(RateLimiter.Budget.CALL_SIGNALS, 1);
+            default:
+                return true;
+        }
+    }
+
+    private boolean admit(final RateLimiter.Budget budget, final double cost) {
+        final long retryAfterMillis = rateBudget.tryAcquire(budget, cost);
+        if (retryAfterMillis == 0) {
+            return true;
+        }
+        if (rateBudget.shouldNotify(budget, retryAfterMillis)) {
+            System.out.println("Throttling " + budget + " from " + clientEmail + " for " + retryAfterMillis + " ms");
+            // Les clients v1 ne lisent pas les commandes : l'envoi est abandonné sans avis
+            if (protocolVersion >= Protocol.VERSION_FRAMED) {
+                sendControl(new ControlCommand(ControlCommand.THROTTLED)
+                        .withParam(ControlCommand.PARAM_BUDGET, budget.name())
+                        .withParam(ControlCommand.PARAM_RETRY_AFTER, String.valueOf(retryAfterMillis)),
+                        OutboundPriority.CONTROL);
+            }
+        }
+        return false;
     }
 
-    private void processMessages() throws IOException {
-        String jsonData;
-        while (isConnected && (jsonData = input.readLine()) != null) {
+    private void handleChat(final Envelope envelope) throws IOException {
+        // Message direct en trame : seul l'en-tête de routage est lu, le corps est relayé tel quel
+        if (envelope.isFramed() && !envelope.isGroup() && envelope.getReceiverUserId() != Envelope.NONE) {
+            if (!broker.forwardMessage(codec, envelope, messageIds.next())) {
+                duplicateSends++;
+            }
+            return;
+        }
+        handleMessage(codec.readBody(envelope, Message.class), envelope.isMedia());
+    }
+
+    private void handleCallSignal(final Envelope envelope) throws IOException {
+        broker.routeCallSignal(codec.readBody(envelope, CallSignal.class));
+    }
+
+    private void handleControl(final Envelope envelope) throws IOException {
+        final ControlCommand command = codec.readBody(envelope, ControlCommand.class);
+        if (ControlCommand.LOGOUT.equals(command.getCommand())) {
+            logout();
+        } else if (ControlCommand.PING.equals(command.getCommand())) {
+            sendControl(new ControlCommand(ControlCommand.PONG), OutboundPriority.CONTROL);
+        } else if (ControlCommand.PONG.equals(command.getCommand())) {
+            // Rien à faire : toute trame reçue compte comme signe de vie
+        } else if (ControlCommand.GROUP_CHANGED.equals(command.getCommand())) {
             try {
-                // Vérifier si c'est un signal d'appel ou un message normal
-                if (jsonData.contains("\"type\":\"CALL_")) {
-                    // C'est un signal d'appel
-                    final CallSignal signal = mapper.readValue(jsonData, CallSignal.class);
-                    broker.routeCallSignal(signal);
-                } else {
-                    // C'est un message normal
-                final Message message = mapper.readValue(jsonData, Message.class);
-                    if ("LOGOUT".equalsIgnoreCase(message.getContent())) {
-                        handleUserLogout(clientEmail);
-                        terminateSession();
-                        break; // Sortir de la boucle après déconnexion
-                    } else {
-                        // Process the message
-                        if (message.isMediaMessage()) {
-                            processMediaMessage(message);
-                        }
-                        broker.sendMessage(message);
-                    }
+                broker.onGroupMembershipChanged(Long.parseLong(command.getParam(ControlCommand.PARAM_GROUP_ID)),
+                        Long.parseLong(command.getParam(ControlCommand.PARAM_USER_ID)));
+            } catch (final NumberFormatException e) {
+                System.out.println("Invalid GROUP_CHANGED from " + clientEmail);
+            }
+        } else if (ControlCommand.SYNC.equals(command.getCommand())) {
+            handleSync(command);
+        } else if (ControlCommand.TYPING.equals(command.getCommand())) {
+            handleTyping(command);
+        } else if (ControlCommand.RECEIPT.equals(command.getCommand())) {
+            handleReceipt(command);
+        } else {
+            System.out.println("Unknown control command " + command.getCommand() + " from " + clientEmail);
+        }
+    }
+
+    /**
+     * Envoie une page de l'historique d'une conversation après le dernier rang
+     * connu du client, puis SYNC_END. Ces messages ne sont pas remis en attente
+     * si leur écriture échoue : le client les redemandera.
+     */
+    private void handleSync(final ControlCommand command) {
+        final String groupParam = command.getParam(ControlCommand.PARAM_GROUP_ID);
+        final int limit = ServerConfig.replayPageSize();
+        final long afterSequence;
+        final List<Message> messages;
+        try {
+            afterSequence = Long.parseLong(command.getParam(ControlCommand.PARAM_AFTER_SEQ));
+            messages = groupParam != null
+                    ? broker.getGroupHistory(clientId, Long.parseLong(groupParam), afterSequence, limit)
+                    : broker.getDirectHistory(clientId,
+                            Long.parseLong(command.getParam(ControlCommand.PARAM_USER_ID)), afterSequence, limit);
+        } catch (final NumberFormatException e) {
+            System.out.println("Invalid SYNC from " + clientEmail);
+            return;
+        } catch (final SQLException e) {
+            System.err.println("Error loading history for " + clientEmail + ": " + e.getMessage());
+            return;
+        }
+        final int sent;
+        try {
+            sent = sendMessages(messages, false);
+        } catch (final IOException e) {
+            // Connexion fermée ou client lent : il redemandera la même page
+            return;
+        }
+        final ControlCommand end = new ControlCommand(ControlCommand.SYNC_END);
+        if (groupParam != null) {
+            end.withParam(ControlCommand.PARAM_GROUP_ID, groupParam);
+        } else {
+            end.withParam(ControlCommand.PARAM_USER_ID, command.getParam(ControlCommand.PARAM_USER_ID));
+        }
+        final long lastSequence = sent > 0 ? messages.get(sent - 1).getSequence() : afterSequence;
+        sendControl(end.withParam(ControlCommand.PARAM_AFTER_SEQ, String.valueOf(lastSequence))
+                .withParam(ControlCommand.PARAM_MORE, String.valueOf(messages.size() == limit && sent == limit)),
+                OutboundPriority.BULK);
+    }
+
+    /**
+     * Indicateur de saisie : transmis aux interlocuteurs en ligne par le broker,
+     * jamais stocké.
+     */
+    private void handleTyping(final ControlCommand command) {
+        final String groupParam = command.getParam(ControlCommand.PARAM_GROUP_ID);
+        final boolean active = !"false".equals(command.getParam(ControlCommand.PARAM_ACTIVE));
+        try {
+            if (groupParam != null) {
+                broker.onGroupTyping(clientId, Long.parseLong(groupParam), active);
+            } else {
+                broker.onDirectTyping(clientId, Long.parseLong(command.getParam(ControlCommand.PARAM_USER_ID)),
+                        active);
+            }
+        } catch (final NumberFormatException e) {
+            System.out.println("Invalid TYPING from " + clientEmail);
+        }
+    }
+
+    /**
+     * Accusé de réception ou de lecture : une marque haute par conversation, que
+     * le broker relaie à l'expéditeur.
+     */
+    private void handleReceipt(final ControlCommand command) {
+        final String status = command.getParam(ControlCommand.PARAM_STATUS);
+        final MessageStatus receiptStatus;
+        if (MessageStatus.DELIVERED.name().equals(status)) {
+            receiptStatus = MessageStatus.DELIVERED;
+        } else if (MessageStatus.READ.name().equals(status)) {
+            receiptStatus = MessageStatus.READ;
+        } else {
+            System.out.println("Invalid RECEIPT status from " + clientEmail + ": " + status);
+            return;
+        }
+        try {
+            broker.onReceipt(clientId, Long.parseLong(command.getParam(ControlCommand.PARAM_USER_ID)),
+                    receiptStatus, Long.parseLong(command.getParam(ControlCommand.PARAM_UP_TO_SEQ)));
+        } catch (final NumberFormatException e) {
+            System.out.println("Invalid RECEIPT from " + clientEmail);
+        }
+    }
+
+    private void handleUnsupported(final Envelope envelope) {
+        System.out.println("Unsupported " + envelope.getKind() + " envelope from " + clientEmail);
+    }
+
+    /**
+     * @param mediaAdmitted true si le budget média a déjà été débité d'après l'en-tête
+     */
+    private void handleMessage(final Message message, final boolean mediaAdmitted) {
+        // Les clients v1 annoncent leur déconnexion par un message "LOGOUT"
+        if ("LOGOUT".equalsIgnoreCase(message.getContent())) {
+            logout();
+        } else {
+            // Process the message
+            if (message.isMediaMessage()) {
+                // Média non annoncé dans l'en-tête : débité après décodage
+                if (!mediaAdmitted && !admit(RateLimiter.Budget.MEDIA, 1)) {
+                    return;
                 }
-            } catch (final IOException e) {
-                System.out.println("Invalid message format: " + jsonData);
+                processMediaMessage(message);
+            }
+            // Identifiant et horodatage définitifs dès l'acceptation : les mêmes partent vers les
+            // destinataires et en base, où un champ manquant ferait échouer l'écriture
+            message.setId(messageIds.next());
+            message.setTimestamp(LocalDateTime.now());
+            if (message.getType() == null) {
+                message.setType(MessageType.TEXT);
+            }
+            if (!broker.sendMessage(message)) {
+                duplicateSends++;
             }
         }
     }
@@ -204,65 +652,223 @@ public class ClientHandler implements Runnable {
         }
     }
 
+    /**
+     * Place le message dans la file sortante du client. S'il ne peut finalement
+     * pas être écrit, le broker le remet en attente.
+     *
+     * @param message Le message à transmettre au client
+     * @throws IOException Si la connexion est déjà fermée
+     */
     public void onMessageReceived(final Message message) throws IOException {
-        output.println(mapper.writeValueAsString(message));
+        sendMessage(message, OutboundPriority.INTERACTIVE, cause -> broker.handleDeliveryFailure(message));
+    }
+
+    private void sendMessage(final Message message, final OutboundPriority priority,
+                             final WriteFailureListener failureListener) throws IOException {
+        if (protocolVersion >= Protocol.VERSION_FRAMED) {
+            connection.sendFrame(FrameType.MESSAGE.getCode(), codec.encodeMessage(message), priority, failureListener);
+        } else {
+            connection.send(codec.encodeLine(message), priority, failureListener);
+        }
     }
 
     /**
-     * Appelé lorsqu'un signal d'appel est reçu pour ce client.
+     * Transmet une page de messages rejoués : en trames MESSAGE_BATCH si le
+     * client les lit (autant de messages par trame que sa taille maximale le
+     * permet), sinon un message par trame ou par ligne. Ces trames sont de
+     * fond ({@link OutboundPriority#BULK}) : signaux d'appel et messages en
+     * direct passent devant.
+     *
+     * @param messages La page, dans l'ordre de livraison
+     * @return Le nombre de messages confiés à la connexion, en tête de page ; moins
+     *         que la page si la connexion a refusé la suite (client lent ou déconnecté)
+     * @throws IOException Si la connexion a refusé le premier message
+     */
+    public int onMessagesReplayed(final List<Message> messages) throws IOException {
+        return sendMessages(messages, true);
+    }
+
+    /**
+     * @param requeue true pour remettre en attente les messages que la connexion
+     *                n'aura finalement pas écrits
+     */
+    private int sendMessages(final List<Message> messages, final boolean requeue) throws IOException {
+        int sent = 0;
+        try {
+            if (!batchFrames) {
+                for (final Message message : messages) {
+                    sendMessage(message, OutboundPriority.BULK,
+                            requeue ? cause -> broker.handleDeliveryFailure(message) : null);
+                    sent++;
+                }
+                return sent;
+            }
+            final List<Message> batch = new ArrayList<>();
+            final List<byte[]> payloads = new ArrayList<>();
+            int batchLength = EnvelopeCodec.BATCH_HEADER_LENGTH;
+            for (final Message message : messages) {
+                final byte[] payload = codec.encodeMessage(message);
+                final int entryLength = EnvelopeCodec.BATCH_ENTRY_OVERHEAD + payload.length;
+                if (!batch.isEmpty() && batchLength + entryLength > FrameCodec.MAX_PAYLOAD_LENGTH) {
+                    sendBatch(batch, payloads, requeue);
+                    sent += batch.size();
+                    batch.clear();
+                    payloads.clear();
+                    batchLength = EnvelopeCodec.BATCH_HEADER_LENGTH;
+                }
+                batch.add(message);
+                payloads.add(payload);
+                batchLength += entryLength;
+            }
+            if (!batch.isEmpty()) {
+                sendBatch(batch, payloads, requeue);
+                sent += batch.size();
+            }
+            return sent;
+        } catch (final IOException e) {
+            if (sent == 0) {
+                throw e;
+            }
+            return sent;
+        }
+    }
+
+    private void sendBatch(final List<Message> batch, final List<byte[]> payloads, final boolean requeue)
+            throws IOException {
+        final List<Message> messages = List.copyOf(batch);
+        final WriteFailureListener failureListener = requeue
+                ? cause -> messages.forEach(broker::handleDeliveryFailure)
+                : null;
+        if (messages.size() == 1) {
+            connection.sendFrame(FrameType.MESSAGE.getCode(), payloads.get(0), OutboundPriority.BULK, failureListener);
+            return;
+        }
+        connection.sendFrame(FrameType.MESSAGE_BATCH.getCode(), EnvelopeCodec.encodeBatch(payloads),
+                OutboundPriority.BULK, failureListener);
+    }
+
+    /**
+     * Transmet un message relayé : tel quel si ce client lit le même format de
+     * corps que l'expéditeur, sinon décodé puis réencodé.
+     *
+     * @param forwarded Le message relayé
+     * @throws IOException Si la connexion est déjà fermée
+     */
+    public void onMessageForwarded(final ForwardedMessage forwarded) throws IOException {
+        if (protocolVersion >= Protocol.VERSION_FRAMED && forwarded.isReadableWith(codec)) {
+            connection.sendFrame(FrameType.MESSAGE.getCode(), forwarded.getPayload(),
+                    cause -> broker.handleDeliveryFailure(forwarded));
+        } else {
+            onMessageReceived(forwarded.toMessage());
+        }
+    }
+
+    /**
+     * Transmet un message de groupe : l'en-tête de routage propre à ce client,
+     * suivi du corps encodé une seule fois pour tous les membres.
+     *
+     * @param fanout Le message de groupe en cours de diffusion
+     * @throws IOException Si la connexion est déjà fermée
+     */
+    public void onGroupMessage(final GroupFanout fanout) throws IOException {
+        if (protocolVersion >= Protocol.VERSION_FRAMED) {
+            connection.sendFrame(FrameType.MESSAGE.getCode(), fanout.headerFor(clientId),
+                    fanout.bodyFor(codec.getBodyCodec()), OutboundPriority.INTERACTIVE,
+                    cause -> broker.handleDeliveryFailure(fanout, clientId));
+        } else {
+            onMessageReceived(fanout.copyFor(clientId));
+        }
+    }
+
+    /**
+     * Transmet un indicateur de saisie ou un accusé de réception, sans remise
+     * en attente s'il n'est pas écrit. Les clients v1 ne les lisent pas.
+     *
+     * @param command La commande TYPING ou RECEIPT, partagée entre les destinataires
+     */
+    public void onNotice(final ControlCommand command) {
+        if (protocolVersion >= Protocol.VERSION_FRAMED) {
+            sendControl(command, OutboundPriority.INTERACTIVE);
+        }
+    }
+
+    /**
+     * Appelé lorsqu'un signal d'appel est reçu pour ce client. Le signal passe
+     * devant les messages déjà en file : une sonnerie n'attend pas un rejeu.
      *
      * @param signal Le signal d'appel à transmettre au client
      * @throws IOException En cas d'erreur de communication
      */
     public void onCallSignalReceived(final CallSignal signal) throws IOException {
-        output.println(mapper.writeValueAsString(signal));
+        if (protocolVersion >= Protocol.VERSION_FRAMED) {
+            connection.sendFrame(FrameType.CALL_SIGNAL.getCode(), codec.encodeCallSignal(signal),
+                    OutboundPriority.CONTROL, null);
+        } else {
+            connection.send(codec.encodeLine(signal), OutboundPriority.CONTROL, null);
+        }
+    }
+
+    @Override
+    public void onOutboundDrained() {
+        if (state == State.AUTHENTICATED) {
+            broker.onConsumerCaughtUp(clientId);
+        }
+    }
+
+    /**
+     * @return true si des messages rejoués n'ont pas encore été écrits : un
+     *         message en direct les dépasserait
+     */
+    public boolean hasPendingReplay() {
+        return connection.hasPending(OutboundPriority.BULK);
+    }
+
+    /**
+     * Compteurs de retard de la connexion de ce client.
+     */
+    public OutboundStats getOutboundStats() {
+        return connection.getOutboundStats();
     }
 
     private void sendResponse(final String response) {
-        output.println(response);
+        try {
+            connection.send(response);
+        } catch (final IOException e) {
+            System.err.println("Impossible d'envoyer la réponse au client: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Déconnexion volontaire : la session ne peut plus être reprise avec un
+     * ticket déjà émis.
+     */
+    private void logout() {
+        loggedOut = true;
+        tickets.revoke(clientId);
+        terminateSession(); // La déconnexion est finalisée dans onClosed()
     }
 
     private void terminateSession() {
-        isConnected = false;
+        state = State.CLOSED;
+        connection.close();
     }
 
-    private void cleanup() {
-        if (clientEmail != null) {
-            broker.unregisterListener(clientId);
-        }
+    private boolean cleanup() {
+        return clientEmail != null && broker.unregisterListener(clientId, this);
     }
 
     // Lors de la connexion d'un utilisateur
     public void handleUserLogin(final String email) {
-        try {
-            final User user = userDAO.findUserByEmail(email);
-            if (user != null) {
-                user.setOnline(true);
-                final boolean success = userDAO.updateUser(user);
-                if (!success) {
-                    System.err.println("Échec de la mise à jour du statut en ligne pour: " + email);
-                }
-            }
-        } catch (final Exception e) {
-            System.err.println("Erreur lors de la mise à jour du statut en ligne: " + e.getMessage());
-            e.printStackTrace();
+        // Mise à jour ciblée du statut : ni relecture ni réécriture de la ligne complète
+        if (!userDAO.updateOnlineStatus(clientId, true)) {
+            System.err.println("Échec de la mise à jour du statut en ligne pour: " + email);
         }
     }
 
     // Lors de la déconnexion d'un utilisateur
     public void handleUserLogout(final String email) {
-        try {
-            final User user = userDAO.findUserByEmail(email);
-            if (user != null) {
-                user.setOnline(false);
-                final boolean success = userDAO.updateUser(user);
-                if (!success) {
-                    System.err.println("Échec de la mise à jour du statut hors ligne pour: " + email);
-                }
-            }
-        } catch (final Exception e) {
-            System.err.println("Erreur lors de la mise à jour du statut hors ligne: " + e.getMessage());
-            e.printStackTrace();
+        if (!userDAO.updateOnlineStatus(clientId, false)) {
+            System.err.println("Échec de la mise à jour du statut hors ligne pour: " + email);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,89 @@
+package org.example.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identifiants de message attribués par le serveur, sans aller-retour avec la
+ * base : un entier de 64 bits composé, du poids fort au poids faible, de
+ * <ul>
+ *   <li>41 bits d'horodatage en millisecondes depuis {@link #EPOCH_MILLIS}
+ *       (environ 69 ans) ;</li>
+ *   <li>10 bits de numéro de nœud ({@link ServerConfig#nodeId()}), distinct
+ *       pour chaque serveur qui écrit dans la même base ;</li>
+ *   <li>12 bits de compteur dans la milliseconde.</li>
+ * </ul>
+ * Les identifiants d'un nœud sont strictement croissants, et ceux de plusieurs
+ * nœuds croissent avec le temps : l'ordre par identifiant reste l'ordre
+ * d'arrivée, comme avec l'ancien AUTO_INCREMENT, dont les valeurs restent
+ * très en dessous.
+ * <p>
+ * L'horodatage et le compteur ne font qu'un (un seul entier atomique) : au-delà
+ * de 4096 messages dans la même milliseconde, ou si l'horloge recule, le
+ * générateur emprunte la milliseconde suivante au lieu d'attendre ; il se recale
+ * sur l'horloge dès qu'elle l'a rattrapé.
+ */
+public class MessageIdGenerator {
+
+    /**
+     * Origine des horodatages : 2024-01-01T00:00:00Z.
+     */
+    public static final long EPOCH_MILLIS = 1_704_067_200_000L;
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    private final long nodeBits;
+    // Horodatage (depuis l'origine) << SEQUENCE_BITS | compteur, du dernier identifiant attribué
+    private final AtomicLong last;
+
+    private static class Holder {
+        private static final MessageIdGenerator INSTANCE = new MessageIdGenerator(ServerConfig.nodeId());
+    }
+
+    public static MessageIdGenerator getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * @param nodeId Numéro du nœud, entre 0 et {@link #MAX_NODE_ID}
+     */
+    MessageIdGenerator(final int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+        this.last = new AtomicLong();
+    }
+
+    /**
+     * @return Un nouvel identifiant, strictement positif
+     */
+    public long next() {
+        final long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        long previous;
+        long current;
+        do {
+            previous = last.get();
+            // Un compteur plein déborde sur l'horodatage : la milliseconde suivante est empruntée
+            current = Math.max(previous + 1, now);
+        } while (!last.compareAndSet(previous, current));
+        final long timestamp = current >>> SEQUENCE_BITS;
+        final long sequence = current & ((1L << SEQUENCE_BITS) - 1);
+        return timestamp << (NODE_BITS + SEQUENCE_BITS) | nodeBits | sequence;
+    }
+
+    /**
+     * @return L'instant d'attribution de l'identifiant, en millisecondes depuis 1970
+     */
+    public static long timestampMillis(final long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    /**
+     * @return Le numéro du nœud qui a attribué l'identifiant
+     */
+    public static int nodeId(final long id) {
+        return (int) (id >>> SEQUENCE_BITS) & MAX_NODE_ID;
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Retarde le passage hors ligne des utilisateurs dont la connexion v2 a été
+ * coupée sans déconnexion volontaire : s'ils reprennent leur session par
+ * ticket avant la fin du délai de grâce, leur statut en base n'a pas bougé et
+ * la reprise n'écrit rien.
+ * <p>
+ * Les échéances passent par la {@link TimingWheel} ; l'écriture en base qui
+ * suit est confiée à un pool, jamais exécutée sur le thread de la roue.
+ */
+public class PresenceTracker {
+
+    private final long graceMillis;
+    private final ExecutorService writers;
+    // Passage hors ligne planifié, par utilisateur
+    private final Map<Long, PendingOffline> pending;
+
+    private static class Holder {
+        private static final PresenceTracker INSTANCE = new PresenceTracker(ServerConfig.resumeGraceMillis());
+    }
+
+    public static PresenceTracker getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    PresenceTracker(final long graceMillis) {
+        this.graceMillis = graceMillis;
+        this.writers = ServerExecutors.newWorkerPool();
+        this.pending = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Planifie le passage hors ligne de l'utilisateur à la fin du délai de grâce.
+     *
+     * @param markOffline L'écriture du statut hors ligne (bloquante)
+     */
+    void markOfflineLater(final long userId, final Runnable markOffline) {
+        final PendingOffline entry = new PendingOffline();
+        final PendingOffline previous = pending.put(userId, entry);
+        if (previous != null) {
+            previous.cancel();
+        }
+        entry.timeout = TimingWheel.getInstance().schedule(() -> {
+            if (pending.remove(userId, entry)) {
+                writers.execute(markOffline);
+            }
+        }, graceMillis);
+    }
+
+    /**
+     * Annule le passage hors ligne planifié pour l'utilisateur.
+     *
+     * @return true si un passage était planifié : le statut en base est encore « en ligne »
+     */
+    boolean cancelOffline(final long userId) {
+        final PendingOffline entry = pending.remove(userId);
+        if (entry == null) {
+            return false;
+        }
+        entry.cancel();
+        return true;
+    }
+
+    private static final class PendingOffline {
+        // Fixé juste après la planification ; une échéance retirée de la table ne fait plus rien
+        private volatile TimingWheel.Timeout timeout;
+
+        void cancel() {
+            final TimingWheel.Timeout scheduled = timeout;
+            if (scheduled != null) {
+                scheduled.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package org.example.server;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Limitation du débit des clients authentifiés, pour qu'un client défaillant
+ * ou scripté ne sature pas le broker et la base au détriment des autres :
+ * <ul>
+ *   <li>un seau à jetons par connexion et par budget (messages, annonces de
+ *       médias, signaux d'appel) ;</li>
+ *   <li>un seau par utilisateur et par budget, partagé par toutes ses
+ *       connexions : en ouvrir plusieurs ne multiplie pas son débit.</li>
+ * </ul>
+ * Le budget est vérifié dès l'en-tête de routage lu, avant le décodage du
+ * corps. Un envoi refusé est abandonné ; la session prévient le client une fois
+ * par attente (commande THROTTLED) avec le délai avant nouvel essai.
+ * <p>
+ * Les compteurs de refus, par budget et par niveau, servent à ajuster les
+ * limites d'après le trafic réel.
+ */
+public class RateLimiter {
+
+    /**
+     * Budgets indépendants : épuiser l'un n'empêche pas les autres.
+     */
+    public enum Budget {
+        MESSAGES,
+        MEDIA,
+        CALL_SIGNALS
+    }
+
+    private static final Budget[] BUDGETS = Budget.values();
+
+    private final boolean enabled;
+    private final double[] ratePerSecond;
+    private final double[] burst;
+    private final double userFactor;
+    private final double groupMessageCost;
+    // Seaux par utilisateur, gardés tant qu'une session est ouverte ou qu'ils ne sont pas pleins
+    private final Map<Long, UserBuckets> users;
+    // Délai au bout duquel un seau vide est de nouveau plein (0 si un débit est nul)
+    private final long refillMillis;
+
+    private final AtomicLongArray admitted;
+    private final AtomicLongArray throttledByConnection;
+    private final AtomicLongArray throttledByUser;
+
+    private static class Holder {
+        private static final RateLimiter INSTANCE = new RateLimiter(
+                ServerConfig.rateLimitEnabled(),
+                new double[]{ServerConfig.messageRatePerSecond(), ServerConfig.mediaRatePerSecond(),
+                        ServerConfig.callSignalRatePerSecond()},
+                new double[]{ServerConfig.messageBurst(), ServerConfig.mediaBurst(), ServerConfig.callSignalBurst()},
+                ServerConfig.userRateFactor(),
+                ServerConfig.groupMessageCost());
+    }
+
+    public static RateLimiter getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * @param ratePerSecond Débit accordé à une connexion, par budget (dans l'ordre de {@link Budget})
+     * @param burst         Rafale admise par connexion, par budget
+     * @param userFactor    Budget d'un utilisateur en multiple de celui d'une connexion
+     */
+    RateLimiter(final boolean enabled,
+                final double[] ratePerSecond,
+                final double[] burst,
+                final double userFactor,
+                final double groupMessageCost) {
+        this.enabled = enabled;
+        this.ratePerSecond = ratePerSecond.clone();
+        this.burst = burst.clone();
+        this.userFactor = Math.max(1, userFactor);
+        this.groupMessageCost = Math.max(1, groupMessageCost);
+        this.users = new ConcurrentHashMap<>();
+        long refill = 0;
+        for (int i = 0; i < BUDGETS.length; i++) {
+            refill = ratePerSecond[i] > 0 ? Math.max(refill, (long) Math.ceil(burst[i] / ratePerSecond[i] * 1000)) : 0;
+            if (refill == 0) {
+                break;
+            }
+        }
+        this.refillMillis = refill;
+        this.admitted = new AtomicLongArray(BUDGETS.length);
+        this.throttledByConnection = new AtomicLongArray(BUDGETS.length);
+        this.throttledByUser = new AtomicLongArray(BUDGETS.length);
+    }
+
+    /**
+     * Ouvre les budgets d'une connexion authentifiée. À fermer par {@link Session#close()}.
+     */
+    Session open(final long userId) {
+        final long now = System.nanoTime();
+        final UserBuckets user = enabled
+                ? users.compute(userId, (id, existing) -> {
+                    final UserBuckets buckets = existing != null ? existing : new UserBuckets(now);
+                    buckets.sessions++;
+                    return buckets;
+                })
+                : null;
+        return new Session(userId, user, now);
+    }
+
+    /**
+     * @return Le coût d'un message en jetons du budget {@link Budget#MESSAGES}
+     */
+    double messageCost(final boolean group) {
+        return group ? groupMessageCost : 1;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Envois admis dans ce budget depuis le démarrage.
+     */
+    public long getAdmitted(final Budget budget) {
+        return admitted.get(budget.ordinal());
+    }
+
+    /**
+     * Envois refusés parce que la connexion avait épuisé son budget.
+     */
+    public long getThrottledByConnection(final Budget budget) {
+        return throttledByConnection.get(budget.ordinal());
+    }
+
+    /**
+     * Envois refusés parce que l'utilisateur, toutes connexions confondues, avait épuisé son budget.
+     */
+    public long getThrottledByUser(final Budget budget) {
+        return throttledByUser.get(budget.ordinal());
+    }
+
+    /**
+     * @return Le nombre d'utilisateurs dont les seaux sont gardés
+     */
+    public int getTrackedUsers() {
+        return users.size();
+    }
+
+    /**
+     * Compteurs cumulés depuis le démarrage, par budget et par niveau de refus.
+     */
+    @Override
+    public String toString() {
+        if (!enabled) {
+            return "désactivé";
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (final Budget budget : BUDGETS) {
+            sb.append(budget).append(": admis=").append(getAdmitted(budget))
+                    .append(", refusés connexion=").append(getThrottledByConnection(budget))
+                    .append(", refusés utilisateur=").append(getThrottledByUser(budget))
+                    .append("; ");
+        }
+        return sb.append("utilisateurs suivis=").append(getTrackedUsers()).toString();
+    }
+
+    private TokenBucket[] newBuckets(final double factor, final long now) {
+        final TokenBucket[] buckets = new TokenBucket[BUDGETS.length];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new TokenBucket(ratePerSecond[i] * factor, burst[i] * factor, now);
+        }
+        return buckets;
+    }
+
+    private final class UserBuckets {
+        private final TokenBucket[] buckets;
+        // Modifié uniquement dans users.compute*
+        private int sessions;
+
+        UserBuckets(final long now) {
+            this.buckets = newBuckets(userFactor, now);
+        }
+
+        boolean isFull(final long now) {
+            for (final TokenBucket bucket : buckets) {
+                if (!bucket.isFull(now)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Budgets d'une connexion. Utilisée par le seul thread qui traite les trames
+     * de la connexion ; les seaux de l'utilisateur sont partagés.
+     */
+    final class Session {
+        private final long userId;
+        private final UserBuckets user;
+        private final TokenBucket[] buckets;
+        // Fin de l'attente déjà annoncée au client, par budget
+        private final long[] noticeUntilNanos;
+        private final long[] throttled;
+        private boolean closed;
+
+        private Session(final long userId, final UserBuckets user, final long now) {
+            this.userId = userId;
+            this.user = user;
+            this.buckets = enabled ? newBuckets(1, now) : null;
+            this.noticeUntilNanos = new long[BUDGETS.length];
+            Arrays.fill(noticeUntilNanos, now);
+            this.throttled = new long[BUDGETS.length];
+        }
+
+        /**
+         * Prend le coût d'un envoi dans le budget de la connexion puis dans celui de l'utilisateur.
+         *
+         * @return 0 si l'envoi est admis, sinon le délai avant nouvel essai en millisecondes
+         */
+        long tryAcquire(final Budget budget, final double cost) {
+            if (buckets == null) {
+                return 0;
+            }
+            final int index = budget.ordinal();
+            final long now = System.nanoTime();
+            long waitNanos = buckets[index].tryTake(cost, now);
+            if (waitNanos > 0) {
+                throttledByConnection.incrementAndGet(index);
+            } else {
+                waitNanos = user.buckets[index].tryTake(cost, now);
+                if (waitNanos > 0) {
+                    // Refusé au niveau de l'utilisateur : la connexion n'a rien consommé
+                    buckets[index].refund(cost);
+                    throttledByUser.incrementAndGet(index);
+                }
+            }
+            if (waitNanos == 0) {
+                admitted.incrementAndGet(index);
+                return 0;
+            }
+            throttled[index]++;
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(Math.min(waitNanos, TimeUnit.HOURS.toNanos(1))));
+        }
+
+        /**
+         * @return true si le client doit être prévenu de ce refus : une seule fois par attente et par budget
+         */
+        boolean shouldNotify(final Budget budget, final long retryAfterMillis) {
+            final int index = budget.ordinal();
+            final long now = System.nanoTime();
+            if (now - noticeUntilNanos[index] < 0) {
+                return false;
+            }
+            noticeUntilNanos[index] = now + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+            return true;
+        }
+
+        /**
+         * @return Les envois de cette connexion refusés dans ce budget
+         */
+        long getThrottled(final Budget budget) {
+            return throttled[budget.ordinal()];
+        }
+
+        boolean wasThrottled() {
+            for (final long count : throttled) {
+                if (count > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Libère les seaux de l'utilisateur quand il n'a plus de session, une
+         * fois pleins : les oublier plus tôt remettrait son budget à neuf à la reconnexion.
+         */
+        void close() {
+            if (user == null || closed) {
+                return;
+            }
+            closed = true;
+            users.computeIfPresent(userId, (id, buckets) -> {
+                buckets.sessions--;
+                return buckets;
+            });
+            release(userId);
+        }
+    }
+
+    private void release(final long userId) {
+        final boolean[] kept = new boolean[1];
+        users.computeIfPresent(userId, (id, buckets) -> {
+            if (buckets.sessions > 0) {
+                return buckets;
+            }
+            kept[0] = !buckets.isFull(System.nanoTime());
+            return kept[0] ? buckets : null;
+        });
+        if (kept[0] && refillMillis > 0) {
+            TimingWheel.getInstance().schedule(() -> release(userId), refillMillis);
+        }
+    }
+}
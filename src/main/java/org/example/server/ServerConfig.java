@@ -0,0 +1,420 @@
+package org.example.server;
+
+/**
+ * Options de démarrage du serveur.
+ * Chaque option se lit depuis une propriété système (ex: -Dchat.transport=nio)
+ * ou depuis un argument de la ligne de commande (ex: --transport=nio).
+ */
+public final class ServerConfig {
+
+    private static final String PREFIX = "chat.";
+
+    private ServerConfig() {
+    }
+
+    /**
+     * Recopie les arguments de la forme --cle=valeur dans les propriétés système
+     * afin qu'ils soient visibles par les accesseurs ci-dessous.
+     *
+     * @param args Arguments passés à ChatServer.main
+     */
+    public static void applyArgs(final String[] args) {
+        for (final String arg : args) {
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            final int eq = arg.indexOf('=');
+            if (eq <= 2) {
+                continue;
+            }
+            String key = arg.substring(2, eq);
+            if (!key.startsWith(PREFIX)) {
+                key = PREFIX + key;
+            }
+            System.setProperty(key, arg.substring(eq + 1));
+        }
+    }
+
+    /**
+     * Mode de transport TCP : "blocking" (un thread par connexion), "virtual"
+     * (un thread virtuel par connexion, Java 21) ou "nio".
+     */
+    public static String transport() {
+        return System.getProperty(PREFIX + "transport", "blocking");
+    }
+
+    /**
+     * Threads virtuels pour les connexions et les tâches du serveur (UDP, BDD).
+     * Activé par le transport "virtual" ou par -Dchat.virtualThreads=true.
+     */
+    public static boolean useVirtualThreads() {
+        return "virtual".equals(transport()) || Boolean.getBoolean(PREFIX + "virtualThreads");
+    }
+
+    /**
+     * Nombre de partitions du broker, chacune avec son thread (une par cœur par défaut).
+     */
+    public static int brokerShards() {
+        return Integer.getInteger(PREFIX + "broker.shards", Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Threads qui lisent en base pour le broker (pages de rejeu, curseurs de
+     * groupe), hors des partitions. Borne aussi les lectures simultanées lors
+     * d'une vague de reconnexions.
+     */
+    public static int brokerIoThreads() {
+        return Integer.getInteger(PREFIX + "broker.ioThreads", Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Nombre maximal de groupes (et d'utilisateurs) dont les appartenances sont gardées en cache.
+     */
+    public static int groupCacheMaxEntries() {
+        return Integer.getInteger(PREFIX + "groupCache.maxEntries", 10_000);
+    }
+
+    /**
+     * Durée de vie d'une entrée du cache des groupes, en secondes : borne le
+     * retard sur une modification absente du journal (base modifiée à la main).
+     */
+    public static long groupCacheTtlSeconds() {
+        return Long.getLong(PREFIX + "groupCache.ttlSeconds", 300);
+    }
+
+    /**
+     * Intervalle de relecture du journal des appartenances aux groupes, en
+     * millisecondes : borne le retard du cache sur un ajout ou un retrait de
+     * membre (0 pour désactiver).
+     */
+    public static long groupCacheChangePollMillis() {
+        return Long.getLong(PREFIX + "groupCache.changePollMillis", 1000);
+    }
+
+    /**
+     * Garantie d'écriture des messages mis en attente (QUEUED) : "async" (par
+     * défaut) rend la main dès le message confié à l'écrivain en lot, au risque
+     * de perdre le dernier lot en cas d'arrêt brutal ; "sync" attend que le lot
+     * qui le contient soit validé en base.
+     */
+    public static boolean persistenceSync() {
+        return "sync".equals(System.getProperty(PREFIX + "persistence.durability", "async"));
+    }
+
+    /**
+     * Nombre maximal de messages QUEUED insérés par lot.
+     */
+    public static int persistenceBatchSize() {
+        return Integer.getInteger(PREFIX + "persistence.batchSize", 256);
+    }
+
+    /**
+     * Attente maximale d'un message QUEUED avant l'écriture de son lot, en millisecondes.
+     */
+    public static long persistenceFlushMillis() {
+        return Long.getLong(PREFIX + "persistence.flushMillis", 10);
+    }
+
+    /**
+     * Messages QUEUED en attente d'écriture au-delà desquels les producteurs
+     * attendent que l'écrivain rattrape son retard (voir
+     * {@link #persistenceEnqueueTimeoutMillis()}).
+     */
+    public static int persistenceMaxPending() {
+        return Integer.getInteger(PREFIX + "persistence.maxPending", 10_000);
+    }
+
+    /**
+     * Attente maximale d'un producteur (partition du broker, connexion) devant
+     * la file pleine de l'écrivain, en millisecondes ; au-delà, l'écriture est
+     * abandonnée et comptée plutôt que de bloquer la boucle de la partition.
+     */
+    public static long persistenceEnqueueTimeoutMillis() {
+        return Long.getLong(PREFIX + "persistence.enqueueTimeoutMillis", 20);
+    }
+
+    /**
+     * Messages en attente relus et envoyés par page lors du rejeu (par file :
+     * messages directs, messages de groupe), et messages d'historique par page
+     * de synchronisation.
+     */
+    public static int replayPageSize() {
+        return Integer.getInteger(PREFIX + "replay.pageSize", 200);
+    }
+
+    /**
+     * Intervalle entre deux journalisations des compteurs du broker, en
+     * secondes (0 pour ne rien journaliser).
+     */
+    public static long brokerStatsSeconds() {
+        return Long.getLong(PREFIX + "broker.statsSeconds", 300);
+    }
+
+    /**
+     * Nombre maximal de conversations (paires d'utilisateurs, groupes) dont le
+     * dernier rang attribué est gardé en mémoire ; au-delà, il est relu en base.
+     */
+    public static int sequenceCacheMaxConversations() {
+        return Integer.getInteger(PREFIX + "sequences.maxConversations", 100_000);
+    }
+
+    /**
+     * Durée pendant laquelle un envoi identifié par son client est retenu : un
+     * renvoi du même message dans ce délai est reconnu et ignoré, en secondes.
+     */
+    public static long dedupWindowSeconds() {
+        return Long.getLong(PREFIX + "dedup.windowSeconds", 300);
+    }
+
+    /**
+     * Nombre maximal d'envois retenus pour la déduplication ; au-delà, la fenêtre
+     * raccourcit (les plus anciens sont oubliés).
+     */
+    public static int dedupMaxEntries() {
+        return Integer.getInteger(PREFIX + "dedup.maxEntries", 256 * 1024);
+    }
+
+    /**
+     * Numéro de ce serveur dans les identifiants de message (0 à 1023), à
+     * choisir distinct pour chaque serveur qui écrit dans la même base.
+     */
+    public static int nodeId() {
+        return Integer.getInteger(PREFIX + "nodeId", 0);
+    }
+
+    /**
+     * Délai minimal entre deux annonces de saisie d'une même conversation, en
+     * millisecondes : les annonces plus rapprochées sont fusionnées.
+     */
+    public static long typingIntervalMillis() {
+        return Long.getLong(PREFIX + "typing.intervalMillis", 3000);
+    }
+
+    /**
+     * Durée de vie d'une saisie non renouvelée, en millisecondes.
+     */
+    public static long typingTtlMillis() {
+        return Long.getLong(PREFIX + "typing.ttlMillis", 6000);
+    }
+
+    /**
+     * Nombre de membres nommés dans une annonce de saisie de groupe (les autres sont seulement comptés).
+     */
+    public static int typingMaxNames() {
+        return Integer.getInteger(PREFIX + "typing.maxNames", 3);
+    }
+
+    /**
+     * Nombre maximal de conversations dont les marques d'accusés de réception
+     * (dernier rang reçu, dernier rang lu) sont gardées en mémoire.
+     */
+    public static int receiptMaxConversations() {
+        return Integer.getInteger(PREFIX + "receipts.maxConversations", 100_000);
+    }
+
+    /**
+     * Nombre de boucles d'événements (threads sélecteurs) en mode NIO.
+     */
+    public static int nioEventLoops() {
+        return Integer.getInteger(PREFIX + "nio.eventLoops", Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Nombre de threads de travail exécutant la logique bloquante (BDD) en mode NIO.
+     */
+    public static int nioWorkerThreads() {
+        return Integer.getInteger(PREFIX + "nio.workers", 16);
+    }
+
+    /**
+     * Octets en attente d'écriture au-delà desquels un client est considéré lent :
+     * ses messages ne sont plus envoyés en direct mais mis en attente (QUEUED).
+     */
+    public static int outboundMaxBytes() {
+        return Integer.getInteger(PREFIX + "outbound.maxBytes", 1024 * 1024);
+    }
+
+    /**
+     * Nombre de trames en attente d'écriture au-delà duquel un client est considéré lent.
+     */
+    public static int outboundMaxFrames() {
+        return Integer.getInteger(PREFIX + "outbound.maxFrames", 1024);
+    }
+
+    /**
+     * Durée de validité d'un ticket de session, en secondes.
+     */
+    public static long sessionTicketTtlSeconds() {
+        return Long.getLong(PREFIX + "ticket.ttlSeconds", 12 * 3600L);
+    }
+
+    /**
+     * Délai avant de marquer hors ligne un utilisateur dont la connexion v2 a
+     * été coupée sans déconnexion : une reprise par ticket dans ce délai le
+     * retrouve en ligne, sans écriture en base.
+     */
+    public static long resumeGraceMillis() {
+        return Long.getLong(PREFIX + "ticket.resumeGraceMillis", 30_000L);
+    }
+
+    /**
+     * Clé de signature des tickets de session (Base64). Sans clé, une clé
+     * aléatoire est tirée au démarrage : les tickets ne survivent pas à un redémarrage.
+     */
+    public static String sessionTicketSecret() {
+        return System.getProperty(PREFIX + "ticket.secret");
+    }
+
+    /**
+     * Compression des trames v2 lorsque le client la propose.
+     */
+    public static boolean compression() {
+        return Boolean.parseBoolean(System.getProperty(PREFIX + "compression", "true"));
+    }
+
+    /**
+     * Compression aussi pour les clients locaux (désactivée par défaut : sur la
+     * boucle locale, le coût CPU n'est compensé par aucun gain de débit).
+     */
+    public static boolean compressionOnLocalhost() {
+        return Boolean.getBoolean(PREFIX + "compression.localhost");
+    }
+
+    /**
+     * Corps des trames v2 en Smile lorsque le client le propose (JSON sinon).
+     */
+    public static boolean smileCodec() {
+        return Boolean.parseBoolean(System.getProperty(PREFIX + "codec.smile", "true"));
+    }
+
+    /**
+     * Silence (aucune trame reçue) après lequel le serveur envoie un PING, en secondes.
+     */
+    public static long heartbeatIntervalSeconds() {
+        return Long.getLong(PREFIX + "heartbeat.intervalSeconds", 30);
+    }
+
+    /**
+     * Silence après lequel une session est considérée morte et fermée, en secondes.
+     */
+    public static long heartbeatTimeoutSeconds() {
+        return Long.getLong(PREFIX + "heartbeat.timeoutSeconds", 90);
+    }
+
+    /**
+     * Précision de la roue temporelle des échéances de session, en millisecondes.
+     */
+    public static long timingWheelTickMillis() {
+        return Long.getLong(PREFIX + "timingWheel.tickMillis", 500);
+    }
+
+    /**
+     * Connexions simultanées au-delà desquelles les nouvelles sont refusées (BUSY).
+     */
+    public static int maxConnections() {
+        return Integer.getInteger(PREFIX + "admission.maxConnections", 10_000);
+    }
+
+    /**
+     * Authentifications (accès à la base) menées en parallèle.
+     */
+    public static int maxConcurrentAuthentications() {
+        return Integer.getInteger(PREFIX + "admission.maxConcurrentAuth", 8);
+    }
+
+    /**
+     * Authentifications en attente au-delà desquelles les suivantes, et les
+     * nouvelles connexions, sont refusées jusqu'à résorption de l'arriéré.
+     */
+    public static int maxAuthenticationBacklog() {
+        return Integer.getInteger(PREFIX + "admission.maxAuthBacklog", 64);
+    }
+
+    /**
+     * Attente maximale d'un créneau d'authentification, en millisecondes.
+     * Ignorée en mode NIO : attendre y bloquerait un thread du pool de travail partagé.
+     */
+    public static long authenticationWaitMillis() {
+        return Long.getLong(PREFIX + "admission.authWaitMillis", 2000);
+    }
+
+    /**
+     * Limitation du débit des clients authentifiés (messages, médias, signaux d'appel).
+     */
+    public static boolean rateLimitEnabled() {
+        return Boolean.parseBoolean(System.getProperty(PREFIX + "rateLimit.enabled", "true"));
+    }
+
+    /**
+     * Messages par seconde accordés à une connexion, en régime établi.
+     */
+    public static double messageRatePerSecond() {
+        return doubleProperty("rateLimit.messages.perSecond", 10);
+    }
+
+    /**
+     * Rafale de messages qu'une connexion peut envoyer d'un coup, après un silence.
+     */
+    public static double messageBurst() {
+        return doubleProperty("rateLimit.messages.burst", 30);
+    }
+
+    /**
+     * Coût d'un message de groupe en jetons du budget des messages, un message
+     * direct coûtant 1 : il est diffusé à tous les membres et stocké pour les absents.
+     */
+    public static double groupMessageCost() {
+        return doubleProperty("rateLimit.messages.groupCost", 3);
+    }
+
+    /**
+     * Annonces de médias par seconde accordées à une connexion.
+     */
+    public static double mediaRatePerSecond() {
+        return doubleProperty("rateLimit.media.perSecond", 1);
+    }
+
+    public static double mediaBurst() {
+        return doubleProperty("rateLimit.media.burst", 5);
+    }
+
+    /**
+     * Signaux d'appel par seconde accordés à une connexion.
+     */
+    public static double callSignalRatePerSecond() {
+        return doubleProperty("rateLimit.calls.perSecond", 2);
+    }
+
+    public static double callSignalBurst() {
+        return doubleProperty("rateLimit.calls.burst", 10);
+    }
+
+    /**
+     * Budget d'un utilisateur, toutes connexions confondues, en multiple de
+     * celui d'une connexion : multiplier les connexions ne multiplie pas le débit.
+     */
+    public static double userRateFactor() {
+        return doubleProperty("rateLimit.userFactor", 2);
+    }
+
+    /**
+     * Délai de base annoncé dans les réponses BUSY, en millisecondes (une gigue
+     * aléatoire jusqu'à autant s'y ajoute pour étaler les nouvelles tentatives).
+     */
+    public static long busyRetryAfterMillis() {
+        return Long.getLong(PREFIX + "admission.retryAfterMillis", 1000);
+    }
+
+    private static double doubleProperty(final String name, final double defaultValue) {
+        final String value = System.getProperty(PREFIX + name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (final NumberFormatException e) {
+            System.err.println("Invalid value for " + PREFIX + name + ": " + value);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fabrique des exécuteurs du serveur selon le mode de threads choisi au démarrage.
+ * Les threads virtuels sont obtenus par réflexion pour que le code compile
+ * toujours en Java 17 ; ils nécessitent une JVM 21 (profil Maven "java21").
+ */
+public final class ServerExecutors {
+
+    private static final Method NEW_VIRTUAL_EXECUTOR = findVirtualExecutorFactory();
+
+    private ServerExecutors() {
+    }
+
+    private static Method findVirtualExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (final NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public static boolean virtualThreadsAvailable() {
+        return NEW_VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * @return Un exécuteur qui lance chaque tâche sur un nouveau thread virtuel
+     * @throws IllegalStateException Si la JVM ne supporte pas les threads virtuels
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_VIRTUAL_EXECUTOR == null) {
+            throw new IllegalStateException("Les threads virtuels nécessitent Java 21 (JVM actuelle: "
+                    + System.getProperty("java.version") + ")");
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalStateException("Impossible de créer l'exécuteur de threads virtuels", e);
+        }
+    }
+
+    /**
+     * @return Un exécuteur qui démarre un thread plateforme dédié par tâche (comportement historique)
+     */
+    public static Executor newPlatformThreadPerTaskExecutor() {
+        return task -> new Thread(task).start();
+    }
+
+    /**
+     * Pool pour les tâches courtes du serveur (ex: relais des paquets UDP) :
+     * threads virtuels si le mode est activé, sinon pool de threads en cache.
+     */
+    public static ExecutorService newWorkerPool() {
+        return ServerConfig.useVirtualThreads() ? newVirtualThreadPerTaskExecutor() : Executors.newCachedThreadPool();
+    }
+}
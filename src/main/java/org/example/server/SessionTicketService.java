@@ -0,0 +1,179 @@
+package org.example.server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Émet et vérifie les tickets de session utilisés pour reprendre une session
+ * sans réauthentification (commande RESUME).
+ * <p>
+ * Un ticket porte l'identité de l'utilisateur et sa date d'expiration, signés
+ * par HMAC-SHA256 avec une clé connue du seul serveur : la vérification se fait
+ * entièrement en mémoire, sans accès à la base. Une déconnexion volontaire
+ * révoque tous les tickets émis jusque-là pour l'utilisateur ; cette
+ * révocation n'est connue que de ce serveur et ne survit pas à un redémarrage.
+ */
+public class SessionTicketService {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String FORMAT_VERSION = "t2";
+    // Au-delà, les révocations plus anciennes que la durée de vie d'un ticket sont purgées
+    private static final int REVOCATION_PURGE_THRESHOLD = 1024;
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+    // Instant de révocation (ms) par utilisateur : les tickets émis jusque-là sont refusés
+    private final Map<Long, Long> revokedAt;
+
+    private static class Holder {
+        private static final SessionTicketService INSTANCE = new SessionTicketService(
+                ServerConfig.sessionTicketSecret(), ServerConfig.sessionTicketTtlSeconds());
+    }
+
+    public static SessionTicketService getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    SessionTicketService(final String base64Secret, final long ttlSeconds) {
+        final byte[] secret;
+        if (base64Secret != null && !base64Secret.isEmpty()) {
+            secret = Base64.getDecoder().decode(base64Secret);
+        } else {
+            secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+        }
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.ttlSeconds = ttlSeconds;
+        this.revokedAt = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Émet un ticket pour l'utilisateur authentifié.
+     *
+     * @param userId L'ID de l'utilisateur
+     * @param email  L'email de l'utilisateur
+     * @return Le ticket signé
+     */
+    public Ticket issue(final long userId, final String email) {
+        final long issuedAt = System.currentTimeMillis();
+        final long expiresAt = issuedAt / 1000 + ttlSeconds;
+        final byte[] payload = (FORMAT_VERSION + ":" + userId + ":" + issuedAt + ":" + expiresAt + ":" + email)
+                .getBytes(StandardCharsets.UTF_8);
+        final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        final String value = encoder.encodeToString(payload) + "." + encoder.encodeToString(sign(payload));
+        return new Ticket(value, userId, email, expiresAt);
+    }
+
+    /**
+     * Vérifie la signature et l'expiration d'un ticket présenté par un client.
+     *
+     * @param value Le ticket tel que reçu
+     * @return Le ticket décodé, ou null s'il est invalide, expiré ou révoqué
+     */
+    public Ticket verify(final String value) {
+        if (value == null) {
+            return null;
+        }
+        final int dot = value.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        try {
+            final Base64.Decoder decoder = Base64.getUrlDecoder();
+            final byte[] payload = decoder.decode(value.substring(0, dot));
+            final byte[] signature = decoder.decode(value.substring(dot + 1).trim());
+            // Comparaison en temps constant
+            if (!MessageDigest.isEqual(sign(payload), signature)) {
+                return null;
+            }
+            final String[] fields = new String(payload, StandardCharsets.UTF_8).split(":", 5);
+            if (fields.length != 5 || !FORMAT_VERSION.equals(fields[0])) {
+                return null;
+            }
+            final long userId = Long.parseLong(fields[1]);
+            final long issuedAt = Long.parseLong(fields[2]);
+            final long expiresAt = Long.parseLong(fields[3]);
+            if (expiresAt <= System.currentTimeMillis() / 1000) {
+                return null;
+            }
+            final Long revoked = revokedAt.get(userId);
+            if (revoked != null && issuedAt <= revoked) {
+                return null;
+            }
+            return new Ticket(value, userId, fields[4], expiresAt);
+        } catch (final IllegalArgumentException e) {
+            // Base64 ou nombre illisible
+            return null;
+        }
+    }
+
+    /**
+     * Révoque tous les tickets émis jusqu'ici pour l'utilisateur (déconnexion
+     * volontaire) ; ceux émis ensuite restent valides.
+     *
+     * @param userId L'ID de l'utilisateur
+     */
+    public void revoke(final long userId) {
+        final long now = System.currentTimeMillis();
+        revokedAt.merge(userId, now, Math::max);
+        if (revokedAt.size() > REVOCATION_PURGE_THRESHOLD) {
+            // Un ticket émis avant cette limite a expiré de lui-même
+            final long horizon = now - ttlSeconds * 1000;
+            revokedAt.values().removeIf(revoked -> revoked < horizon);
+        }
+    }
+
+    private byte[] sign(final byte[] payload) {
+        try {
+            // Mac n'est pas thread-safe : une instance par appel
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload);
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC indisponible", e);
+        }
+    }
+
+    /**
+     * Ticket de session émis ou vérifié.
+     */
+    public static final class Ticket {
+        private final String value;
+        private final long userId;
+        private final String email;
+        private final long expiresAt;
+
+        Ticket(final String value, final long userId, final String email, final long expiresAt) {
+            this.value = value;
+            this.userId = userId;
+            this.email = email;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        /**
+         * @return L'instant d'expiration, en secondes depuis l'époque Unix
+         */
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.example.server;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Roue temporelle hachée : planifie un grand nombre d'échéances (une par
+ * session) pour un coût constant par ajout et par annulation, avec un seul
+ * thread pour tout le serveur.
+ * <p>
+ * Le temps est découpé en tics ; chaque échéance est rangée dans la case
+ * {@code tic d'échéance modulo taille}, avec le nombre de tours restants. À
+ * chaque tic, seule la case courante est parcourue. La précision est donc d'un
+ * tic, ce qui suffit pour des battements de cœur exprimés en secondes.
+ * <p>
+ * Les tâches s'exécutent sur le thread de la roue : elles doivent être courtes
+ * et ne jamais bloquer (envoyer une trame, fermer une connexion).
+ */
+public class TimingWheel {
+
+    /**
+     * Échéance planifiée, annulable.
+     */
+    public interface Timeout {
+        /**
+         * @return false si la tâche a déjà été exécutée ou annulée
+         */
+        boolean cancel();
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final Bucket[] buckets;
+    // Ajouts depuis n'importe quel thread, rangés dans les cases par le thread de la roue
+    private final Queue<Entry> pending;
+    private final long startNanos;
+    private final Thread thread;
+    private long tick;
+
+    private static class Holder {
+        private static final TimingWheel INSTANCE = new TimingWheel(ServerConfig.timingWheelTickMillis(), 512);
+    }
+
+    /**
+     * @return La roue partagée du serveur
+     */
+    public static TimingWheel getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * @param tickMillis Durée d'un tic
+     * @param wheelSize  Nombre de cases (arrondi à la puissance de deux supérieure)
+     */
+    public TimingWheel(final long tickMillis, final int wheelSize) {
+        this.tickNanos = tickMillis * 1_000_000L;
+        final int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.mask = size - 1;
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.startNanos = System.nanoTime();
+        this.thread = new Thread(this::run, "chat-timing-wheel");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Planifie une tâche.
+     *
+     * @param task        La tâche, exécutée sur le thread de la roue
+     * @param delayMillis Délai avant exécution (arrondi au tic)
+     * @return L'échéance, pour pouvoir l'annuler
+     */
+    public Timeout schedule(final Runnable task, final long delayMillis) {
+        final Entry entry = new Entry(task, System.nanoTime() - startNanos + delayMillis * 1_000_000L);
+        pending.offer(entry);
+        return entry;
+    }
+
+    private void run() {
+        while (true) {
+            waitForNextTick();
+            transferPending();
+            expire(buckets[(int) (tick & mask)].entries);
+            tick++;
+        }
+    }
+
+    private void waitForNextTick() {
+        final long deadline = startNanos + (tick + 1) * tickNanos;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private void transferPending() {
+        Entry entry;
+        while ((entry = pending.poll()) != null) {
+            if (entry.state.get()) {
+                continue;
+            }
+            // Une échéance déjà dépassée part au tic courant
+            final long targetTick = Math.max(entry.deadlineNanos / tickNanos, tick);
+            entry.remainingRounds = (targetTick - tick) / buckets.length;
+            buckets[(int) (targetTick & mask)].entries.offer(entry);
+        }
+    }
+
+    private void expire(final Queue<Entry> bucket) {
+        for (int i = bucket.size(); i > 0; i--) {
+            final Entry entry = bucket.poll();
+            if (entry.state.get()) {
+                continue; // Annulée : simplement oubliée
+            }
+            if (entry.remainingRounds > 0) {
+                entry.remainingRounds--;
+                bucket.offer(entry);
+                continue;
+            }
+            if (entry.state.compareAndSet(false, true)) {
+                try {
+                    entry.task.run();
+                } catch (final RuntimeException e) {
+                    System.err.println("Erreur dans une tâche de la roue temporelle: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Case de la roue : enveloppe typée, un tableau générique ne pouvant être créé.
+     */
+    private static final class Bucket {
+        // Thread de la roue uniquement
+        private final Queue<Entry> entries = new ArrayDeque<>();
+    }
+
+    private static final class Entry implements Timeout {
+        private final Runnable task;
+        private final long deadlineNanos;
+        // true une fois exécutée ou annulée
+        private final AtomicBoolean state;
+        private long remainingRounds;
+
+        Entry(final Runnable task, final long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+            this.state = new AtomicBoolean();
+        }
+
+        @Override
+        public boolean cancel() {
+            return state.compareAndSet(false, true);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.server;
+
+/**
+ * Seau à jetons : se remplit au débit accordé jusqu'à sa capacité (la rafale
+ * admise après un silence) ; chaque envoi y prend autant de jetons qu'il coûte.
+ */
+final class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    // Protégés par this
+    private double tokens;
+    private long lastRefillNanos;
+
+    TokenBucket(final double ratePerSecond, final double capacity, final long nowNanos) {
+        this.capacity = Math.max(1, capacity);
+        this.tokensPerNano = Math.max(0, ratePerSecond) / 1e9;
+        this.tokens = this.capacity;
+        this.lastRefillNanos = nowNanos;
+    }
+
+    /**
+     * Prend {@code cost} jetons s'il y en a assez.
+     *
+     * @return 0 si les jetons ont été pris, sinon l'attente avant qu'il y en ait
+     *         assez, en nanosecondes ({@link Long#MAX_VALUE} si le débit est nul)
+     */
+    synchronized long tryTake(final double cost, final long nowNanos) {
+        refill(nowNanos);
+        // Un coût plus grand que la capacité reste possible, seau plein
+        final double needed = Math.min(cost, capacity);
+        if (tokens >= needed) {
+            tokens -= needed;
+            return 0;
+        }
+        return tokensPerNano > 0 ? (long) Math.ceil((needed - tokens) / tokensPerNano) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Rend des jetons pris pour un envoi finalement refusé ailleurs.
+     */
+    synchronized void refund(final double cost) {
+        tokens = Math.min(capacity, tokens + Math.min(cost, capacity));
+    }
+
+    /**
+     * @return true si le seau est plein : l'oublier ne rend rien à personne
+     */
+    synchronized boolean isFull(final long nowNanos) {
+        refill(nowNanos);
+        return tokens >= capacity;
+    }
+
+    private void refill(final long nowNanos) {
+        final long elapsed = nowNanos - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+            lastRefillNanos = nowNanos;
+        }
+    }
+}
@@ -8,7 +8,6 @@ import java.net.SocketException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Serveur UDP pour relayer les paquets audio entre clients.
@@ -23,9 +22,6 @@ public class UdpCallServer {
     private final Map<String, CallSession> activeSessions;
     private volatile boolean running;
     
-    // Singleton
-    private static UdpCallServer instance;
-    
     /**
      * Représente une session d'appel active avec les informations des deux clients.
      */
@@ -68,15 +64,17 @@ public class UdpCallServer {
     }
     
     private UdpCallServer() {
-        this.threadPool = Executors.newCachedThreadPool();
+        this.threadPool = ServerExecutors.newWorkerPool();
         this.activeSessions = new ConcurrentHashMap<>();
     }
     
-    public static synchronized UdpCallServer getInstance() {
-        if (instance == null) {
-            instance = new UdpCallServer();
-        }
-        return instance;
+    // Singleton initialisé paresseusement par la JVM, sans verrou (pas d'épinglage des threads virtuels)
+    private static class Holder {
+        private static final UdpCallServer INSTANCE = new UdpCallServer();
+    }
+    
+    public static UdpCallServer getInstance() {
+        return Holder.INSTANCE;
     }
     
     /**
@@ -0,0 +1,95 @@
+package org.example.server.broker;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Partition du broker : possède les boîtes des utilisateurs qui lui sont
+ * attribués et exécute toutes les commandes qui les concernent sur son propre
+ * thread, dans l'ordre de soumission. L'état d'une boîte n'est donc jamais
+ * partagé entre threads et se passe de verrou.
+ * <p>
+ * Les commandes arrivent par une {@link MpscQueue} ; le thread dort quand elle
+ * est vide et est réveillé par le prochain ajout.
+ *
+ * @param <M> Type des boîtes
+ */
+final class BrokerShard<M> {
+
+    private final MpscQueue<Runnable> commands;
+    // Réservé au thread de la partition
+    private final Map<Long, M> mailboxes;
+    private final AtomicBoolean parked;
+    private final Thread thread;
+
+    BrokerShard(final int index) {
+        this.commands = new MpscQueue<>();
+        this.mailboxes = new HashMap<>();
+        this.parked = new AtomicBoolean();
+        this.thread = new Thread(this::run, "chat-broker-" + index);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @return Les boîtes de la partition ; à n'utiliser que depuis une commande
+     */
+    Map<Long, M> mailboxes() {
+        return mailboxes;
+    }
+
+    /**
+     * Soumet une commande ; appelable depuis n'importe quel thread.
+     */
+    void execute(final Runnable command) {
+        commands.offer(command);
+        if (parked.get() && parked.compareAndSet(true, false)) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Exécute une commande et attend son résultat. Exécutée directement si
+     * l'appelant est déjà le thread de la partition.
+     */
+    <T> T call(final Supplier<T> command) {
+        if (Thread.currentThread() == thread) {
+            return command.get();
+        }
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                result.complete(command.get());
+            } catch (final RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result.join();
+    }
+
+    private void run() {
+        while (true) {
+            Runnable command = commands.poll();
+            if (command == null) {
+                // Annoncer le sommeil puis revérifier : un ajout concurrent verra l'annonce ou sera vu ici
+                parked.set(true);
+                command = commands.poll();
+                if (command == null) {
+                    LockSupport.park(this);
+                    parked.set(false);
+                    continue;
+                }
+                parked.set(false);
+            }
+            try {
+                command.run();
+            } catch (final RuntimeException e) {
+                System.err.println("Erreur dans " + thread.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+}
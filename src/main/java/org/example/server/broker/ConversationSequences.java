@@ -0,0 +1,218 @@
+package org.example.server.broker;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import org.example.shared.dao.MessageDAO;
+
+/**
+ * Compteurs de rang des conversations : un par paire d'utilisateurs (messages
+ * directs, dans les deux sens) et un par groupe. Chaque message reçoit le rang
+ * qui suit le dernier attribué dans sa conversation ; un client qui se
+ * reconnecte demande ce qui suit le dernier rang qu'il connaît.
+ * <p>
+ * Chaque conversation appartient à une partition du broker, seule à lire et
+ * modifier son compteur : le rang est attribué et le message confié à la
+ * partition du destinataire (ou à l'écrivain) par une commande de cette
+ * partition, sans verrou, et l'ordre des rangs est celui des commandes.
+ * <p>
+ * Un compteur absent est repris de la base hors de la partition, par le pool
+ * d'entrées-sorties ; les commandes de sa conversation attendent le
+ * chargement, dans leur ordre d'arrivée. Le nombre de compteurs gardés est
+ * borné : les moins récemment utilisés sont évincés (jamais pendant leur
+ * chargement), puis repris de la base à leur prochain message.
+ */
+final class ConversationSequences {
+
+    private final MessageDAO messageDAO;
+    private final QueuedMessageWriter writer;
+    private final Executor io;
+    private final List<? extends BrokerShard<?>> shards;
+    // Une table par partition, réservée à son thread
+    private final List<Map<Key, Counter>> counters;
+
+    ConversationSequences(final MessageDAO messageDAO, final QueuedMessageWriter writer, final Executor io,
+                          final List<? extends BrokerShard<?>> shards, final int maxConversations) {
+        this.messageDAO = messageDAO;
+        this.writer = writer;
+        this.io = io;
+        this.shards = shards;
+        final int perShard = Math.max(1, maxConversations / shards.size());
+        final List<Map<Key, Counter>> tables = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            tables.add(new LruMap(perShard));
+        }
+        this.counters = List.copyOf(tables);
+    }
+
+    /**
+     * Exécute {@code action} sur la partition de la conversation directe entre
+     * deux utilisateurs (quel que soit l'expéditeur), avec son compteur.
+     *
+     * @param action Reçoit le compteur, ou null si la base est indisponible
+     */
+    void direct(final long user1Id, final long user2Id, final Consumer<Counter> action) {
+        final long low = Math.min(user1Id, user2Id);
+        final long high = Math.max(user1Id, user2Id);
+        withCounter(new Key(false, low, high), () -> messageDAO.getLastDirectSequence(low, high), action);
+    }
+
+    /**
+     * Comme {@link #direct(long, long, Consumer)}, pour un groupe.
+     */
+    void group(final long groupId, final Consumer<Counter> action) {
+        withCounter(new Key(true, groupId, 0), () -> messageDAO.getLastGroupSequence(groupId), action);
+    }
+
+    private void withCounter(final Key key, final SequenceLoader loader, final Consumer<Counter> action) {
+        final int index = ownerOf(key);
+        final BrokerShard<?> shard = shards.get(index);
+        shard.execute(() -> {
+            final Map<Key, Counter> owned = counters.get(index);
+            Counter counter = owned.get(key);
+            if (counter == null) {
+                counter = new Counter();
+                owned.put(key, counter);
+                load(shard, owned, key, counter, loader);
+            }
+            counter.run(action);
+        });
+    }
+
+    private int ownerOf(final Key key) {
+        // Mélange des bits, comme pour les utilisateurs
+        final long mixed = key.hashCode() * 0x9E3779B97F4A7C15L;
+        return (int) ((mixed >>> 32) % shards.size());
+    }
+
+    private void load(final BrokerShard<?> shard, final Map<Key, Counter> owned, final Key key,
+                      final Counter counter, final SequenceLoader loader) {
+        io.execute(() -> {
+            long last;
+            try {
+                // Un compteur évincé a pu attribuer des rangs encore dans les files des partitions,
+                // puis dans celle de l'écrivain : la base les aura tous avant d'être relue
+                for (final BrokerShard<?> other : shards) {
+                    other.call(() -> null);
+                }
+                writer.awaitWritten();
+                last = loader.load();
+            } catch (final Exception e) {
+                System.err.println("Failed to load the sequence of " + key + ": " + e.getMessage());
+                last = -1;
+            }
+            final long loaded = last;
+            shard.execute(() -> {
+                if (loaded < 0) {
+                    // Le prochain message retentera le chargement
+                    owned.remove(key, counter);
+                }
+                counter.loaded(loaded);
+            });
+        });
+    }
+
+    /**
+     * Dernier rang attribué dans une conversation ; réservé au thread de sa partition.
+     */
+    static final class Counter {
+        private long last;
+        private boolean loading = true;
+        private boolean failed;
+        // Commandes arrivées pendant le chargement, dans leur ordre
+        private List<Consumer<Counter>> waiting = new ArrayList<>();
+
+        /**
+         * @return Le rang suivant
+         */
+        long next() {
+            return ++last;
+        }
+
+        /**
+         * @return Le dernier rang attribué
+         */
+        long last() {
+            return last;
+        }
+
+        private void run(final Consumer<Counter> action) {
+            if (loading) {
+                waiting.add(action);
+            } else {
+                action.accept(failed ? null : this);
+            }
+        }
+
+        private void loaded(final long loadedLast) {
+            loading = false;
+            failed = loadedLast < 0;
+            last = Math.max(0, loadedLast);
+            final List<Consumer<Counter>> actions = waiting;
+            waiting = null;
+            for (final Consumer<Counter> action : actions) {
+                action.accept(failed ? null : this);
+            }
+        }
+    }
+
+    private static final class Key {
+        private final boolean group;
+        private final long first;
+        private final long second;
+
+        Key(final boolean group, final long first, final long second) {
+            this.group = group;
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return group == key.group && first == key.first && second == key.second;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(first * 31 + second) * 2 + (group ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return group ? "group " + first : "conversation " + first + "-" + second;
+        }
+    }
+
+    @FunctionalInterface
+    private interface SequenceLoader {
+        long load() throws SQLException;
+    }
+
+    /**
+     * Table en ordre d'accès, qui évince le compteur le moins récemment utilisé
+     * au-delà de sa capacité, sauf s'il est en cours de chargement : la table
+     * dépasse alors sa capacité jusqu'au prochain ajout.
+     */
+    private static final class LruMap extends LinkedHashMap<Key, Counter> {
+        private static final long serialVersionUID = 1L;
+        private final int maxEntries;
+
+        LruMap(final int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, Counter> eldest) {
+            return size() > maxEntries && !eldest.getValue().loading;
+        }
+    }
+}
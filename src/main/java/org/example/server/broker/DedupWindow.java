@@ -0,0 +1,180 @@
+package org.example.server.broker;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fenêtre de déduplication des envois : retient, pendant une durée bornée,
+ * les identifiants de message attribués par les clients, pour reconnaître en
+ * temps constant un envoi répété après un délai d'attente, sans interroger la
+ * table des messages.
+ * <p>
+ * Chaque entrée est une empreinte de 64 bits de (expéditeur, identifiant
+ * client) et son échéance, rangées dans des tableaux à adressage ouvert
+ * (sondage linéaire), répartis en partitions verrouillées séparément. Une
+ * entrée échue compte comme absente et sa case est réutilisée. Quand une
+ * partition atteint sa charge maximale, elle est reconstruite avec ses seules
+ * entrées valides ; si elle reste trop pleine, les plus proches de l'échéance
+ * sont oubliées : la fenêtre raccourcit plutôt que la mémoire ne grandisse.
+ * <p>
+ * Deux envois différents de même empreinte (probabilité de l'ordre de n / 2^64)
+ * seraient pris l'un pour la répétition de l'autre.
+ */
+final class DedupWindow {
+
+    private static final int SHARDS = 16;
+    private static final long EMPTY = 0L;
+
+    private final Shard[] shards;
+    private final long windowNanos;
+    private final AtomicLong duplicates;
+
+    /**
+     * @param windowSeconds Durée pendant laquelle un envoi est retenu
+     * @param maxEntries    Nombre d'envois retenus au plus, toutes partitions confondues
+     */
+    DedupWindow(final long windowSeconds, final int maxEntries) {
+        this.windowNanos = TimeUnit.SECONDS.toNanos(Math.max(1, windowSeconds));
+        final int perShard = Math.max(16, maxEntries / SHARDS);
+        this.shards = new Shard[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(perShard);
+        }
+        this.duplicates = new AtomicLong();
+    }
+
+    /**
+     * Retient un envoi s'il ne l'est pas déjà.
+     *
+     * @param senderUserId    L'expéditeur
+     * @param clientMessageId L'identifiant attribué par son client (null : envoi non identifié, toujours nouveau)
+     * @return false si le même envoi a déjà été vu dans la fenêtre
+     */
+    boolean add(final long senderUserId, final UUID clientMessageId) {
+        if (clientMessageId == null) {
+            return true;
+        }
+        final long fingerprint = fingerprint(senderUserId, clientMessageId);
+        final Shard shard = shards[(int) (fingerprint >>> 60) & (SHARDS - 1)];
+        if (!shard.add(fingerprint, System.nanoTime(), windowNanos)) {
+            duplicates.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Les envois répétés reconnus depuis le démarrage
+     */
+    long getDuplicates() {
+        return duplicates.get();
+    }
+
+    private static long fingerprint(final long senderUserId, final UUID id) {
+        long h = mix(senderUserId ^ 0x9E3779B97F4A7C15L);
+        h = mix(h ^ id.getMostSignificantBits());
+        h = mix(h ^ id.getLeastSignificantBits());
+        // 0 marque une case vide
+        return h != EMPTY ? h : 1L;
+    }
+
+    // Finaliseur de SplitMix64 : chaque bit d'entrée influe sur tous les bits de sortie
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static final class Shard {
+        private final int maxEntries;
+        // Protégés par this ; capacité double de la charge maximale (puissance de deux)
+        private final long[] fingerprints;
+        private final long[] expiries;
+        private final int mask;
+        // Cases occupées, entrées échues comprises
+        private int used;
+
+        Shard(final int maxEntries) {
+            final int capacity = Integer.highestOneBit(Math.max(16, maxEntries) * 2 - 1) << 1;
+            this.maxEntries = capacity / 2;
+            this.fingerprints = new long[capacity];
+            this.expiries = new long[capacity];
+            this.mask = capacity - 1;
+        }
+
+        synchronized boolean add(final long fingerprint, final long now, final long windowNanos) {
+            int reusable = -1;
+            int slot = (int) fingerprint & mask;
+            while (fingerprints[slot] != EMPTY) {
+                final boolean expired = expiries[slot] - now <= 0;
+                if (fingerprints[slot] == fingerprint) {
+                    if (!expired) {
+                        return false;
+                    }
+                    // Même envoi, mais hors de la fenêtre : nouveau départ
+                    expiries[slot] = now + windowNanos;
+                    return true;
+                }
+                if (expired && reusable < 0) {
+                    reusable = slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (reusable >= 0) {
+                // La suite de la chaîne ne contient pas l'empreinte : la case échue peut la prendre
+                fingerprints[reusable] = fingerprint;
+                expiries[reusable] = now + windowNanos;
+                return true;
+            }
+            fingerprints[slot] = fingerprint;
+            expiries[slot] = now + windowNanos;
+            if (++used > maxEntries) {
+                rebuild(now);
+            }
+            return true;
+        }
+
+        /**
+         * Réinsère les seules entrées valides ; au-delà de la moitié de la
+         * charge maximale, garde les plus récentes.
+         */
+        private void rebuild(final long now) {
+            final long[] liveFingerprints = new long[used];
+            final long[] liveExpiries = new long[used];
+            int live = 0;
+            for (int i = 0; i < fingerprints.length; i++) {
+                if (fingerprints[i] != EMPTY && expiries[i] - now > 0) {
+                    liveFingerprints[live] = fingerprints[i];
+                    liveExpiries[live] = expiries[i];
+                    live++;
+                }
+            }
+            long cutoff = Long.MIN_VALUE;
+            if (live > maxEntries / 2) {
+                // Échéance de la plus ancienne entrée gardée (relative à now : les échéances ne débordent pas)
+                final long[] sorted = new long[live];
+                for (int i = 0; i < live; i++) {
+                    sorted[i] = liveExpiries[i] - now;
+                }
+                Arrays.sort(sorted);
+                cutoff = sorted[live - maxEntries / 2];
+            }
+            Arrays.fill(fingerprints, EMPTY);
+            used = 0;
+            for (int i = 0; i < live; i++) {
+                if (liveExpiries[i] - now < cutoff) {
+                    continue;
+                }
+                int slot = (int) liveFingerprints[i] & mask;
+                while (fingerprints[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                fingerprints[slot] = liveFingerprints[i];
+                expiries[slot] = liveExpiries[i];
+                used++;
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.example.server.broker;
+
+import java.io.IOException;
+
+import org.example.shared.model.Message;
+import org.example.shared.model.enums.MessageStatus;
+import org.example.shared.protocol.Envelope;
+import org.example.shared.protocol.EnvelopeCodec;
+import org.example.shared.protocol.Frame;
+import org.example.shared.protocol.FrameType;
+
+/**
+ * Message direct relayé sans être désérialisé : la charge reçue, tamponnée des
+ * champs attribués par le serveur, part telle quelle vers le destinataire s'il
+ * a négocié le même format de corps que l'expéditeur.
+ * <p>
+ * L'objet {@link Message} n'est construit qu'à la demande : pour l'écrire en
+ * base (par le thread d'écriture en lot) ou le réencoder dans un autre format.
+ */
+public final class ForwardedMessage {
+
+    private final EnvelopeCodec codec;
+    private final long senderUserId;
+    private final long receiverUserId;
+    private final long id;
+    private final long sequence;
+    private final byte[] payload;
+    private Message message;
+
+    private ForwardedMessage(final EnvelopeCodec codec, final long senderUserId, final long receiverUserId,
+                             final long id, final long sequence, final byte[] payload) {
+        this.codec = codec;
+        this.senderUserId = senderUserId;
+        this.receiverUserId = receiverUserId;
+        this.id = id;
+        this.sequence = sequence;
+        this.payload = payload;
+    }
+
+    /**
+     * @param codec    Codec de la connexion de l'expéditeur, qui a produit le corps
+     * @param envelope Message direct reçu en trame
+     * @param id       Identifiant attribué par le serveur, clé du message en base
+     * @param sequence Rang du message dans la conversation, 0 si la numérotation est indisponible
+     */
+    public static ForwardedMessage stamp(final EnvelopeCodec codec, final Envelope envelope, final long id,
+                                         final long sequence) throws IOException {
+        final byte[] payload = codec.stamp(envelope, id, System.currentTimeMillis(), MessageStatus.DELIVERED,
+                sequence);
+        return new ForwardedMessage(codec, envelope.getSenderUserId(), envelope.getReceiverUserId(), id, sequence,
+                payload);
+    }
+
+    /**
+     * @param sequence Rang attribué par la partition de la conversation, 0 s'il est indisponible
+     * @return Le même message, son rang tamponné dans la charge (qui n'a pas encore été transmise)
+     */
+    public ForwardedMessage withSequence(final long sequence) {
+        EnvelopeCodec.restampSequence(payload, sequence);
+        return new ForwardedMessage(codec, senderUserId, receiverUserId, id, sequence, payload);
+    }
+
+    public long getSenderUserId() {
+        return senderUserId;
+    }
+
+    public long getReceiverUserId() {
+        return receiverUserId;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return Le rang du message dans la conversation, 0 s'il n'est pas numéroté
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return La charge de trame à transmettre telle quelle
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return true si un destinataire utilisant ce codec peut lire la charge sans réencodage
+     */
+    public boolean isReadableWith(final EnvelopeCodec recipientCodec) {
+        return recipientCodec.getBodyCodec().getName().equals(codec.getBodyCodec().getName());
+    }
+
+    /**
+     * @return Le message complet, décodé au premier appel
+     */
+    public synchronized Message toMessage() throws IOException {
+        if (message == null) {
+            message = codec.readMessage(codec.decode(
+                    new Frame(FrameType.MESSAGE.getCode(), payload, 0, payload.length)));
+        }
+        return message;
+    }
+}
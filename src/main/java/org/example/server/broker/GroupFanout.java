@@ -0,0 +1,117 @@
+package org.example.server.broker;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.example.shared.model.Message;
+import org.example.shared.model.enums.MessageStatus;
+import org.example.shared.protocol.BodyCodec;
+import org.example.shared.protocol.EnvelopeCodec;
+
+/**
+ * Message de groupe en cours de diffusion : le corps est encodé une seule fois
+ * par format négocié, puis partagé par toutes les connexions des membres. Seul
+ * le destinataire diffère d'un membre à l'autre ; il part dans l'en-tête de
+ * routage tamponné (une cinquantaine d'octets par membre).
+ * <p>
+ * Une copie {@link Message} par membre n'est construite que pour les clients v1.
+ * Le message est stocké une seule fois, avec son rang dans le groupe
+ * ({@link #takeStoredCopy()}) : il sert d'historique et de file d'attente aux
+ * membres qui ne le reçoivent pas en direct.
+ */
+public final class GroupFanout {
+
+    private final Message message;
+    private final long timestampMillis;
+    // Corps encodé par nom de format ; jamais modifié une fois publié
+    private final Map<String, byte[]> bodies;
+    private final AtomicBoolean stored;
+
+    /**
+     * @param message  Le message reçu de l'expéditeur ; il ne doit plus être modifié
+     * @param sequence Son rang dans le groupe, ou 0 si la numérotation est indisponible
+     */
+    public GroupFanout(final Message message, final long sequence) {
+        this.message = message;
+        this.timestampMillis = System.currentTimeMillis();
+        // Horodatage serveur, comme pour les messages directs relayés
+        message.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestampMillis), ZoneId.systemDefault()));
+        message.setSequence(sequence);
+        this.bodies = new ConcurrentHashMap<>(2);
+        this.stored = new AtomicBoolean();
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public long getGroupId() {
+        return message.getGroupId();
+    }
+
+    public long getSenderUserId() {
+        return message.getSenderUserId();
+    }
+
+    /**
+     * @return Le rang du message dans le groupe, 0 s'il n'est pas numéroté
+     */
+    public long getSequence() {
+        return message.getSequence();
+    }
+
+    /**
+     * @return Le corps encodé avec ce format, partagé entre tous les membres qui l'ont négocié
+     */
+    public byte[] bodyFor(final BodyCodec codec) throws IOException {
+        final byte[] body = bodies.get(codec.getName());
+        if (body != null) {
+            return body;
+        }
+        try {
+            return bodies.computeIfAbsent(codec.getName(), name -> {
+                try {
+                    return codec.encode(message);
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return L'en-tête de routage propre à ce membre, à placer devant le corps partagé
+     */
+    public byte[] headerFor(final long receiverUserId) {
+        return EnvelopeCodec.stampedHeader(message.getSenderUserId(), receiverUserId, message.getGroupId(),
+                message.getId(), timestampMillis, MessageStatus.DELIVERED, message.getSequence());
+    }
+
+    /**
+     * @return Une copie complète du message pour ce membre (client v1 ou persistance)
+     */
+    public Message copyFor(final long receiverUserId) {
+        return Message.copyForReceiver(message, receiverUserId);
+    }
+
+    /**
+     * Le premier appel obtient la copie à stocker (sans destinataire, avec son
+     * rang) ; les suivants, null.
+     */
+    public Message takeStoredCopy() {
+        if (!stored.compareAndSet(false, true)) {
+            return null;
+        }
+        final Message copy = Message.copyForReceiver(message, 0);
+        copy.setReceiverUserId(null);
+        return copy;
+    }
+}
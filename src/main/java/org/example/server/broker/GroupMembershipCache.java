@@ -0,0 +1,228 @@
+package org.example.server.broker;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+import org.example.shared.dao.GroupDAO;
+import org.example.shared.dao.GroupMembershipDAO;
+import org.example.shared.dao.GroupMembershipDAO.MembershipChange;
+
+/**
+ * Cache des appartenances aux groupes, dans les deux sens (groupe vers membres,
+ * utilisateur vers groupes), pour que la diffusion d'un message de groupe ne
+ * passe pas par la base en régime établi.
+ * <p>
+ * Les entrées sont chargées à la première demande et le nombre d'entrées est
+ * borné (les moins récemment lues sont évincées). Une modification des
+ * membres invalide précisément le groupe et l'utilisateur concernés. Les
+ * appartenances sont modifiées en base par les clients : le serveur relit le
+ * journal que le DAO tient de chaque ajout et retrait ({@link #pollChanges}),
+ * sans dépendre d'une notification du client, qui ne fait qu'avancer
+ * l'invalidation (voir {@link MessageBroker#onGroupMembershipChanged}). Il
+ * relit aussi les groupes de chaque utilisateur à sa connexion
+ * ({@link #reconcile}) ; une durée de vie bornée rattrape le reste (base
+ * modifiée à la main).
+ * <p>
+ * Un chargement en cours pendant une invalidation n'est pas mis en cache : il
+ * pourrait précéder la modification.
+ */
+final class GroupMembershipCache {
+
+    // Modifications lues par requête sur le journal
+    private static final int CHANGE_PAGE = 500;
+    // Durée de conservation du journal, et intervalle entre deux purges
+    private static final long CHANGE_RETENTION_HOURS = 24;
+    private static final long PRUNE_INTERVAL_NANOS = 3_600_000_000_000L;
+
+    private final GroupDAO groupDAO;
+    private final GroupMembershipDAO membershipDAO;
+    private final long ttlNanos;
+    // Lus et modifiés par une seule relecture du journal à la fois ; -1 avant la première
+    private long lastChangeId = -1;
+    private long lastPruneNanos;
+    // Protégés par this ; aucun accès à la base sous le verrou
+    private final Map<Long, Entry> membersByGroup;
+    private final Map<Long, Entry> groupsByUser;
+    private long invalidations;
+
+    private long hits;
+    private long misses;
+
+    GroupMembershipCache(final GroupDAO groupDAO, final GroupMembershipDAO membershipDAO, final int maxEntries,
+                         final long ttlSeconds) {
+        this.groupDAO = groupDAO;
+        this.membershipDAO = membershipDAO;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.membersByGroup = new LruMap(maxEntries);
+        this.groupsByUser = new LruMap(maxEntries);
+    }
+
+    /**
+     * @return Les IDs des membres du groupe (liste immuable)
+     */
+    List<Long> membersOf(final long groupId) {
+        return get(membersByGroup, groupId, groupDAO::getMembersForGroup);
+    }
+
+    /**
+     * @return Les IDs des groupes de l'utilisateur (liste immuable)
+     */
+    List<Long> groupsOf(final long userId) {
+        return get(groupsByUser, userId, groupDAO::getGroupIdsForUser);
+    }
+
+    /**
+     * Oublie les membres du groupe et les groupes de l'utilisateur.
+     */
+    synchronized void invalidate(final long groupId, final long userId) {
+        membersByGroup.remove(groupId);
+        groupsByUser.remove(userId);
+        invalidations++;
+    }
+
+    /**
+     * Invalide chaque groupe et membre modifiés depuis la relecture précédente
+     * du journal des appartenances, quel que soit le client qui a écrit. La
+     * première relecture repère la fin du journal et vide le cache : ce qui a
+     * pu être chargé avant ne la précède pas forcément.
+     * Accède à la base : jamais depuis une partition, et un appel à la fois.
+     *
+     * @return Le nombre de modifications prises en compte
+     */
+    int pollChanges() throws SQLException {
+        if (lastChangeId < 0) {
+            lastChangeId = membershipDAO.getLastChangeId();
+            lastPruneNanos = System.nanoTime();
+            clear();
+            return 0;
+        }
+        int applied = 0;
+        List<MembershipChange> changes;
+        do {
+            changes = membershipDAO.getChangesSince(lastChangeId, CHANGE_PAGE);
+            for (final MembershipChange change : changes) {
+                invalidate(change.getGroupId(), change.getUserId());
+                lastChangeId = change.getId();
+                applied++;
+            }
+        } while (changes.size() == CHANGE_PAGE);
+        if (System.nanoTime() - lastPruneNanos >= PRUNE_INTERVAL_NANOS) {
+            lastPruneNanos = System.nanoTime();
+            membershipDAO.deleteChangesBefore(LocalDateTime.now().minusHours(CHANGE_RETENTION_HOURS));
+        }
+        return applied;
+    }
+
+    private synchronized void clear() {
+        membersByGroup.clear();
+        groupsByUser.clear();
+        invalidations++;
+    }
+
+    /**
+     * Relit les groupes de l'utilisateur et oublie les membres en cache des
+     * groupes où son appartenance a changé depuis leur chargement : un ajout
+     * ou un retrait fait sans notification (client v1, client coupé avant de
+     * prévenir) est pris en compte sans attendre la durée de vie des entrées.
+     * Accède à la base : jamais depuis une partition.
+     */
+    void reconcile(final long userId) {
+        final List<Long> previous;
+        final long seenInvalidations;
+        synchronized (this) {
+            final Entry entry = groupsByUser.remove(userId);
+            previous = entry != null ? entry.ids : List.of();
+            misses++;
+            seenInvalidations = invalidations;
+        }
+        final List<Long> current = List.copyOf(groupDAO.getGroupIdsForUser(userId));
+        synchronized (this) {
+            final boolean fresh = invalidations == seenInvalidations;
+            boolean changed = false;
+            for (final Long groupId : current) {
+                // Ajouté depuis le chargement des membres
+                final Entry members = membersByGroup.get(groupId);
+                if (members != null && !members.ids.contains(userId)) {
+                    membersByGroup.remove(groupId);
+                    changed = true;
+                }
+            }
+            for (final Long groupId : previous) {
+                // Retiré depuis
+                if (!current.contains(groupId) && membersByGroup.remove(groupId) != null) {
+                    changed = true;
+                }
+            }
+            if (changed) {
+                invalidations++;
+            }
+            if (fresh && !current.isEmpty()) {
+                groupsByUser.put(userId, new Entry(current, System.nanoTime()));
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        final long lookups = hits + misses;
+        return "hits=" + hits
+                + ", misses=" + misses
+                + String.format(", taux=%.1f%%", lookups == 0 ? 0 : 100.0 * hits / lookups)
+                + ", invalidations=" + invalidations
+                + ", groupes=" + membersByGroup.size()
+                + ", utilisateurs=" + groupsByUser.size();
+    }
+
+    private List<Long> get(final Map<Long, Entry> entries, final long key, final LongFunction<List<Long>> loader) {
+        final long seenInvalidations;
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry != null && System.nanoTime() - entry.loadedAt < ttlNanos) {
+                hits++;
+                return entry.ids;
+            }
+            misses++;
+            seenInvalidations = invalidations;
+        }
+        final List<Long> ids = List.copyOf(loader.apply(key));
+        synchronized (this) {
+            // Liste vide : groupe supprimé ou erreur SQL (le DAO la masque), à ne pas retenir
+            if (!ids.isEmpty() && invalidations == seenInvalidations) {
+                entries.put(key, new Entry(ids, System.nanoTime()));
+            }
+        }
+        return ids;
+    }
+
+    private static final class Entry {
+        private final List<Long> ids;
+        private final long loadedAt;
+
+        Entry(final List<Long> ids, final long loadedAt) {
+            this.ids = ids;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * Table en ordre d'accès, qui évince l'entrée la moins récemment lue au-delà de sa capacité.
+     */
+    private static final class LruMap extends LinkedHashMap<Long, Entry> {
+        private static final long serialVersionUID = 1L;
+        private final int maxEntries;
+
+        LruMap(final int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -1,79 +1,425 @@
 package org.example.server.broker;
 
 import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.example.server.ClientHandler;
+import org.example.server.ServerConfig;
+import org.example.server.TimingWheel;
 import org.example.server.UdpCallServer;
+import org.example.server.transport.OutboundOverflowException;
+import org.example.shared.dao.GroupCursorDAO;
 import org.example.shared.dao.GroupDAO;
+import org.example.shared.dao.GroupMembershipDAO;
 import org.example.shared.dao.MessageDAO;
 import org.example.shared.model.CallSignal;
 import org.example.shared.model.Message;
+import org.example.shared.model.Receipt;
 import org.example.shared.model.enums.MessageStatus;
+import org.example.shared.protocol.ControlCommand;
+import org.example.shared.protocol.Envelope;
+import org.example.shared.protocol.EnvelopeCodec;
 
+/**
+ * Routage des messages entre sessions, réparti en partitions (une par cœur par
+ * défaut). Chaque utilisateur est attribué à une partition selon son ID ; sa
+ * boîte n'est lue et modifiée que par le thread de cette partition, sans verrou.
+ * <p>
+ * Les méthodes publiques, appelées depuis les threads des connexions, ne font
+ * que soumettre une commande à la partition du destinataire : l'ordre des
+ * messages d'un expéditeur vers un destinataire est celui de la soumission.
+ * <p>
+ * Chaque message reçoit un rang dans sa conversation (paire d'utilisateurs ou
+ * groupe) et est écrit en base, délivré ou non : la table des messages est
+ * l'historique que les clients relisent par rang pour se resynchroniser. Un
+ * message de groupe n'est stocké qu'une fois, et chaque membre a un curseur
+ * (dernier rang délivré) qui suffit à retrouver ce qui lui manque à la reconnexion.
+ * <p>
+ * Une partition n'attend jamais la base : ses écritures passent par
+ * l'écrivain en lot (si sa file reste pleine, l'écriture est refusée après un
+ * court délai plutôt que de bloquer la partition), et ses lectures (pages de rejeu, curseurs) par un petit
+ * pool d'entrées-sorties dont le résultat revient à la partition comme une
+ * nouvelle commande.
+ */
 public class MessageBroker {
-    private static MessageBroker instance;
-    private final Map<Long, MessageQueue> userQueues;
+    private final List<BrokerShard<MessageQueue>> shards;
     private final MessageDAO messageDAO;
-    final GroupDAO groupDAO;
+    private final GroupCursorDAO groupCursorDAO;
+    private final QueuedMessageWriter queuedWriter;
+    // Lectures en base pour les partitions
+    private final ExecutorService io;
+    private final GroupMembershipCache groupMembers;
+    private final ConversationSequences sequences;
+    private final DedupWindow sentMessages;
+    private final TypingIndicators typing;
+    private final ReceiptMarks receiptMarks;
+    private final int replayPageSize;
 
-    public static synchronized MessageBroker getInstance() {
-        if (instance == null) {
-            instance = new MessageBroker();
+    // Singleton initialisé paresseusement par la JVM, sans verrou (pas d'épinglage des threads virtuels)
+    private static class Holder {
+        private static final MessageBroker INSTANCE = new MessageBroker(ServerConfig.brokerShards());
+    }
+
+    public static MessageBroker getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private MessageBroker(final int shardCount) {
+        this(shardCount, new MessageDAO(), new GroupCursorDAO(), new GroupDAO(), new GroupMembershipDAO());
+    }
+
+    /**
+     * Broker sur des DAO donnés (tests).
+     */
+    MessageBroker(final int shardCount, final MessageDAO messageDAO, final GroupCursorDAO groupCursorDAO,
+                  final GroupDAO groupDAO, final GroupMembershipDAO membershipDAO) {
+        final int count = Math.max(1, shardCount);
+        final List<BrokerShard<MessageQueue>> partitions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            partitions.add(new BrokerShard<>(i));
+        }
+        this.shards = List.copyOf(partitions);
+        this.messageDAO = messageDAO;
+        this.groupCursorDAO = groupCursorDAO;
+        this.queuedWriter = new QueuedMessageWriter(messageDAO, groupCursorDAO, ServerConfig.persistenceBatchSize(),
+                ServerConfig.persistenceFlushMillis(), ServerConfig.persistenceMaxPending(),
+                ServerConfig.persistenceEnqueueTimeoutMillis(), ServerConfig.persistenceSync());
+        this.groupMembers = new GroupMembershipCache(groupDAO, membershipDAO, ServerConfig.groupCacheMaxEntries(),
+                ServerConfig.groupCacheTtlSeconds());
+        this.sentMessages = new DedupWindow(ServerConfig.dedupWindowSeconds(), ServerConfig.dedupMaxEntries());
+        this.typing = new TypingIndicators(new TypingIndicators.Sink() {
+            @Override
+            public void toUser(final long userId, final ControlCommand command) {
+                deliverNotice(userId, command);
+            }
+
+            @Override
+            public void toUsers(final List<Long> userIds, final ControlCommand command, final long skipUserId) {
+                deliverNotice(userIds, command, skipUserId);
+            }
+        }, ServerConfig.typingIntervalMillis(), ServerConfig.typingTtlMillis(), ServerConfig.typingMaxNames());
+        this.receiptMarks = new ReceiptMarks(ServerConfig.receiptMaxConversations());
+        this.replayPageSize = Math.max(1, ServerConfig.replayPageSize());
+        final AtomicInteger ioThreads = new AtomicInteger();
+        this.io = Executors.newFixedThreadPool(Math.max(1, ServerConfig.brokerIoThreads()), task -> {
+            final Thread thread = new Thread(task, "chat-broker-io-" + ioThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sequences = new ConversationSequences(messageDAO, queuedWriter, io, shards,
+                ServerConfig.sequenceCacheMaxConversations());
+        final long statsSeconds = ServerConfig.brokerStatsSeconds();
+        if (statsSeconds > 0) {
+            scheduleStats(statsSeconds * 1000);
         }
-        return instance;
+        final long membershipPollMillis = ServerConfig.groupCacheChangePollMillis();
+        if (membershipPollMillis > 0) {
+            scheduleMembershipPoll(membershipPollMillis);
+        }
+    }
+
+    /**
+     * Relit le journal des appartenances aux groupes à intervalle régulier,
+     * sur le pool d'entrées-sorties ; la relecture suivante n'est planifiée
+     * qu'une fois la précédente terminée.
+     */
+    private void scheduleMembershipPoll(final long periodMillis) {
+        TimingWheel.getInstance().schedule(() -> io.execute(() -> {
+            try {
+                groupMembers.pollChanges();
+            } catch (final SQLException e) {
+                System.err.println("Error reading group membership changes: " + e.getMessage());
+            } finally {
+                scheduleMembershipPoll(periodMillis);
+            }
+        }), periodMillis);
+    }
+
+    /**
+     * Journalise les compteurs du broker à intervalle régulier, depuis la roue temporelle.
+     */
+    private void scheduleStats(final long periodMillis) {
+        TimingWheel.getInstance().schedule(() -> {
+            System.out.println("Broker stats: group cache " + groupMembers + "; persistence "
+                    + queuedWriter.getStats());
+            scheduleStats(periodMillis);
+        }, periodMillis);
     }
 
-    private MessageBroker() {
-        this.userQueues = new ConcurrentHashMap<>();
-        this.messageDAO = new MessageDAO();
-        this.groupDAO = new GroupDAO();
+    private BrokerShard<MessageQueue> shardOf(final long userId) {
+        // Mélange des bits : des IDs séquentiels se répartissent uniformément
+        final long mixed = userId * 0x9E3779B97F4A7C15L;
+        return shards.get((int) ((mixed >>> 32) % shards.size()));
     }
 
     public void registerListener(final long userId, final ClientHandler listener) {
-        final MessageQueue queue = getOrCreateQueue(userId);
-        queue.setListener(listener);
-        queue.loadPersistedMessages();
-        queue.deliverPendingMessages();
+        // Appartenances modifiées pendant son absence, peut-être sans notification
+        io.execute(() -> groupMembers.reconcile(userId));
+        final BrokerShard<MessageQueue> shard = shardOf(userId);
+        shard.execute(() -> {
+            final MessageQueue queue = shard.mailboxes().computeIfAbsent(userId, MessageQueue::new);
+            // Les messages arrivant pendant le rejeu passent par QUEUED pour garder l'ordre
+            queue.spilling = true;
+            queue.listener = listener;
+            queue.replayPersistedMessages();
+        });
     }
 
-    public void unregisterListener(final long userId) {
-        final MessageQueue queue = userQueues.remove(userId);
-        if (queue != null) {
-            queue.setListener(null);
-            queue.clearQueue();
-        }
+    /**
+     * Désinscrit la session, sauf si l'utilisateur s'est déjà reconnecté sur une
+     * autre connexion (session morte fermée après coup). Attend que la partition
+     * de l'utilisateur ait traité les commandes déjà soumises.
+     *
+     * @param userId   L'ID de l'utilisateur
+     * @param listener La session qui se ferme
+     * @return true si c'était la session courante de l'utilisateur
+     */
+    public boolean unregisterListener(final long userId, final ClientHandler listener) {
+        final BrokerShard<MessageQueue> shard = shardOf(userId);
+        return shard.call(() -> {
+            final MessageQueue queue = shard.mailboxes().get(userId);
+            if (queue == null || queue.listener != listener) {
+                return false;
+            }
+            queue.listener = null;
+            queue.saveGroupCursors();
+            shard.mailboxes().remove(userId);
+            return true;
+        });
     }
 
-    public void sendMessage(final Message message) {
+    /**
+     * Appelé quand la connexion d'un client lent a rattrapé son retard, ou a
+     * écrit ses dernières trames rejouées : rejoue les messages mis en attente
+     * pendant qu'il était au-dessus des plafonds ou que le rejeu s'écrivait.
+     *
+     * @param userId L'ID de l'utilisateur
+     */
+    public void onConsumerCaughtUp(final long userId) {
+        final BrokerShard<MessageQueue> shard = shardOf(userId);
+        shard.execute(() -> {
+            final MessageQueue queue = shard.mailboxes().get(userId);
+            // Une page déjà planifiée poursuit le rejeu en cours
+            if (queue != null && queue.spilling && !queue.replayScheduled) {
+                queue.replayPersistedMessages();
+            }
+        });
+    }
+
+    /**
+     * Route un message direct ou de groupe. Un renvoi d'un message déjà routé
+     * (même identifiant client, dans la fenêtre de déduplication) est ignoré.
+     *
+     * @return false si le message était un renvoi ignoré
+     */
+    public boolean sendMessage(final Message message) {
+        if (isDuplicate(message.getSenderUserId(), message.getClientMessageId())) {
+            return false;
+        }
         if (message.isGroupMessage()) {
-            final List<Long> groupMemberIds = groupDAO.getMembersForGroup(message.getGroupId());
+            final long groupId = message.getGroupId();
+            final List<Long> groupMemberIds = membersForSender(groupId, message.getSenderUserId());
+            // Une seule commande par partition concernée, qui sert tous ses membres (expéditeur
+            // compris : son curseur avance sur ses propres messages)
+            final Map<BrokerShard<MessageQueue>, List<Long>> membersByShard = new HashMap<>();
             for (final Long memberId : groupMemberIds) {
-                // Ignorer l'expéditeur
-                if (!memberId.equals(message.getSenderUserId())) {
-                    final MessageQueue queue = getOrCreateQueue(memberId);
-                    // Créer une copie du message pour ce destinataire
-                    Message messageForRecipient = Message.copyForReceiver(message, memberId);
-                    // Essayer de délivrer et, si ça échoue, persister le message
-                    if (!queue.tryDeliver(messageForRecipient)) {
-                        persistMessage(messageForRecipient);
-                    } else {
-                        messageForRecipient.setStatus(MessageStatus.DELIVERED);
-                    }
+                membersByShard.computeIfAbsent(shardOf(memberId), shard -> new ArrayList<>()).add(memberId);
+            }
+            final CompletableFuture<Boolean> stored = new CompletableFuture<>();
+            // Rang attribué, message confié à l'écrivain et commandes soumises par la partition du
+            // groupe : l'écrivain et chaque partition voient ses messages dans l'ordre de leur rang
+            sequences.group(groupId, sequence -> {
+                if (sequence == null) {
+                    fanOut(new GroupFanout(message, 0), membersByShard);
+                    stored.complete(true);
+                    return;
                 }
+                final GroupFanout fanout = new GroupFanout(message, sequence.next());
+                storeOnce(fanout).thenAccept(stored::complete);
+                fanOut(fanout, membersByShard);
+            });
+            if (queuedWriter.isSynchronous()) {
+                // Sur le thread de l'expéditeur : les autres messages du groupe partent pendant l'écriture
+                stored.join();
             }
         } else {
-            final MessageQueue queue = userQueues.get(message.getReceiverUserId());
-            if (queue != null && queue.tryDeliver(message)) {
-                message.setStatus(MessageStatus.DELIVERED);
-            } else {
+            sequences.direct(message.getSenderUserId(), message.getReceiverUserId(), sequence -> {
+                message.setSequence(sequence != null ? sequence.next() : 0);
+                deliver(message);
+                acknowledgeSent(message.getSenderUserId(), message.getClientMessageId(), message.getSequence());
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Membres du groupe, relus si les deux sens du cache ne s'accordent pas sur
+     * l'expéditeur : membre d'après ses groupes (relus à sa connexion), absent
+     * des membres en cache, il vient d'y entrer.
+     */
+    private List<Long> membersForSender(final long groupId, final long senderUserId) {
+        final List<Long> members = groupMembers.membersOf(groupId);
+        if (members.contains(senderUserId) || !groupMembers.groupsOf(senderUserId).contains(groupId)) {
+            return members;
+        }
+        groupMembers.invalidate(groupId, senderUserId);
+        return groupMembers.membersOf(groupId);
+    }
+
+    private void deliver(final Message message) {
+        final long receiverId = message.getReceiverUserId();
+        final BrokerShard<MessageQueue> shard = shardOf(receiverId);
+        shard.execute(() -> {
+            final MessageQueue queue = shard.mailboxes().get(receiverId);
+            if (queue == null) {
                 persistMessage(message);
+            } else {
+                queue.deliverOrQueue(message);
             }
+        });
+    }
+
+    /**
+     * Relaie un message direct reçu en trame sans désérialiser son corps
+     * (voir {@link ForwardedMessage}) : son rang est tamponné dans l'en-tête, et
+     * il n'est décodé que par l'écrivain en lot.
+     *
+     * @param codec    Codec de la connexion de l'expéditeur
+     * @param envelope Message direct reçu en trame
+     * @param id       Identifiant attribué au message par le serveur
+     * @return false si le message était un renvoi ignoré
+     */
+    public boolean forwardMessage(final EnvelopeCodec codec, final Envelope envelope, final long id)
+            throws IOException {
+        if (isDuplicate(envelope.getSenderUserId(), envelope.getClientMessageId())) {
+            return false;
         }
+        // Copiée ici : le tampon de la trame ne survit pas à l'appel
+        final ForwardedMessage unsequenced = ForwardedMessage.stamp(codec, envelope, id, 0);
+        final UUID clientMessageId = envelope.getClientMessageId();
+        sequences.direct(envelope.getSenderUserId(), envelope.getReceiverUserId(), sequence -> {
+            final ForwardedMessage forwarded = sequence != null
+                    ? unsequenced.withSequence(sequence.next()) : unsequenced;
+            forward(forwarded);
+            acknowledgeSent(forwarded.getSenderUserId(), clientMessageId, forwarded.getSequence());
+        });
+        return true;
+    }
+
+    /**
+     * Donne à l'expéditeur le rang de son message direct (voir
+     * {@link ControlCommand#SENT}), qui lui permet d'y appliquer les accusés.
+     */
+    private void acknowledgeSent(final long senderUserId, final UUID clientMessageId, final long sequence) {
+        if (clientMessageId != null && sequence > 0) {
+            deliverNotice(senderUserId, new ControlCommand(ControlCommand.SENT)
+                    .withParam(ControlCommand.PARAM_CLIENT_MESSAGE_ID, clientMessageId.toString())
+                    .withParam(ControlCommand.PARAM_SEQ, String.valueOf(sequence)));
+        }
+    }
+
+    private boolean isDuplicate(final long senderUserId, final UUID clientMessageId) {
+        if (sentMessages.add(senderUserId, clientMessageId)) {
+            return false;
+        }
+        System.out.println("Ignoring duplicate message " + clientMessageId + " from user " + senderUserId);
+        return true;
+    }
+
+    /**
+     * @return Les renvois de messages déjà routés, reconnus et ignorés depuis le démarrage
+     */
+    public long getDuplicateSends() {
+        return sentMessages.getDuplicates();
+    }
+
+    private void forward(final ForwardedMessage forwarded) {
+        final long receiverId = forwarded.getReceiverUserId();
+        final BrokerShard<MessageQueue> shard = shardOf(receiverId);
+        shard.execute(() -> {
+            final MessageQueue queue = shard.mailboxes().get(receiverId);
+            if (queue == null) {
+                persistForwarded(forwarded);
+            } else {
+                queue.forwardOrQueue(forwarded);
+            }
+        });
+    }
+
+    /**
+     * Une page de l'historique de la conversation directe entre deux
+     * utilisateurs, après le dernier rang connu du client.
+     *
+     * @param userId        L'utilisateur qui demande la synchronisation
+     * @param peerUserId    Son interlocuteur
+     * @param afterSequence Dernier rang connu du client
+     * @param limit         Taille maximale de la page
+     * @return Les messages, dans les deux sens, par rang croissant
+     */
+    public List<Message> getDirectHistory(final long userId, final long peerUserId, final long afterSequence,
+                                          final int limit) throws SQLException {
+        // Les messages confiés à l'écrivain mais pas encore en base seraient sautés
+        queuedWriter.awaitWritten();
+        return messageDAO.getDirectMessagesSince(userId, peerUserId, afterSequence, limit);
+    }
+
+    /**
+     * Comme {@link #getDirectHistory}, pour un groupe dont l'utilisateur est membre.
+     *
+     * @return Les messages adressés à l'utilisateur, par rang croissant ; aucun s'il n'est pas membre
+     */
+    public List<Message> getGroupHistory(final long userId, final long groupId, final long afterSequence,
+                                         final int limit) throws SQLException {
+        if (!groupMembers.groupsOf(userId).contains(groupId)) {
+            return List.of();
+        }
+        queuedWriter.awaitWritten();
+        final List<Message> stored = messageDAO.getGroupMessagesSince(groupId, afterSequence, limit);
+        final List<Message> messages = new ArrayList<>(stored.size());
+        for (final Message message : stored) {
+            messages.add(Message.copyForReceiver(message, userId));
+        }
+        return messages;
+    }
+
+    /**
+     * Corps encodé une fois pour tous les membres, et non une copie sérialisée par membre.
+     */
+    private void fanOut(final GroupFanout fanout, final Map<BrokerShard<MessageQueue>, List<Long>> membersByShard) {
+        membersByShard.forEach((shard, memberIds) -> shard.execute(() -> {
+            for (final Long memberId : memberIds) {
+                final MessageQueue queue = shard.mailboxes().get(memberId);
+                if (queue != null) {
+                    queue.fanOutOrQueue(fanout);
+                } else if (memberId != fanout.getSenderUserId()) {
+                    // Membre hors ligne : le message est stocké une fois pour tous (déjà fait s'il a un rang)
+                    storeOnce(fanout);
+                }
+            }
+        }));
+    }
+
+    /**
+     * Appelé quand un client a ajouté ou retiré un membre d'un groupe : la
+     * prochaine diffusion relira les membres en base sans attendre la
+     * relecture du journal des appartenances.
+     *
+     * @param groupId L'ID du groupe modifié
+     * @param userId  L'ID du membre ajouté ou retiré
+     */
+    public void onGroupMembershipChanged(final long groupId, final long userId) {
+        groupMembers.invalidate(groupId, userId);
     }
 
     /**
@@ -124,81 +470,665 @@ public class MessageBroker {
     }
 
     /**
-     * Délivre un signal d'appel à un utilisateur spécifique.
-     * 
-     * @param userId L'ID de l'utilisateur destinataire
-     * @param signal Le signal d'appel à délivrer
+     * Annonce que l'utilisateur écrit, ou a cessé d'écrire, dans sa conversation
+     * avec {@code peerUserId}. Voir {@link TypingIndicators}.
+     */
+    public void onDirectTyping(final long userId, final long peerUserId, final boolean active) {
+        if (userId != peerUserId) {
+            typing.onDirect(userId, peerUserId, active);
+        }
+    }
+
+    /**
+     * Comme {@link #onDirectTyping(long, long, boolean)}, dans un groupe dont l'utilisateur est membre.
+     */
+    public void onGroupTyping(final long userId, final long groupId, final boolean active) {
+        final List<Long> members = groupMembers.membersOf(groupId);
+        if (members.contains(userId)) {
+            typing.onGroup(userId, groupId, members, active);
+        }
+    }
+
+    /**
+     * Accusé de réception ou de lecture d'une conversation directe, en marque
+     * haute : le destinataire a reçu (ou lu) les messages de l'expéditeur
+     * jusqu'au rang donné. Relayé à l'expéditeur s'il fait avancer la marque
+     * (et que l'expéditeur est en ligne) ; une lecture est aussi reportée en base,
+     * par l'écrivain en lot.
+     *
+     * @param receiverUserId Le destinataire des messages, auteur de l'accusé
+     * @param senderUserId   Leur expéditeur
+     * @param status         DELIVERED ou READ
+     * @param upToSequence   Rang du dernier message reçu ou lu, sans trou avant lui
      */
+    public void onReceipt(final long receiverUserId, final long senderUserId, final MessageStatus status,
+                          final long upToSequence) {
+        if ((status != MessageStatus.DELIVERED && status != MessageStatus.READ) || upToSequence <= 0
+                || receiverUserId == senderUserId) {
+            return;
+        }
+        sequences.direct(senderUserId, receiverUserId, sequence -> {
+            if (sequence != null) {
+                // Un rang pas encore attribué bloquerait la marque au-dessus des messages à venir
+                advanceReceipt(receiverUserId, senderUserId, status, Math.min(upToSequence, sequence.last()));
+            }
+        });
+    }
+
+    private void advanceReceipt(final long receiverUserId, final long senderUserId, final MessageStatus status,
+                                final long upToSequence) {
+        final Receipt receipt = receiptMarks.advance(senderUserId, receiverUserId, status, upToSequence);
+        if (receipt == null) {
+            return;
+        }
+        if (status == MessageStatus.READ) {
+            queuedWriter.markRead(receipt);
+        }
+        deliverNotice(senderUserId, new ControlCommand(ControlCommand.RECEIPT)
+                .withParam(ControlCommand.PARAM_USER_ID, String.valueOf(receiverUserId))
+                .withParam(ControlCommand.PARAM_STATUS, status.name())
+                .withParam(ControlCommand.PARAM_UP_TO_SEQ, String.valueOf(receipt.getUpToSequence())));
+    }
+
+    private void deliverNotice(final long userId, final ControlCommand command) {
+        final BrokerShard<MessageQueue> shard = shardOf(userId);
+        shard.execute(() -> {
+            final MessageQueue queue = shard.mailboxes().get(userId);
+            if (queue != null) {
+                queue.tryDeliverNotice(command);
+            }
+        });
+    }
+
+    private void deliverNotice(final List<Long> userIds, final ControlCommand command, final long skipUserId) {
+        final Map<BrokerShard<MessageQueue>, List<Long>> usersByShard = new HashMap<>();
+        for (final Long userId : userIds) {
+            if (userId != skipUserId) {
+                usersByShard.computeIfAbsent(shardOf(userId), shard -> new ArrayList<>()).add(userId);
+            }
+        }
+        usersByShard.forEach((shard, ids) -> shard.execute(() -> {
+            for (final Long userId : ids) {
+                final MessageQueue queue = shard.mailboxes().get(userId);
+                if (queue != null) {
+                    queue.tryDeliverNotice(command);
+                }
+            }
+        }));
+    }
+
     private void deliverCallSignal(final long userId, final CallSignal signal) {
-        final MessageQueue queue = userQueues.get(userId);
-        if (queue != null) {
-            queue.tryDeliverCallSignal(signal);
+        final BrokerShard<MessageQueue> shard = shardOf(userId);
+        shard.execute(() -> {
+            final MessageQueue queue = shard.mailboxes().get(userId);
+            if (queue != null) {
+                queue.tryDeliverCallSignal(signal);
+            }
+        });
+    }
+
+    /**
+     * Appelé quand un message accepté par la connexion du destinataire n'a pas pu
+     * être écrit (connexion coupée entre-temps) : il repasse en QUEUED, ou, pour
+     * une copie de message de groupe, le curseur du membre recule.
+     *
+     * @param message Le message non délivré
+     */
+    public void handleDeliveryFailure(final Message message) {
+        System.err.println("Delivery failed for message " + message.getId() + " to user "
+                + message.getReceiverUserId() + ", queueing it");
+        if (message.getGroupId() != null) {
+            // Copie d'un message de groupe (rejeu ou client v1) : stocké une seule fois, c'est le
+            // curseur du membre, déjà avancé, qui doit reculer
+            if (message.getSequence() > 0 && message.getReceiverUserId() != null) {
+                rewindGroupCursor(message.getReceiverUserId(), message.getGroupId(), message.getSequence() - 1);
+            }
+        } else if (message.getSequence() > 0) {
+            // Déjà en base comme délivré (historique ou rejeu)
+            queuedWriter.requeue(message);
+        } else {
+            persistMessage(message);
         }
     }
 
-    private void persistMessage(final Message message) {
-        message.setStatus(MessageStatus.QUEUED);
-        try {
-            messageDAO.createMessage(message);
-        } catch (final Exception e) {
-            System.err.println("Failed to queue message: " + e.getMessage());
+    /**
+     * Comme {@link #handleDeliveryFailure(Message)}, pour un message relayé tel quel.
+     */
+    public void handleDeliveryFailure(final ForwardedMessage forwarded) {
+        System.err.println("Delivery failed for a forwarded message to user " + forwarded.getReceiverUserId()
+                + ", queueing it");
+        if (forwarded.getSequence() > 0) {
+            requeue(forwarded);
+        } else {
+            persistForwarded(forwarded);
         }
     }
 
-    private MessageQueue getOrCreateQueue(final long userId) {
-        return userQueues.computeIfAbsent(userId, MessageQueue::new);
+    /**
+     * Comme {@link #handleDeliveryFailure(Message)}, pour un message de groupe :
+     * il est stocké (s'il ne l'est pas déjà) et le curseur du membre recule.
+     */
+    public void handleDeliveryFailure(final GroupFanout fanout, final long receiverId) {
+        System.err.println("Delivery failed for a group message to user " + receiverId + ", queueing it");
+        storeOnce(fanout);
+        if (fanout.getSequence() > 0) {
+            rewindGroupCursor(receiverId, fanout.getGroupId(), fanout.getSequence() - 1);
+        }
     }
 
+    /**
+     * Ramène au plus au rang donné le curseur d'un membre, sur sa partition.
+     */
+    private void rewindGroupCursor(final long userId, final long groupId, final long lastDeliveredSequence) {
+        final BrokerShard<MessageQueue> shard = shardOf(userId);
+        shard.execute(() -> {
+            final MessageQueue queue = shard.mailboxes().get(userId);
+            if (queue != null) {
+                queue.rewindGroupCursor(groupId, lastDeliveredSequence);
+            } else {
+                // Déjà déconnecté : son curseur est en base, ou en route vers elle dans la file de l'écrivain
+                queuedWriter.rewindGroupCursor(userId, groupId, lastDeliveredSequence);
+            }
+        });
+    }
+
+    /**
+     * Stocke le message de groupe s'il ne l'est pas déjà.
+     *
+     * @return Le résultat de l'écriture, connu une fois le lot écrit en mode synchrone
+     */
+    private CompletableFuture<Boolean> storeOnce(final GroupFanout fanout) {
+        final Message copy = fanout.takeStoredCopy();
+        return copy != null ? persistMessage(copy) : CompletableFuture.completedFuture(true);
+    }
+
+    private void persistForwarded(final ForwardedMessage forwarded) {
+        queuedWriter.write(forwarded).thenAccept(written -> {
+            if (!written) {
+                System.err.println("Failed to queue message from user " + forwarded.getSenderUserId());
+            }
+        });
+    }
+
+    private void requeue(final ForwardedMessage forwarded) {
+        final Message message = Message.newDirectMessage(forwarded.getSenderUserId(), forwarded.getReceiverUserId(),
+                null);
+        message.setId(forwarded.getId());
+        message.setSequence(forwarded.getSequence());
+        queuedWriter.requeue(message);
+    }
+
+    /**
+     * Confie le message à l'écrivain en lot, sans attendre : appelé depuis les
+     * partitions. Un échec n'est connu qu'en mode synchrone
+     * (voir {@link ServerConfig#persistenceSync()}), une fois le lot écrit.
+     *
+     * @return true une fois le message écrit (dès sa mise en file en mode asynchrone)
+     */
+    private CompletableFuture<Boolean> persistMessage(final Message message) {
+        message.setStatus(MessageStatus.QUEUED);
+        final CompletableFuture<Boolean> written = queuedWriter.write(message);
+        written.thenAccept(ok -> {
+            if (!ok) {
+                System.err.println("Failed to queue message from user " + message.getSenderUserId());
+            }
+        });
+        return written;
+    }
+
+    /**
+     * Boîte d'un utilisateur, confinée au thread de sa partition.
+     */
     private class MessageQueue {
         private final long userId;
-        private final BlockingQueue<Message> messages;
         private ClientHandler listener;
+        // Client lent ou rejeu en cours : les nouveaux messages passent par QUEUED
+        private boolean spilling;
+        private long spilledCount;
+        // Rang du dernier message délivré par groupe, chargé au premier rejeu
+        private Map<Long, Long> groupCursors;
+        private final Set<Long> dirtyGroupCursors;
+        // Rang avant le premier message de groupe dont l'écriture a échoué : le curseur ne le dépasse
+        // plus pendant la session, même si des messages suivants sont délivrés entre-temps
+        private final Map<Long, Long> groupCursorFloors;
+        // Rejeu en cours : chaîne de commandes (une par page) et position atteinte dans chaque file
+        private long replayGeneration;
+        private long replayedCount;
+        private long replayAfterMessageId;
+        private long replayAfterGroupId;
+        private long replayAfterGroupSequence;
+        // Page en cours de lecture sur le pool d'entrées-sorties
+        private boolean replayScheduled;
+        // Messages mis en attente pendant cette lecture : elle a pu les manquer, une autre page suivra
+        private boolean spilledWhileLoading;
+        private long replayRewindTo;
+        private long replayRewindGroupId;
+        private long replayRewindGroupSequence;
 
         MessageQueue(final long userId) {
             this.userId = userId;
-            this.messages = new LinkedBlockingQueue<>();
+            this.dirtyGroupCursors = new HashSet<>();
+            this.groupCursorFloors = new HashMap<>();
+            this.replayRewindTo = Long.MAX_VALUE;
+            this.replayRewindGroupId = Long.MAX_VALUE;
+        }
+
+        /**
+         * Délivre le message en direct, sauf si des messages plus anciens sont
+         * en attente pour ce client : il est alors persisté à leur suite.
+         * <p>
+         * Un message numéroté est ajouté à l'historique comme délivré avant
+         * l'envoi : s'il échoue, même après coup, la remise en attente le suit
+         * dans la file de l'écrivain.
+         *
+         * @return true si le message a été confié à la connexion du client
+         */
+        boolean deliverOrQueue(final Message message) {
+            final boolean recorded = !spilling && message.getSequence() > 0;
+            if (recorded) {
+                final Message delivered = Message.copyForReceiver(message, userId);
+                delivered.setStatus(MessageStatus.DELIVERED);
+                queuedWriter.append(delivered);
+            }
+            if (!spilling && tryDeliver(message)) {
+                message.setStatus(MessageStatus.DELIVERED);
+                return true;
+            }
+            if (spilling) {
+                onSpilled(message.getId());
+            }
+            if (recorded) {
+                queuedWriter.requeue(message);
+            } else {
+                persistMessage(message);
+            }
+            return false;
+        }
+
+        /**
+         * Les identifiants sont attribués à la réception, avant le passage par
+         * la partition : un message mis en attente pendant le rejeu peut avoir
+         * un identifiant inférieur à la position atteinte. Le rejeu recule alors
+         * juste avant lui (les messages déjà rejoués ne sont plus en attente).
+         * Une page en cours de lecture a pu être lue avant l'écriture du message :
+         * sa position sera reculée de même à son arrivée, et une page suivra.
+         *
+         * @param messageId L'ID du message direct mis en attente
+         */
+        private void onSpilled(final long messageId) {
+            spilledCount++;
+            if (messageId > 0 && messageId <= replayAfterMessageId) {
+                replayAfterMessageId = messageId - 1;
+            }
+            if (replayScheduled) {
+                spilledWhileLoading = true;
+                if (messageId > 0) {
+                    replayRewindTo = Math.min(replayRewindTo, messageId - 1);
+                }
+            }
+        }
+
+        /**
+         * Comme {@link #onSpilled(long)}, pour un message de groupe : le rejeu
+         * parcourt les groupes par ID puis par rang, et recule juste avant le
+         * message s'il l'a dépassé. Les messages déjà délivrés relus en route
+         * sont écartés par les curseurs.
+         */
+        private void onSpilledGroup(final long groupId, final long sequence) {
+            spilledCount++;
+            if (sequence <= 0) {
+                return;
+            }
+            if (isAtOrBefore(groupId, sequence, replayAfterGroupId, replayAfterGroupSequence)) {
+                replayAfterGroupId = groupId;
+                replayAfterGroupSequence = sequence - 1;
+            }
+            if (replayScheduled) {
+                spilledWhileLoading = true;
+                if (isAtOrBefore(groupId, sequence, replayRewindGroupId, replayRewindGroupSequence + 1)) {
+                    replayRewindGroupId = groupId;
+                    replayRewindGroupSequence = sequence - 1;
+                }
+            }
+        }
+
+        private boolean isAtOrBefore(final long groupId, final long sequence, final long otherGroupId,
+                                     final long otherSequence) {
+            return groupId < otherGroupId || (groupId == otherGroupId && sequence <= otherSequence);
+        }
+
+        /**
+         * Comme {@link #deliverOrQueue(Message)}, pour un message de groupe au corps partagé.
+         */
+        boolean fanOutOrQueue(final GroupFanout fanout) {
+            final long sequence = fanout.getSequence();
+            if (sequence > 0 && sequence <= groupCursor(fanout.getGroupId())) {
+                // Déjà délivré par le rejeu
+                return true;
+            }
+            if (fanout.getSenderUserId() == userId) {
+                // En retard, le curseur attend le rejeu pour ne pas sauter un message stocké
+                if (!spilling) {
+                    advanceGroupCursor(fanout.getGroupId(), sequence);
+                }
+                return true;
+            }
+            if (!spilling && tryDeliver(listener -> listener.onGroupMessage(fanout))) {
+                advanceGroupCursor(fanout.getGroupId(), sequence);
+                return true;
+            }
+            if (spilling) {
+                onSpilledGroup(fanout.getGroupId(), sequence);
+            }
+            storeOnce(fanout);
+            return false;
+        }
+
+        private long groupCursor(final long groupId) {
+            return groupCursors != null ? groupCursors.getOrDefault(groupId, 0L) : 0;
+        }
+
+        private void advanceGroupCursor(final long groupId, final long sequence) {
+            final long target = Math.min(sequence, groupCursorFloors.getOrDefault(groupId, Long.MAX_VALUE));
+            if (groupCursors != null && target > groupCursor(groupId)) {
+                groupCursors.put(groupId, target);
+                dirtyGroupCursors.add(groupId);
+            }
+        }
+
+        /**
+         * Ramène le curseur avant un message dont l'écriture a échoué ; les
+         * échecs arrivent dans le désordre, le plus bas l'emporte.
+         */
+        void rewindGroupCursor(final long groupId, final long sequence) {
+            groupCursorFloors.merge(groupId, sequence, Math::min);
+            if (groupCursors == null) {
+                // Curseurs pas encore chargés : leur lecture attendra ce recul dans la file de l'écrivain
+                queuedWriter.rewindGroupCursor(userId, groupId, sequence);
+            } else if (sequence < groupCursor(groupId)) {
+                groupCursors.put(groupId, sequence);
+                dirtyGroupCursors.add(groupId);
+            }
+        }
+
+        /**
+         * Confie à l'écrivain les curseurs modifiés ; les messages restent dans
+         * l'historique du groupe.
+         */
+        void saveGroupCursors() {
+            if (dirtyGroupCursors.isEmpty()) {
+                return;
+            }
+            final Map<Long, Long> dirty = new HashMap<>();
+            for (final Long groupId : dirtyGroupCursors) {
+                dirty.put(groupId, groupCursors.get(groupId));
+            }
+            queuedWriter.saveGroupCursors(userId, dirty);
+            dirtyGroupCursors.clear();
+        }
+
+        /**
+         * Comme {@link #deliverOrQueue(Message)}, pour un message relayé tel quel.
+         */
+        boolean forwardOrQueue(final ForwardedMessage forwarded) {
+            final boolean recorded = !spilling && forwarded.getSequence() > 0;
+            if (recorded) {
+                queuedWriter.append(forwarded);
+            }
+            if (!spilling && tryDeliver(listener -> listener.onMessageForwarded(forwarded))) {
+                return true;
+            }
+            if (spilling) {
+                onSpilled(forwarded.getId());
+            }
+            if (recorded) {
+                requeue(forwarded);
+            } else {
+                persistForwarded(forwarded);
+            }
+            return false;
         }
 
-        synchronized void setListener(final ClientHandler listener) {
-            this.listener = listener;
+        /**
+         * Rejoue les messages en attente, page par page. Chaque page est lue
+         * hors de la partition puis envoyée par une commande de la partition :
+         * les autres boîtes sont servies pendant la lecture, et les messages
+         * arrivant pour ce client pendant le rejeu sont mis en attente à la
+         * suite, donc relus dans l'ordre par une page suivante.
+         * Si le client redevient lent en cours de route, le reste attend le prochain rattrapage.
+         */
+        void replayPersistedMessages() {
+            replayedCount = 0;
+            replayAfterMessageId = 0;
+            replayAfterGroupId = 0;
+            replayAfterGroupSequence = 0;
+            // Une chaîne déjà en cours s'arrête à sa prochaine page
+            replayNextPage(++replayGeneration);
         }
 
-        void addMessageToQueue(final Message message) {
-            messages.offer(message);
+        private boolean isReplaying(final long generation) {
+            return generation == replayGeneration && listener != null
+                    && shardOf(userId).mailboxes().get(userId) == this;
         }
 
-        synchronized void clearQueue() {
-            messages.clear();
+        private void replayNextPage(final long generation) {
+            if (!isReplaying(generation)) {
+                return;
+            }
+            replayScheduled = true;
+            spilledWhileLoading = false;
+            replayRewindTo = Long.MAX_VALUE;
+            replayRewindGroupId = Long.MAX_VALUE;
+            final long afterMessageId = replayAfterMessageId;
+            final long afterGroupId = replayAfterGroupId;
+            final long afterGroupSequence = replayAfterGroupSequence;
+            final boolean loadCursors = groupCursors == null;
+            io.execute(() -> loadPage(generation, afterMessageId, afterGroupId, afterGroupSequence, loadCursors));
         }
 
-        synchronized void loadPersistedMessages() {
+        /**
+         * Lit une page sur le pool d'entrées-sorties et la remet à la partition.
+         * Ne touche pas à l'état de la boîte.
+         */
+        private void loadPage(final long generation, final long afterMessageId, final long afterGroupId,
+                              final long afterGroupSequence, final boolean loadCursors) {
+            final BrokerShard<MessageQueue> shard = shardOf(userId);
+            // Les messages et curseurs confiés à l'écrivain mais pas encore en base seraient sautés
+            queuedWriter.awaitWritten();
+            Map<Long, Long> cursors = null;
+            if (loadCursors) {
+                try {
+                    cursors = groupCursorDAO.getCursors(userId);
+                } catch (final Exception e) {
+                    // Sans curseurs, pas de rejeu des groupes : les messages stockés restent pour la prochaine fois
+                    System.err.println("Error loading group cursors for user " + userId + ": " + e.getMessage());
+                }
+            }
+            final List<Message> direct;
+            final List<Message> group;
             try {
-                final List<Message> pendingMessages = messageDAO.getPendingMessagesForUser(userId);
-                pendingMessages.forEach(this::addMessageToQueue);
+                direct = messageDAO.getPendingMessagesForUser(userId, afterMessageId, replayPageSize);
+                group = !loadCursors || cursors != null
+                        ? messageDAO.getPendingGroupMessagesForUser(userId, afterGroupId, afterGroupSequence,
+                                replayPageSize)
+                        : List.of();
             } catch (final Exception e) {
                 System.err.println("Error reloading persisted messages for user " + userId + ": " + e.getMessage());
+                shard.execute(() -> {
+                    if (isReplaying(generation)) {
+                        replayScheduled = false;
+                        spilling = false;
+                    }
+                });
+                return;
             }
+            final Map<Long, Long> loadedCursors = cursors;
+            shard.execute(() -> onPageLoaded(generation, loadedCursors, direct, group));
+        }
+
+        private void onPageLoaded(final long generation, final Map<Long, Long> loadedCursors,
+                                  final List<Message> direct, final List<Message> group) {
+            if (!isReplaying(generation)) {
+                // Rejeu relancé ou session fermée : les messages lus sont toujours en attente en base
+                return;
+            }
+            replayScheduled = false;
+            if (groupCursors == null) {
+                groupCursors = loadedCursors;
+            }
+            final boolean missedSpills = spilledWhileLoading;
+            if (!replayPage(direct, group)) {
+                return;
+            }
+            if (missedSpills) {
+                // Position de la page lue avant ces messages : reculer juste avant eux
+                replayAfterMessageId = Math.min(replayAfterMessageId, replayRewindTo);
+                if (isAtOrBefore(replayRewindGroupId, replayRewindGroupSequence + 1, replayAfterGroupId,
+                        replayAfterGroupSequence)) {
+                    replayAfterGroupId = replayRewindGroupId;
+                    replayAfterGroupSequence = replayRewindGroupSequence;
+                }
+            }
+            if (direct.size() == replayPageSize || group.size() == replayPageSize || missedSpills) {
+                replayNextPage(generation);
+                return;
+            }
+            if (listener.hasPendingReplay()) {
+                // Trames rejouées pas encore écrites : un message en direct, plus prioritaire, les
+                // dépasserait. La connexion prévient une fois la dernière écrite, et le rejeu reprend
+                return;
+            }
+            spilling = false;
+            if (spilledCount > 0) {
+                System.out.println("User " + userId + " caught up: " + replayedCount
+                        + " queued messages replayed (" + spilledCount + " spilled while slow)");
+                spilledCount = 0;
+            }
+        }
+
+        /**
+         * Envoie une page (en trames groupées si le client les lit) et
+         * l'acquitte : les messages directs passent à DELIVERED (avant l'envoi,
+         * pour qu'un échec d'écriture les remette en attente après coup ; ceux
+         * que la connexion a refusés y repassent aussitôt), les curseurs des
+         * groupes avancent.
+         *
+         * @return true si toute la page a été délivrée
+         */
+        private boolean replayPage(final List<Message> direct, final List<Message> group) {
+            final List<Message> page = new ArrayList<>(direct.size() + group.size());
+            page.addAll(direct);
+            for (final Message message : group) {
+                if (!isDeliveredGroupMessage(message)) {
+                    page.add(Message.copyForReceiver(message, userId));
+                }
+            }
+            if (!direct.isEmpty()) {
+                final List<Long> directIds = new ArrayList<>(direct.size());
+                for (final Message message : direct) {
+                    directIds.add(message.getId());
+                }
+                queuedWriter.markDelivered(directIds);
+            }
+            final int sent = tryDeliver(page);
+            replayedCount += sent;
+
+            for (int i = sent; i < direct.size(); i++) {
+                queuedWriter.requeue(direct.get(i));
+            }
+            if (sent > 0 && !direct.isEmpty()) {
+                replayAfterMessageId = direct.get(Math.min(sent, direct.size()) - 1).getId();
+            }
+            // Curseurs avancés dans l'ordre, jusqu'au premier message de groupe non délivré
+            int groupSent = sent - direct.size();
+            for (final Message message : group) {
+                if (!isDeliveredGroupMessage(message)) {
+                    if (groupSent <= 0) {
+                        break;
+                    }
+                    groupSent--;
+                }
+                advanceGroupCursor(message.getGroupId(), message.getSequence());
+                replayAfterGroupId = message.getGroupId();
+                replayAfterGroupSequence = message.getSequence();
+            }
+            saveGroupCursors();
+            return sent == page.size();
+        }
+
+        /**
+         * @return true si le message de groupe relu est déjà parvenu à ce client
+         *         (reçu en direct, curseur pas encore enregistré) ou vient de lui
+         */
+        private boolean isDeliveredGroupMessage(final Message message) {
+            return message.getSequence() <= groupCursor(message.getGroupId())
+                    || message.getSenderUserId() == userId;
         }
 
         boolean tryDeliver(final Message message) {
+            return tryDeliver(listener -> listener.onMessageReceived(message));
+        }
+
+        private boolean tryDeliver(final Delivery delivery) {
+            final ClientHandler listener = this.listener;
             if (listener != null) {
                 try {
-                    listener.onMessageReceived(message);
+                    delivery.deliverTo(listener);
                     return true;
+                } catch (final OutboundOverflowException e) {
+                    onOverflow(listener);
                 } catch (final IOException e) {
-                    System.err.println("Delivery failed for message " + message.getId());
+                    System.err.println("Delivery failed for a message to user " + userId);
                 }
             }
             return false;
         }
 
         /**
-         * Tente de délivrer un signal d'appel au client.
-         * 
-         * @param signal Le signal d'appel à délivrer
-         * @return true si la livraison a réussi
+         * @return Le nombre de messages de la page confiés à la connexion, en tête de page
          */
+        private int tryDeliver(final List<Message> page) {
+            final ClientHandler listener = this.listener;
+            if (listener == null || page.isEmpty()) {
+                return 0;
+            }
+            try {
+                final int sent = listener.onMessagesReplayed(page);
+                if (sent < page.size()) {
+                    // Suite refusée en cours de page : client lent (ou déconnecté entre-temps)
+                    onOverflow(listener);
+                }
+                return sent;
+            } catch (final OutboundOverflowException e) {
+                onOverflow(listener);
+            } catch (final IOException e) {
+                System.err.println("Delivery failed for " + page.size() + " replayed messages to user " + userId);
+            }
+            return 0;
+        }
+
+        private void onOverflow(final ClientHandler listener) {
+            if (!spilling) {
+                System.out.println("User " + userId + " is a slow consumer, queueing messages ("
+                        + listener.getOutboundStats() + ")");
+            }
+            spilling = true;
+        }
+
+        /**
+         * Transmet un indicateur de saisie ou un accusé de réception si le client
+         * est à jour : en retard, il l'aurait après des messages déjà périmés, et
+         * l'annonce est abandonnée (un accusé de lecture reste en base).
+         */
+        void tryDeliverNotice(final ControlCommand command) {
+            final ClientHandler listener = this.listener;
+            if (listener != null && !spilling) {
+                listener.onNotice(command);
+            }
+        }
+
         boolean tryDeliverCallSignal(final CallSignal signal) {
+            final ClientHandler listener = this.listener;
             if (listener != null) {
                 try {
                     listener.onCallSignalReceived(signal);
@@ -209,25 +1139,13 @@ public class MessageBroker {
             }
             return false;
         }
+    }
 
-        void deliverPendingMessages() {
-            int initialSize = messages.size();
-            for (int i = 0; i < initialSize; i++) {
-                Message message = messages.poll();
-                if (message == null) {
-                    break;
-                }
-                if (tryDeliver(message)) {
-                    try {
-                        messageDAO.deleteMessage(message.getId());
-                    } catch (Exception e) {
-                        System.err.println("Failed to delete message " + message.getId() + ", re-adding to queue");
-                        messages.offer(message);
-                    }
-                } else {
-                    messages.offer(message);
-                }
-            }
-        }
+    /**
+     * Remise d'un message à la session du destinataire.
+     */
+    @FunctionalInterface
+    private interface Delivery {
+        void deliverTo(ClientHandler listener) throws IOException;
     }
-}
\ No newline at end of file
+}
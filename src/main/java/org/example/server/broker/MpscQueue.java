@@ -0,0 +1,60 @@
+package org.example.server.broker;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * File sans verrou à producteurs multiples et consommateur unique (algorithme
+ * de D. Vyukov) : un producteur ne fait qu'un échange atomique, le consommateur
+ * aucune opération atomique. L'ordre d'ajout de chaque producteur est conservé.
+ * <p>
+ * Entre l'échange et le chaînage d'un producteur, l'élément qu'il ajoute n'est
+ * pas encore visible : {@link #poll()} peut brièvement répondre null alors
+ * qu'un ajout est en cours. Le producteur doit donc réveiller le consommateur
+ * après {@link #offer(Object)}, jamais avant.
+ */
+final class MpscQueue<T> {
+
+    private static final class Node<T> {
+        private volatile Node<T> next;
+        private T value;
+
+        Node(final T value) {
+            this.value = value;
+        }
+    }
+
+    // Dernier nœud ajouté (côté producteurs)
+    private final AtomicReference<Node<T>> last;
+    // Nœud déjà consommé qui précède le premier élément (côté consommateur)
+    private Node<T> first;
+
+    MpscQueue() {
+        final Node<T> stub = new Node<>(null);
+        this.last = new AtomicReference<>(stub);
+        this.first = stub;
+    }
+
+    /**
+     * Ajoute un élément ; appelable depuis n'importe quel thread.
+     */
+    void offer(final T value) {
+        final Node<T> node = new Node<>(value);
+        last.getAndSet(node).next = node;
+    }
+
+    /**
+     * Retire le plus ancien élément ; réservé au thread consommateur.
+     *
+     * @return L'élément, ou null si la file est (momentanément) vide
+     */
+    T poll() {
+        final Node<T> next = first.next;
+        if (next == null) {
+            return null;
+        }
+        final T value = next.value;
+        next.value = null;
+        first = next;
+        return value;
+    }
+}
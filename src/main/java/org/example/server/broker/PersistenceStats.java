@@ -0,0 +1,93 @@
+package org.example.server.broker;
+
+/**
+ * Instantané des compteurs de l'écriture en lot des messages (historique et
+ * messages en attente) : taille des lots et durée des écritures.
+ */
+public final class PersistenceStats {
+    private final long flushes;
+    private final long writtenMessages;
+    private final long failedMessages;
+    private final int maxBatchSize;
+    private final long totalFlushNanos;
+    private final long maxFlushNanos;
+    private final int pendingMessages;
+    private final long overflows;
+
+    PersistenceStats(final long flushes,
+                     final long writtenMessages,
+                     final long failedMessages,
+                     final int maxBatchSize,
+                     final long totalFlushNanos,
+                     final long maxFlushNanos,
+                     final int pendingMessages,
+                     final long overflows) {
+        this.flushes = flushes;
+        this.writtenMessages = writtenMessages;
+        this.failedMessages = failedMessages;
+        this.maxBatchSize = maxBatchSize;
+        this.totalFlushNanos = totalFlushNanos;
+        this.maxFlushNanos = maxFlushNanos;
+        this.pendingMessages = pendingMessages;
+        this.overflows = overflows;
+    }
+
+    /**
+     * Nombre de lots écrits (ou abandonnés après échec).
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    public long getWrittenMessages() {
+        return writtenMessages;
+    }
+
+    /**
+     * Messages perdus : leur lot a échoué malgré les nouvelles tentatives, puis eux seuls.
+     */
+    public long getFailedMessages() {
+        return failedMessages;
+    }
+
+    public double getAverageBatchSize() {
+        return flushes == 0 ? 0 : (double) (writtenMessages + failedMessages) / flushes;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public double getAverageFlushMillis() {
+        return flushes == 0 ? 0 : totalFlushNanos / 1e6 / flushes;
+    }
+
+    public double getMaxFlushMillis() {
+        return maxFlushNanos / 1e6;
+    }
+
+    /**
+     * Messages confiés à l'écrivain et pas encore écrits.
+     */
+    public int getPendingMessages() {
+        return pendingMessages;
+    }
+
+    /**
+     * Écritures refusées parce que la file de l'écrivain est restée pleine.
+     */
+    public long getOverflows() {
+        return overflows;
+    }
+
+    @Override
+    public String toString() {
+        return "lots=" + flushes
+                + ", écrits=" + writtenMessages
+                + ", perdus=" + failedMessages
+                + String.format(", taille moy=%.1f/max=%d", getAverageBatchSize(), maxBatchSize)
+                + String.format(", durée moy=%.2f ms/max=%.2f ms", getAverageFlushMillis(), getMaxFlushMillis())
+                + ", en attente=" + pendingMessages
+                + ", refusés (file pleine)=" + overflows;
+    }
+}
@@ -0,0 +1,580 @@
+package org.example.server.broker;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.example.shared.dao.GroupCursorDAO;
+import org.example.shared.dao.MessageDAO;
+import org.example.shared.model.Message;
+import org.example.shared.model.Receipt;
+import org.example.shared.model.enums.MessageStatus;
+import org.example.shared.model.enums.MessageType;
+
+/**
+ * Écriture différée des messages : les partitions du broker confient les
+ * messages à un thread d'écriture unique, qui les insère par lots (un
+ * aller-retour et une transaction par lot) au lieu d'un INSERT par message.
+ * Les messages en attente (QUEUED) comme ceux délivrés en direct y passent :
+ * la table des messages est aussi l'historique des conversations. Les accusés
+ * de lecture aussi, pour suivre les messages qu'ils couvrent, ainsi que les
+ * acquittements des pages rejouées et les curseurs de groupe : toutes les
+ * écritures des partitions passent par ce seul thread, dans l'ordre où elles
+ * ont été confiées, et aucune partition n'attend la base.
+ * <p>
+ * Un lot part dès qu'il atteint sa taille maximale, ou quand son plus ancien
+ * message a attendu le délai maximal. En mode synchrone, l'écriture d'un
+ * message en attente rend un futur terminé à la validation de son lot : le lot
+ * part alors sans attendre, avec tout ce qui s'est accumulé pendant l'écriture
+ * précédente. Un lot qui échoue encore après ses nouvelles tentatives est
+ * réécrit ligne par ligne : seules les lignes invalides sont perdues.
+ * <p>
+ * Avant de relire les messages en attente d'un utilisateur, le broker attend
+ * {@link #awaitWritten()} hors de ses partitions : aucun message confié avant
+ * le rejeu n'y échappe.
+ */
+final class QueuedMessageWriter {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MILLIS = 200;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private final MessageDAO messageDAO;
+    private final GroupCursorDAO groupCursorDAO;
+    private final BlockingQueue<Pending> pending;
+    private final int batchSize;
+    private final long flushNanos;
+    private final long enqueueTimeoutNanos;
+    private final boolean synchronous;
+    // Messages confiés et pas encore traités (file et lot en cours d'écriture)
+    private final AtomicInteger outstanding;
+
+    // Compteurs, protégés par this
+    private long flushes;
+    private long writtenMessages;
+    private long failedMessages;
+    private int maxBatchSize;
+    private long totalFlushNanos;
+    private long maxFlushNanos;
+    private long overflows;
+
+    QueuedMessageWriter(final MessageDAO messageDAO,
+                        final GroupCursorDAO groupCursorDAO,
+                        final int batchSize,
+                        final long flushMillis,
+                        final int maxPending,
+                        final long enqueueTimeoutMillis,
+                        final boolean synchronous) {
+        this.messageDAO = messageDAO;
+        this.groupCursorDAO = groupCursorDAO;
+        this.pending = new ArrayBlockingQueue<>(Math.max(1, maxPending));
+        this.batchSize = Math.max(1, batchSize);
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.enqueueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, enqueueTimeoutMillis));
+        this.synchronous = synchronous;
+        this.outstanding = new AtomicInteger();
+        final Thread thread = new Thread(this::run, "chat-queued-writer");
+        thread.setDaemon(true);
+        thread.start();
+        // Arrêt du serveur : écrire ce qui reste plutôt que le perdre
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drainOnShutdown, "chat-queued-writer-shutdown"));
+    }
+
+    /**
+     * Confie un message en attente à l'écrivain. N'attend que si l'écrivain a
+     * trop de retard, et au plus le délai de mise en file : au-delà, le message
+     * est refusé. Le résultat de l'écriture arrive par le futur.
+     *
+     * @return Terminé par false si le message n'a pas pu être enregistré ; en
+     *         mode asynchrone, déjà terminé par true s'il a été accepté
+     */
+    CompletableFuture<Boolean> write(final Message message) {
+        final Pending entry = new Pending(message, null, null, false,
+                synchronous ? new CompletableFuture<>() : null);
+        return accepted(entry, enqueue(entry));
+    }
+
+    /**
+     * Comme {@link #write(Message)}, pour un message relayé : son corps est
+     * décodé par le thread d'écriture, et non par la partition.
+     */
+    CompletableFuture<Boolean> write(final ForwardedMessage forwarded) {
+        final Pending entry = new Pending(null, forwarded, MessageStatus.QUEUED, false,
+                synchronous ? new CompletableFuture<>() : null);
+        return accepted(entry, enqueue(entry));
+    }
+
+    /**
+     * Ajoute à l'historique un message déjà délivré, sans jamais attendre son
+     * écriture : le destinataire l'a reçu, la base n'en garde que la trace.
+     */
+    void append(final Message message) {
+        enqueue(new Pending(message, null, null, false, null));
+    }
+
+    /**
+     * Comme {@link #append(Message)}, pour un message relayé.
+     */
+    void append(final ForwardedMessage forwarded) {
+        enqueue(new Pending(null, forwarded, MessageStatus.DELIVERED, false, null));
+    }
+
+    /**
+     * Remet en attente un message direct enregistré comme délivré (ajouté à
+     * l'historique ou rejoué), que la connexion du destinataire n'a finalement
+     * pas écrit. Traité après l'ajout, confié plus tôt à la même file.
+     *
+     * @param message Le message, désigné par son ID s'il est connu, sinon par son rang
+     */
+    void requeue(final Message message) {
+        final Message target = Message.newDirectMessage(message.getSenderUserId(), message.getReceiverUserId(), null);
+        target.setId(message.getId());
+        target.setSequence(message.getSequence());
+        enqueue(new Pending(target, null, null, true, null));
+    }
+
+    /**
+     * Marque comme lus les messages directs couverts par l'accusé, sans jamais
+     * attendre. Traité après les ajouts confiés plus tôt : un message délivré
+     * puis lu aussitôt est déjà en base.
+     */
+    void markRead(final Receipt receipt) {
+        enqueue(new Pending(receipt));
+    }
+
+    /**
+     * Passe à DELIVERED les messages d'une page rejouée, sans attendre.
+     * Traité avant les remises en attente confiées ensuite : un message de la
+     * page refusé par la connexion repasse en QUEUED.
+     */
+    void markDelivered(final List<Long> messageIds) {
+        enqueue(new Pending(messageIds, null));
+    }
+
+    /**
+     * Enregistre les curseurs de groupe d'un utilisateur, sans attendre.
+     *
+     * @param cursors ID du groupe vers rang du dernier message délivré
+     */
+    void saveGroupCursors(final long userId, final Map<Long, Long> cursors) {
+        enqueue(new Pending(null, () -> groupCursorDAO.saveCursors(userId, cursors)));
+    }
+
+    /**
+     * Ramène au plus au rang donné le curseur enregistré d'un membre, sans
+     * attendre ; appliqué après les enregistrements confiés plus tôt.
+     */
+    void rewindGroupCursor(final long userId, final long groupId, final long lastDeliveredSequence) {
+        enqueue(new Pending(null, () -> groupCursorDAO.rewindCursor(userId, groupId, lastDeliveredSequence)));
+    }
+
+    /**
+     * @return true si les appelants de {@link #write(Message)} attendent l'écriture de leur lot
+     */
+    boolean isSynchronous() {
+        return synchronous;
+    }
+
+    /**
+     * Attend que tous les messages confiés jusqu'ici soient écrits (ou abandonnés).
+     * Jamais depuis une partition du broker.
+     */
+    void awaitWritten() {
+        if (outstanding.get() == 0) {
+            return;
+        }
+        final Pending barrier = new Pending(null, null, null, false, new CompletableFuture<>());
+        // Hors des partitions : la barrière attend sa place sans limite
+        outstanding.incrementAndGet();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                pending.put(barrier);
+                break;
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        barrier.done.join();
+    }
+
+    synchronized PersistenceStats getStats() {
+        return new PersistenceStats(flushes, writtenMessages, failedMessages, maxBatchSize, totalFlushNanos,
+                maxFlushNanos, outstanding.get(), overflows);
+    }
+
+    private static CompletableFuture<Boolean> accepted(final Pending entry, final boolean queued) {
+        if (entry.done != null) {
+            return entry.done;
+        }
+        return CompletableFuture.completedFuture(queued);
+    }
+
+    /**
+     * Met l'entrée en file, en attendant au plus le délai de mise en file :
+     * les appelants sont les boucles des partitions et des connexions, qui ne
+     * doivent pas rester bloquées derrière une base lente. Une entrée refusée
+     * est perdue ; son attente éventuelle se termine par false.
+     *
+     * @return false si la file est restée pleine
+     */
+    private boolean enqueue(final Pending entry) {
+        outstanding.incrementAndGet();
+        boolean queued;
+        try {
+            queued = pending.offer(entry) || pending.offer(entry, enqueueTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (queued) {
+            return true;
+        }
+        outstanding.decrementAndGet();
+        if (entry.done != null) {
+            entry.done.complete(false);
+        }
+        final long total;
+        synchronized (this) {
+            total = ++overflows;
+        }
+        // Une ligne pour la première puis toutes les mille : la file pleine en produit en rafale
+        if (total == 1 || total % 1000 == 0) {
+            System.err.println("Write-behind queue full (" + pending.size() + " pending), dropped a write; "
+                    + total + " dropped so far");
+        }
+        return false;
+    }
+
+    private void run() {
+        final List<Pending> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                try {
+                    collect(batch);
+                } catch (final InterruptedException e) {
+                    // Personne n'arrête ce thread démon : écrire ce qui a déjà été pris
+                }
+                flush(batch);
+            } catch (final RuntimeException e) {
+                System.err.println("Erreur dans chat-queued-writer: " + e.getMessage());
+            } finally {
+                // Déjà vide après une écriture ; sinon, lot abandonné sur une erreur imprévue
+                complete(batch, true);
+            }
+        }
+    }
+
+    /**
+     * Remplit le lot : attend le premier message, prend ce qui est déjà en file
+     * puis, si personne n'attend le lot, ce qui arrive jusqu'à l'échéance.
+     */
+    private void collect(final List<Pending> batch) throws InterruptedException {
+        final Pending first = pending.take();
+        batch.add(first);
+        pending.drainTo(batch, batchSize - 1);
+        final long deadline = System.nanoTime() + flushNanos;
+        while (batch.size() < batchSize && !hasWaiter(batch)) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            final Pending next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            pending.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    private static boolean hasWaiter(final List<Pending> batch) {
+        for (final Pending entry : batch) {
+            if (entry.done != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void flush(final List<Pending> batch) {
+        final List<Message> inserts = new ArrayList<>(batch.size());
+        final List<Pending> insertEntries = new ArrayList<>(batch.size());
+        final List<Message> requeues = new ArrayList<>();
+        final List<Pending> requeueEntries = new ArrayList<>();
+        final List<List<Long>> delivered = new ArrayList<>();
+        final List<SqlBatch> cursorUpdates = new ArrayList<>();
+        // Accusés fusionnés par conversation : une requête chacune, quel que soit le nombre reçu
+        final Map<List<Long>, Receipt> receipts = new LinkedHashMap<>();
+        for (final Pending entry : batch) {
+            if (entry.receipt != null) {
+                receipts.merge(List.of(entry.receipt.getSenderUserId(), entry.receipt.getReceiverUserId()),
+                        entry.receipt, Receipt::merge);
+            } else if (entry.deliveredIds != null) {
+                delivered.add(entry.deliveredIds);
+            } else if (entry.cursorUpdate != null) {
+                cursorUpdates.add(entry.cursorUpdate);
+            } else if (entry.requeue) {
+                requeues.add(entry.message);
+                requeueEntries.add(entry);
+            } else if (entry.message != null) {
+                inserts.add(entry.message);
+                insertEntries.add(entry);
+            } else if (entry.forwarded != null) {
+                final Message message = decode(entry);
+                if (message != null) {
+                    inserts.add(message);
+                    insertEntries.add(entry);
+                } else {
+                    entry.failed = true;
+                }
+            }
+        }
+        final int count = inserts.size() + delivered.size() + requeues.size() + receipts.size()
+                + cursorUpdates.size();
+        if (count == 0) {
+            complete(batch);
+            return;
+        }
+        final long start = System.nanoTime();
+        // Ajouts d'abord : une remise en attente vise un message ajouté plus tôt, peut-être dans ce lot
+        int failed = execute("messages", inserts, insertEntries, messageDAO::createMessages);
+        // Acquittements des pages rejouées avant les remises en attente des messages refusés
+        failed += execute("delivered marks", delivered, null, pages -> {
+            final List<Long> ids = new ArrayList<>();
+            pages.forEach(ids::addAll);
+            messageDAO.markDelivered(ids);
+        });
+        failed += execute("requeues", requeues, requeueEntries, messageDAO::requeueMessages);
+        // Puis les lectures : une remise en attente dans le même lot l'emporte (le message n'a pas été écrit)
+        failed += execute("read receipts", new ArrayList<>(receipts.values()), null, messageDAO::markRead);
+        // Curseurs dans l'ordre où ils ont été confiés : un recul suit l'enregistrement qu'il corrige
+        failed += execute("group cursor updates", cursorUpdates, null, updates -> {
+            for (final SqlBatch update : updates) {
+                update.run();
+            }
+        });
+        final long elapsed = System.nanoTime() - start;
+        synchronized (this) {
+            flushes++;
+            writtenMessages += count - failed;
+            failedMessages += failed;
+            maxBatchSize = Math.max(maxBatchSize, count);
+            totalFlushNanos += elapsed;
+            maxFlushNanos = Math.max(maxFlushNanos, elapsed);
+        }
+        complete(batch);
+    }
+
+    private static Message decode(final Pending entry) {
+        try {
+            // Copie : le message décodé est partagé avec la partition, qui peut le réencoder
+            final Message decoded = entry.forwarded.toMessage();
+            final Message message = Message.copyForReceiver(decoded, decoded.getReceiverUserId());
+            message.setStatus(entry.status);
+            if (message.getType() == null) {
+                message.setType(MessageType.TEXT);
+            }
+            if (message.getTimestamp() == null) {
+                message.setTimestamp(LocalDateTime.now());
+            }
+            return message;
+        } catch (final IOException e) {
+            System.err.println("Dropping undecodable message from user " + entry.forwarded.getSenderUserId() + ": "
+                    + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Écrit des lignes du même type en un lot, avec nouvelles tentatives. Si le
+     * lot échoue encore, chaque ligne est réécrite seule : une ligne invalide
+     * n'emporte pas celles des autres utilisateurs.
+     *
+     * @param owners Entrées d'où viennent les lignes (une par ligne), ou null si personne n'attend leur résultat
+     * @return Le nombre de lignes perdues
+     */
+    private <T> int execute(final String what, final List<T> rows, final List<Pending> owners,
+                            final RowsWrite<T> write) {
+        if (rows.isEmpty() || execute(what, rows.size(), () -> write.run(rows))) {
+            return 0;
+        }
+        if (rows.size() == 1) {
+            markFailed(owners, 0);
+            return 1;
+        }
+        int failed = 0;
+        Exception lastError = null;
+        for (int i = 0; i < rows.size(); i++) {
+            try {
+                write.run(List.of(rows.get(i)));
+            } catch (final SQLException | RuntimeException e) {
+                markFailed(owners, i);
+                failed++;
+                lastError = e;
+            }
+        }
+        if (failed > 0) {
+            System.err.println("Dropped " + failed + " of " + rows.size() + " " + what
+                    + " written one by one after their batch failed: " + lastError);
+        }
+        return failed;
+    }
+
+    private static void markFailed(final List<Pending> owners, final int index) {
+        if (owners != null) {
+            owners.get(index).failed = true;
+        }
+    }
+
+    private boolean execute(final String what, final int count, final SqlBatch batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                batch.run();
+                return true;
+            } catch (final RuntimeException e) {
+                // Ligne invalide (champ manquant) : une nouvelle tentative échouerait de même
+                System.err.println("Failed to write " + count + " " + what + ": " + e);
+                return false;
+            } catch (final SQLException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    System.err.println("Failed to write " + count + " " + what + ": " + e.getMessage());
+                    return false;
+                }
+                System.err.println("Failed to write " + count + " " + what + " (attempt " + attempt + "/"
+                        + MAX_ATTEMPTS + "), retrying: " + e.getMessage());
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS * attempt);
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Libère les appelants qui attendent le lot et le vide. Les entrées non
+     * encore marquées en échec sont écrites, sauf si {@code abandoned}.
+     */
+    private void complete(final List<Pending> batch) {
+        complete(batch, false);
+    }
+
+    private void complete(final List<Pending> batch, final boolean abandoned) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (final Pending entry : batch) {
+            if (entry.done != null) {
+                // Une barrière n'échoue jamais : son but est l'ordre, pas l'écriture
+                entry.done.complete(entry.isBarrier() || (!abandoned && !entry.failed));
+            }
+        }
+        outstanding.addAndGet(-batch.size());
+        batch.clear();
+    }
+
+    private void drainOnShutdown() {
+        if (outstanding.get() == 0) {
+            return;
+        }
+        final Pending barrier = new Pending(null, null, null, false, new CompletableFuture<>());
+        outstanding.incrementAndGet();
+        if (!pending.offer(barrier)) {
+            outstanding.decrementAndGet();
+            System.err.println("Shutting down with " + outstanding.get() + " messages not yet written");
+            return;
+        }
+        try {
+            barrier.done.get(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (final TimeoutException e) {
+            System.err.println("Shutting down with " + outstanding.get() + " messages not yet written");
+        } catch (final Exception e) {
+            // Arrêt en cours : rien de plus à faire
+        }
+        System.out.println("Queued messages writer stopped (" + getStats() + ")");
+    }
+
+    private static final class Pending {
+        // Un message ou un message relayé (décodé à l'écriture), aucun pour une barrière
+        private final Message message;
+        private final ForwardedMessage forwarded;
+        // Statut écrit pour un message relayé
+        private final MessageStatus status;
+        // Mise à jour du statut d'un message déjà ajouté, et non insertion
+        private final boolean requeue;
+        // Accusé de lecture à reporter sur les messages qu'il couvre
+        private final Receipt receipt;
+        // Messages d'une page rejouée à passer à DELIVERED
+        private final List<Long> deliveredIds;
+        // Enregistrement ou recul de curseurs de groupe
+        private final SqlBatch cursorUpdate;
+        // null si personne n'attend l'écriture
+        private final CompletableFuture<Boolean> done;
+        // Écriture abandonnée ; thread d'écriture uniquement
+        private boolean failed;
+
+        Pending(final Message message, final ForwardedMessage forwarded, final MessageStatus status,
+                final boolean requeue, final CompletableFuture<Boolean> done) {
+            this.message = message;
+            this.forwarded = forwarded;
+            this.status = status;
+            this.requeue = requeue;
+            this.receipt = null;
+            this.deliveredIds = null;
+            this.cursorUpdate = null;
+            this.done = done;
+        }
+
+        Pending(final Receipt receipt) {
+            this.message = null;
+            this.forwarded = null;
+            this.status = null;
+            this.requeue = false;
+            this.receipt = receipt;
+            this.deliveredIds = null;
+            this.cursorUpdate = null;
+            this.done = null;
+        }
+
+        Pending(final List<Long> deliveredIds, final SqlBatch cursorUpdate) {
+            this.message = null;
+            this.forwarded = null;
+            this.status = null;
+            this.requeue = false;
+            this.receipt = null;
+            this.deliveredIds = deliveredIds;
+            this.cursorUpdate = cursorUpdate;
+            this.done = null;
+        }
+
+        boolean isBarrier() {
+            return message == null && forwarded == null && receipt == null && deliveredIds == null
+                    && cursorUpdate == null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlBatch {
+        void run() throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface RowsWrite<T> {
+        void run(List<T> rows) throws SQLException;
+    }
+}
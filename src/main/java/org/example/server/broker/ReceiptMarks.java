@@ -0,0 +1,79 @@
+package org.example.server.broker;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.example.shared.model.Receipt;
+import org.example.shared.model.enums.MessageStatus;
+
+/**
+ * Marques hautes des accusés de réception, par conversation directe et par
+ * sens (expéditeur, destinataire) : rang du dernier message reçu et du dernier
+ * lu. Un accusé qui ne fait pas avancer sa marque est ignoré ; les autres sont
+ * réduits à l'intervalle qu'ils ajoutent.
+ * <p>
+ * Le nombre de conversations suivies est borné : une marque évincée repart de
+ * zéro, ce qui ne coûte qu'un accusé relayé et une mise à jour sans effet.
+ */
+final class ReceiptMarks {
+
+    // Protégé par this
+    private final Map<Key, long[]> marks;
+
+    ReceiptMarks(final int maxConversations) {
+        this.marks = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, long[]> eldest) {
+                return size() > Math.max(1, maxConversations);
+            }
+        };
+    }
+
+    /**
+     * Avance la marque de la conversation. Une lecture vaut aussi réception.
+     *
+     * @param status DELIVERED ou READ
+     * @return L'accusé réduit à ce qu'il ajoute, ou null s'il n'ajoute rien
+     */
+    synchronized Receipt advance(final long senderUserId, final long receiverUserId, final MessageStatus status,
+                                 final long upToSequence) {
+        final long[] mark = marks.computeIfAbsent(new Key(senderUserId, receiverUserId), k -> new long[2]);
+        final int index = status == MessageStatus.READ ? 1 : 0;
+        final long previous = mark[index];
+        if (upToSequence <= previous) {
+            return null;
+        }
+        mark[index] = upToSequence;
+        mark[0] = Math.max(mark[0], mark[1]);
+        return new Receipt(senderUserId, receiverUserId, status, previous, upToSequence);
+    }
+
+    synchronized int size() {
+        return marks.size();
+    }
+
+    private static final class Key {
+        private final long senderUserId;
+        private final long receiverUserId;
+
+        Key(final long senderUserId, final long receiverUserId) {
+            this.senderUserId = senderUserId;
+            this.receiverUserId = receiverUserId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return senderUserId == key.senderUserId && receiverUserId == key.receiverUserId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(senderUserId * 31 + receiverUserId);
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package org.example.server.broker;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.example.server.TimingWheel;
+import org.example.shared.protocol.ControlCommand;
+
+/**
+ * Indicateurs de saisie (« est en train d'écrire ») : un état éphémère, gardé
+ * en mémoire seulement, qui ne passe jamais par la base ni par la file des
+ * messages en attente.
+ * <p>
+ * Les annonces d'un client sont fusionnées :
+ * <ul>
+ *   <li>conversation directe : au plus une annonce par intervalle et par
+ *       (utilisateur, interlocuteur), hors changement d'état ;</li>
+ *   <li>groupe : une seule trame agrégée par intervalle et par groupe, avec le
+ *       nombre de membres qui écrivent et les premiers d'entre eux, quelle que
+ *       soit la taille du groupe.</li>
+ * </ul>
+ * Une saisie non renouvelée expire d'elle-même ; les destinataires hors ligne
+ * ou en retard sont ignorés (voir {@link Sink}).
+ */
+final class TypingIndicators {
+
+    /**
+     * Transmission des annonces aux connexions en ligne, sans garantie de remise.
+     */
+    interface Sink {
+        void toUser(long userId, ControlCommand command);
+
+        void toUsers(List<Long> userIds, ControlCommand command, long skipUserId);
+    }
+
+    private final Sink sink;
+    private final long intervalNanos;
+    private final long ttlNanos;
+    private final int maxNames;
+    private final Map<DirectKey, DirectTyping> direct;
+    private final Map<Long, GroupTyping> groups;
+
+    /**
+     * @param intervalMillis Délai minimal entre deux annonces d'une même conversation
+     * @param ttlMillis      Durée de vie d'une saisie non renouvelée
+     * @param maxNames       Membres nommés au plus dans une annonce de groupe
+     */
+    TypingIndicators(final Sink sink, final long intervalMillis, final long ttlMillis, final int maxNames) {
+        this.sink = sink;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, intervalMillis));
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(intervalMillis, ttlMillis));
+        this.maxNames = Math.max(1, maxNames);
+        this.direct = new ConcurrentHashMap<>();
+        this.groups = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Saisie de {@code userId} dans sa conversation avec {@code peerUserId}.
+     */
+    void onDirect(final long userId, final long peerUserId, final boolean active) {
+        final DirectKey key = new DirectKey(userId, peerUserId);
+        while (true) {
+            final DirectTyping typing = active
+                    ? direct.computeIfAbsent(key, DirectTyping::new)
+                    : direct.get(key);
+            if (typing == null) {
+                // Pas de saisie annoncée : rien à retirer
+                return;
+            }
+            if (typing.update(active, System.nanoTime())) {
+                return;
+            }
+            // Entrée retirée entre-temps (expirée) : la suivante la remplace
+        }
+    }
+
+    /**
+     * Saisie de {@code userId} dans un groupe dont il est membre.
+     *
+     * @param members Les membres du groupe, destinataires des annonces (lus par
+     *                l'appelant : les annonces différées ne consultent pas la base)
+     */
+    void onGroup(final long userId, final long groupId, final List<Long> members, final boolean active) {
+        while (true) {
+            final GroupTyping typing = active
+                    ? groups.computeIfAbsent(groupId, GroupTyping::new)
+                    : groups.get(groupId);
+            if (typing == null) {
+                return;
+            }
+            if (typing.update(userId, members, active, System.nanoTime())) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Les conversations où une saisie est en cours ou vient de s'achever
+     */
+    int getTrackedConversations() {
+        return direct.size() + groups.size();
+    }
+
+    private ControlCommand directCommand(final long userId, final boolean active) {
+        return new ControlCommand(ControlCommand.TYPING)
+                .withParam(ControlCommand.PARAM_USER_ID, String.valueOf(userId))
+                .withParam(ControlCommand.PARAM_ACTIVE, String.valueOf(active))
+                .withParam(ControlCommand.PARAM_TTL, String.valueOf(TimeUnit.NANOSECONDS.toMillis(ttlNanos)));
+    }
+
+    private static void schedule(final Runnable task, final long delayNanos) {
+        TimingWheel.getInstance().schedule(task, Math.max(1, TimeUnit.NANOSECONDS.toMillis(delayNanos)));
+    }
+
+    private static final class DirectKey {
+        private final long userId;
+        private final long peerUserId;
+
+        DirectKey(final long userId, final long peerUserId) {
+            this.userId = userId;
+            this.peerUserId = peerUserId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DirectKey)) return false;
+            final DirectKey key = (DirectKey) o;
+            return userId == key.userId && peerUserId == key.peerUserId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(userId * 31 + peerUserId);
+        }
+    }
+
+    private final class DirectTyping {
+        private final DirectKey key;
+        // Protégés par this ; une entrée retirée n'est plus modifiée
+        private boolean announced;
+        private long lastSentNanos;
+        private long expiresNanos;
+        private boolean expiryScheduled;
+        private boolean removed;
+
+        DirectTyping(final DirectKey key) {
+            this.key = key;
+        }
+
+        /**
+         * @return false si l'entrée a été retirée : l'appelant doit en créer une autre
+         */
+        boolean update(final boolean nowActive, final long now) {
+            final boolean send;
+            synchronized (this) {
+                if (removed) {
+                    return false;
+                }
+                if (nowActive) {
+                    expiresNanos = now + ttlNanos;
+                    // Début, ou renouvellement une fois l'intervalle écoulé : l'annonce prolonge l'indicateur
+                    send = !announced || now - lastSentNanos >= intervalNanos;
+                    if (!expiryScheduled) {
+                        expiryScheduled = true;
+                        schedule(this::expire, ttlNanos);
+                    }
+                } else {
+                    // La fin de saisie part tout de suite, si la saisie a été annoncée
+                    send = announced;
+                    removed = true;
+                    direct.remove(key, this);
+                }
+                if (send) {
+                    announced = nowActive;
+                    lastSentNanos = now;
+                }
+            }
+            if (send) {
+                sink.toUser(key.peerUserId, directCommand(key.userId, nowActive));
+            }
+            return true;
+        }
+
+        private void expire() {
+            final long now = System.nanoTime();
+            final boolean send;
+            synchronized (this) {
+                expiryScheduled = false;
+                if (removed) {
+                    return;
+                }
+                if (expiresNanos - now > 0) {
+                    expiryScheduled = true;
+                    schedule(this::expire, expiresNanos - now);
+                    return;
+                }
+                send = announced;
+                removed = true;
+                direct.remove(key, this);
+            }
+            if (send) {
+                sink.toUser(key.peerUserId, directCommand(key.userId, false));
+            }
+        }
+    }
+
+    private final class GroupTyping {
+        private final long groupId;
+        // Protégés par this : échéance de chaque membre qui écrit, dans l'ordre où il a commencé
+        private final LinkedHashMap<Long, Long> typers;
+        private List<Long> members;
+        private long lastSentNanos;
+        // Nombre de membres annoncé par la dernière trame
+        private int announcedCount;
+        private boolean changed;
+        private boolean flushScheduled;
+        private boolean expiryScheduled;
+        private boolean removed;
+
+        GroupTyping(final long groupId) {
+            this.groupId = groupId;
+            this.typers = new LinkedHashMap<>();
+            this.lastSentNanos = System.nanoTime() - intervalNanos;
+        }
+
+        boolean update(final long userId, final List<Long> currentMembers, final boolean nowActive, final long now) {
+            final ControlCommand command;
+            final List<Long> recipients;
+            synchronized (this) {
+                if (removed) {
+                    return false;
+                }
+                members = currentMembers;
+                recipients = members;
+                if (nowActive) {
+                    changed |= typers.put(userId, now + ttlNanos) == null;
+                    if (!expiryScheduled) {
+                        expiryScheduled = true;
+                        schedule(this::expire, ttlNanos);
+                    }
+                } else {
+                    changed |= typers.remove(userId) != null;
+                }
+                // Un renouvellement seul n'est annoncé qu'une fois l'intervalle écoulé, pour prolonger l'indicateur
+                final boolean due = now - lastSentNanos >= intervalNanos;
+                command = due && (changed || !typers.isEmpty()) ? snapshot(now) : null;
+                if (command == null && changed && !flushScheduled) {
+                    flushScheduled = true;
+                    schedule(this::flush, lastSentNanos + intervalNanos - now);
+                }
+            }
+            if (command != null) {
+                sink.toUsers(recipients, command, singleTyper(command));
+            }
+            return true;
+        }
+
+        private void flush() {
+            final ControlCommand command;
+            final List<Long> recipients;
+            synchronized (this) {
+                recipients = members;
+                flushScheduled = false;
+                if (removed) {
+                    return;
+                }
+                command = changed ? snapshot(System.nanoTime()) : null;
+                if (command == null) {
+                    removeIfIdle();
+                }
+            }
+            if (command != null) {
+                sink.toUsers(recipients, command, singleTyper(command));
+            }
+        }
+
+        private void expire() {
+            final long now = System.nanoTime();
+            final ControlCommand command;
+            final List<Long> recipients;
+            synchronized (this) {
+                recipients = members;
+                expiryScheduled = false;
+                if (removed) {
+                    return;
+                }
+                long next = Long.MAX_VALUE;
+                for (final Iterator<Long> it = typers.values().iterator(); it.hasNext(); ) {
+                    final long expires = it.next();
+                    if (expires - now <= 0) {
+                        it.remove();
+                        changed = true;
+                    } else {
+                        next = Math.min(next, expires - now);
+                    }
+                }
+                if (!typers.isEmpty()) {
+                    expiryScheduled = true;
+                    schedule(this::expire, next);
+                }
+                command = changed && now - lastSentNanos >= intervalNanos ? snapshot(now) : null;
+                if (command == null && changed && !flushScheduled) {
+                    flushScheduled = true;
+                    schedule(this::flush, lastSentNanos + intervalNanos - now);
+                }
+            }
+            if (command != null) {
+                sink.toUsers(recipients, command, singleTyper(command));
+            }
+        }
+
+        /**
+         * Trame agrégée de l'état courant ; l'entrée du groupe est retirée
+         * quand plus personne n'écrit et que la fin a été annoncée.
+         */
+        private ControlCommand snapshot(final long now) {
+            if (typers.isEmpty() && announcedCount == 0) {
+                changed = false;
+                removeIfIdle();
+                return null;
+            }
+            final List<String> names = new ArrayList<>(Math.min(maxNames, typers.size()));
+            for (final Long typer : typers.keySet()) {
+                if (names.size() == maxNames) {
+                    break;
+                }
+                names.add(String.valueOf(typer));
+            }
+            changed = false;
+            lastSentNanos = now;
+            announcedCount = typers.size();
+            removeIfIdle();
+            return new ControlCommand(ControlCommand.TYPING)
+                    .withParam(ControlCommand.PARAM_GROUP_ID, String.valueOf(groupId))
+                    .withParam(ControlCommand.PARAM_COUNT, String.valueOf(typers.size()))
+                    .withParam(ControlCommand.PARAM_USER_IDS, String.join(",", names))
+                    .withParam(ControlCommand.PARAM_TTL, String.valueOf(TimeUnit.NANOSECONDS.toMillis(ttlNanos)));
+        }
+
+        private void removeIfIdle() {
+            if (typers.isEmpty() && !flushScheduled) {
+                removed = true;
+                groups.remove(groupId, this);
+            }
+        }
+
+        /**
+         * @return Le seul membre qui écrit (inutile de le lui annoncer), sinon 0
+         */
+        private long singleTyper(final ControlCommand command) {
+            final String ids = command.getParam(ControlCommand.PARAM_USER_IDS);
+            return "1".equals(command.getParam(ControlCommand.PARAM_COUNT)) ? Long.parseLong(ids) : 0;
+        }
+    }
+}
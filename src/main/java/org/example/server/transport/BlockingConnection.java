@@ -0,0 +1,251 @@
+package org.example.server.transport;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.example.server.ServerConfig;
+import org.example.shared.protocol.Frame;
+import org.example.shared.protocol.FrameCodec;
+import org.example.shared.protocol.FrameCompression;
+
+/**
+ * Connexion lue par un thread dédié qui bloque sur la lecture du socket.
+ * Les écritures passent par une file vidée par un rédacteur exécuté sur
+ * {@code writerExecutor} : un destinataire lent ne bloque jamais l'expéditeur.
+ */
+class BlockingConnection implements ClientConnection, Runnable, InboundDecoder.Sink {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Socket socket;
+    private final ConnectionHandler handler;
+    private final Consumer<BlockingConnection> onTerminated;
+    private final InboundDecoder decoder;
+    private final Executor writerExecutor;
+    private final OutboundQueue outbound;
+    private final OutputStream output;
+    // Trames écrites dans le tampon mais pas encore vidées vers le socket (thread rédacteur uniquement)
+    private final List<OutboundFrame> unflushed;
+
+    private final boolean loopback;
+    // Compression négociée (null sinon) : compressée par le rédacteur, décompressée par le lecteur
+    private volatile FrameCompression compression;
+
+    private volatile boolean open;
+    private volatile boolean closeRequested;
+
+    BlockingConnection(final Socket socket,
+                       final Executor writerExecutor,
+                       final Function<ClientConnection, ConnectionHandler> handlerFactory,
+                       final Consumer<BlockingConnection> onTerminated) throws IOException {
+        this.socket = socket;
+        this.writerExecutor = writerExecutor;
+        this.onTerminated = onTerminated;
+        this.decoder = new InboundDecoder(this);
+        this.outbound = new OutboundQueue(ServerConfig.outboundMaxBytes(), ServerConfig.outboundMaxFrames());
+        this.output = new BufferedOutputStream(socket.getOutputStream(), WRITE_BUFFER_SIZE);
+        this.unflushed = new ArrayList<>();
+        this.loopback = socket.getInetAddress().isLoopbackAddress();
+        this.open = true;
+        this.handler = handlerFactory.apply(this);
+    }
+
+    @Override
+    public void run() {
+        // Pas de try-with-resources : fermer le flux fermerait le socket avant que le rédacteur n'ait fini
+        try {
+            final InputStream in = socket.getInputStream();
+            final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+            final ByteBuffer view = ByteBuffer.wrap(readBuffer);
+            int read;
+            while (open && (read = in.read(readBuffer)) != -1) {
+                view.clear().limit(read);
+                decoder.feed(view);
+            }
+        } catch (final IOException e) {
+            if (open) {
+                System.out.println("Client connection error: " + e.getMessage());
+            }
+        } finally {
+            open = false;
+            handler.onClosed();
+            close();
+            onTerminated.accept(this);
+        }
+    }
+
+    @Override
+    public void onLine(final String line) {
+        if (open) {
+            handler.onLine(line);
+        }
+    }
+
+    @Override
+    public void onFrame(final Frame frame) throws IOException {
+        if (open) {
+            final FrameCompression compression = this.compression;
+            handler.onFrame(compression != null ? compression.decompress(frame) : frame);
+        }
+    }
+
+    @Override
+    public void send(final String line, final OutboundPriority priority,
+                     final WriteFailureListener failureListener) throws IOException {
+        enqueue(new OutboundFrame(null, FrameCodec.encodeLine(line), priority, failureListener));
+    }
+
+    @Override
+    public void sendFrame(final byte type, final byte[] prefix, final byte[] sharedBody,
+                          final OutboundPriority priority, final WriteFailureListener failureListener)
+            throws IOException {
+        final OutboundFrame frame = OutboundFrame.frame(type, prefix, sharedBody, priority, failureListener);
+        frame.setCompressible(compression != null);
+        enqueue(frame);
+    }
+
+    private void enqueue(final OutboundFrame frame) throws IOException {
+        if (closeRequested) {
+            throw new IOException("Connexion fermée: " + getRemoteAddress());
+        }
+        if (outbound.offer(frame)) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Rédacteur : écrit toutes les trames en attente dans le tampon puis fait
+     * un seul flush, soit un seul appel système pour plusieurs messages. Les
+     * trames sont prises par classe de priorité : un signal d'appel arrivé en
+     * cours de vidage passe devant le reste d'un rejeu.
+     */
+    private void drainOutbound() {
+        boolean caughtUp = false;
+        try {
+            OutboundFrame frame;
+            while ((frame = outbound.poll()) != null) {
+                unflushed.add(frame);
+                if (compression != null) {
+                    frame.compressWith(compression);
+                }
+                if (frame.header != null) {
+                    output.write(frame.header.array(), 0, frame.header.limit());
+                }
+                output.write(frame.payload.array());
+            }
+            output.flush();
+            for (final OutboundFrame written : unflushed) {
+                caughtUp |= outbound.completed(written);
+            }
+            unflushed.clear();
+        } catch (final IOException e) {
+            unflushed.forEach(f -> outbound.fail(f, e));
+            unflushed.clear();
+            outbound.failAll(e);
+            closeRequested = true;
+        }
+        if (closeRequested) {
+            // Plus rien ne sera accepté : fermer une fois la file vidée
+            outbound.failAll(new IOException("Connexion fermée: " + getRemoteAddress()));
+            closeSocket();
+        } else if (caughtUp) {
+            writerExecutor.execute(handler::onOutboundDrained);
+        }
+        if (outbound.finishDrain()) {
+            scheduleDrain();
+        } else if (closeRequested && !socket.isClosed() && outbound.scheduleWriter()) {
+            // close() a pu arriver après la lecture du drapeau, pendant que ce rédacteur tenait
+            // la place : sa demande de rédacteur a échoué, relancer pour fermer le socket
+            scheduleDrain();
+        }
+    }
+
+    private void scheduleDrain() {
+        try {
+            writerExecutor.execute(this::drainOutbound);
+        } catch (final RejectedExecutionException e) {
+            // Transport arrêté : plus de rédacteur, abandonner ce qui reste
+            outbound.failAll(new IOException("Transport arrêté"));
+            closeSocket();
+        }
+    }
+
+    @Override
+    public void expectFrames() {
+        decoder.switchToFrames();
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        closeRequested = true;
+        // Le rédacteur ferme le socket après avoir écrit ce qui est déjà en file
+        if (outbound.scheduleWriter()) {
+            scheduleDrain();
+        }
+    }
+
+    @Override
+    public void abort() {
+        open = false;
+        closeRequested = true;
+        // Débloque le lecteur et un rédacteur éventuellement bloqué dans write()
+        closeSocket();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void enableCompression() {
+        compression = new FrameCompression();
+    }
+
+    @Override
+    public FrameCompression getCompression() {
+        return compression;
+    }
+
+    @Override
+    public boolean isLoopback() {
+        return loopback;
+    }
+
+    @Override
+    public boolean hasPending(final OutboundPriority priority) {
+        return outbound.hasPending(priority);
+    }
+
+    @Override
+    public OutboundStats getOutboundStats() {
+        return outbound.stats();
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    private void closeSocket() {
+        try {
+            if (!socket.isClosed()) {
+                socket.close();
+            }
+        } catch (final IOException e) {
+            System.err.println("Erreur lors de la fermeture du socket: " + e.getMessage());
+        }
+    }
+}
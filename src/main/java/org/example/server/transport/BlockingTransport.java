@@ -0,0 +1,122 @@
+package org.example.server.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+import org.example.shared.protocol.FrameCodec;
+
+/**
+ * Transport historique : un thread bloquant par connexion. Les threads sont
+ * fournis par l'exécuteur (threads plateforme ou threads virtuels). Les
+ * écritures sont confiées à {@code writerExecutor}, à raison d'un rédacteur
+ * actif au plus par connexion et seulement lorsqu'il y a quelque chose à écrire.
+ */
+public class BlockingTransport implements Transport {
+
+    private final int port;
+    private final Executor connectionExecutor;
+    private final Executor writerExecutor;
+    private final Function<ClientConnection, ConnectionHandler> handlerFactory;
+    private final ConnectionAdmission admission;
+    private final Set<BlockingConnection> connections;
+
+    private ServerSocket serverSocket;
+    private Thread acceptorThread;
+    private volatile boolean running;
+
+    public BlockingTransport(final int port,
+                             final Executor connectionExecutor,
+                             final Executor writerExecutor,
+                             final Function<ClientConnection, ConnectionHandler> handlerFactory,
+                             final ConnectionAdmission admission) {
+        this.port = port;
+        this.connectionExecutor = connectionExecutor;
+        this.writerExecutor = writerExecutor;
+        this.handlerFactory = handlerFactory;
+        this.admission = admission;
+        this.connections = ConcurrentHashMap.newKeySet();
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        running = true;
+        acceptorThread = new Thread(this::acceptLoop, "chat-acceptor");
+        acceptorThread.start();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                final Socket socket = serverSocket.accept();
+                final String refusal = admission.refuse(connections.size());
+                if (refusal != null) {
+                    refuse(socket, refusal);
+                    continue;
+                }
+                // Les écritures sont déjà regroupées par le rédacteur : inutile de les retarder (Nagle)
+                socket.setTcpNoDelay(true);
+                final BlockingConnection connection = new BlockingConnection(socket, writerExecutor, handlerFactory,
+                        connections::remove);
+                connections.add(connection);
+                connectionExecutor.execute(connection);
+            } catch (final IOException e) {
+                if (running) {
+                    System.err.println("Erreur lors de l'acceptation d'un client: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Répond la ligne de refus puis ferme, sans créer de session ni de thread.
+     */
+    private static void refuse(final Socket socket, final String refusal) {
+        try (Socket refused = socket) {
+            refused.getOutputStream().write(FrameCodec.encodeLine(refusal));
+            refused.shutdownOutput();
+            // Lire ce que le client a déjà envoyé : fermer avec des données non lues
+            // provoquerait un RST qui pourrait effacer la réponse côté client
+            final InputStream in = refused.getInputStream();
+            in.skip(in.available());
+        } catch (final IOException e) {
+            // Client déjà parti : rien à faire
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (final IOException e) {
+            System.err.println("Erreur lors de la fermeture du socket serveur: " + e.getMessage());
+        }
+        connections.forEach(BlockingConnection::close);
+        shutdown(connectionExecutor);
+        if (writerExecutor != connectionExecutor) {
+            shutdown(writerExecutor);
+        }
+    }
+
+    private static void shutdown(final Executor executor) {
+        if (executor instanceof ExecutorService) {
+            // shutdown() laisse les rédacteurs en cours terminer leurs écritures
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    @Override
+    public int getConnectionCount() {
+        return connections.size();
+    }
+}
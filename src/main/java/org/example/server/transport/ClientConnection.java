@@ -0,0 +1,128 @@
+package org.example.server.transport;
+
+import java.io.IOException;
+
+import org.example.shared.protocol.FrameCompression;
+
+/**
+ * Côté sortant d'une connexion client, indépendant du mode de transport.
+ * Les implémentations doivent accepter des appels depuis n'importe quel thread.
+ * L'envoi est asynchrone : la trame est placée dans la file de la connexion et
+ * écrite par son rédacteur ; l'appelant n'attend jamais le socket.
+ */
+public interface ClientConnection {
+
+    /**
+     * Envoie une ligne au client (le séparateur de fin de ligne est ajouté),
+     * en classe {@link OutboundPriority#INTERACTIVE}.
+     *
+     * @param line La ligne à envoyer
+     * @throws IOException Si la connexion est fermée, ou {@link OutboundOverflowException}
+     *                     si le client a trop de retard
+     */
+    default void send(final String line) throws IOException {
+        send(line, OutboundPriority.INTERACTIVE, null);
+    }
+
+    /**
+     * @param failureListener Prévenu si la ligne n'a finalement pas pu être écrite (peut être null)
+     */
+    default void send(final String line, final WriteFailureListener failureListener) throws IOException {
+        send(line, OutboundPriority.INTERACTIVE, failureListener);
+    }
+
+    /**
+     * @param priority        Classe de la ligne : les classes plus hautes en file passent avant elle
+     * @param failureListener Prévenu si la ligne n'a finalement pas pu être écrite (peut être null)
+     */
+    void send(String line, OutboundPriority priority, WriteFailureListener failureListener) throws IOException;
+
+    /**
+     * Envoie une trame binaire (protocole v2), en classe {@link OutboundPriority#INTERACTIVE}.
+     *
+     * @param type    Code du type de trame
+     * @param payload Charge utile
+     * @throws IOException Si la connexion est fermée, ou {@link OutboundOverflowException}
+     *                     si le client a trop de retard
+     */
+    default void sendFrame(final byte type, final byte[] payload) throws IOException {
+        sendFrame(type, null, payload, OutboundPriority.INTERACTIVE, null);
+    }
+
+    /**
+     * @param failureListener Prévenu si la trame n'a finalement pas pu être écrite (peut être null)
+     */
+    default void sendFrame(final byte type, final byte[] payload, final WriteFailureListener failureListener)
+            throws IOException {
+        sendFrame(type, null, payload, OutboundPriority.INTERACTIVE, failureListener);
+    }
+
+    /**
+     * @param priority        Classe de la trame : les classes plus hautes en file passent avant elle
+     * @param failureListener Prévenu si la trame n'a finalement pas pu être écrite (peut être null)
+     */
+    default void sendFrame(final byte type, final byte[] payload, final OutboundPriority priority,
+                           final WriteFailureListener failureListener) throws IOException {
+        sendFrame(type, null, payload, priority, failureListener);
+    }
+
+    /**
+     * Envoie une trame dont la charge est {@code prefix} suivi de {@code sharedBody},
+     * sans les concaténer : un même corps, encodé une seule fois, peut partir vers
+     * de nombreuses connexions avec un préfixe propre à chacune.
+     *
+     * @param prefix     Début de la charge, propre à ce client (peut être null)
+     * @param sharedBody Fin de la charge, jamais modifiée par la connexion ; l'appelant ne doit plus la modifier
+     */
+    void sendFrame(byte type, byte[] prefix, byte[] sharedBody, OutboundPriority priority,
+                   WriteFailureListener failureListener) throws IOException;
+
+    /**
+     * Bascule la lecture en mode trames. À appeler avant d'envoyer la réponse
+     * de poignée de main, pour que les premières trames du client soient bien décodées.
+     */
+    void expectFrames();
+
+    /**
+     * Active la compression des trames (option {@link org.example.shared.protocol.Protocol#DEFLATE}) :
+     * les trames envoyées ensuite sont compressées, les trames reçues marquées compressées sont décompressées.
+     * À appeler juste après l'envoi de la réponse de poignée de main qui l'annonce.
+     */
+    void enableCompression();
+
+    /**
+     * @return La compression active, pour ses compteurs, ou null si elle n'a pas été négociée
+     */
+    FrameCompression getCompression();
+
+    /**
+     * @return true si le client se connecte depuis la machine du serveur
+     */
+    boolean isLoopback();
+
+    /**
+     * Ferme la connexion après l'écriture des trames déjà en file.
+     * {@link ConnectionHandler#onClosed()} sera appelé une seule fois.
+     */
+    void close();
+
+    /**
+     * Ferme immédiatement, sans attendre l'écriture des trames en file, qui
+     * échouent (connexion morte). {@link ConnectionHandler#onClosed()} sera appelé une seule fois.
+     */
+    void abort();
+
+    boolean isOpen();
+
+    /**
+     * @return true si des trames de cette classe n'ont pas encore été entièrement écrites
+     */
+    boolean hasPending(OutboundPriority priority);
+
+    /**
+     * Compteurs de retard de la file sortante (client lent ou non) et latence par classe.
+     */
+    OutboundStats getOutboundStats();
+
+    String getRemoteAddress();
+}
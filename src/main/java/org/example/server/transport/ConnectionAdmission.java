@@ -0,0 +1,18 @@
+package org.example.server.transport;
+
+/**
+ * Contrôle d'admission appliqué par la boucle d'acceptation, avant toute
+ * création de session : une connexion refusée ne coûte qu'une ligne de réponse.
+ */
+@FunctionalInterface
+public interface ConnectionAdmission {
+
+    /** Accepte toutes les connexions. */
+    ConnectionAdmission ACCEPT_ALL = openConnections -> null;
+
+    /**
+     * @param openConnections Nombre de connexions déjà ouvertes sur le transport
+     * @return null pour accepter, sinon la ligne envoyée au client avant fermeture
+     */
+    String refuse(int openConnections);
+}
@@ -0,0 +1,38 @@
+package org.example.server.transport;
+
+import org.example.shared.protocol.Frame;
+
+/**
+ * Reçoit les événements entrants d'une connexion.
+ * Le transport garantit que les appels pour une même connexion sont séquentiels.
+ */
+public interface ConnectionHandler {
+
+    /**
+     * Appelé pour chaque ligne reçue du client (sans le séparateur).
+     *
+     * @param line La ligne reçue
+     */
+    void onLine(String line);
+
+    /**
+     * Appelé pour chaque trame reçue après {@link ClientConnection#expectFrames()}.
+     *
+     * @param frame La trame, valide uniquement pendant l'appel
+     */
+    default void onFrame(final Frame frame) {
+    }
+
+    /**
+     * Appelé quand un client qui avait dépassé ses plafonds de file sortante
+     * ({@link OutboundOverflowException}) a rattrapé son retard, et quand la
+     * dernière trame de fond ({@link OutboundPriority#BULK}) en attente a été écrite.
+     */
+    default void onOutboundDrained() {
+    }
+
+    /**
+     * Appelé une fois lorsque la connexion est fermée, quelle qu'en soit la cause.
+     */
+    void onClosed();
+}
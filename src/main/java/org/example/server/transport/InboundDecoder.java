@@ -0,0 +1,128 @@
+package org.example.server.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.example.shared.protocol.Frame;
+import org.example.shared.protocol.FrameCodec;
+
+/**
+ * Découpe le flux entrant d'une connexion en lignes (poignée de main, clients v1)
+ * puis en trames binaires une fois {@link #switchToFrames()} appelé.
+ * Le tampon d'accumulation est réutilisé d'une trame à l'autre ; une trame
+ * entièrement présente dans le tampon de lecture est transmise sans copie.
+ */
+final class InboundDecoder {
+
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    interface Sink {
+        void onLine(String line);
+
+        /**
+         * La trame n'est valide que pendant l'appel.
+         *
+         * @throws IOException Si la trame est inexploitable ; la connexion est alors fermée
+         */
+        void onFrame(Frame frame) throws IOException;
+    }
+
+    private final Sink sink;
+    private final Frame frame;
+    private volatile boolean framed;
+
+    private byte[] pending;
+    private int pendingLength;
+
+    InboundDecoder(final Sink sink) {
+        this.sink = sink;
+        this.frame = new Frame();
+        this.pending = new byte[256];
+    }
+
+    void switchToFrames() {
+        framed = true;
+    }
+
+    /**
+     * Consomme tout le contenu de {@code in} (tampon en mode lecture, adossé à un tableau).
+     */
+    void feed(final ByteBuffer in) throws IOException {
+        while (in.hasRemaining()) {
+            if (framed) {
+                decodeFrame(in);
+            } else {
+                decodeLine(in);
+            }
+        }
+    }
+
+    private void decodeLine(final ByteBuffer in) throws IOException {
+        while (in.hasRemaining()) {
+            final byte b = in.get();
+            if (b == '\n') {
+                int end = pendingLength;
+                if (end > 0 && pending[end - 1] == '\r') {
+                    end--;
+                }
+                final String line = new String(pending, 0, end, StandardCharsets.UTF_8);
+                pendingLength = 0;
+                sink.onLine(line);
+                // Le handler peut avoir basculé en mode trames
+                return;
+            }
+            if (pendingLength >= MAX_LINE_LENGTH) {
+                throw new IOException("Ligne trop longue");
+            }
+            append(b);
+        }
+    }
+
+    private void decodeFrame(final ByteBuffer in) throws IOException {
+        // Chemin rapide : trame complète dans le tampon de lecture, aucune copie
+        if (pendingLength == 0 && in.remaining() >= FrameCodec.HEADER_LENGTH) {
+            final int start = in.arrayOffset() + in.position();
+            final int length = FrameCodec.readLength(in.array(), start);
+            if (in.remaining() >= FrameCodec.HEADER_LENGTH + length) {
+                in.position(in.position() + FrameCodec.HEADER_LENGTH + length);
+                sink.onFrame(frame.set(in.array()[start + 4], in.array(), start + FrameCodec.HEADER_LENGTH, length));
+                return;
+            }
+        }
+
+        // Sinon accumuler l'en-tête puis la charge dans le tampon réutilisable
+        if (pendingLength < FrameCodec.HEADER_LENGTH) {
+            final int n = Math.min(FrameCodec.HEADER_LENGTH - pendingLength, in.remaining());
+            appendBytes(in, n);
+            if (pendingLength < FrameCodec.HEADER_LENGTH) {
+                return;
+            }
+        }
+        final int length = FrameCodec.readLength(pending, 0);
+        final int total = FrameCodec.HEADER_LENGTH + length;
+        appendBytes(in, Math.min(total - pendingLength, in.remaining()));
+        if (pendingLength == total) {
+            pendingLength = 0;
+            sink.onFrame(frame.set(pending[4], pending, FrameCodec.HEADER_LENGTH, length));
+        }
+    }
+
+    private void append(final byte b) {
+        ensureCapacity(pendingLength + 1);
+        pending[pendingLength++] = b;
+    }
+
+    private void appendBytes(final ByteBuffer in, final int count) {
+        ensureCapacity(pendingLength + count);
+        in.get(pending, pendingLength, count);
+        pendingLength += count;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(capacity, pending.length * 2));
+        }
+    }
+}
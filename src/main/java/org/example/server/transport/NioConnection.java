@@ -0,0 +1,357 @@
+package org.example.server.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.example.server.ServerConfig;
+import org.example.shared.protocol.Frame;
+import org.example.shared.protocol.FrameCodec;
+import org.example.shared.protocol.FrameCompression;
+
+/**
+ * Connexion non bloquante pilotée par une {@link NioEventLoop}.
+ * La lecture et l'écriture se font sur le thread de la boucle ; les lignes et
+ * trames décodées sont transmises au {@link ConnectionHandler} via un exécuteur
+ * séquentiel, car le traitement peut bloquer (authentification, persistance).
+ */
+class NioConnection implements ClientConnection, InboundDecoder.Sink {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    // Trames regroupées au plus dans un même write(ByteBuffer[]) (deux tampons par trame)
+    private static final int MAX_GATHER_FRAMES = 64;
+    // Lignes et trames reçues mais pas encore traitées au-delà desquelles la lecture est suspendue
+    static final int MAX_INBOUND_BACKLOG = 256;
+    // Seuil de reprise de la lecture, pour ne pas basculer OP_READ à chaque trame
+    static final int RESUME_INBOUND_BACKLOG = MAX_INBOUND_BACKLOG / 2;
+
+    private final SocketChannel channel;
+    private final NioEventLoop loop;
+    private final Executor handlerExecutor;
+    private final ConnectionHandler handler;
+    private final Consumer<NioConnection> onTerminated;
+    private final String remoteAddress;
+
+    private final ByteBuffer readBuffer;
+    private final InboundDecoder decoder;
+
+    private final OutboundQueue outbound;
+    // Trames sorties de la file mais pas entièrement écrites (thread de la boucle uniquement)
+    private final Deque<OutboundFrame> inFlight;
+    private final ByteBuffer[] gather;
+    private final AtomicBoolean closed;
+    // Tâches remises au gestionnaire et pas encore terminées
+    private final AtomicInteger inboundBacklog;
+    private final boolean loopback;
+    // Compression négociée (null sinon) : compressée à l'écriture et décompressée à la lecture, sur la boucle
+    private volatile FrameCompression compression;
+    private SelectionKey key;
+    private boolean terminated;
+    // OP_READ retiré tant que le gestionnaire n'a pas rattrapé son retard (thread de la boucle uniquement)
+    private boolean readSuspended;
+
+    NioConnection(final SocketChannel channel,
+                  final NioEventLoop loop,
+                  final Executor workers,
+                  final Function<ClientConnection, ConnectionHandler> handlerFactory,
+                  final Consumer<NioConnection> onTerminated) throws IOException {
+        this.channel = channel;
+        this.loop = loop;
+        this.handlerExecutor = new SerialExecutor(workers);
+        this.onTerminated = onTerminated;
+        this.remoteAddress = String.valueOf(channel.getRemoteAddress());
+        this.loopback = channel.socket().getInetAddress().isLoopbackAddress();
+        this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        this.decoder = new InboundDecoder(this);
+        this.outbound = new OutboundQueue(ServerConfig.outboundMaxBytes(), ServerConfig.outboundMaxFrames());
+        this.inFlight = new ArrayDeque<>();
+        this.gather = new ByteBuffer[MAX_GATHER_FRAMES * 2];
+        this.closed = new AtomicBoolean();
+        this.inboundBacklog = new AtomicInteger();
+        this.handler = handlerFactory.apply(this);
+    }
+
+    /**
+     * Appelé par la boucle une fois le canal enregistré auprès du sélecteur.
+     */
+    void attach(final SelectionKey key) {
+        this.key = key;
+        if (!outbound.isEmpty() || closed.get()) {
+            flush();
+        }
+    }
+
+    void onReadable() {
+        try {
+            int read = 0;
+            while (!closed.get() && (read = channel.read(readBuffer)) > 0) {
+                readBuffer.flip();
+                decoder.feed(readBuffer);
+                readBuffer.clear();
+                if (inboundBacklog.get() >= MAX_INBOUND_BACKLOG) {
+                    // Le client envoie plus vite que son gestionnaire ne traite : laisser
+                    // les données dans le tampon du socket, TCP ralentira l'émetteur
+                    suspendReading();
+                    break;
+                }
+            }
+            if (read < 0) {
+                close();
+            }
+        } catch (final IOException e) {
+            System.out.println("Client connection error: " + e.getMessage());
+            close();
+        }
+    }
+
+    @Override
+    public void onLine(final String line) {
+        if (!closed.get()) {
+            dispatch(() -> handler.onLine(line));
+        }
+    }
+
+    @Override
+    public void onFrame(final Frame frame) throws IOException {
+        if (!closed.get()) {
+            final FrameCompression compression = this.compression;
+            // Le tampon du décodeur est réutilisé : copier avant de changer de thread
+            // (une trame décompressée a déjà son propre tampon)
+            final Frame owned = compression != null && FrameCompression.isCompressed(frame.getType())
+                    ? compression.decompress(frame)
+                    : frame.copy();
+            dispatch(() -> handler.onFrame(owned));
+        }
+    }
+
+    /**
+     * Remet une ligne ou une trame reçue au gestionnaire en comptant le retard
+     * de traitement ; la lecture reprend quand il est redescendu sous
+     * {@value #RESUME_INBOUND_BACKLOG}.
+     */
+    private void dispatch(final Runnable task) {
+        inboundBacklog.incrementAndGet();
+        handlerExecutor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                if (inboundBacklog.decrementAndGet() == RESUME_INBOUND_BACKLOG) {
+                    loop.execute(this::resumeReading);
+                }
+            }
+        });
+    }
+
+    private void suspendReading() {
+        if (!readSuspended && key != null && key.isValid()) {
+            readSuspended = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    private void resumeReading() {
+        if (readSuspended && !terminated && key.isValid() && inboundBacklog.get() < MAX_INBOUND_BACKLOG) {
+            readSuspended = false;
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+
+    void onWritable() {
+        flush();
+    }
+
+    @Override
+    public void send(final String line, final OutboundPriority priority,
+                     final WriteFailureListener failureListener) throws IOException {
+        enqueue(new OutboundFrame(null, FrameCodec.encodeLine(line), priority, failureListener));
+    }
+
+    @Override
+    public void sendFrame(final byte type, final byte[] prefix, final byte[] sharedBody,
+                          final OutboundPriority priority, final WriteFailureListener failureListener)
+            throws IOException {
+        final OutboundFrame frame = OutboundFrame.frame(type, prefix, sharedBody, priority, failureListener);
+        frame.setCompressible(compression != null);
+        enqueue(frame);
+    }
+
+    private void enqueue(final OutboundFrame frame) throws IOException {
+        if (closed.get()) {
+            throw new IOException("Connexion fermée: " + remoteAddress);
+        }
+        if (outbound.offer(frame)) {
+            loop.execute(this::flush);
+        }
+    }
+
+    @Override
+    public void expectFrames() {
+        decoder.switchToFrames();
+    }
+
+    /**
+     * Vide la file sortante autant que le socket l'accepte, en regroupant les
+     * trames en attente dans une écriture vectorielle ; s'abonne à OP_WRITE pour
+     * le reste. Toujours exécuté sur le thread de la boucle.
+     * <p>
+     * Les trames sont prises par classe de priorité ; une trame plus haute
+     * arrivée entre-temps n'attend que celles déjà regroupées (au plus
+     * {@value #MAX_GATHER_FRAMES}), pas le reste de la file.
+     */
+    private void flush() {
+        if (terminated) {
+            return;
+        }
+        if (key == null) {
+            // Pas encore enregistré : attach() relancera l'écriture
+            if (closed.get()) {
+                terminate(new IOException("Connexion fermée: " + remoteAddress));
+            }
+            return;
+        }
+        try {
+            while (true) {
+                OutboundFrame frame;
+                while (inFlight.size() < MAX_GATHER_FRAMES && (frame = outbound.poll()) != null) {
+                    if (compression != null) {
+                        frame.compressWith(compression);
+                    }
+                    inFlight.add(frame);
+                }
+                if (inFlight.isEmpty()) {
+                    break;
+                }
+                int count = 0;
+                for (final OutboundFrame pending : inFlight) {
+                    if (pending.header != null) {
+                        gather[count++] = pending.header;
+                    }
+                    gather[count++] = pending.payload;
+                }
+                channel.write(gather, 0, count);
+                while (!inFlight.isEmpty() && inFlight.peek().isWritten()) {
+                    if (outbound.completed(inFlight.poll()) && !closed.get()) {
+                        handlerExecutor.execute(handler::onOutboundDrained);
+                    }
+                }
+                if (!inFlight.isEmpty()) {
+                    if (closed.get()) {
+                        // Fermeture demandée et client qui ne lit plus : ne pas attendre
+                        throw new IOException("Client trop lent, fermeture: " + remoteAddress);
+                    }
+                    // Socket plein : reprendre sur OP_WRITE, le rédacteur reste planifié
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (final IOException e) {
+            System.out.println("Client connection error: " + e.getMessage());
+            terminate(e);
+            return;
+        } finally {
+            Arrays.fill(gather, null);
+        }
+        if (closed.get()) {
+            // Fermeture demandée et tout ce qui était en file est écrit
+            terminate(new IOException("Connexion fermée: " + remoteAddress));
+        } else if (outbound.finishDrain()) {
+            loop.execute(this::flush);
+        }
+    }
+
+    /**
+     * Ferme le canal et signale l'échec des trames qui n'ont pas pu partir.
+     * Toujours exécuté sur le thread de la boucle.
+     */
+    private void terminate(final IOException cause) {
+        if (terminated) {
+            return;
+        }
+        terminated = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            System.err.println("Erreur lors de la fermeture du socket: " + e.getMessage());
+        }
+        inFlight.forEach(frame -> outbound.fail(frame, cause));
+        inFlight.clear();
+        outbound.failAll(cause);
+        if (closed.compareAndSet(false, true)) {
+            notifyClosed();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        // Le canal est fermé par flush() une fois les trames déjà en file écrites
+        if (outbound.scheduleWriter()) {
+            loop.execute(this::flush);
+        }
+        notifyClosed();
+    }
+
+    @Override
+    public void abort() {
+        final boolean first = closed.compareAndSet(false, true);
+        loop.execute(() -> terminate(new IOException("Connexion interrompue: " + remoteAddress)));
+        if (first) {
+            notifyClosed();
+        }
+    }
+
+    private void notifyClosed() {
+        handlerExecutor.execute(handler::onClosed);
+        onTerminated.accept(this);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    @Override
+    public void enableCompression() {
+        compression = new FrameCompression();
+    }
+
+    @Override
+    public FrameCompression getCompression() {
+        return compression;
+    }
+
+    @Override
+    public boolean isLoopback() {
+        return loopback;
+    }
+
+    @Override
+    public boolean hasPending(final OutboundPriority priority) {
+        return outbound.hasPending(priority);
+    }
+
+    @Override
+    public OutboundStats getOutboundStats() {
+        return outbound.stats();
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+}
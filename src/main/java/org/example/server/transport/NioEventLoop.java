@@ -0,0 +1,124 @@
+package org.example.server.transport;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Boucle d'événements mono-thread : possède un Selector et toutes les
+ * connexions qui lui ont été attribuées. Seul ce thread touche aux canaux.
+ */
+class NioEventLoop implements Runnable {
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final Thread thread;
+    private volatile boolean running;
+
+    NioEventLoop(final String name) throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.thread = new Thread(this, name);
+    }
+
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Exécute une tâche sur le thread de la boucle (immédiatement si on y est déjà).
+     */
+    void execute(final Runnable task) {
+        if (Thread.currentThread() == thread) {
+            task.run();
+        } else {
+            tasks.offer(task);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Attribue un canal accepté à cette boucle.
+     */
+    void register(final SocketChannel channel, final NioConnection connection) {
+        execute(() -> {
+            try {
+                final SelectionKey key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connection.attach(key);
+            } catch (final IOException e) {
+                System.err.println("Impossible d'enregistrer la connexion: " + e.getMessage());
+                connection.close();
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                runTasks();
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    final NioConnection connection = (NioConnection) key.attachment();
+                    if (!key.isValid()) {
+                        connection.close();
+                        continue;
+                    }
+                    if (key.isReadable()) {
+                        connection.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.onWritable();
+                    }
+                }
+            } catch (final ClosedSelectorException e) {
+                break;
+            } catch (final IOException e) {
+                System.err.println("Erreur dans la boucle d'événements " + thread.getName() + ": " + e.getMessage());
+            }
+        }
+        runTasks();
+        try {
+            selector.close();
+        } catch (final IOException e) {
+            System.err.println("Erreur lors de la fermeture du sélecteur: " + e.getMessage());
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (final RuntimeException e) {
+                System.err.println("Erreur dans une tâche de la boucle " + thread.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ferme les connexions de la boucle puis attend la fin de son thread.
+     */
+    void stop() {
+        execute(() -> {
+            for (final SelectionKey key : selector.keys()) {
+                ((NioConnection) key.attachment()).close();
+            }
+            running = false;
+        });
+        try {
+            thread.join(1000);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.example.server.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.example.shared.protocol.FrameCodec;
+
+/**
+ * Transport non bloquant : un thread d'acceptation, un petit nombre fixe de
+ * boucles d'événements (Selector) pour les entrées/sorties, et un pool de
+ * travail pour la logique bloquante des {@link ConnectionHandler}.
+ */
+public class NioTransport implements Transport {
+
+    private final int port;
+    private final Function<ClientConnection, ConnectionHandler> handlerFactory;
+    private final ConnectionAdmission admission;
+    private final NioEventLoop[] loops;
+    private final ExecutorService workers;
+    private final Set<NioConnection> connections;
+    private final AtomicInteger nextLoop;
+
+    private ServerSocketChannel serverChannel;
+    private Thread acceptorThread;
+    private volatile boolean running;
+
+    public NioTransport(final int port,
+                        final int eventLoops,
+                        final ExecutorService workers,
+                        final Function<ClientConnection, ConnectionHandler> handlerFactory,
+                        final ConnectionAdmission admission) throws IOException {
+        this.port = port;
+        this.handlerFactory = handlerFactory;
+        this.admission = admission;
+        this.loops = new NioEventLoop[Math.max(1, eventLoops)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new NioEventLoop("chat-nio-loop-" + i);
+        }
+        this.workers = workers;
+        this.connections = ConcurrentHashMap.newKeySet();
+        this.nextLoop = new AtomicInteger();
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        running = true;
+        for (final NioEventLoop loop : loops) {
+            loop.start();
+        }
+        acceptorThread = new Thread(this::acceptLoop, "chat-acceptor");
+        acceptorThread.start();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                final SocketChannel channel = serverChannel.accept();
+                final String refusal = admission.refuse(connections.size());
+                if (refusal != null) {
+                    refuse(channel, refusal);
+                    continue;
+                }
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                final NioEventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+                final NioConnection connection = new NioConnection(channel, loop, workers, handlerFactory,
+                        connections::remove);
+                connections.add(connection);
+                loop.register(channel, connection);
+            } catch (final IOException e) {
+                if (running) {
+                    System.err.println("Erreur lors de l'acceptation d'un client: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Répond la ligne de refus puis ferme, sans enregistrer le canal auprès d'une boucle.
+     * Le canal est encore bloquant : une ligne courte part d'un seul write.
+     */
+    private static void refuse(final SocketChannel channel, final String refusal) {
+        try (SocketChannel refused = channel) {
+            refused.write(ByteBuffer.wrap(FrameCodec.encodeLine(refusal)));
+            refused.shutdownOutput();
+            // Lire ce que le client a déjà envoyé : fermer avec des données non lues
+            // provoquerait un RST qui pourrait effacer la réponse côté client
+            refused.configureBlocking(false);
+            refused.read(ByteBuffer.allocate(512));
+        } catch (final IOException e) {
+            // Client déjà parti : rien à faire
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (final IOException e) {
+            System.err.println("Erreur lors de la fermeture du socket serveur: " + e.getMessage());
+        }
+        for (final NioEventLoop loop : loops) {
+            loop.stop();
+        }
+        workers.shutdown();
+    }
+
+    @Override
+    public int getConnectionCount() {
+        return connections.size();
+    }
+}
@@ -0,0 +1,102 @@
+package org.example.server.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.example.shared.protocol.FrameCodec;
+import org.example.shared.protocol.FrameCompression;
+
+/**
+ * Élément de la file sortante d'une connexion : en-tête et charge séparés,
+ * pour être écrits sans recopie (écriture groupée en NIO, tampon en mode bloquant).
+ */
+final class OutboundFrame {
+    final ByteBuffer header;
+    ByteBuffer payload;
+    private final OutboundPriority priority;
+    private final WriteFailureListener failureListener;
+    // Taille à l'ajout, utilisée pour les plafonds de la file même si la charge est ensuite compressée
+    private final int size;
+    private boolean compressible;
+    // Instant de l'ajout à la file, pour la latence de la classe (renseigné par la file)
+    long enqueuedNanos;
+
+    /**
+     * Trame v2 : l'en-tête de trame et le préfixe propre au destinataire forment
+     * un seul petit tableau, le corps (éventuellement partagé) n'est pas recopié.
+     *
+     * @param prefix Début de la charge (peut être null)
+     */
+    static OutboundFrame frame(final byte type, final byte[] prefix, final byte[] body,
+                               final OutboundPriority priority, final WriteFailureListener failureListener) {
+        final int prefixLength = prefix != null ? prefix.length : 0;
+        final byte[] header = new byte[FrameCodec.HEADER_LENGTH + prefixLength];
+        FrameCodec.writeHeader(header, 0, type, prefixLength + body.length);
+        if (prefixLength > 0) {
+            System.arraycopy(prefix, 0, header, FrameCodec.HEADER_LENGTH, prefixLength);
+        }
+        return new OutboundFrame(header, body, priority, failureListener);
+    }
+
+    OutboundFrame(final byte[] header, final byte[] payload, final OutboundPriority priority,
+                  final WriteFailureListener failureListener) {
+        this.header = header != null ? ByteBuffer.wrap(header) : null;
+        this.payload = ByteBuffer.wrap(payload);
+        this.priority = priority;
+        this.failureListener = failureListener;
+        this.size = (header != null ? header.length : 0) + payload.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    OutboundPriority priority() {
+        return priority;
+    }
+
+    /**
+     * Marque la trame à compresser par le rédacteur, au moment de son écriture.
+     */
+    void setCompressible(final boolean compressible) {
+        this.compressible = header != null && compressible;
+    }
+
+    /**
+     * Compresse la charge si la trame a été marquée ; à appeler par le rédacteur,
+     * dans l'ordre d'écriture, avant toute écriture de la trame.
+     */
+    void compressWith(final FrameCompression compression) {
+        final int prefixLength = header != null ? header.limit() - FrameCodec.HEADER_LENGTH : 0;
+        if (!compressible || !FrameCompression.shouldCompress(prefixLength + payload.remaining())) {
+            return;
+        }
+        byte[] plain = payload.array();
+        if (prefixLength > 0) {
+            // Le flux deflate est propre à la connexion : préfixe et corps partagé sont compressés ensemble
+            plain = new byte[prefixLength + payload.remaining()];
+            System.arraycopy(header.array(), FrameCodec.HEADER_LENGTH, plain, 0, prefixLength);
+            System.arraycopy(payload.array(), 0, plain, prefixLength, payload.remaining());
+        }
+        final byte[] compressed = compression.compress(plain);
+        final byte type = (byte) (header.get(4) | FrameCompression.COMPRESSED_FLAG);
+        FrameCodec.writeHeader(header.array(), 0, type, compressed.length);
+        header.limit(FrameCodec.HEADER_LENGTH);
+        payload = ByteBuffer.wrap(compressed);
+        compressible = false;
+    }
+
+    boolean isWritten() {
+        return (header == null || !header.hasRemaining()) && !payload.hasRemaining();
+    }
+
+    void fail(final IOException cause) {
+        if (failureListener != null) {
+            try {
+                failureListener.onWriteFailed(cause);
+            } catch (final RuntimeException e) {
+                System.err.println("Erreur lors du signalement d'un échec d'envoi: " + e.getMessage());
+            }
+        }
+    }
+}
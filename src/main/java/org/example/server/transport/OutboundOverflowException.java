@@ -0,0 +1,17 @@
+package org.example.server.transport;
+
+import java.io.IOException;
+
+/**
+ * Levée par {@link ClientConnection} lorsqu'un client lent a dépassé ses
+ * plafonds de file sortante. La connexion reste ouverte ;
+ * {@link ConnectionHandler#onOutboundDrained()} signale quand il a rattrapé son retard.
+ */
+public class OutboundOverflowException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public OutboundOverflowException(final String message) {
+        super(message);
+    }
+}
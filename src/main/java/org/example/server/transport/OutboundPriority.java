@@ -0,0 +1,26 @@
+package org.example.server.transport;
+
+/**
+ * Classe de priorité d'une trame sortante. Le rédacteur d'une connexion vide
+ * toujours les classes les plus hautes d'abord : une sonnerie d'appel ne
+ * patiente pas derrière le rejeu d'un arriéré. L'ordre n'est garanti qu'au
+ * sein d'une même classe.
+ */
+public enum OutboundPriority {
+
+    /**
+     * Signaux d'appel et commandes de contrôle (PING, PONG, ticket de session) :
+     * petites trames admises même au-delà des plafonds d'un client lent, dans la limite du double.
+     */
+    CONTROL,
+
+    /**
+     * Messages délivrés en direct.
+     */
+    INTERACTIVE,
+
+    /**
+     * Rejeu des messages en attente et pages de synchronisation de l'historique.
+     */
+    BULK
+}
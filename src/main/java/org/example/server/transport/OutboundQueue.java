@@ -0,0 +1,206 @@
+package org.example.server.transport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * File sortante d'une connexion. Les producteurs (threads des autres clients,
+ * broker) ne font qu'ajouter ; un seul rédacteur à la fois vide la file et
+ * regroupe les trames en attente dans une même écriture.
+ * <p>
+ * Une sous-file par {@link OutboundPriority} : le rédacteur prend toujours la
+ * trame la plus ancienne de la classe la plus haute non vide. La latence (de
+ * l'ajout à l'écriture complète) est mesurée séparément pour chaque classe.
+ * <p>
+ * La file est bornée en octets et en trames. Une fois un plafond atteint, le
+ * client est « lent » : les ajouts sont refusés jusqu'à ce que le retard
+ * redescende sous la moitié des deux plafonds. Les trames de contrôle restent
+ * admises jusqu'au double des plafonds.
+ */
+final class OutboundQueue {
+
+    private static final OutboundPriority[] PRIORITIES = OutboundPriority.values();
+
+    // Une sous-file par classe, dans l'ordre des priorités
+    private final List<Queue<OutboundFrame>> lanes;
+    private final AtomicBoolean writerScheduled;
+    private final long maxBytes;
+    private final int maxFrames;
+
+    // Comptés de l'ajout jusqu'à l'écriture effective (ou l'échec), y compris les trames en cours d'écriture
+    private final AtomicLong pendingBytes;
+    private final AtomicInteger pendingFrames;
+    private final AtomicIntegerArray lanePendingFrames;
+    private final AtomicLong peakPendingBytes;
+    private final AtomicLong rejectedFrames;
+    private final AtomicLong congestionCount;
+    private final AtomicBoolean congested;
+
+    // Trames écrites et latence par classe
+    private final AtomicLongArray writtenFrames;
+    private final AtomicLongArray totalLatencyNanos;
+    private final AtomicLongArray maxLatencyNanos;
+
+    OutboundQueue(final long maxBytes, final int maxFrames) {
+        this.lanes = new ArrayList<>(PRIORITIES.length);
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            lanes.add(new ConcurrentLinkedQueue<>());
+        }
+        this.writerScheduled = new AtomicBoolean();
+        this.maxBytes = maxBytes;
+        this.maxFrames = maxFrames;
+        this.pendingBytes = new AtomicLong();
+        this.pendingFrames = new AtomicInteger();
+        this.lanePendingFrames = new AtomicIntegerArray(PRIORITIES.length);
+        this.peakPendingBytes = new AtomicLong();
+        this.rejectedFrames = new AtomicLong();
+        this.congestionCount = new AtomicLong();
+        this.congested = new AtomicBoolean();
+        this.writtenFrames = new AtomicLongArray(PRIORITIES.length);
+        this.totalLatencyNanos = new AtomicLongArray(PRIORITIES.length);
+        this.maxLatencyNanos = new AtomicLongArray(PRIORITIES.length);
+    }
+
+    /**
+     * @return true si l'appelant doit planifier le rédacteur (aucun n'est en cours)
+     * @throws OutboundOverflowException Si le client est au-dessus de ses plafonds
+     */
+    boolean offer(final OutboundFrame frame) throws OutboundOverflowException {
+        final boolean control = frame.priority() == OutboundPriority.CONTROL;
+        if (congested.get() && !control) {
+            rejectedFrames.incrementAndGet();
+            throw new OutboundOverflowException("Client lent, " + pendingBytes.get() + " octets en attente");
+        }
+        final long bytes = pendingBytes.addAndGet(frame.size());
+        final int count = pendingFrames.incrementAndGet();
+        lanePendingFrames.incrementAndGet(frame.priority().ordinal());
+        // Une trame seule passe toujours, même plus grosse que le plafond
+        final int factor = control ? 2 : 1;
+        if (count > 1 && (bytes > maxBytes * factor || count > maxFrames * factor)) {
+            release(frame);
+            rejectedFrames.incrementAndGet();
+            if (congested.compareAndSet(false, true)) {
+                congestionCount.incrementAndGet();
+            }
+            throw new OutboundOverflowException("Client lent, " + bytes + " octets / " + count + " trames en attente");
+        }
+        peakPendingBytes.accumulateAndGet(bytes, Math::max);
+        frame.enqueuedNanos = System.nanoTime();
+        lanes.get(frame.priority().ordinal()).offer(frame);
+        return scheduleWriter();
+    }
+
+    /**
+     * @return true si l'appelant doit planifier le rédacteur
+     */
+    boolean scheduleWriter() {
+        return writerScheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * @return La prochaine trame de la classe la plus haute, ou null si la file est vide
+     */
+    OutboundFrame poll() {
+        for (final Queue<OutboundFrame> lane : lanes) {
+            final OutboundFrame frame = lane.poll();
+            if (frame != null) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    boolean isEmpty() {
+        for (final Queue<OutboundFrame> lane : lanes) {
+            if (!lane.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true si des trames de cette classe attendent encore d'être écrites (en cours d'écriture compris)
+     */
+    boolean hasPending(final OutboundPriority priority) {
+        return lanePendingFrames.get(priority.ordinal()) > 0;
+    }
+
+    /**
+     * À appeler par le rédacteur quand il a vidé la file.
+     *
+     * @return true s'il doit repasser : des trames sont arrivées entre-temps
+     */
+    boolean finishDrain() {
+        writerScheduled.set(false);
+        return !isEmpty() && writerScheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * À appeler par le rédacteur pour chaque trame entièrement écrite.
+     *
+     * @return true si le client vient de rattraper son retard, ou d'écrire la
+     *         dernière trame de fond ({@link OutboundPriority#BULK}) en attente
+     */
+    boolean completed(final OutboundFrame frame) {
+        release(frame);
+        final int lane = frame.priority().ordinal();
+        final long latency = System.nanoTime() - frame.enqueuedNanos;
+        writtenFrames.incrementAndGet(lane);
+        totalLatencyNanos.addAndGet(lane, latency);
+        maxLatencyNanos.accumulateAndGet(lane, latency, Math::max);
+        final boolean caughtUp = congested.get()
+                && pendingBytes.get() <= maxBytes / 2
+                && pendingFrames.get() <= maxFrames / 2
+                && congested.compareAndSet(true, false);
+        return caughtUp || frame.priority() == OutboundPriority.BULK && !hasPending(OutboundPriority.BULK);
+    }
+
+    /**
+     * Signale l'échec d'une trame déjà sortie de la file.
+     */
+    void fail(final OutboundFrame frame, final IOException cause) {
+        release(frame);
+        frame.fail(cause);
+    }
+
+    /**
+     * Signale l'échec de toutes les trames encore en attente.
+     */
+    void failAll(final IOException cause) {
+        OutboundFrame frame;
+        while ((frame = poll()) != null) {
+            fail(frame, cause);
+        }
+    }
+
+    OutboundStats stats() {
+        final int[] lanePending = new int[PRIORITIES.length];
+        final long[] written = new long[PRIORITIES.length];
+        final long[] totalLatency = new long[PRIORITIES.length];
+        final long[] maxLatency = new long[PRIORITIES.length];
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            lanePending[i] = lanePendingFrames.get(i);
+            written[i] = writtenFrames.get(i);
+            totalLatency[i] = totalLatencyNanos.get(i);
+            maxLatency[i] = maxLatencyNanos.get(i);
+        }
+        return new OutboundStats(pendingBytes.get(), pendingFrames.get(), peakPendingBytes.get(),
+                rejectedFrames.get(), congestionCount.get(), congested.get(),
+                lanePending, written, totalLatency, maxLatency);
+    }
+
+    private void release(final OutboundFrame frame) {
+        pendingBytes.addAndGet(-frame.size());
+        pendingFrames.decrementAndGet();
+        lanePendingFrames.decrementAndGet(frame.priority().ordinal());
+    }
+}
@@ -0,0 +1,107 @@
+package org.example.server.transport;
+
+/**
+ * Instantané des compteurs de retard d'une connexion : ce qui attend d'être
+ * écrit, combien de fois le client a dépassé les plafonds, et la latence de
+ * chaque classe de priorité (de l'ajout à la file à l'écriture complète).
+ */
+public final class OutboundStats {
+    private final long pendingBytes;
+    private final int pendingFrames;
+    private final long peakPendingBytes;
+    private final long rejectedFrames;
+    private final long congestionCount;
+    private final boolean congested;
+    // Par classe, indexés par OutboundPriority.ordinal()
+    private final int[] lanePendingFrames;
+    private final long[] writtenFrames;
+    private final long[] totalLatencyNanos;
+    private final long[] maxLatencyNanos;
+
+    OutboundStats(final long pendingBytes,
+                  final int pendingFrames,
+                  final long peakPendingBytes,
+                  final long rejectedFrames,
+                  final long congestionCount,
+                  final boolean congested,
+                  final int[] lanePendingFrames,
+                  final long[] writtenFrames,
+                  final long[] totalLatencyNanos,
+                  final long[] maxLatencyNanos) {
+        this.pendingBytes = pendingBytes;
+        this.pendingFrames = pendingFrames;
+        this.peakPendingBytes = peakPendingBytes;
+        this.rejectedFrames = rejectedFrames;
+        this.congestionCount = congestionCount;
+        this.congested = congested;
+        this.lanePendingFrames = lanePendingFrames;
+        this.writtenFrames = writtenFrames;
+        this.totalLatencyNanos = totalLatencyNanos;
+        this.maxLatencyNanos = maxLatencyNanos;
+    }
+
+    public long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    public int getPendingFrames() {
+        return pendingFrames;
+    }
+
+    public int getPendingFrames(final OutboundPriority priority) {
+        return lanePendingFrames[priority.ordinal()];
+    }
+
+    public long getPeakPendingBytes() {
+        return peakPendingBytes;
+    }
+
+    /**
+     * Trames refusées parce que le client était au-dessus des plafonds.
+     */
+    public long getRejectedFrames() {
+        return rejectedFrames;
+    }
+
+    /**
+     * Nombre de fois où le client est passé en état lent.
+     */
+    public long getCongestionCount() {
+        return congestionCount;
+    }
+
+    public boolean isCongested() {
+        return congested;
+    }
+
+    public long getWrittenFrames(final OutboundPriority priority) {
+        return writtenFrames[priority.ordinal()];
+    }
+
+    public double getAverageLatencyMillis(final OutboundPriority priority) {
+        final long written = writtenFrames[priority.ordinal()];
+        return written == 0 ? 0 : totalLatencyNanos[priority.ordinal()] / 1e6 / written;
+    }
+
+    public double getMaxLatencyMillis(final OutboundPriority priority) {
+        return maxLatencyNanos[priority.ordinal()] / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder()
+                .append("en attente=").append(pendingBytes).append(" o/").append(pendingFrames).append(" trames")
+                .append(", pic=").append(peakPendingBytes).append(" o")
+                .append(", refusées=").append(rejectedFrames)
+                .append(", épisodes lents=").append(congestionCount)
+                .append(congested ? " (lent)" : "");
+        for (final OutboundPriority priority : OutboundPriority.values()) {
+            if (getWrittenFrames(priority) > 0 || getPendingFrames(priority) > 0) {
+                sb.append(", ").append(priority).append('=').append(getWrittenFrames(priority)).append(" écrites")
+                        .append(String.format(" (latence moy=%.2f ms/max=%.2f ms)",
+                                getAverageLatencyMillis(priority), getMaxLatencyMillis(priority)));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.server.transport;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Exécute les tâches d'une connexion une par une, dans l'ordre de soumission,
+ * sur un pool partagé. Permet de sortir la logique bloquante (BDD) des boucles
+ * d'événements sans perdre l'ordre des messages d'un client.
+ */
+class SerialExecutor implements Executor {
+
+    private final Executor delegate;
+    private final Queue<Runnable> tasks;
+    private final AtomicBoolean scheduled;
+
+    SerialExecutor(final Executor delegate) {
+        this.delegate = delegate;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.scheduled = new AtomicBoolean();
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        tasks.offer(task);
+        if (scheduled.compareAndSet(false, true)) {
+            delegate.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (final RuntimeException e) {
+                System.err.println("Erreur lors du traitement d'une tâche client: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        scheduled.set(false);
+        // Une tâche a pu arriver entre le dernier poll() et la remise à zéro du drapeau
+        if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+            delegate.execute(this::drain);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.example.server.transport;
+
+import java.io.IOException;
+
+/**
+ * Couche d'acceptation et d'entrées/sorties des connexions TCP du serveur de chat.
+ */
+public interface Transport {
+
+    /**
+     * Ouvre le port d'écoute et démarre les threads du transport.
+     *
+     * @throws IOException Si le port ne peut pas être ouvert
+     */
+    void start() throws IOException;
+
+    /**
+     * Arrête l'acceptation et ferme les connexions ouvertes.
+     */
+    void stop();
+
+    /**
+     * @return Le nombre de connexions actuellement ouvertes
+     */
+    int getConnectionCount();
+}
@@ -0,0 +1,81 @@
+package org.example.server.transport;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.example.server.ServerConfig;
+import org.example.server.ServerExecutors;
+
+/**
+ * Crée le transport correspondant à l'option de démarrage --transport.
+ */
+public final class Transports {
+
+    private Transports() {
+    }
+
+    /**
+     * Transport sans contrôle d'admission.
+     */
+    public static Transport create(final String mode,
+                                   final int port,
+                                   final Function<ClientConnection, ConnectionHandler> handlerFactory)
+            throws IOException {
+        return create(mode, port, handlerFactory, ConnectionAdmission.ACCEPT_ALL);
+    }
+
+    /**
+     * @param mode           "blocking", "virtual" ou "nio"
+     * @param port           Port TCP d'écoute
+     * @param handlerFactory Crée la session associée à chaque nouvelle connexion
+     * @param admission      Consulté pour chaque connexion acceptée, avant création de la session
+     * @return Le transport, non démarré
+     */
+    public static Transport create(final String mode,
+                                   final int port,
+                                   final Function<ClientConnection, ConnectionHandler> handlerFactory,
+                                   final ConnectionAdmission admission)
+            throws IOException {
+        switch (mode) {
+            case "blocking":
+                return new BlockingTransport(port, ServerExecutors.newPlatformThreadPerTaskExecutor(),
+                        newBlockingWriters(), handlerFactory, admission);
+            case "virtual":
+                final ExecutorService virtualThreads = ServerExecutors.newVirtualThreadPerTaskExecutor();
+                return new BlockingTransport(port, virtualThreads, virtualThreads, handlerFactory, admission);
+            case "nio":
+                return new NioTransport(port, ServerConfig.nioEventLoops(), newNioWorkers(), handlerFactory,
+                        admission);
+            default:
+                throw new IllegalArgumentException("Transport inconnu: " + mode + " (attendu: blocking, virtual ou nio)");
+        }
+    }
+
+    /**
+     * Rédacteurs du mode bloquant : pool élastique, un thread n'est occupé que
+     * le temps de vider la file d'une connexion.
+     */
+    private static ExecutorService newBlockingWriters() {
+        final AtomicInteger writerIndex = new AtomicInteger();
+        return Executors.newCachedThreadPool(task -> {
+            final Thread thread = new Thread(task, "chat-writer-" + writerIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static ExecutorService newNioWorkers() {
+        if (ServerConfig.useVirtualThreads()) {
+            return ServerExecutors.newVirtualThreadPerTaskExecutor();
+        }
+        final AtomicInteger workerIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, ServerConfig.nioWorkerThreads()), task -> {
+            final Thread thread = new Thread(task, "chat-nio-worker-" + workerIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,12 @@
+package org.example.server.transport;
+
+import java.io.IOException;
+
+/**
+ * Prévenu lorsqu'une trame acceptée par {@link ClientConnection} n'a finalement
+ * pas pu être écrite sur le socket (connexion coupée avant l'envoi).
+ */
+@FunctionalInterface
+public interface WriteFailureListener {
+    void onWriteFailed(IOException cause);
+}
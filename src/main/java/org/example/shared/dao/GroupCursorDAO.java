@@ -0,0 +1,69 @@
+package org.example.shared.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Curseurs de livraison des messages de groupe : pour chaque membre, le rang
+ * du dernier message du groupe qui lui a été délivré.
+ */
+public class GroupCursorDAO {
+
+    /**
+     * @return Le curseur de l'utilisateur dans chacun de ses groupes (ID du groupe vers rang)
+     */
+    public Map<Long, Long> getCursors(final long userId) throws SQLException {
+        final Map<Long, Long> cursors = new HashMap<>();
+        final String sql = "SELECT group_id, last_delivered_seq FROM group_cursors WHERE user_id = ?";
+        try (Connection conn = JDBCUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    cursors.put(rs.getLong("group_id"), rs.getLong("last_delivered_seq"));
+                }
+            }
+        }
+        return cursors;
+    }
+
+    /**
+     * Enregistre les curseurs de l'utilisateur tels quels (ils peuvent reculer
+     * si une livraison a échoué), en un seul lot.
+     *
+     * @param cursors ID du groupe vers rang du dernier message délivré
+     */
+    public void saveCursors(final long userId, final Map<Long, Long> cursors) throws SQLException {
+        final String sql = "INSERT INTO group_cursors (user_id, group_id, last_delivered_seq) VALUES (?,?,?) "
+                + "ON DUPLICATE KEY UPDATE last_delivered_seq = VALUES(last_delivered_seq)";
+        try (Connection conn = JDBCUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (final Map.Entry<Long, Long> cursor : cursors.entrySet()) {
+                stmt.setLong(1, userId);
+                stmt.setLong(2, cursor.getKey());
+                stmt.setLong(3, cursor.getValue());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Ramène le curseur au plus au rang donné (message accepté mais non écrit).
+     */
+    public void rewindCursor(final long userId, final long groupId, final long lastDeliveredSeq) throws SQLException {
+        final String sql = "UPDATE group_cursors SET last_delivered_seq = LEAST(last_delivered_seq, ?) "
+                + "WHERE user_id = ? AND group_id = ?";
+        try (Connection conn = JDBCUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, lastDeliveredSeq);
+            stmt.setLong(2, userId);
+            stmt.setLong(3, groupId);
+            stmt.executeUpdate();
+        }
+    }
+}
@@ -76,6 +76,26 @@ public class GroupDAO {
         return memberIds;
     }
 
+    /**
+     * Récupère les identifiants des groupes auxquels un utilisateur appartient.
+     */
+    public List<Long> getGroupIdsForUser(final long userId) {
+        final List<Long> groupIds = new ArrayList<>();
+        final String sql = "SELECT group_id FROM group_memberships WHERE user_id = ?";
+        try (Connection conn = JDBCUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    groupIds.add(rs.getLong("group_id"));
+                }
+            }
+        } catch (final SQLException e) {
+            e.printStackTrace();
+        }
+        return groupIds;
+    }
+
     /**
      * Récupère les groupes auxquels un utilisateur appartient.
      */
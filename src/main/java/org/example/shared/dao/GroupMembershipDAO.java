@@ -5,19 +5,37 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.example.shared.model.GroupMembership;
 
+/**
+ * Appartenances aux groupes. Chaque ajout ou retrait est inscrit, dans la même
+ * transaction, au journal des modifications que le serveur relit pour
+ * invalider son cache des membres, quel que soit le client qui a écrit.
+ */
 public class GroupMembershipDAO {
 
+    private static final String JOURNAL_SQL =
+            "INSERT INTO group_membership_changes (group_id, user_id, changed_at) VALUES (?,?,?)";
+
     public void createGroupMembership(final GroupMembership membership) {
         final String sql = "INSERT INTO group_memberships (user_id, group_id, joined_at) VALUES (?,?,?)";
-        try (Connection conn = JDBCUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, membership.getUserId());
-            stmt.setLong(2, membership.getGroupId());
-            stmt.setTimestamp(3, Timestamp.valueOf(membership.getJoinedAt()));
-            stmt.executeUpdate();
+        try (Connection conn = JDBCUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, membership.getUserId());
+                stmt.setLong(2, membership.getGroupId());
+                stmt.setTimestamp(3, Timestamp.valueOf(membership.getJoinedAt()));
+                stmt.executeUpdate();
+                journal(conn, membership.getGroupId(), membership.getUserId());
+                conn.commit();
+            } catch (final SQLException e) {
+                conn.rollback();
+                throw e;
+            }
         } catch (final SQLException e) {
             e.printStackTrace();
         }
@@ -46,15 +64,108 @@ public class GroupMembershipDAO {
 
     public boolean removeGroupMembership(final long userId, final long groupId) {
         final String sql = "DELETE FROM group_memberships WHERE user_id = ? AND group_id = ?";
-        try (Connection conn = JDBCUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, userId);
-            stmt.setLong(2, groupId);
-            final int affectedRows = stmt.executeUpdate();
-            return affectedRows > 0;
+        try (Connection conn = JDBCUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, userId);
+                stmt.setLong(2, groupId);
+                final int affectedRows = stmt.executeUpdate();
+                if (affectedRows > 0) {
+                    journal(conn, groupId, userId);
+                }
+                conn.commit();
+                return affectedRows > 0;
+            } catch (final SQLException e) {
+                conn.rollback();
+                throw e;
+            }
         } catch (final SQLException e) {
             e.printStackTrace();
             return false;
         }
     }
+
+    /**
+     * @return L'ID de la dernière modification journalisée (0 si le journal est vide)
+     */
+    public long getLastChangeId() throws SQLException {
+        final String sql = "SELECT COALESCE(MAX(id), 0) FROM group_membership_changes";
+        try (Connection conn = JDBCUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * @param afterId Dernière modification déjà lue
+     * @param limit   Nombre maximal de modifications renvoyées
+     * @return Les modifications journalisées après afterId, dans l'ordre
+     */
+    public List<MembershipChange> getChangesSince(final long afterId, final int limit) throws SQLException {
+        final List<MembershipChange> changes = new ArrayList<>();
+        final String sql = "SELECT id, group_id, user_id FROM group_membership_changes WHERE id > ? "
+                + "ORDER BY id LIMIT ?";
+        try (Connection conn = JDBCUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, afterId);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    changes.add(new MembershipChange(rs.getLong("id"), rs.getLong("group_id"), rs.getLong("user_id")));
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Purge le journal des modifications antérieures à la date donnée.
+     *
+     * @return Le nombre de lignes supprimées
+     */
+    public int deleteChangesBefore(final LocalDateTime before) throws SQLException {
+        final String sql = "DELETE FROM group_membership_changes WHERE changed_at < ?";
+        try (Connection conn = JDBCUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(before));
+            return stmt.executeUpdate();
+        }
+    }
+
+    private static void journal(final Connection conn, final long groupId, final long userId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(JOURNAL_SQL)) {
+            stmt.setLong(1, groupId);
+            stmt.setLong(2, userId);
+            stmt.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Une entrée du journal : un membre ajouté à un groupe ou retiré.
+     */
+    public static final class MembershipChange {
+        private final long id;
+        private final long groupId;
+        private final long userId;
+
+        public MembershipChange(final long id, final long groupId, final long userId) {
+            this.id = id;
+            this.groupId = groupId;
+            this.userId = userId;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getGroupId() {
+            return groupId;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+    }
 }
@@ -5,7 +5,8 @@ import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class JDBCUtil {
-    private static final String URL = "jdbc:mysql://localhost:3306/chat_db";
+    // Lots JDBC réécrits en INSERT multi-lignes : un seul aller-retour par lot
+    private static final String URL = "jdbc:mysql://localhost:3306/chat_db?rewriteBatchedStatements=true";
     private static final String USER = "root";
     private static final String PASSWORD = "password";
 
@@ -11,51 +11,30 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.example.shared.model.Message;
+import org.example.shared.model.Receipt;
 import org.example.shared.model.enums.MessageStatus;
 import org.example.shared.model.enums.MessageType;
 
 public class MessageDAO {
 
+    /**
+     * L'ID attribué par le serveur sert de clé ; à défaut (NULL), la base en
+     * génère un. Un message déjà en base (rejoué puis remis en attente) n'est
+     * pas dupliqué : seul son statut change.
+     */
+    private static final String INSERT_SQL = "INSERT INTO messages (id, sender_user_id, receiver_user_id, group_id, "
+            + "content, timestamp, status, message_type, file_name, file_size, mime_type, seq) "
+            + "VALUES (?,?,?,?,?,?,?,?,?,?,?,?) ON DUPLICATE KEY UPDATE status = VALUES(status)";
+
     public void createMessage(final Message message) {
-        final String sql = "INSERT INTO messages (sender_user_id, receiver_user_id, group_id, content, timestamp, status, "
-                + "message_type, file_name, file_size, mime_type) VALUES (?,?,?,?,?,?,?,?,?,?)";
         try (Connection conn = JDBCUtil.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-
-            stmt.setLong(1, message.getSenderUserId());
-            if (message.getReceiverUserId() != null) {
-                stmt.setLong(2, message.getReceiverUserId());
-            } else {
-                stmt.setNull(2, Types.BIGINT);
-            }
-            if (message.getGroupId() != null) {
-                stmt.setLong(3, message.getGroupId());
-            } else {
-                stmt.setNull(3, Types.BIGINT);
-            }
-            stmt.setString(4, message.getContent());
-            stmt.setTimestamp(5, Timestamp.valueOf(message.getTimestamp()));
-            stmt.setString(6, message.getStatus().name());
-            stmt.setString(7, message.getType().name());
-            // Set multimedia fields
-            if (message.getFileName() != null) {
-                stmt.setString(8, message.getFileName());
-            } else {
-                stmt.setNull(8, Types.VARCHAR);
-            }
-
-            if (message.getFileSize() != null) {
-                stmt.setLong(9, message.getFileSize());
-            } else {
-                stmt.setNull(9, Types.BIGINT);
-            }
+                PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
 
-            if (message.getMimeType() != null) {
-                stmt.setString(10, message.getMimeType());
-            } else {
-                stmt.setNull(10, Types.VARCHAR);
-            }
+            bindMessage(stmt, message);
             stmt.executeUpdate();
+            if (message.getId() > 0) {
+                return;
+            }
             try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
                 if (generatedKeys.next()) {
                     message.setId(generatedKeys.getLong(1));
@@ -66,6 +45,89 @@ public class MessageDAO {
         }
     }
 
+    /**
+     * Insère plusieurs messages en un seul lot JDBC et une seule transaction :
+     * soit tous sont enregistrés, soit aucun. Les IDs générés par la base sont
+     * reportés, dans l'ordre de la liste, sur les messages qui n'en avaient pas.
+     *
+     * @param messages Les messages à insérer
+     * @throws SQLException Si le lot a échoué (la transaction est annulée)
+     */
+    public void createMessages(final List<Message> messages) throws SQLException {
+        try (Connection conn = JDBCUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (final Message message : messages) {
+                    bindMessage(stmt, message);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                    for (final Message message : messages) {
+                        if (message.getId() > 0) {
+                            continue;
+                        }
+                        if (!generatedKeys.next()) {
+                            break;
+                        }
+                        message.setId(generatedKeys.getLong(1));
+                    }
+                }
+                conn.commit();
+            } catch (final SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private static void bindMessage(final PreparedStatement stmt, final Message message) throws SQLException {
+        if (message.getId() > 0) {
+            stmt.setLong(1, message.getId());
+        } else {
+            stmt.setNull(1, Types.BIGINT);
+        }
+        stmt.setLong(2, message.getSenderUserId());
+        if (message.getReceiverUserId() != null) {
+            stmt.setLong(3, message.getReceiverUserId());
+        } else {
+            stmt.setNull(3, Types.BIGINT);
+        }
+        if (message.getGroupId() != null) {
+            stmt.setLong(4, message.getGroupId());
+        } else {
+            stmt.setNull(4, Types.BIGINT);
+        }
+        stmt.setString(5, message.getContent());
+        stmt.setTimestamp(6, Timestamp.valueOf(message.getTimestamp()));
+        stmt.setString(7, message.getStatus().name());
+        stmt.setString(8, message.getType().name());
+        // Set multimedia fields
+        if (message.getFileName() != null) {
+            stmt.setString(9, message.getFileName());
+        } else {
+            stmt.setNull(9, Types.VARCHAR);
+        }
+
+        if (message.getFileSize() != null) {
+            stmt.setLong(10, message.getFileSize());
+        } else {
+            stmt.setNull(10, Types.BIGINT);
+        }
+
+        if (message.getMimeType() != null) {
+            stmt.setString(11, message.getMimeType());
+        } else {
+            stmt.setNull(11, Types.VARCHAR);
+        }
+
+        if (message.getSequence() > 0) {
+            stmt.setLong(12, message.getSequence());
+        } else {
+            stmt.setNull(12, Types.BIGINT);
+        }
+    }
+
     public Message findMessageById(final long id) {
         final String sql = "SELECT * FROM messages WHERE id = ?";
         try (Connection conn = JDBCUtil.getConnection();
@@ -83,40 +145,161 @@ public class MessageDAO {
         return null;
     }
 
-    public List<Message> getPendingMessagesForUser(final long receiverUserId) throws SQLException {
+    /**
+     * Une page des messages en attente adressés à l'utilisateur ; les messages
+     * de groupe, stockés une seule fois, se lisent avec getPendingGroupMessagesForUser.
+     *
+     * @param afterId Dernier ID de la page précédente (0 pour la première)
+     * @param limit   Taille maximale de la page
+     * @return Les messages, par ID croissant
+     */
+    public List<Message> getPendingMessagesForUser(final long receiverUserId, final long afterId, final int limit)
+            throws SQLException {
         final List<Message> messages = new ArrayList<>();
-        // Récupérer les messages directs et les messages de groupe pour lesquels
-        // l'utilisateur est membre
-        final String sql = "SELECT * FROM messages " +
-                "WHERE ((receiver_user_id = ? AND status = ?) " +
-                "OR (group_id IS NOT NULL AND status = ? " +
-                "    AND group_id IN (SELECT group_id FROM group_memberships WHERE user_id = ?)))";
+        final String sql = "SELECT * FROM messages WHERE receiver_user_id = ? AND status = ? AND id > ? "
+                + "ORDER BY id LIMIT ?";
         try (Connection conn = JDBCUtil.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setLong(1, receiverUserId);
             stmt.setString(2, MessageStatus.QUEUED.name());
-            stmt.setString(3, MessageStatus.QUEUED.name());
-            stmt.setLong(4, receiverUserId);
+            stmt.setLong(3, afterId);
+            stmt.setInt(4, limit);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    final Message message = new Message();
-                    message.setId(rs.getLong("id"));
-                    message.setSenderUserId(rs.getLong("sender_user_id"));
-                    final long rec = rs.getLong("receiver_user_id");
-                    if (!rs.wasNull()) {
-                        message.setReceiverUserId(rec);
-                    }
-                    final long grp = rs.getLong("group_id");
-                    if (!rs.wasNull()) {
-                        message.setGroupId(grp);
-                    }
-                    message.setContent(rs.getString("content"));
-                    final Timestamp ts = rs.getTimestamp("timestamp");
-                    if (ts != null) {
-                        message.setTimestamp(ts.toLocalDateTime());
-                    }
-                    message.setStatus(MessageStatus.valueOf(rs.getString("status")));
-                    messages.add(message);
+                    messages.add(extractMessageFromResultSet(rs));
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Messages de groupe que l'utilisateur n'a pas encore reçus : pour chaque
+     * groupe, ceux dont le rang dépasse son curseur de livraison (lecture d'un
+     * intervalle de l'index). Sans curseur, ceux reçus depuis son adhésion.
+     * Lus par pages, à partir de la position (groupe, rang) où s'est arrêtée la précédente.
+     *
+     * @param afterGroupId  Groupe du dernier message de la page précédente (0 pour la première)
+     * @param afterSequence Rang du dernier message de la page précédente
+     * @param limit         Taille maximale de la page
+     * @return Les messages, par groupe puis par rang
+     */
+    public List<Message> getPendingGroupMessagesForUser(final long userId, final long afterGroupId,
+                                                        final long afterSequence, final int limit)
+            throws SQLException {
+        final List<Message> messages = new ArrayList<>();
+        final String sql = "SELECT m.* FROM group_memberships gm " +
+                "JOIN messages m ON m.group_id = gm.group_id " +
+                "LEFT JOIN group_cursors c ON c.user_id = gm.user_id AND c.group_id = gm.group_id " +
+                "WHERE gm.user_id = ? AND m.receiver_user_id IS NULL " +
+                "AND m.seq > COALESCE(c.last_delivered_seq, 0) " +
+                "AND (c.last_delivered_seq IS NOT NULL OR m.timestamp >= gm.joined_at) " +
+                "AND (m.group_id > ? OR (m.group_id = ? AND m.seq > ?)) " +
+                "ORDER BY m.group_id, m.seq LIMIT ?";
+        try (Connection conn = JDBCUtil.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, userId);
+            stmt.setLong(2, afterGroupId);
+            stmt.setLong(3, afterGroupId);
+            stmt.setLong(4, afterSequence);
+            stmt.setInt(5, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(extractMessageFromResultSet(rs));
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Dernier rang attribué dans le groupe qui ait laissé une trace en base
+     * (message stocké ou curseur d'un membre), pour reprendre la numérotation.
+     */
+    public long getLastGroupSequence(final long groupId) throws SQLException {
+        final String sql = "SELECT GREATEST(" +
+                "COALESCE((SELECT MAX(seq) FROM messages WHERE group_id = ?), 0), " +
+                "COALESCE((SELECT MAX(last_delivered_seq) FROM group_cursors WHERE group_id = ?), 0))";
+        try (Connection conn = JDBCUtil.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, groupId);
+            stmt.setLong(2, groupId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Dernier rang attribué dans la conversation directe entre deux utilisateurs
+     * (dans les deux sens), pour reprendre la numérotation.
+     */
+    public long getLastDirectSequence(final long user1Id, final long user2Id) throws SQLException {
+        final String sql = "SELECT COALESCE(MAX(seq), 0) FROM messages WHERE group_id IS NULL AND " +
+                "((sender_user_id = ? AND receiver_user_id = ?) OR (sender_user_id = ? AND receiver_user_id = ?))";
+        try (Connection conn = JDBCUtil.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, user1Id);
+            stmt.setLong(2, user2Id);
+            stmt.setLong(3, user2Id);
+            stmt.setLong(4, user1Id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Une page de la conversation directe entre deux utilisateurs, après un rang
+     * donné (délivrés ou non, dans les deux sens).
+     *
+     * @param afterSequence Dernier rang connu du client (0 pour tout l'historique)
+     * @param limit         Taille maximale de la page
+     * @return Les messages, par rang croissant
+     */
+    public List<Message> getDirectMessagesSince(final long user1Id, final long user2Id, final long afterSequence,
+                                                final int limit) throws SQLException {
+        final List<Message> messages = new ArrayList<>();
+        final String sql = "SELECT * FROM messages WHERE group_id IS NULL AND " +
+                "((sender_user_id = ? AND receiver_user_id = ?) OR (sender_user_id = ? AND receiver_user_id = ?)) " +
+                "AND seq > ? ORDER BY seq LIMIT ?";
+        try (Connection conn = JDBCUtil.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, user1Id);
+            stmt.setLong(2, user2Id);
+            stmt.setLong(3, user2Id);
+            stmt.setLong(4, user1Id);
+            stmt.setLong(5, afterSequence);
+            stmt.setInt(6, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(extractMessageFromResultSet(rs));
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Une page de l'historique du groupe après un rang donné.
+     *
+     * @param afterSequence Dernier rang connu du client (0 pour tout l'historique)
+     * @param limit         Taille maximale de la page
+     * @return Les messages (stockés sans destinataire), par rang croissant
+     */
+    public List<Message> getGroupMessagesSince(final long groupId, final long afterSequence, final int limit)
+            throws SQLException {
+        final List<Message> messages = new ArrayList<>();
+        final String sql = "SELECT * FROM messages WHERE group_id = ? AND receiver_user_id IS NULL AND seq > ? " +
+                "ORDER BY seq LIMIT ?";
+        try (Connection conn = JDBCUtil.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, groupId);
+            stmt.setLong(2, afterSequence);
+            stmt.setInt(3, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(extractMessageFromResultSet(rs));
                 }
             }
         }
@@ -156,6 +339,84 @@ public class MessageDAO {
         }
     }
 
+    /**
+     * Marque des messages en attente comme délivrés, en une seule requête ; ils
+     * restent dans l'historique de leur conversation.
+     *
+     * @return Le nombre de messages modifiés
+     */
+    public int markDelivered(final List<Long> messageIds) throws SQLException {
+        if (messageIds.isEmpty()) {
+            return 0;
+        }
+        final StringBuilder sql = new StringBuilder("UPDATE messages SET status = ? WHERE id IN (");
+        for (int i = 0; i < messageIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(')');
+        try (Connection conn = JDBCUtil.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            stmt.setString(1, MessageStatus.DELIVERED.name());
+            for (int i = 0; i < messageIds.size(); i++) {
+                stmt.setLong(i + 2, messageIds.get(i));
+            }
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Remet en attente (QUEUED) des messages directs enregistrés comme délivrés
+     * mais que la connexion du destinataire n'a finalement pas écrits. Chacun
+     * est désigné par son ID ou, s'il n'est pas encore connu de l'appelant, par
+     * son rang dans la conversation.
+     *
+     * @param messages Messages directs (expéditeur, destinataire, ID ou rang)
+     * @throws SQLException Si le lot a échoué
+     */
+    public void requeueMessages(final List<Message> messages) throws SQLException {
+        final String sql = "UPDATE messages SET status = ? WHERE sender_user_id = ? AND receiver_user_id = ? " +
+                "AND group_id IS NULL AND (id = ? OR seq = ?)";
+        try (Connection conn = JDBCUtil.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (final Message message : messages) {
+                stmt.setString(1, MessageStatus.QUEUED.name());
+                stmt.setLong(2, message.getSenderUserId());
+                stmt.setLong(3, message.getReceiverUserId());
+                stmt.setLong(4, message.getId());
+                stmt.setLong(5, message.getSequence());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Reporte des accusés de lecture sur les messages directs qu'ils couvrent,
+     * en un seul lot : une requête par conversation, quel que soit le nombre de
+     * messages. Seuls les messages déjà délivrés passent à READ : un message
+     * encore en attente (QUEUED) sera rejoué, seul le serveur le déclare délivré.
+     *
+     * @param receipts Accusés READ, au plus un par conversation
+     * @throws SQLException Si le lot a échoué
+     */
+    public void markRead(final List<Receipt> receipts) throws SQLException {
+        final String sql = "UPDATE messages SET status = ? WHERE sender_user_id = ? AND receiver_user_id = ? "
+                + "AND group_id IS NULL AND seq > ? AND seq <= ? AND status = ?";
+        try (Connection conn = JDBCUtil.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (final Receipt receipt : receipts) {
+                stmt.setString(1, MessageStatus.READ.name());
+                stmt.setLong(2, receipt.getSenderUserId());
+                stmt.setLong(3, receipt.getReceiverUserId());
+                stmt.setLong(4, receipt.getAfterSequence());
+                stmt.setLong(5, receipt.getUpToSequence());
+                stmt.setString(6, MessageStatus.DELIVERED.name());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
     public void updateMessageStatus(final long messageId, final MessageStatus status) throws SQLException {
         final String sql = "UPDATE messages SET status = ? WHERE id = ?";
         try (Connection conn = JDBCUtil.getConnection();
@@ -207,6 +468,11 @@ public class MessageDAO {
 
         message.setMimeType(rs.getString("mime_type"));
 
+        final long sequence = rs.getLong("seq");
+        if (!rs.wasNull()) {
+            message.setSequence(sequence);
+        }
+
         return message;
     }
 }
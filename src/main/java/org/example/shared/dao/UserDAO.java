@@ -114,6 +114,23 @@ public class UserDAO {
         }
     }
 
+    /**
+     * Met à jour le seul statut en ligne, sans relire ni réécrire la ligne complète.
+     */
+    public boolean updateOnlineStatus(final long id, final boolean online) {
+        final String sql = "UPDATE users SET is_online=? WHERE id=?";
+        try (Connection conn = JDBCUtil.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setBoolean(1, online);
+            stmt.setLong(2, id);
+            return stmt.executeUpdate() > 0;
+        } catch (final SQLException e) {
+            System.err.println("Erreur lors de la mise à jour du statut en ligne: " + e.getMessage());
+            return false;
+        }
+    }
+
     public void deleteUser(final long id) {
         final String sql = "DELETE FROM users WHERE id = ?";
         try (Connection conn = JDBCUtil.getConnection();
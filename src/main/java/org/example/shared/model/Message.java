@@ -2,6 +2,7 @@ package org.example.shared.model;
 
 import java.time.LocalDateTime;
 import java.util.Objects;
+import java.util.UUID;
 
 import org.example.shared.model.enums.MessageStatus;
 import org.example.shared.model.enums.MessageType;  // New import
@@ -23,6 +24,8 @@ public class Message {
     private String fileName;     // Original file name
     private Long fileSize;       // Size of file in bytes
     private String mimeType;     // MIME type of the file
+    private long sequence;       // Rang dans la conversation, attribué par le serveur (0 : non numéroté)
+    private UUID clientMessageId; // Identifiant de l'envoi, attribué par le client : un renvoi garde le même
 
 
     // Constructeur par défaut
@@ -82,6 +85,7 @@ public class Message {
     // New utility method to clone a message for a specific receiver
     public static Message copyForReceiver(final Message original, final long receiverUserId) {
         final Message copy = new Message();
+        copy.setId(original.getId());
         copy.setSenderUserId(original.getSenderUserId());
         copy.setReceiverUserId(receiverUserId);
         copy.setGroupId(original.getGroupId());
@@ -92,6 +96,8 @@ public class Message {
         copy.setFileName(original.getFileName());
         copy.setFileSize(original.getFileSize());
         copy.setMimeType(original.getMimeType());
+        copy.setSequence(original.getSequence());
+        copy.setClientMessageId(original.getClientMessageId());
         return copy;
     }
 
@@ -119,6 +125,10 @@ public class Message {
     public void setFileSize(final Long fileSize) { this.fileSize = fileSize; }
     public String getMimeType() { return mimeType; }
     public void setMimeType(final String mimeType) { this.mimeType = mimeType; }
+    public long getSequence() { return sequence; }
+    public void setSequence(final long sequence) { this.sequence = sequence; }
+    public UUID getClientMessageId() { return clientMessageId; }
+    public void setClientMessageId(final UUID clientMessageId) { this.clientMessageId = clientMessageId; }
 
 
 
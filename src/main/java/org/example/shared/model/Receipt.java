@@ -0,0 +1,55 @@
+package org.example.shared.model;
+
+import org.example.shared.model.enums.MessageStatus;
+
+/**
+ * Accusé de réception d'une conversation directe, en marque haute : le
+ * destinataire a reçu (DELIVERED) ou lu (READ) tous les messages de
+ * l'expéditeur jusqu'au rang {@code upToSequence}. Un seul accusé couvre
+ * autant de messages qu'il en faut.
+ */
+public class Receipt {
+    private final long senderUserId;
+    private final long receiverUserId;
+    private final MessageStatus status;
+    // Marque précédente : les messages de rang inférieur ou égal sont déjà couverts
+    private final long afterSequence;
+    private final long upToSequence;
+
+    public Receipt(final long senderUserId, final long receiverUserId, final MessageStatus status,
+                   final long afterSequence, final long upToSequence) {
+        this.senderUserId = senderUserId;
+        this.receiverUserId = receiverUserId;
+        this.status = status;
+        this.afterSequence = afterSequence;
+        this.upToSequence = upToSequence;
+    }
+
+    public long getSenderUserId() {
+        return senderUserId;
+    }
+
+    public long getReceiverUserId() {
+        return receiverUserId;
+    }
+
+    public MessageStatus getStatus() {
+        return status;
+    }
+
+    public long getAfterSequence() {
+        return afterSequence;
+    }
+
+    public long getUpToSequence() {
+        return upToSequence;
+    }
+
+    /**
+     * @return Un accusé couvrant celui-ci et {@code other}, de même conversation et de même statut
+     */
+    public Receipt merge(final Receipt other) {
+        return new Receipt(senderUserId, receiverUserId, status, Math.min(afterSequence, other.afterSequence),
+                Math.max(upToSequence, other.upToSequence));
+    }
+}
@@ -0,0 +1,23 @@
+package org.example.shared.protocol;
+
+import java.io.IOException;
+
+/**
+ * Format de sérialisation du corps des trames v2, négocié à la connexion.
+ * L'en-tête de routage, lui, reste binaire quel que soit le format : le
+ * routage ne dépend jamais du codec retenu. Les lignes v1 restent en JSON.
+ * <p>
+ * Les implémentations doivent être thread-safe : une même instance sert à
+ * toutes les sessions qui ont négocié le format.
+ */
+public interface BodyCodec {
+
+    /**
+     * @return Le nom du format, tel qu'annoncé dans la poignée de main
+     */
+    String getName();
+
+    byte[] encode(Object body) throws IOException;
+
+    <T> T decode(byte[] buffer, int offset, int length, Class<T> type) throws IOException;
+}
@@ -0,0 +1,123 @@
+package org.example.shared.protocol;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Corps d'une enveloppe CONTROL : une commande de session et ses paramètres.
+ */
+public class ControlCommand {
+    public static final String LOGOUT = "LOGOUT";
+    /** Battement de cœur : le destinataire répond {@link #PONG}. */
+    public static final String PING = "PING";
+    public static final String PONG = "PONG";
+    /** Serveur vers client : ticket de reprise de session (paramètres {@link #PARAM_TICKET}, {@link #PARAM_EXPIRES_AT}). */
+    public static final String SESSION_TICKET = "SESSION_TICKET";
+    /**
+     * Client vers serveur : un membre a été ajouté ou retiré d'un groupe (paramètres
+     * {@link #PARAM_GROUP_ID}, {@link #PARAM_USER_ID}), le serveur invalide son cache
+     * sans attendre de relire le journal des appartenances.
+     */
+    public static final String GROUP_CHANGED = "GROUP_CHANGED";
+    /**
+     * Client vers serveur : demande les messages d'une conversation (paramètre
+     * {@link #PARAM_USER_ID} pour l'interlocuteur, ou {@link #PARAM_GROUP_ID})
+     * de rang supérieur à {@link #PARAM_AFTER_SEQ}. Le serveur envoie une page
+     * de messages puis {@link #SYNC_END}.
+     */
+    public static final String SYNC = "SYNC";
+    /**
+     * Serveur vers client : fin d'une page de synchronisation. Reprend la
+     * conversation demandée, {@link #PARAM_AFTER_SEQ} vaut le dernier rang envoyé
+     * et {@link #PARAM_MORE} indique s'il reste des messages : renvoyer ces
+     * paramètres avec la commande {@link #SYNC} demande la page suivante.
+     */
+    public static final String SYNC_END = "SYNC_END";
+    /**
+     * Serveur vers client : un envoi a été refusé, le client a dépassé son débit
+     * pour le budget {@link #PARAM_BUDGET} (MESSAGES, MEDIA ou CALL_SIGNALS).
+     * Envoyé une fois par attente : les envois refusés d'ici {@link #PARAM_RETRY_AFTER}
+     * millisecondes ne sont pas annoncés de nouveau.
+     */
+    public static final String THROTTLED = "THROTTLED";
+    /**
+     * Indicateur de saisie, éphémère (jamais stocké ni rejoué).
+     * <ul>
+     *   <li>Client vers serveur : l'utilisateur écrit ({@link #PARAM_ACTIVE} true)
+     *       ou a cessé d'écrire, dans la conversation avec {@link #PARAM_USER_ID}
+     *       ou dans le groupe {@link #PARAM_GROUP_ID}. À renouveler tant que la
+     *       saisie dure ; le serveur fusionne les annonces rapprochées.</li>
+     *   <li>Serveur vers client : {@link #PARAM_USER_ID} écrit (ou non) ; pour un
+     *       groupe, {@link #PARAM_COUNT} membres écrivent, dont les premiers sont
+     *       dans {@link #PARAM_USER_IDS} (le destinataire peut y figurer). L'état
+     *       annoncé vaut {@link #PARAM_TTL} millisecondes faute de nouvelle annonce.</li>
+     * </ul>
+     */
+    public static final String TYPING = "TYPING";
+    /**
+     * Accusé de réception d'une conversation directe, en marque haute
+     * ({@link #PARAM_STATUS} DELIVERED ou READ, jusqu'au rang {@link #PARAM_UP_TO_SEQ}).
+     * <ul>
+     *   <li>Client vers serveur : l'utilisateur a reçu ou lu tous les messages
+     *       de {@link #PARAM_USER_ID} jusqu'à ce rang, sans trou avant lui. Un
+     *       accusé par conversation suffit, quel que soit le nombre de messages.</li>
+     *   <li>Serveur vers client : {@link #PARAM_USER_ID} a reçu ou lu les
+     *       messages qui lui ont été envoyés jusqu'à ce rang.</li>
+     * </ul>
+     */
+    public static final String RECEIPT = "RECEIPT";
+    /**
+     * Serveur vers client : rang {@link #PARAM_SEQ} attribué au message direct
+     * envoyé sous l'identifiant {@link #PARAM_CLIENT_MESSAGE_ID}, pour lui
+     * appliquer les accusés {@link #RECEIPT} de son destinataire. Éphémère :
+     * perdu si le client est en retard.
+     */
+    public static final String SENT = "SENT";
+
+    public static final String PARAM_TICKET = "ticket";
+    /** Instant d'expiration, en secondes depuis l'époque Unix. */
+    public static final String PARAM_EXPIRES_AT = "expiresAt";
+    public static final String PARAM_GROUP_ID = "groupId";
+    public static final String PARAM_USER_ID = "userId";
+    public static final String PARAM_AFTER_SEQ = "afterSeq";
+    public static final String PARAM_MORE = "more";
+    public static final String PARAM_BUDGET = "budget";
+    public static final String PARAM_RETRY_AFTER = "retryAfterMillis";
+    public static final String PARAM_ACTIVE = "active";
+    public static final String PARAM_COUNT = "count";
+    /** Liste d'IDs séparés par des virgules. */
+    public static final String PARAM_USER_IDS = "userIds";
+    public static final String PARAM_TTL = "ttlMillis";
+    public static final String PARAM_STATUS = "status";
+    public static final String PARAM_UP_TO_SEQ = "upToSeq";
+    public static final String PARAM_SEQ = "seq";
+    public static final String PARAM_CLIENT_MESSAGE_ID = "clientMessageId";
+
+    private String command;
+    private Map<String, String> params;
+
+    // Constructeur par défaut requis pour Jackson
+    public ControlCommand() {
+    }
+
+    public ControlCommand(final String command) {
+        this.command = command;
+    }
+
+    public String getCommand() { return command; }
+    public void setCommand(final String command) { this.command = command; }
+    public Map<String, String> getParams() { return params; }
+    public void setParams(final Map<String, String> params) { this.params = params; }
+
+    public String getParam(final String name) {
+        return params != null ? params.get(name) : null;
+    }
+
+    public ControlCommand withParam(final String name, final String value) {
+        if (params == null) {
+            params = new HashMap<>();
+        }
+        params.put(name, value);
+        return this;
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.shared.protocol;
+
+import java.util.UUID;
+
+import org.example.shared.model.enums.MessageStatus;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Enveloppe typée d'un échange client/serveur : nature, en-tête de routage
+ * (expéditeur, destinataire, groupe) et corps encore sérialisé.
+ * Le routage se lit sans décoder le corps ; le corps n'est désérialisé que
+ * par le handler qui en a besoin (voir {@link EnvelopeCodec#readBody}).
+ */
+public final class Envelope {
+
+    /** Valeur d'un identifiant absent dans l'en-tête de routage. */
+    public static final long NONE = 0L;
+
+    private final FrameType kind;
+    private final long senderUserId;
+    private final long receiverUserId;
+    private final long groupId;
+    // Champs attribués par le serveur au relais d'un message (voir EnvelopeCodec#stamp)
+    private final long stampedId;
+    private final long stampedAtMillis;
+    private final MessageStatus stampedStatus;
+    private final long stampedSequence;
+    // Identifiant de l'envoi attribué par le client (null s'il n'en a pas donné)
+    private final UUID clientMessageId;
+    // Message annoncé comme média par son en-tête, avant tout décodage du corps
+    private final boolean media;
+
+    // Corps binaire (v2) : vue sur le tampon de la trame, valide pendant le traitement
+    private final byte[] body;
+    private final int bodyOffset;
+    private final int bodyLength;
+    // Corps déjà analysé (v1, ligne JSON)
+    private final JsonNode tree;
+
+    Envelope(final FrameType kind, final long senderUserId, final long receiverUserId, final long groupId,
+             final byte[] body, final int bodyOffset, final int bodyLength, final JsonNode tree) {
+        this(kind, senderUserId, receiverUserId, groupId, NONE, 0L, null, 0L, null, false, body, bodyOffset, bodyLength,
+                tree);
+    }
+
+    Envelope(final FrameType kind, final long senderUserId, final long receiverUserId, final long groupId,
+             final long stampedId, final long stampedAtMillis, final MessageStatus stampedStatus,
+             final long stampedSequence, final UUID clientMessageId, final boolean media,
+             final byte[] body, final int bodyOffset, final int bodyLength, final JsonNode tree) {
+        this.kind = kind;
+        this.senderUserId = senderUserId;
+        this.receiverUserId = receiverUserId;
+        this.groupId = groupId;
+        this.stampedId = stampedId;
+        this.stampedAtMillis = stampedAtMillis;
+        this.stampedStatus = stampedStatus;
+        this.stampedSequence = stampedSequence;
+        this.clientMessageId = clientMessageId;
+        this.media = media;
+        this.body = body;
+        this.bodyOffset = bodyOffset;
+        this.bodyLength = bodyLength;
+        this.tree = tree;
+    }
+
+    public FrameType getKind() { return kind; }
+    public long getSenderUserId() { return senderUserId; }
+    public long getReceiverUserId() { return receiverUserId; }
+    public long getGroupId() { return groupId; }
+    public boolean isGroup() { return groupId != NONE; }
+    /** @return true si le corps est encore sérialisé (trame v2), false pour une ligne v1 déjà analysée */
+    public boolean isFramed() { return tree == null; }
+    public boolean isStamped() { return stampedStatus != null; }
+    public long getStampedId() { return stampedId; }
+    public long getStampedAtMillis() { return stampedAtMillis; }
+    public MessageStatus getStampedStatus() { return stampedStatus; }
+    /** @return Le rang du message dans sa conversation, 0 s'il n'est pas numéroté */
+    public long getStampedSequence() { return stampedSequence; }
+    /** @return L'identifiant de l'envoi attribué par le client, ou null */
+    public UUID getClientMessageId() { return clientMessageId; }
+    /** @return true si l'en-tête annonce un message média (image, vidéo, document, audio) */
+    public boolean isMedia() { return media; }
+
+    byte[] getBody() { return body; }
+    int getBodyOffset() { return bodyOffset; }
+    int getBodyLength() { return bodyLength; }
+    JsonNode getTree() { return tree; }
+}
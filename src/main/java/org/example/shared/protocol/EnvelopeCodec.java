@@ -0,0 +1,378 @@
+package org.example.shared.protocol;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.example.shared.model.CallSignal;
+import org.example.shared.model.Message;
+import org.example.shared.model.enums.MessageStatus;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Encode et décode les enveloppes.
+ *
+ * <pre>
+ * v2 (trame) : [longueur en-tête : 7 bits, bit de poids fort levé pour un média][expéditeur : int64]
+ *              [destinataire : int64][groupe : int64]
+ *              [identifiant de l'envoi : 2 × int64] (messages envoyés par un client qui l'attribue)
+ *              ou [id : int64][horodatage ms : int64][statut : 1 octet] (messages relayés par le serveur)
+ *              [rang dans la conversation : int64] (messages numérotés par le serveur)
+ *              [corps]
+ * v1 (ligne) : le corps JSON seul ; la nature se déduit du champ "type", lu une seule fois
+ * </pre>
+ * Le corps des trames est sérialisé par le {@link BodyCodec} négocié (JSON par
+ * défaut, Smile si les deux côtés l'ont annoncé).
+ * La longueur d'en-tête permet d'ajouter des champs de routage sans casser les
+ * décodeurs existants, qui sautent les octets qu'ils ne connaissent pas.
+ */
+public final class EnvelopeCodec {
+
+    private static final int ROUTING_LENGTH = 24;
+    // En-tête d'un message client identifié : plus court qu'un en-tête tamponné, donc jamais pris pour lui
+    private static final int CLIENT_ROUTING_LENGTH = ROUTING_LENGTH + 16;
+    private static final int STAMPED_ROUTING_LENGTH = ROUTING_LENGTH + 17;
+    private static final int SEQUENCED_ROUTING_LENGTH = STAMPED_ROUTING_LENGTH + 8;
+    // Bit de poids fort de l'octet de longueur : le serveur débite le budget média sans décoder le corps
+    private static final int MEDIA_FLAG = 0x80;
+    private static final int HEADER_LENGTH_MASK = 0x7F;
+    /** Octets d'une trame {@link FrameType#MESSAGE_BATCH} avant sa première entrée. */
+    public static final int BATCH_HEADER_LENGTH = 1 + ROUTING_LENGTH;
+    /** Octets ajoutés par entrée d'un lot (longueur de la charge). */
+    public static final int BATCH_ENTRY_OVERHEAD = 4;
+    private static final MessageStatus[] STATUSES = MessageStatus.values();
+    private static final Set<String> CALL_SIGNAL_TYPES = new HashSet<>();
+
+    static {
+        for (final CallSignal.SignalType type : CallSignal.SignalType.values()) {
+            CALL_SIGNAL_TYPES.add(type.name());
+        }
+    }
+
+    private final ObjectMapper mapper;
+    private final BodyCodec bodyCodec;
+
+    /**
+     * Codec dont les trames portent un corps JSON.
+     */
+    public EnvelopeCodec(final ObjectMapper mapper) {
+        this(mapper, JacksonBodyCodec.json(mapper));
+    }
+
+    /**
+     * @param mapper    Mapper JSON des lignes v1
+     * @param bodyCodec Format du corps des trames v2
+     */
+    public EnvelopeCodec(final ObjectMapper mapper, final BodyCodec bodyCodec) {
+        this.mapper = mapper;
+        this.bodyCodec = bodyCodec;
+    }
+
+    public BodyCodec getBodyCodec() {
+        return bodyCodec;
+    }
+
+    /**
+     * Lit l'en-tête de routage d'une trame v2 ; le corps reste une vue sur le tampon.
+     */
+    public Envelope decode(final Frame frame) throws IOException {
+        final FrameType kind = FrameType.fromCode(frame.getType());
+        if (kind == null) {
+            throw new IOException("Type de trame inconnu: " + frame.getType());
+        }
+        final byte[] buffer = frame.getBuffer();
+        final int start = frame.getOffset();
+        final int end = start + frame.getLength();
+        if (frame.getLength() < 1) {
+            throw new IOException("Trame " + kind + " sans en-tête de routage");
+        }
+        final int headerLength = buffer[start] & HEADER_LENGTH_MASK;
+        final boolean media = (buffer[start] & MEDIA_FLAG) != 0;
+        final int bodyOffset = start + 1 + headerLength;
+        if (headerLength < ROUTING_LENGTH || bodyOffset > end) {
+            throw new IOException("En-tête de routage invalide (" + headerLength + " octets)");
+        }
+        long stampedId = Envelope.NONE;
+        long stampedAt = 0L;
+        MessageStatus stampedStatus = null;
+        long stampedSequence = 0L;
+        UUID clientMessageId = null;
+        if (headerLength >= CLIENT_ROUTING_LENGTH && headerLength < STAMPED_ROUTING_LENGTH) {
+            clientMessageId = uuid(readLong(buffer, start + 25), readLong(buffer, start + 33));
+        }
+        if (headerLength >= STAMPED_ROUTING_LENGTH) {
+            stampedId = readLong(buffer, start + 25);
+            stampedAt = readLong(buffer, start + 33);
+            final int status = buffer[start + 41] & 0xFF;
+            stampedStatus = status < STATUSES.length ? STATUSES[status] : null;
+        }
+        if (headerLength >= SEQUENCED_ROUTING_LENGTH) {
+            stampedSequence = readLong(buffer, start + 42);
+        }
+        return new Envelope(kind,
+                readLong(buffer, start + 1),
+                readLong(buffer, start + 9),
+                readLong(buffer, start + 17),
+                stampedId, stampedAt, stampedStatus, stampedSequence, clientMessageId, media,
+                buffer, bodyOffset, end - bodyOffset, null);
+    }
+
+    /**
+     * Découpe un lot en enveloppes MESSAGE, qui restent des vues sur le tampon du lot.
+     */
+    public List<Envelope> decodeBatch(final Envelope batch) throws IOException {
+        final byte[] buffer = batch.getBody();
+        final int end = batch.getBodyOffset() + batch.getBodyLength();
+        final List<Envelope> envelopes = new ArrayList<>();
+        final Frame entry = new Frame();
+        int offset = batch.getBodyOffset();
+        while (offset < end) {
+            if (offset + BATCH_ENTRY_OVERHEAD > end) {
+                throw new IOException("Lot tronqué");
+            }
+            final int length = (int) readUnsigned(buffer, offset, BATCH_ENTRY_OVERHEAD);
+            offset += BATCH_ENTRY_OVERHEAD;
+            if (length > end - offset) {
+                throw new IOException("Entrée de lot invalide (" + length + " octets)");
+            }
+            envelopes.add(decode(entry.set(FrameType.MESSAGE.getCode(), buffer, offset, length)));
+            offset += length;
+        }
+        return envelopes;
+    }
+
+    /**
+     * Analyse une ligne JSON v1 une seule fois : la nature se déduit de la valeur
+     * du champ "type" (et non d'une recherche dans tout le texte).
+     */
+    public Envelope decodeLine(final String line) throws IOException {
+        final JsonNode tree = mapper.readTree(line);
+        if (tree == null || !tree.isObject()) {
+            throw new IOException("Ligne JSON invalide");
+        }
+        final JsonNode type = tree.get("type");
+        final FrameType kind = type != null && CALL_SIGNAL_TYPES.contains(type.asText())
+                ? FrameType.CALL_SIGNAL
+                : FrameType.MESSAGE;
+        final boolean media = kind == FrameType.MESSAGE && (type == null || !"TEXT".equals(type.asText()));
+        return new Envelope(kind, longField(tree, "senderUserId"), longField(tree, "receiverUserId"),
+                longField(tree, "groupId"), Envelope.NONE, 0L, null, 0L, uuidField(tree, "clientMessageId"), media,
+                null, 0, 0, tree);
+    }
+
+    public <T> T readBody(final Envelope envelope, final Class<T> type) throws IOException {
+        if (envelope.getTree() != null) {
+            return mapper.treeToValue(envelope.getTree(), type);
+        }
+        return bodyCodec.decode(envelope.getBody(), envelope.getBodyOffset(), envelope.getBodyLength(), type);
+    }
+
+    /**
+     * Lit le corps d'un message et lui applique les champs attribués par le serveur, s'il y en a.
+     */
+    public Message readMessage(final Envelope envelope) throws IOException {
+        final Message message = readBody(envelope, Message.class);
+        if (envelope.getClientMessageId() != null) {
+            message.setClientMessageId(envelope.getClientMessageId());
+        }
+        if (envelope.isStamped()) {
+            message.setId(envelope.getStampedId());
+            message.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(envelope.getStampedAtMillis()),
+                    ZoneId.systemDefault()));
+            message.setStatus(envelope.getStampedStatus());
+            if (envelope.getStampedSequence() > 0) {
+                message.setSequence(envelope.getStampedSequence());
+            }
+            // Corps partagé par les membres d'un groupe : le destinataire n'est que dans l'en-tête
+            if (envelope.getReceiverUserId() != Envelope.NONE) {
+                message.setReceiverUserId(envelope.getReceiverUserId());
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Recopie la charge d'une trame reçue en ajoutant à son en-tête les champs
+     * attribués par le serveur, sans décoder le corps : le relais d'un message
+     * coûte une copie d'octets au lieu d'une désérialisation et d'une sérialisation.
+     *
+     * @return La charge à transmettre telle quelle, lisible avec le même {@link BodyCodec}
+     */
+    public byte[] stamp(final Envelope envelope, final long messageId, final long timestampMillis,
+                        final MessageStatus status, final long sequence) throws IOException {
+        if (!envelope.isFramed()) {
+            throw new IOException("Seule une enveloppe reçue en trame peut être relayée telle quelle");
+        }
+        final int bodyLength = envelope.getBodyLength();
+        final byte[] payload = new byte[1 + SEQUENCED_ROUTING_LENGTH + bodyLength];
+        writeStampedHeader(payload, envelope.getSenderUserId(), envelope.getReceiverUserId(), envelope.getGroupId(),
+                messageId, timestampMillis, status, sequence);
+        System.arraycopy(envelope.getBody(), envelope.getBodyOffset(), payload, 1 + SEQUENCED_ROUTING_LENGTH,
+                bodyLength);
+        return payload;
+    }
+
+    /**
+     * @return L'en-tête de routage tamponné seul, à faire suivre d'un corps encodé
+     *         par ailleurs (corps partagé entre plusieurs destinataires)
+     */
+    public static byte[] stampedHeader(final long senderUserId, final long receiverUserId, final long groupId,
+                                       final long messageId, final long timestampMillis,
+                                       final MessageStatus status, final long sequence) {
+        final byte[] header = new byte[1 + SEQUENCED_ROUTING_LENGTH];
+        writeStampedHeader(header, senderUserId, receiverUserId, groupId, messageId, timestampMillis, status,
+                sequence);
+        return header;
+    }
+
+    /**
+     * Remplace le rang tamponné dans une charge produite par
+     * {@link #stamp(Envelope, long, long, MessageStatus, long)}, avant qu'elle ne soit partagée.
+     */
+    public static void restampSequence(final byte[] payload, final long sequence) {
+        writeLong(payload, 42, sequence);
+    }
+
+    private static void writeStampedHeader(final byte[] buffer, final long senderUserId, final long receiverUserId,
+                                           final long groupId, final long messageId, final long timestampMillis,
+                                           final MessageStatus status, final long sequence) {
+        buffer[0] = (byte) SEQUENCED_ROUTING_LENGTH;
+        writeLong(buffer, 1, senderUserId);
+        writeLong(buffer, 9, receiverUserId);
+        writeLong(buffer, 17, groupId);
+        writeLong(buffer, 25, messageId);
+        writeLong(buffer, 33, timestampMillis);
+        buffer[41] = (byte) status.ordinal();
+        writeLong(buffer, 42, sequence);
+    }
+
+    /**
+     * @return La charge d'une trame v2 : en-tête de routage puis corps encodé
+     */
+    public byte[] encode(final long senderUserId, final long receiverUserId, final long groupId,
+                         final Object body) throws IOException {
+        return encode(senderUserId, receiverUserId, groupId, null, false, body);
+    }
+
+    /**
+     * @param clientMessageId Identifiant de l'envoi, placé dans l'en-tête pour être lu sans décoder le corps
+     *                        (null pour un en-tête de routage seul)
+     * @param media           true pour annoncer un message média dans l'octet de longueur
+     */
+    private byte[] encode(final long senderUserId, final long receiverUserId, final long groupId,
+                          final UUID clientMessageId, final boolean media, final Object body) throws IOException {
+        final byte[] encoded = bodyCodec.encode(body);
+        final int headerLength = clientMessageId != null ? CLIENT_ROUTING_LENGTH : ROUTING_LENGTH;
+        final byte[] payload = new byte[1 + headerLength + encoded.length];
+        payload[0] = (byte) (media ? headerLength | MEDIA_FLAG : headerLength);
+        writeLong(payload, 1, senderUserId);
+        writeLong(payload, 9, receiverUserId);
+        writeLong(payload, 17, groupId);
+        if (clientMessageId != null) {
+            writeLong(payload, 25, clientMessageId.getMostSignificantBits());
+            writeLong(payload, 33, clientMessageId.getLeastSignificantBits());
+        }
+        System.arraycopy(encoded, 0, payload, 1 + headerLength, encoded.length);
+        return payload;
+    }
+
+    /**
+     * @param payloads Charges de trames MESSAGE (voir {@link #encodeMessage(Message)})
+     * @return La charge d'une trame {@link FrameType#MESSAGE_BATCH} : en-tête de routage
+     *         vide, puis chaque charge précédée de sa longueur
+     */
+    public static byte[] encodeBatch(final List<byte[]> payloads) {
+        int length = BATCH_HEADER_LENGTH;
+        for (final byte[] payload : payloads) {
+            length += BATCH_ENTRY_OVERHEAD + payload.length;
+        }
+        final byte[] batch = new byte[length];
+        batch[0] = (byte) ROUTING_LENGTH;
+        writeLong(batch, 1, Envelope.NONE);
+        writeLong(batch, 9, Envelope.NONE);
+        writeLong(batch, 17, Envelope.NONE);
+        int offset = BATCH_HEADER_LENGTH;
+        for (final byte[] payload : payloads) {
+            for (int i = 0; i < BATCH_ENTRY_OVERHEAD; i++) {
+                batch[offset + i] = (byte) (payload.length >>> ((BATCH_ENTRY_OVERHEAD - 1 - i) * 8));
+            }
+            offset += BATCH_ENTRY_OVERHEAD;
+            System.arraycopy(payload, 0, batch, offset, payload.length);
+            offset += payload.length;
+        }
+        return batch;
+    }
+
+    public byte[] encodeMessage(final Message message) throws IOException {
+        return encode(message.getSenderUserId(), orNone(message.getReceiverUserId()), orNone(message.getGroupId()),
+                message.getClientMessageId(), message.isMediaMessage(), message);
+    }
+
+    public byte[] encodeCallSignal(final CallSignal signal) throws IOException {
+        return encode(signal.getSenderUserId(), signal.getReceiverUserId(), Envelope.NONE, signal);
+    }
+
+    public byte[] encodeControl(final ControlCommand command) throws IOException {
+        return encode(Envelope.NONE, Envelope.NONE, Envelope.NONE, command);
+    }
+
+    /**
+     * @return Le corps seul, au format JSON d'une ligne v1
+     */
+    public String encodeLine(final Object body) throws IOException {
+        return mapper.writeValueAsString(body);
+    }
+
+    private static long orNone(final Long id) {
+        return id != null ? id : Envelope.NONE;
+    }
+
+    private static long longField(final JsonNode tree, final String field) {
+        final JsonNode value = tree.get(field);
+        return value != null && value.canConvertToLong() ? value.asLong() : Envelope.NONE;
+    }
+
+    private static UUID uuidField(final JsonNode tree, final String field) {
+        final JsonNode value = tree.get(field);
+        if (value == null || !value.isTextual()) {
+            return null;
+        }
+        try {
+            return UUID.fromString(value.asText());
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static UUID uuid(final long mostSignificantBits, final long leastSignificantBits) {
+        return mostSignificantBits != 0 || leastSignificantBits != 0
+                ? new UUID(mostSignificantBits, leastSignificantBits)
+                : null;
+    }
+
+    private static long readLong(final byte[] buffer, final int offset) {
+        return readUnsigned(buffer, offset, 8);
+    }
+
+    private static long readUnsigned(final byte[] buffer, final int offset, final int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (buffer[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void writeLong(final byte[] buffer, final int offset, final long value) {
+        for (int i = 7; i >= 0; i--) {
+            buffer[offset + 7 - i] = (byte) (value >>> (i * 8));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.example.shared.protocol;
+
+import java.io.IOException;
+
+/**
+ * Table de handlers indexée par nature d'enveloppe : un accès tableau par
+ * message, quel que soit le nombre de natures enregistrées.
+ */
+public final class EnvelopeDispatcher {
+
+    @FunctionalInterface
+    public interface Handler {
+        void handle(Envelope envelope) throws IOException;
+    }
+
+    private final Handler[] handlers = new Handler[FrameType.values().length];
+    private final Handler fallback;
+
+    /**
+     * @param fallback Appelé pour les natures sans handler enregistré
+     */
+    public EnvelopeDispatcher(final Handler fallback) {
+        this.fallback = fallback;
+    }
+
+    public EnvelopeDispatcher on(final FrameType kind, final Handler handler) {
+        handlers[kind.ordinal()] = handler;
+        return this;
+    }
+
+    public void dispatch(final Envelope envelope) throws IOException {
+        final Handler handler = handlers[envelope.getKind().ordinal()];
+        (handler != null ? handler : fallback).handle(envelope);
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.shared.protocol;
+
+/**
+ * Vue sur une trame reçue : type et charge utile dans un tampon.
+ * Le tampon peut être réutilisé par le lecteur : la charge n'est valide que
+ * pendant le traitement de la trame et doit être copiée pour être conservée.
+ */
+public final class Frame {
+    private byte type;
+    private byte[] buffer;
+    private int offset;
+    private int length;
+
+    public Frame() {
+    }
+
+    public Frame(final byte type, final byte[] buffer, final int offset, final int length) {
+        set(type, buffer, offset, length);
+    }
+
+    public Frame set(final byte type, final byte[] buffer, final int offset, final int length) {
+        this.type = type;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    public byte getType() { return type; }
+    public byte[] getBuffer() { return buffer; }
+    public int getOffset() { return offset; }
+    public int getLength() { return length; }
+
+    /**
+     * @return Une copie indépendante de la trame, utilisable après réutilisation du tampon
+     */
+    public Frame copy() {
+        final byte[] payload = new byte[length];
+        System.arraycopy(buffer, offset, payload, 0, length);
+        return new Frame(type, payload, 0, length);
+    }
+}
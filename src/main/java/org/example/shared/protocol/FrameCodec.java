@@ -0,0 +1,120 @@
+package org.example.shared.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Format des trames du protocole v2 : longueur de la charge (int32 big-endian),
+ * octet de type, puis la charge. Les lignes de la poignée de main restent en
+ * UTF-8 terminées par '\n' et sont lues octet par octet pour ne rien consommer
+ * des trames qui suivent.
+ */
+public final class FrameCodec {
+
+    public static final int HEADER_LENGTH = 5;
+    public static final int MAX_PAYLOAD_LENGTH = 1024 * 1024;
+
+    private FrameCodec() {
+    }
+
+    /**
+     * @return L'en-tête et la charge dans un seul tableau, prêt à être écrit
+     */
+    public static byte[] encode(final byte type, final byte[] payload) {
+        final byte[] frame = new byte[HEADER_LENGTH + payload.length];
+        writeHeader(frame, 0, type, payload.length);
+        System.arraycopy(payload, 0, frame, HEADER_LENGTH, payload.length);
+        return frame;
+    }
+
+    public static void writeHeader(final byte[] target, final int offset, final byte type, final int payloadLength) {
+        target[offset] = (byte) (payloadLength >>> 24);
+        target[offset + 1] = (byte) (payloadLength >>> 16);
+        target[offset + 2] = (byte) (payloadLength >>> 8);
+        target[offset + 3] = (byte) payloadLength;
+        target[offset + 4] = type;
+    }
+
+    public static int readLength(final byte[] source, final int offset) throws IOException {
+        final int length = ((source[offset] & 0xFF) << 24) | ((source[offset + 1] & 0xFF) << 16)
+                | ((source[offset + 2] & 0xFF) << 8) | (source[offset + 3] & 0xFF);
+        if (length < 0 || length > MAX_PAYLOAD_LENGTH) {
+            throw new IOException("Longueur de trame invalide: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Lit une trame complète dans le tampon de {@code reuse} (agrandi si nécessaire).
+     *
+     * @return La trame, ou null en fin de flux
+     */
+    public static Frame readFrame(final InputStream in, final Frame reuse) throws IOException {
+        byte[] buffer = reuse.getBuffer();
+        if (buffer == null || buffer.length < HEADER_LENGTH) {
+            buffer = new byte[256];
+        }
+        if (!readFully(in, buffer, 0, HEADER_LENGTH, true)) {
+            return null;
+        }
+        final int length = readLength(buffer, 0);
+        final byte type = buffer[4];
+        if (buffer.length < length) {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+        }
+        readFully(in, buffer, 0, length, false);
+        return reuse.set(type, buffer, 0, length);
+    }
+
+    private static boolean readFully(final InputStream in, final byte[] buffer, final int offset, final int length,
+                                     final boolean eofAllowed) throws IOException {
+        int read = 0;
+        while (read < length) {
+            final int n = in.read(buffer, offset + read, length - read);
+            if (n < 0) {
+                if (eofAllowed && read == 0) {
+                    return false;
+                }
+                throw new EOFException("Trame tronquée");
+            }
+            read += n;
+        }
+        return true;
+    }
+
+    /**
+     * Lit une ligne UTF-8 sans tamponner au-delà du '\n'.
+     *
+     * @return La ligne sans séparateur, ou null en fin de flux
+     */
+    public static String readLine(final InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                return trimCarriageReturn(line);
+            }
+            line.write(b);
+        }
+        return line.size() > 0 ? trimCarriageReturn(line) : null;
+    }
+
+    private static String trimCarriageReturn(final ByteArrayOutputStream line) {
+        final byte[] bytes = line.toByteArray();
+        int end = bytes.length;
+        if (end > 0 && bytes[end - 1] == '\r') {
+            end--;
+        }
+        return new String(bytes, 0, end, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return La ligne encodée en UTF-8 avec son '\n'
+     */
+    public static byte[] encodeLine(final String line) {
+        return (line + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,154 @@
+package org.example.shared.protocol;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression de flux négociée à la connexion (option {@link Protocol#DEFLATE}).
+ * <p>
+ * Un seul {@link Deflater} et un seul {@link Inflater} par connexion et par
+ * sens : le dictionnaire est partagé d'une trame à l'autre, ce qui compresse
+ * bien les noms de champs JSON répétés. Chaque charge est vidée avec
+ * {@link Deflater#SYNC_FLUSH}, sans attendre les suivantes : un petit message
+ * interactif part immédiatement. Le marqueur de fin de vidage (00 00 FF FF),
+ * toujours identique, n'est pas transmis.
+ * <p>
+ * Les trames compressées portent le bit {@link #COMPRESSED_FLAG} dans leur
+ * octet de type. Les charges trop courtes pour y gagner partent telles quelles.
+ * <p>
+ * Non thread-safe : la compression doit suivre l'ordre d'écriture et la
+ * décompression l'ordre de lecture, chacune sur un seul thread à la fois.
+ * La mémoire native est libérée par le ramasse-miettes avec l'objet.
+ */
+public final class FrameCompression {
+
+    /** Bit de l'octet de type indiquant une charge compressée. */
+    public static final byte COMPRESSED_FLAG = (byte) 0x80;
+    /** En dessous, l'en-tête deflate coûte plus que ce qu'il fait gagner. */
+    public static final int MIN_COMPRESSED_LENGTH = 48;
+
+    private static final byte[] SYNC_TRAILER = {0, 0, (byte) 0xFF, (byte) 0xFF};
+
+    private final Deflater deflater;
+    private final Inflater inflater;
+    private byte[] deflateBuffer;
+    private byte[] inflateBuffer;
+
+    // Compteurs (écrits par le thread de la direction concernée, lus pour les statistiques)
+    private volatile long rawBytesOut;
+    private volatile long compressedBytesOut;
+    private volatile long deflateNanos;
+    private volatile long rawBytesIn;
+    private volatile long compressedBytesIn;
+    private volatile long inflateNanos;
+
+    public FrameCompression() {
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        this.inflater = new Inflater(true);
+        this.deflateBuffer = new byte[1024];
+        this.inflateBuffer = new byte[4096];
+    }
+
+    public static boolean isCompressed(final byte type) {
+        return (type & COMPRESSED_FLAG) != 0;
+    }
+
+    public static boolean shouldCompress(final int payloadLength) {
+        return payloadLength >= MIN_COMPRESSED_LENGTH;
+    }
+
+    /**
+     * Compresse une charge et la vide immédiatement (SYNC_FLUSH).
+     *
+     * @return La charge compressée, sans le marqueur de fin de vidage
+     */
+    public byte[] compress(final byte[] payload) {
+        final long start = System.nanoTime();
+        deflater.setInput(payload);
+        int length = 0;
+        while (true) {
+            length += deflater.deflate(deflateBuffer, length, deflateBuffer.length - length, Deflater.SYNC_FLUSH);
+            if (length < deflateBuffer.length) {
+                break;
+            }
+            deflateBuffer = Arrays.copyOf(deflateBuffer, deflateBuffer.length * 2);
+        }
+        final byte[] compressed = Arrays.copyOf(deflateBuffer, length - SYNC_TRAILER.length);
+        deflateNanos += System.nanoTime() - start;
+        rawBytesOut += payload.length;
+        compressedBytesOut += compressed.length;
+        return compressed;
+    }
+
+    /**
+     * Décompresse la charge d'une trame marquée {@link #COMPRESSED_FLAG}.
+     *
+     * @return La charge d'origine
+     * @throws IOException Si le flux est corrompu ou dépasse {@link FrameCodec#MAX_PAYLOAD_LENGTH}
+     */
+    public byte[] decompress(final byte[] buffer, final int offset, final int length) throws IOException {
+        final long start = System.nanoTime();
+        inflater.setInput(buffer, offset, length);
+        int total = 0;
+        try {
+            total = inflateAvailable(total);
+            inflater.setInput(SYNC_TRAILER);
+            total = inflateAvailable(total);
+        } catch (final DataFormatException e) {
+            throw new IOException("Flux compressé invalide: " + e.getMessage(), e);
+        }
+        inflateNanos += System.nanoTime() - start;
+        rawBytesIn += total;
+        compressedBytesIn += length;
+        return Arrays.copyOf(inflateBuffer, total);
+    }
+
+    /**
+     * @return La trame elle-même si elle n'est pas compressée, sinon une nouvelle
+     *         trame portant la charge d'origine et le type sans {@link #COMPRESSED_FLAG}
+     */
+    public Frame decompress(final Frame frame) throws IOException {
+        if (!isCompressed(frame.getType())) {
+            return frame;
+        }
+        final byte[] payload = decompress(frame.getBuffer(), frame.getOffset(), frame.getLength());
+        return new Frame((byte) (frame.getType() & ~COMPRESSED_FLAG), payload, 0, payload.length);
+    }
+
+    private int inflateAvailable(int total) throws DataFormatException, IOException {
+        while (true) {
+            total += inflater.inflate(inflateBuffer, total, inflateBuffer.length - total);
+            if (total < inflateBuffer.length) {
+                if (inflater.needsInput() || inflater.finished()) {
+                    return total;
+                }
+                continue;
+            }
+            if (total >= FrameCodec.MAX_PAYLOAD_LENGTH) {
+                throw new IOException("Charge décompressée trop longue");
+            }
+            inflateBuffer = Arrays.copyOf(inflateBuffer, inflateBuffer.length * 2);
+        }
+    }
+
+    public long getRawBytesOut() { return rawBytesOut; }
+    public long getCompressedBytesOut() { return compressedBytesOut; }
+    public long getDeflateNanos() { return deflateNanos; }
+    public long getRawBytesIn() { return rawBytesIn; }
+    public long getCompressedBytesIn() { return compressedBytesIn; }
+    public long getInflateNanos() { return inflateNanos; }
+
+    @Override
+    public String toString() {
+        return String.format("sortant %d -> %d o (%.0f%%, %.1f ms), entrant %d -> %d o (%.0f%%, %.1f ms)",
+                rawBytesOut, compressedBytesOut, ratio(compressedBytesOut, rawBytesOut), deflateNanos / 1e6,
+                compressedBytesIn, rawBytesIn, ratio(compressedBytesIn, rawBytesIn), inflateNanos / 1e6);
+    }
+
+    private static double ratio(final long compressed, final long raw) {
+        return raw == 0 ? 100 : 100.0 * compressed / raw;
+    }
+}
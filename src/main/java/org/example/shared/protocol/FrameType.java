@@ -0,0 +1,38 @@
+package org.example.shared.protocol;
+
+/**
+ * Nature d'une enveloppe, transmise comme octet de type de trame en v2.
+ * Sert d'index dans les tables de {@link EnvelopeDispatcher}.
+ */
+public enum FrameType {
+    MESSAGE((byte) 1),     // Message de chat (corps : Message en JSON)
+    CALL_SIGNAL((byte) 2), // Signal d'appel (corps : CallSignal en JSON)
+    ACK((byte) 3),         // Accusé de réception
+    CONTROL((byte) 4),     // Commande de session (corps : ControlCommand en JSON)
+    MESSAGE_BATCH((byte) 5); // Plusieurs trames MESSAGE à la suite (rejeu des messages en attente)
+
+    private static final FrameType[] BY_CODE = new FrameType[128];
+
+    static {
+        for (final FrameType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final byte code;
+
+    FrameType(final byte code) {
+        this.code = code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * @return Le type correspondant au code, ou null s'il est inconnu
+     */
+    public static FrameType fromCode(final byte code) {
+        return code >= 0 ? BY_CODE[code] : null;
+    }
+}
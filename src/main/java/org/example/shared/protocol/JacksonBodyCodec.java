@@ -0,0 +1,62 @@
+package org.example.shared.protocol;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * Codec de corps adossé à un {@link ObjectMapper} Jackson : JSON texte, ou
+ * Smile, son équivalent binaire. Smile lit et écrit le même modèle que JSON
+ * (mêmes annotations, mêmes modules) mais encode les nombres en binaire et
+ * référence les noms de champs déjà vus dans la charge au lieu de les répéter.
+ */
+public final class JacksonBodyCodec implements BodyCodec {
+
+    /** Nom du format texte, utilisé à défaut de négociation. */
+    public static final String JSON = "json";
+
+    private final String name;
+    private final ObjectMapper mapper;
+
+    private static class SmileHolder {
+        private static final JacksonBodyCodec INSTANCE = new JacksonBodyCodec(Protocol.SMILE,
+                new SmileMapper().registerModule(new JavaTimeModule()));
+    }
+
+    private JacksonBodyCodec(final String name, final ObjectMapper mapper) {
+        this.name = name;
+        this.mapper = mapper;
+    }
+
+    /**
+     * @param mapper Mapper JSON de l'appelant, dont la configuration est conservée
+     */
+    public static JacksonBodyCodec json(final ObjectMapper mapper) {
+        return new JacksonBodyCodec(JSON, mapper);
+    }
+
+    /**
+     * @return Le codec Smile partagé
+     */
+    public static JacksonBodyCodec smile() {
+        return SmileHolder.INSTANCE;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public byte[] encode(final Object body) throws IOException {
+        return mapper.writeValueAsBytes(body);
+    }
+
+    @Override
+    public <T> T decode(final byte[] buffer, final int offset, final int length, final Class<T> type)
+            throws IOException {
+        return mapper.readValue(buffer, offset, length, type);
+    }
+}
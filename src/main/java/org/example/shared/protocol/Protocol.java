@@ -0,0 +1,140 @@
+package org.example.shared.protocol;
+
+/**
+ * Constantes de la poignée de main et négociation de version.
+ *
+ * <pre>
+ * client : LOGIN [version [options]]   serveur : AUTH_SUCCESS [version [options]] | AUTH_FAILED
+ * client : {identifiants JSON}
+ *
+ * client : RESUME version [options]   serveur : AUTH_SUCCESS version [options] | AUTH_FAILED
+ * client : ticket
+ *
+ * serveur surchargé, à tout moment de la poignée de main : BUSY délai_ms, puis fermeture
+ * </pre>
+ * Un client sans version (v1) reste en lignes JSON ; si les deux côtés
+ * annoncent la v2, l'échange passe en trames binaires après AUTH_SUCCESS et le
+ * serveur envoie un ticket de session (CONTROL {@link ControlCommand#SESSION_TICKET})
+ * qui permet de reprendre la session avec RESUME sans renvoyer les identifiants.
+ * Les options suivent la version ; le serveur ne renvoie que celles qu'il
+ * accepte (ex: {@link #DEFLATE}, {@link #SMILE}, {@link #BATCH}).
+ */
+public final class Protocol {
+
+    /** Une ligne JSON par message (clients historiques). */
+    public static final int VERSION_LINES = 1;
+    /** Trames binaires préfixées par leur longueur (voir {@link FrameCodec}). */
+    public static final int VERSION_FRAMED = 2;
+    public static final int CURRENT_VERSION = VERSION_FRAMED;
+
+    public static final String LOGIN = "LOGIN";
+    public static final String RESUME = "RESUME";
+    public static final String REGISTER = "REGISTER";
+    public static final String AUTH_SUCCESS = "AUTH_SUCCESS";
+    public static final String AUTH_FAILED = "AUTH_FAILED";
+    /** Serveur surchargé : réessayer après le délai indiqué, en millisecondes. */
+    public static final String BUSY = "BUSY";
+
+    /** Option v2 : compression des trames (voir {@link FrameCompression}). */
+    public static final String DEFLATE = "deflate";
+    /** Option v2 : corps des trames en Smile, JSON binaire (voir {@link JacksonBodyCodec}). */
+    public static final String SMILE = "smile";
+    /** Option v2 : le client lit les trames {@link FrameType#MESSAGE_BATCH}. */
+    public static final String BATCH = "batch";
+
+    private Protocol() {
+    }
+
+    /**
+     * @return La commande suivie de la version (ex: "AUTH_SUCCESS 2"), ou la commande seule en v1
+     */
+    public static String withVersion(final String command, final int version) {
+        return version > VERSION_LINES ? command + " " + version : command;
+    }
+
+    /**
+     * @return La version annoncée après la commande, ou {@link #VERSION_LINES} si absente ou illisible
+     */
+    public static int parseVersion(final String line) {
+        if (line == null) {
+            return VERSION_LINES;
+        }
+        final int space = line.indexOf(' ');
+        if (space < 0) {
+            return VERSION_LINES;
+        }
+        final int end = line.indexOf(' ', space + 1);
+        try {
+            return Math.max(VERSION_LINES, Integer.parseInt(line.substring(space + 1, end < 0 ? line.length() : end).trim()));
+        } catch (final NumberFormatException e) {
+            return VERSION_LINES;
+        }
+    }
+
+    /**
+     * @return La réponse BUSY annonçant le délai avant nouvelle tentative
+     */
+    public static String busy(final long retryAfterMillis) {
+        return BUSY + " " + retryAfterMillis;
+    }
+
+    /**
+     * @return Le délai annoncé par une réponse BUSY, ou {@code defaultMillis} s'il est absent ou illisible
+     */
+    public static long parseRetryAfter(final String line, final long defaultMillis) {
+        final int space = line != null ? line.indexOf(' ') : -1;
+        if (space < 0) {
+            return defaultMillis;
+        }
+        try {
+            return Long.parseLong(line.substring(space + 1).trim());
+        } catch (final NumberFormatException e) {
+            return defaultMillis;
+        }
+    }
+
+    /**
+     * @return La ligne suivie des options, séparées par des espaces
+     */
+    public static String withOptions(final String line, final String... options) {
+        final StringBuilder builder = new StringBuilder(line);
+        for (final String option : options) {
+            builder.append(' ').append(option);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return true si l'option figure après la commande et la version
+     */
+    public static boolean hasOption(final String line, final String option) {
+        if (line == null) {
+            return false;
+        }
+        final String[] tokens = line.trim().split(" +");
+        for (int i = 2; i < tokens.length; i++) {
+            if (tokens[i].equals(option)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return La commande sans sa version (ex: "LOGIN 2" donne "LOGIN")
+     */
+    public static String command(final String line) {
+        if (line == null) {
+            return null;
+        }
+        final int space = line.indexOf(' ');
+        return space < 0 ? line : line.substring(0, space);
+    }
+
+    /**
+     * @return La version retenue : la plus haute supportée par les deux côtés
+     */
+    public static int negotiate(final int requested) {
+        return Math.min(requested, CURRENT_VERSION);
+    }
+}
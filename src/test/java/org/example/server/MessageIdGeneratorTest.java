@@ -0,0 +1,76 @@
+package org.example.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+
+class MessageIdGeneratorTest {
+
+    @Test
+    void idsOfANodeStrictlyIncrease() {
+        final MessageIdGenerator generator = new MessageIdGenerator(5);
+        long previous = 0;
+        // Plus que le compteur d'une milliseconde : les millisecondes suivantes sont empruntées
+        for (int i = 0; i < 50_000; i++) {
+            final long id = generator.next();
+            assertTrue(id > previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    void idsCarryTheNodeAndTheTime() {
+        final long before = System.currentTimeMillis();
+        final long id = new MessageIdGenerator(MessageIdGenerator.MAX_NODE_ID).next();
+
+        assertEquals(MessageIdGenerator.MAX_NODE_ID, MessageIdGenerator.nodeId(id));
+        assertTrue(MessageIdGenerator.timestampMillis(id) >= before);
+        assertTrue(MessageIdGenerator.timestampMillis(id) <= System.currentTimeMillis() + 1);
+    }
+
+    @Test
+    void concurrentCallersNeverShareAnId() throws InterruptedException {
+        final MessageIdGenerator generator = new MessageIdGenerator(1);
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    ids.add(generator.next());
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40_000, ids.size());
+    }
+
+    @Test
+    void nodesDoNotCollide() {
+        final Set<Long> ids = new HashSet<>();
+        final MessageIdGenerator first = new MessageIdGenerator(1);
+        final MessageIdGenerator second = new MessageIdGenerator(2);
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(ids.add(first.next()));
+            assertTrue(ids.add(second.next()));
+        }
+    }
+
+    @Test
+    void nodeIdOutOfRangeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new MessageIdGenerator(-1));
+        assertThrows(IllegalArgumentException.class, () -> new MessageIdGenerator(MessageIdGenerator.MAX_NODE_ID + 1));
+    }
+}
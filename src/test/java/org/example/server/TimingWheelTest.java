@@ -0,0 +1,73 @@
+package org.example.server;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class TimingWheelTest {
+
+    @Test
+    void taskRunsOnceItsDelayHasElapsed() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(5, 16);
+        final CountDownLatch ran = new CountDownLatch(1);
+        final AtomicLong ranAfterNanos = new AtomicLong();
+        final long start = System.nanoTime();
+
+        wheel.schedule(() -> {
+            ranAfterNanos.set(System.nanoTime() - start);
+            ran.countDown();
+        }, 50);
+
+        assertTrue(ran.await(2, TimeUnit.SECONDS));
+        assertTrue(ranAfterNanos.get() >= TimeUnit.MILLISECONDS.toNanos(45));
+    }
+
+    @Test
+    void delayLongerThanOneTurnWaitsForItsRound() throws InterruptedException {
+        // 8 cases de 5 ms : un tour dure 40 ms
+        final TimingWheel wheel = new TimingWheel(5, 8);
+        final CountDownLatch ran = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        final AtomicLong ranAfterNanos = new AtomicLong();
+
+        wheel.schedule(() -> {
+            ranAfterNanos.set(System.nanoTime() - start);
+            ran.countDown();
+        }, 130);
+
+        assertTrue(ran.await(2, TimeUnit.SECONDS));
+        assertTrue(ranAfterNanos.get() >= TimeUnit.MILLISECONDS.toNanos(125));
+    }
+
+    @Test
+    void cancelledTaskNeverRuns() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(5, 16);
+        final AtomicBoolean cancelledRan = new AtomicBoolean();
+        final CountDownLatch later = new CountDownLatch(1);
+
+        final TimingWheel.Timeout timeout = wheel.schedule(() -> cancelledRan.set(true), 20);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        wheel.schedule(later::countDown, 60);
+
+        assertTrue(later.await(2, TimeUnit.SECONDS));
+        assertFalse(cancelledRan.get());
+    }
+
+    @Test
+    void expiredTimeoutCannotBeCancelled() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(5, 16);
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        final TimingWheel.Timeout timeout = wheel.schedule(ran::countDown, 10);
+
+        assertTrue(ran.await(2, TimeUnit.SECONDS));
+        assertFalse(timeout.cancel());
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void burstIsAdmittedThenTheRateApplies() {
+        final TokenBucket bucket = new TokenBucket(2, 3, 0);
+
+        assertEquals(0, bucket.tryTake(1, 0));
+        assertEquals(0, bucket.tryTake(1, 0));
+        assertEquals(0, bucket.tryTake(1, 0));
+        // Seau vide : un jeton revient en une demi-seconde
+        assertEquals(SECOND / 2, bucket.tryTake(1, 0));
+        assertEquals(0, bucket.tryTake(1, SECOND / 2));
+    }
+
+    @Test
+    void refillStopsAtCapacity() {
+        final TokenBucket bucket = new TokenBucket(10, 2, 0);
+        bucket.tryTake(2, 0);
+
+        assertTrue(bucket.isFull(100 * SECOND));
+        assertEquals(0, bucket.tryTake(2, 100 * SECOND));
+        assertTrue(bucket.tryTake(1, 100 * SECOND) > 0);
+    }
+
+    @Test
+    void refundGivesTokensBack() {
+        final TokenBucket bucket = new TokenBucket(1, 2, 0);
+        bucket.tryTake(2, 0);
+        assertFalse(bucket.isFull(0));
+
+        bucket.refund(2);
+
+        assertTrue(bucket.isFull(0));
+    }
+
+    @Test
+    void costAboveCapacityNeedsAFullBucket() {
+        final TokenBucket bucket = new TokenBucket(1, 2, 0);
+
+        assertEquals(0, bucket.tryTake(5, 0));
+        assertEquals(2 * SECOND, bucket.tryTake(5, 0));
+    }
+
+    @Test
+    void zeroRateNeverRefills() {
+        final TokenBucket bucket = new TokenBucket(0, 1, 0);
+
+        assertEquals(0, bucket.tryTake(1, 0));
+        assertEquals(Long.MAX_VALUE, bucket.tryTake(1, 1_000 * SECOND));
+    }
+}
@@ -0,0 +1,84 @@
+package org.example.server.broker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class BrokerShardTest {
+
+    @Test
+    void commandsOfEachProducerRunInSubmissionOrder() throws InterruptedException {
+        final BrokerShard<Void> shard = new BrokerShard<>(0);
+        final int producers = 4;
+        final int perProducer = 10_000;
+        // Lues et écrites par le seul thread de la partition
+        final List<List<Integer>> seen = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            seen.add(new ArrayList<>());
+        }
+        final CountDownLatch done = new CountDownLatch(producers * perProducer);
+        final List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final List<Integer> mine = seen.get(p);
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    final int value = i;
+                    shard.execute(() -> {
+                        mine.add(value);
+                        done.countDown();
+                    });
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (final List<Integer> values : seen) {
+            assertEquals(perProducer, values.size());
+            for (int i = 0; i < perProducer; i++) {
+                assertEquals(i, values.get(i));
+            }
+        }
+    }
+
+    @Test
+    void callWaitsForEarlierCommands() {
+        final BrokerShard<Void> shard = new BrokerShard<>(0);
+        final List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            final int value = i;
+            shard.execute(() -> values.add(value));
+        }
+
+        assertEquals(1_000, shard.call(values::size));
+    }
+
+    @Test
+    void callFromTheShardThreadRunsInline() {
+        final BrokerShard<Long> shard = new BrokerShard<>(0);
+
+        final Thread inner = shard.call(() -> shard.call(Thread::currentThread));
+
+        assertSame(inner, shard.call(Thread::currentThread));
+    }
+
+    @Test
+    void mailboxesAreKeptBetweenCommands() {
+        final BrokerShard<Long> shard = new BrokerShard<>(0);
+        shard.execute(() -> shard.mailboxes().merge(1L, 1L, Long::sum));
+        shard.execute(() -> shard.mailboxes().merge(1L, 1L, Long::sum));
+
+        assertEquals(2L, shard.call(() -> shard.mailboxes().get(1L)));
+    }
+}
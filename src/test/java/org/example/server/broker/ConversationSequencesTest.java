@@ -0,0 +1,223 @@
+package org.example.server.broker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.example.shared.dao.MessageDAO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ConversationSequencesTest {
+
+    private final ExecutorService io = Executors.newFixedThreadPool(2);
+    private final StubMessageDAO dao = new StubMessageDAO();
+    private final List<BrokerShard<Void>> shards = List.of(new BrokerShard<>(0), new BrokerShard<>(1));
+
+    @AfterEach
+    void shutdown() {
+        io.shutdownNow();
+    }
+
+    private ConversationSequences sequences(final int maxConversations) {
+        return new ConversationSequences(dao, new QueuedMessageWriter(dao, null, 10, 10, 100, 1_000, false), io, shards,
+                maxConversations);
+    }
+
+    private static long nextRank(final ConversationSequences sequences, final long from, final long to) {
+        final CompletableFuture<Long> rank = new CompletableFuture<>();
+        sequences.direct(from, to, counter -> rank.complete(counter != null ? counter.next() : -1L));
+        return rank.orTimeout(5, TimeUnit.SECONDS).join();
+    }
+
+    @Test
+    void ranksFollowTheStoredMaximumWithoutGaps() {
+        dao.stored.put("direct 1-2", 41L);
+        final ConversationSequences sequences = sequences(100);
+
+        assertEquals(42, nextRank(sequences, 1, 2));
+        assertEquals(43, nextRank(sequences, 1, 2));
+        assertEquals(44, nextRank(sequences, 1, 2));
+        assertEquals(1, dao.loads.get());
+    }
+
+    @Test
+    void bothDirectionsShareOneCounter() {
+        final ConversationSequences sequences = sequences(100);
+
+        assertEquals(1, nextRank(sequences, 1, 2));
+        assertEquals(2, nextRank(sequences, 2, 1));
+        assertEquals(3, nextRank(sequences, 1, 2));
+    }
+
+    @Test
+    void groupCounterIsDistinctFromDirectCounters() {
+        dao.stored.put("group 1", 7L);
+        final ConversationSequences sequences = sequences(100);
+        final CompletableFuture<Long> rank = new CompletableFuture<>();
+
+        sequences.group(1, counter -> rank.complete(counter.next()));
+
+        assertEquals(8, rank.orTimeout(5, TimeUnit.SECONDS).join());
+        assertEquals(1, nextRank(sequences, 0, 1));
+    }
+
+    @Test
+    void failedLoadIsReportedThenRetried() {
+        dao.stored.put("direct 1-2", 10L);
+        dao.failures.set(1);
+        final ConversationSequences sequences = sequences(100);
+
+        assertEquals(-1, nextRank(sequences, 1, 2));
+        assertEquals(11, nextRank(sequences, 1, 2));
+        assertEquals(2, dao.loads.get());
+    }
+
+    @Test
+    void commandsQueuedDuringTheLoadRunInOrder() throws InterruptedException {
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLoad = new CountDownLatch(1);
+        dao.beforeLoad = () -> {
+            loadStarted.countDown();
+            await(releaseLoad);
+        };
+        final ConversationSequences sequences = sequences(100);
+        final List<Long> ranks = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(5);
+
+        for (int i = 0; i < 5; i++) {
+            sequences.direct(1, 2, counter -> {
+                ranks.add(counter.next());
+                done.countDown();
+            });
+        }
+        assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+        releaseLoad.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), ranks);
+    }
+
+    @Test
+    void reloadAfterEvictionSeesRanksStillInFlight() {
+        // Un compteur par partition : toute autre conversation de la partition l'évince
+        final ConversationSequences sequences = sequences(shards.size());
+        for (int i = 0; i < 3; i++) {
+            sequences.direct(1, 2, counter -> {
+                final long rank = counter.next();
+                // Rang confié à une autre partition, qui ne l'enregistre que plus tard
+                shards.get((int) (rank % shards.size())).execute(() -> {
+                    sleep(20);
+                    dao.stored.merge("direct 1-2", rank, Math::max);
+                });
+            });
+        }
+        for (long other = 3; other < 40; other++) {
+            nextRank(sequences, other, other + 1000);
+        }
+
+        assertEquals(4, nextRank(sequences, 1, 2));
+        assertTrue(dao.loads.get() > 1 + 37);
+    }
+
+    @Test
+    void concurrentSendersGetGaplessRanksInSubmissionOrder() throws InterruptedException {
+        final ConversationSequences sequences = sequences(100);
+        final int senders = 4;
+        final int perSender = 1_000;
+        final Map<Integer, List<Long>> ranksBySender = new ConcurrentHashMap<>();
+        final CountDownLatch done = new CountDownLatch(senders * perSender);
+        final List<Thread> threads = new ArrayList<>();
+        for (int s = 0; s < senders; s++) {
+            final List<Long> ranks = new ArrayList<>();
+            ranksBySender.put(s, ranks);
+            final long from = s % 2 == 0 ? 1 : 2;
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < perSender; i++) {
+                    sequences.direct(from, 3 - from, counter -> {
+                        ranks.add(counter.next());
+                        done.countDown();
+                    });
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        final List<Long> all = new ArrayList<>();
+        for (final List<Long> ranks : ranksBySender.values()) {
+            assertEquals(perSender, ranks.size());
+            for (int i = 1; i < ranks.size(); i++) {
+                assertTrue(ranks.get(i) > ranks.get(i - 1));
+            }
+            all.addAll(ranks);
+        }
+        all.sort(null);
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(i + 1, all.get(i));
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Base simulée : le dernier rang enregistré par conversation.
+     */
+    private static final class StubMessageDAO extends MessageDAO {
+        private final Map<String, Long> stored = new ConcurrentHashMap<>();
+        private final AtomicInteger loads = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile Runnable beforeLoad;
+
+        @Override
+        public long getLastGroupSequence(final long groupId) throws SQLException {
+            return load("group " + groupId);
+        }
+
+        @Override
+        public long getLastDirectSequence(final long user1Id, final long user2Id) throws SQLException {
+            return load("direct " + user1Id + "-" + user2Id);
+        }
+
+        private long load(final String key) throws SQLException {
+            loads.incrementAndGet();
+            final Runnable hook = beforeLoad;
+            if (hook != null) {
+                hook.run();
+            }
+            if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                throw new SQLException("database unavailable");
+            }
+            return stored.getOrDefault(key, 0L);
+        }
+    }
+}
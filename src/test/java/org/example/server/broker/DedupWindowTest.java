@@ -0,0 +1,61 @@
+package org.example.server.broker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+class DedupWindowTest {
+
+    @Test
+    void resendOfTheSameMessageIsRecognised() {
+        final DedupWindow window = new DedupWindow(60, 1_000);
+        final UUID id = UUID.randomUUID();
+
+        assertTrue(window.add(1, id));
+        assertFalse(window.add(1, id));
+        assertFalse(window.add(1, id));
+        assertEquals(2, window.getDuplicates());
+    }
+
+    @Test
+    void sameClientIdFromAnotherSenderIsANewMessage() {
+        final DedupWindow window = new DedupWindow(60, 1_000);
+        final UUID id = UUID.randomUUID();
+
+        assertTrue(window.add(1, id));
+        assertTrue(window.add(2, id));
+        assertEquals(0, window.getDuplicates());
+    }
+
+    @Test
+    void unidentifiedSendsAreNeverDuplicates() {
+        final DedupWindow window = new DedupWindow(60, 1_000);
+
+        assertTrue(window.add(1, null));
+        assertTrue(window.add(1, null));
+        assertEquals(0, window.getDuplicates());
+    }
+
+    @Test
+    void staysBoundedAndKeepsTheMostRecentSendsWhenFull() {
+        final DedupWindow window = new DedupWindow(60, 256);
+        final List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            final UUID id = UUID.randomUUID();
+            assertTrue(window.add(7, id));
+            ids.add(id);
+        }
+
+        // Les derniers envois, bien en deçà de la capacité d'une partition, sont toujours reconnus
+        for (int i = ids.size() - 16; i < ids.size(); i++) {
+            assertFalse(window.add(7, ids.get(i)));
+        }
+        assertEquals(16, window.getDuplicates());
+    }
+}
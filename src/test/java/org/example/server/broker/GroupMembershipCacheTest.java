@@ -0,0 +1,93 @@
+package org.example.server.broker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.example.shared.dao.GroupDAO;
+import org.example.shared.dao.GroupMembershipDAO;
+import org.junit.jupiter.api.Test;
+
+class GroupMembershipCacheTest {
+
+    private static final long GROUP = 5;
+
+    private final StubGroupDAO groups = new StubGroupDAO();
+    private final StubGroupMembershipDAO journal = new StubGroupMembershipDAO();
+    private final GroupMembershipCache cache = new GroupMembershipCache(groups, journal, 100, 300);
+
+    @Test
+    void removedMemberIsDroppedOnceTheJournalIsRead() throws SQLException {
+        groups.members.addAll(List.of(1L, 2L, 3L));
+        cache.pollChanges();
+        assertEquals(List.of(1L, 2L, 3L), cache.membersOf(GROUP));
+
+        // Retrait écrit par un client, sans notification au serveur
+        groups.members.remove(2L);
+        journal.record(GROUP, 2);
+        assertEquals(List.of(1L, 2L, 3L), cache.membersOf(GROUP));
+
+        assertEquals(1, cache.pollChanges());
+        assertEquals(List.of(1L, 3L), cache.membersOf(GROUP));
+        assertEquals(0, cache.pollChanges());
+    }
+
+    @Test
+    void firstReadSkipsTheOldJournalAndForgetsWhatWasLoadedBefore() throws SQLException {
+        groups.members.addAll(List.of(1L, 2L));
+        journal.record(GROUP, 3);
+        assertEquals(List.of(1L, 2L), cache.membersOf(GROUP));
+
+        groups.members.add(3L);
+        assertEquals(0, cache.pollChanges());
+        assertEquals(List.of(1L, 2L, 3L), cache.membersOf(GROUP));
+    }
+
+    @Test
+    void longJournalIsReadPageByPage() throws SQLException {
+        groups.members.add(1L);
+        cache.pollChanges();
+        for (int i = 0; i < 1200; i++) {
+            journal.record(GROUP, 1);
+        }
+        assertEquals(1200, cache.pollChanges());
+    }
+
+    private static final class StubGroupDAO extends GroupDAO {
+        private final List<Long> members = new ArrayList<>();
+
+        @Override
+        public List<Long> getMembersForGroup(final long groupId) {
+            return new ArrayList<>(members);
+        }
+
+        @Override
+        public List<Long> getGroupIdsForUser(final long userId) {
+            return members.contains(userId) ? List.of(GROUP) : List.of();
+        }
+    }
+
+    private static final class StubGroupMembershipDAO extends GroupMembershipDAO {
+        private final List<MembershipChange> changes = new ArrayList<>();
+
+        void record(final long groupId, final long userId) {
+            changes.add(new MembershipChange(changes.size() + 1, groupId, userId));
+        }
+
+        @Override
+        public long getLastChangeId() {
+            return changes.size();
+        }
+
+        @Override
+        public List<MembershipChange> getChangesSince(final long afterId, final int limit) {
+            return changes.stream()
+                    .filter(change -> change.getId() > afterId)
+                    .limit(limit)
+                    .collect(Collectors.toList());
+        }
+    }
+}
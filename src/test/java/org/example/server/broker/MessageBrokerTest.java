@@ -0,0 +1,196 @@
+package org.example.server.broker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.example.server.ClientHandler;
+import org.example.shared.dao.GroupCursorDAO;
+import org.example.shared.dao.GroupDAO;
+import org.example.shared.dao.GroupMembershipDAO;
+import org.example.shared.dao.MessageDAO;
+import org.example.shared.model.Message;
+import org.example.shared.model.Receipt;
+import org.example.shared.protocol.ControlCommand;
+import org.junit.jupiter.api.Test;
+
+class MessageBrokerTest {
+
+    private static final long MEMBER = 1;
+    private static final long GROUP = 5;
+
+    private final StubMessageDAO messages = new StubMessageDAO();
+    private final StubGroupCursorDAO cursors = new StubGroupCursorDAO();
+    private final MessageBroker broker = new MessageBroker(2, messages, cursors, new StubGroupDAO(),
+            new StubGroupMembershipDAO());
+
+    @Test
+    void failedReplayedGroupCopyComesBackOnTheNextSync() throws InterruptedException {
+        messages.storeGroupMessage(2, 1);
+        messages.storeGroupMessage(2, 2);
+
+        final RecordingHandler first = new RecordingHandler();
+        broker.registerListener(MEMBER, first);
+        final Message lost = first.next();
+        final Message delivered = first.next();
+        assertEquals(1, lost.getSequence());
+        assertEquals(2, delivered.getSequence());
+        // L'écriture de la première copie échoue après coup, celle de la suivante réussit
+        broker.handleDeliveryFailure(lost);
+        assertTrue(broker.unregisterListener(MEMBER, first));
+
+        final RecordingHandler second = new RecordingHandler();
+        broker.registerListener(MEMBER, second);
+        final Message replayed = second.next();
+
+        assertEquals(GROUP, replayed.getGroupId());
+        assertEquals(1, replayed.getSequence());
+        assertEquals(MEMBER, replayed.getReceiverUserId());
+    }
+
+    /**
+     * Session qui accepte toutes les pages rejouées et les garde pour le test.
+     */
+    private static final class RecordingHandler extends ClientHandler {
+        private final BlockingQueue<Message> received = new LinkedBlockingQueue<>();
+
+        RecordingHandler() {
+            super(null);
+        }
+
+        Message next() throws InterruptedException {
+            final Message message = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message, "no message delivered");
+            return message;
+        }
+
+        @Override
+        public int onMessagesReplayed(final List<Message> page) {
+            received.addAll(page);
+            return page.size();
+        }
+
+        @Override
+        public void onMessageReceived(final Message message) {
+            received.add(message);
+        }
+
+        @Override
+        public void onNotice(final ControlCommand command) {
+        }
+
+        @Override
+        public boolean hasPendingReplay() {
+            return false;
+        }
+    }
+
+    /**
+     * Historique des groupes en mémoire ; les écritures de l'écrivain sont ignorées.
+     */
+    private final class StubMessageDAO extends MessageDAO {
+        private final List<Message> groupMessages = new ArrayList<>();
+
+        synchronized void storeGroupMessage(final long senderId, final long sequence) {
+            final Message message = Message.newGroupMessage(senderId, GROUP, "message " + sequence);
+            message.setId(100 + sequence);
+            message.setSequence(sequence);
+            message.setTimestamp(LocalDateTime.now());
+            groupMessages.add(message);
+        }
+
+        @Override
+        public List<Message> getPendingMessagesForUser(final long receiverUserId, final long afterId,
+                                                       final int limit) {
+            return List.of();
+        }
+
+        @Override
+        public synchronized List<Message> getPendingGroupMessagesForUser(final long userId, final long afterGroupId,
+                                                                         final long afterSequence, final int limit) {
+            final long cursor = cursors.cursor(userId, GROUP);
+            final List<Message> page = new ArrayList<>();
+            for (final Message message : groupMessages) {
+                final boolean after = GROUP > afterGroupId || message.getSequence() > afterSequence;
+                if (message.getSequence() > cursor && after && page.size() < limit) {
+                    page.add(Message.copyForReceiver(message, 0));
+                }
+            }
+            page.forEach(message -> message.setReceiverUserId(null));
+            return page;
+        }
+
+        @Override
+        public void createMessages(final List<Message> messages) {
+        }
+
+        @Override
+        public int markDelivered(final List<Long> messageIds) {
+            return messageIds.size();
+        }
+
+        @Override
+        public void requeueMessages(final List<Message> messages) {
+        }
+
+        @Override
+        public void markRead(final List<Receipt> receipts) {
+        }
+    }
+
+    private static final class StubGroupCursorDAO extends GroupCursorDAO {
+        private final Map<Long, Map<Long, Long>> cursorsByUser = new HashMap<>();
+
+        synchronized long cursor(final long userId, final long groupId) {
+            return cursorsByUser.getOrDefault(userId, Map.of()).getOrDefault(groupId, 0L);
+        }
+
+        @Override
+        public synchronized Map<Long, Long> getCursors(final long userId) {
+            return new HashMap<>(cursorsByUser.getOrDefault(userId, Map.of()));
+        }
+
+        @Override
+        public synchronized void saveCursors(final long userId, final Map<Long, Long> cursors) {
+            cursorsByUser.computeIfAbsent(userId, id -> new HashMap<>()).putAll(cursors);
+        }
+
+        @Override
+        public synchronized void rewindCursor(final long userId, final long groupId, final long lastDeliveredSeq) {
+            cursorsByUser.computeIfAbsent(userId, id -> new HashMap<>()).merge(groupId, lastDeliveredSeq, Math::min);
+        }
+    }
+
+    private static final class StubGroupDAO extends GroupDAO {
+        @Override
+        public List<Long> getMembersForGroup(final long groupId) {
+            return List.of(MEMBER, 2L);
+        }
+
+        @Override
+        public List<Long> getGroupIdsForUser(final long userId) {
+            return List.of(GROUP);
+        }
+    }
+
+    private static final class StubGroupMembershipDAO extends GroupMembershipDAO {
+        @Override
+        public long getLastChangeId() {
+            return 0;
+        }
+
+        @Override
+        public List<MembershipChange> getChangesSince(final long afterId, final int limit) {
+            return List.of();
+        }
+    }
+}
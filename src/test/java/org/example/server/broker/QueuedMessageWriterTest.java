@@ -0,0 +1,145 @@
+package org.example.server.broker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.example.shared.dao.GroupCursorDAO;
+import org.example.shared.dao.MessageDAO;
+import org.example.shared.model.Message;
+import org.junit.jupiter.api.Test;
+
+class QueuedMessageWriterTest {
+
+    @Test
+    void invalidRowDoesNotTakeTheRestOfItsBatchDown() {
+        final StubMessageDAO messages = new StubMessageDAO();
+        final StubGroupCursorDAO cursors = new StubGroupCursorDAO();
+        // Lot assez long pour tout recevoir, mode synchrone pour connaître chaque résultat
+        final QueuedMessageWriter writer = new QueuedMessageWriter(messages, cursors, 100, 200, 100, 1_000, true);
+
+        // Le premier lot retient l'écrivain : les suivants s'accumulent en un seul lot
+        final CompletableFuture<Boolean> gate = writer.write(message("porte"));
+        final CompletableFuture<Boolean> first = writer.write(message("un"));
+        final CompletableFuture<Boolean> invalid = writer.write(message(null));
+        final CompletableFuture<Boolean> last = writer.write(message("trois"));
+        writer.saveGroupCursors(1, Map.of(5L, 3L));
+        messages.gate.countDown();
+        writer.awaitWritten();
+
+        assertTrue(join(gate));
+        assertTrue(join(first));
+        assertFalse(join(invalid));
+        assertTrue(join(last));
+        assertEquals(List.of("porte", "un", "trois"), messages.contents());
+        assertEquals(1, messages.batches);
+        assertEquals(1, cursors.saves);
+        assertEquals(1, writer.getStats().getFailedMessages());
+        assertEquals(4, writer.getStats().getWrittenMessages());
+    }
+
+    @Test
+    void transientFailureIsRetriedAsABatch() {
+        final StubMessageDAO messages = new StubMessageDAO();
+        messages.transientFailures = 1;
+        messages.gate.countDown();
+        final QueuedMessageWriter writer = new QueuedMessageWriter(messages, new StubGroupCursorDAO(), 100, 50, 100,
+                1_000, true);
+
+        assertTrue(join(writer.write(message("un"))));
+        assertEquals(List.of("un"), messages.contents());
+        assertEquals(0, writer.getStats().getFailedMessages());
+    }
+
+    @Test
+    void fullQueueRejectsInsteadOfBlockingTheCaller() throws InterruptedException {
+        final StubMessageDAO messages = new StubMessageDAO();
+        // Une seule place en file, refus après 10 ms d'attente
+        final QueuedMessageWriter writer = new QueuedMessageWriter(messages, new StubGroupCursorDAO(), 100, 1, 1, 10,
+                false);
+        writer.write(message("porte"));
+        assertTrue(messages.gateReached.await(5, TimeUnit.SECONDS));
+
+        assertTrue(join(writer.write(message("un"))));
+        final long start = System.nanoTime();
+        assertFalse(join(writer.write(message("deux"))));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        messages.gate.countDown();
+        writer.awaitWritten();
+
+        assertEquals(List.of("porte", "un"), messages.contents());
+        assertEquals(1, writer.getStats().getOverflows());
+    }
+
+    private static Message message(final String content) {
+        return Message.newDirectMessage(1, 2, content);
+    }
+
+    private static boolean join(final CompletableFuture<Boolean> result) {
+        return result.orTimeout(5, TimeUnit.SECONDS).join();
+    }
+
+    /**
+     * Table en mémoire ; un message sans contenu fait échouer son lot, comme un champ obligatoire manquant.
+     */
+    private static final class StubMessageDAO extends MessageDAO {
+        private final List<Message> stored = new ArrayList<>();
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private final CountDownLatch gateReached = new CountDownLatch(1);
+        private int transientFailures;
+        // Lots de plusieurs lignes reçus, hors réécritures ligne par ligne
+        private int batches;
+
+        synchronized List<String> contents() {
+            final List<String> contents = new ArrayList<>();
+            stored.forEach(message -> contents.add(message.getContent()));
+            return contents;
+        }
+
+        @Override
+        public void createMessages(final List<Message> messages) throws SQLException {
+            if (messages.size() == 1 && "porte".equals(messages.get(0).getContent())) {
+                gateReached.countDown();
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            store(messages);
+        }
+
+        private synchronized void store(final List<Message> messages) throws SQLException {
+            if (messages.size() > 1) {
+                batches++;
+            }
+            if (transientFailures > 0) {
+                transientFailures--;
+                throw new SQLException("connection reset");
+            }
+            for (final Message message : messages) {
+                if (message.getContent() == null) {
+                    throw new NullPointerException("content");
+                }
+            }
+            stored.addAll(messages);
+        }
+    }
+
+    private static final class StubGroupCursorDAO extends GroupCursorDAO {
+        private int saves;
+
+        @Override
+        public synchronized void saveCursors(final long userId, final Map<Long, Long> cursors) {
+            saves++;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.example.server.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class OutboundQueueTest {
+
+    @Test
+    void writerTakesTheOldestFrameOfTheHighestClass() throws IOException {
+        final OutboundQueue queue = new OutboundQueue(1_000_000, 1_000);
+        final OutboundFrame bulk1 = frame(OutboundPriority.BULK, 10);
+        final OutboundFrame interactive1 = frame(OutboundPriority.INTERACTIVE, 10);
+        final OutboundFrame bulk2 = frame(OutboundPriority.BULK, 10);
+        final OutboundFrame control = frame(OutboundPriority.CONTROL, 10);
+        final OutboundFrame interactive2 = frame(OutboundPriority.INTERACTIVE, 10);
+
+        assertTrue(queue.offer(bulk1));
+        // Rédacteur déjà planifié : les ajouts suivants ne le replanifient pas
+        assertFalse(queue.offer(interactive1));
+        queue.offer(bulk2);
+        queue.offer(control);
+        queue.offer(interactive2);
+
+        assertSame(control, queue.poll());
+        assertSame(interactive1, queue.poll());
+        assertSame(interactive2, queue.poll());
+        assertSame(bulk1, queue.poll());
+        assertSame(bulk2, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void finishDrainReschedulesOnlyIfFramesArrivedMeanwhile() throws IOException {
+        final OutboundQueue queue = new OutboundQueue(1_000_000, 1_000);
+        assertTrue(queue.offer(frame(OutboundPriority.INTERACTIVE, 10)));
+        queue.completed(queue.poll());
+        assertFalse(queue.finishDrain());
+
+        assertTrue(queue.offer(frame(OutboundPriority.INTERACTIVE, 10)));
+        final OutboundFrame first = queue.poll();
+        assertFalse(queue.offer(frame(OutboundPriority.INTERACTIVE, 10)));
+        queue.completed(first);
+        assertTrue(queue.finishDrain());
+    }
+
+    @Test
+    void slowClientIsRejectedUntilItCatchesUpToHalfTheLimits() throws IOException {
+        final OutboundQueue queue = new OutboundQueue(1_000_000, 4);
+        final List<OutboundFrame> queued = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final OutboundFrame frame = frame(OutboundPriority.INTERACTIVE, 10);
+            queue.offer(frame);
+            queued.add(frame);
+        }
+
+        assertThrows(OutboundOverflowException.class, () -> queue.offer(frame(OutboundPriority.INTERACTIVE, 10)));
+        // Client lent : refusé même sous le plafond, tant qu'il n'a pas rattrapé son retard
+        assertThrows(OutboundOverflowException.class, () -> queue.offer(frame(OutboundPriority.BULK, 1)));
+        OutboundStats stats = queue.stats();
+        assertEquals(2, stats.getRejectedFrames());
+        assertEquals(1, stats.getCongestionCount());
+        assertEquals(4, stats.getPendingFrames());
+
+        assertFalse(queue.completed(queue.poll()));
+        // Deux trames en attente : la moitié du plafond est atteinte
+        assertTrue(queue.completed(queue.poll()));
+        queue.offer(frame(OutboundPriority.INTERACTIVE, 10));
+        stats = queue.stats();
+        assertEquals(1, stats.getCongestionCount());
+        assertEquals(3, stats.getPendingFrames());
+    }
+
+    @Test
+    void controlFramesAreAdmittedUpToTwiceTheLimits() throws IOException {
+        final OutboundQueue queue = new OutboundQueue(1_000_000, 2);
+        queue.offer(frame(OutboundPriority.INTERACTIVE, 10));
+        queue.offer(frame(OutboundPriority.INTERACTIVE, 10));
+        assertThrows(OutboundOverflowException.class, () -> queue.offer(frame(OutboundPriority.INTERACTIVE, 10)));
+
+        queue.offer(frame(OutboundPriority.CONTROL, 10));
+        queue.offer(frame(OutboundPriority.CONTROL, 10));
+        assertThrows(OutboundOverflowException.class, () -> queue.offer(frame(OutboundPriority.CONTROL, 10)));
+    }
+
+    @Test
+    void singleFrameLargerThanTheByteLimitStillPasses() throws IOException {
+        final OutboundQueue queue = new OutboundQueue(100, 10);
+        queue.offer(frame(OutboundPriority.BULK, 1_000));
+        assertThrows(OutboundOverflowException.class, () -> queue.offer(frame(OutboundPriority.BULK, 1)));
+    }
+
+    @Test
+    void lastBulkFrameWrittenIsReported() throws IOException {
+        final OutboundQueue queue = new OutboundQueue(1_000_000, 100);
+        queue.offer(frame(OutboundPriority.BULK, 10));
+        queue.offer(frame(OutboundPriority.BULK, 10));
+        queue.offer(frame(OutboundPriority.INTERACTIVE, 10));
+
+        assertFalse(queue.completed(queue.poll()));
+        assertFalse(queue.completed(queue.poll()));
+        assertTrue(queue.completed(queue.poll()));
+        assertFalse(queue.hasPending(OutboundPriority.BULK));
+    }
+
+    @Test
+    void failAllNotifiesEveryPendingFrame() throws IOException {
+        final OutboundQueue queue = new OutboundQueue(1_000_000, 100);
+        final List<IOException> failures = new ArrayList<>();
+        for (final OutboundPriority priority : OutboundPriority.values()) {
+            queue.offer(new OutboundFrame(null, new byte[10], priority, failures::add));
+        }
+
+        queue.failAll(new IOException("fermée"));
+
+        assertEquals(3, failures.size());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.stats().getPendingBytes());
+    }
+
+    private static OutboundFrame frame(final OutboundPriority priority, final int size) {
+        return new OutboundFrame(null, new byte[size], priority, null);
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.shared.protocol;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import org.example.shared.model.Message;
+import org.example.shared.model.enums.MessageStatus;
+import org.example.shared.model.enums.MessageType;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+class EnvelopeCodecTest {
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final EnvelopeCodec codec = new EnvelopeCodec(mapper);
+
+    @Test
+    void routingHeaderIsReadWithoutTheBody() throws IOException {
+        final Message message = Message.newDirectMessage(3, 4, "bonjour");
+        final UUID clientMessageId = UUID.randomUUID();
+        message.setClientMessageId(clientMessageId);
+
+        final Envelope envelope = decode(codec.encodeMessage(message));
+
+        assertEquals(FrameType.MESSAGE, envelope.getKind());
+        assertEquals(3, envelope.getSenderUserId());
+        assertEquals(4, envelope.getReceiverUserId());
+        assertFalse(envelope.isGroup());
+        assertEquals(clientMessageId, envelope.getClientMessageId());
+        assertFalse(envelope.isMedia());
+        assertEquals("bonjour", codec.readMessage(envelope).getContent());
+    }
+
+    @Test
+    void mediaIsAnnouncedInTheHeaderLengthByte() throws IOException {
+        final Message media = Message.newGroupMediaMessage(3, 12, "/media/photo.png", MessageType.IMAGE,
+                "photo.png", 2048L, "image/png");
+        media.setClientMessageId(UUID.randomUUID());
+
+        final Envelope envelope = decode(codec.encodeMessage(media));
+
+        assertTrue(envelope.isMedia());
+        assertEquals(12, envelope.getGroupId());
+        assertEquals(MessageType.IMAGE, codec.readMessage(envelope).getType());
+    }
+
+    @Test
+    void linesAnnounceMediaByTheirType() throws IOException {
+        assertTrue(codec.decodeLine(mapper.writeValueAsString(Message.newDirectMediaMessage(1, 2, "/f.pdf",
+                MessageType.DOCUMENT, "f.pdf", 10L, "application/pdf"))).isMedia());
+        assertFalse(codec.decodeLine(mapper.writeValueAsString(Message.newDirectMessage(1, 2, "texte"))).isMedia());
+    }
+
+    @Test
+    void stampedPayloadCarriesTheServerFieldsAndCanBeRestamped() throws IOException {
+        final Envelope received = decode(codec.encodeMessage(Message.newDirectMessage(3, 4, "relayé")));
+
+        final byte[] payload = codec.stamp(received, 99, 1_700_000_000_000L, MessageStatus.DELIVERED, 0);
+        EnvelopeCodec.restampSequence(payload, 42);
+        final Envelope stamped = decode(payload);
+
+        assertTrue(stamped.isStamped());
+        assertEquals(99, stamped.getStampedId());
+        assertEquals(42, stamped.getStampedSequence());
+        final Message message = codec.readMessage(stamped);
+        assertEquals(99, message.getId());
+        assertEquals(42, message.getSequence());
+        assertEquals(MessageStatus.DELIVERED, message.getStatus());
+        assertEquals("relayé", message.getContent());
+    }
+
+    private Envelope decode(final byte[] payload) throws IOException {
+        return codec.decode(new Frame(FrameType.MESSAGE.getCode(), payload, 0, payload.length));
+    }
+}
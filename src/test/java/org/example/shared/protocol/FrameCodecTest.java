@@ -0,0 +1,96 @@
+package org.example.shared.protocol;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class FrameCodecTest {
+
+    @Test
+    void readsBackConsecutiveFramesInOneStream() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(FrameCodec.encode((byte) 1, new byte[]{10, 20, 30}));
+        out.write(FrameCodec.encode((byte) 2, new byte[0]));
+        out.write(FrameCodec.encode((byte) 3, new byte[]{40}));
+        final ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        final Frame reuse = new Frame();
+
+        Frame frame = FrameCodec.readFrame(in, reuse);
+        assertEquals(1, frame.getType());
+        assertArrayEquals(new byte[]{10, 20, 30}, payload(frame));
+
+        frame = FrameCodec.readFrame(in, reuse);
+        assertEquals(2, frame.getType());
+        assertEquals(0, frame.getLength());
+
+        frame = FrameCodec.readFrame(in, reuse);
+        assertEquals(3, frame.getType());
+        assertArrayEquals(new byte[]{40}, payload(frame));
+
+        assertNull(FrameCodec.readFrame(in, reuse));
+    }
+
+    @Test
+    void growsTheReusedBufferForLargeFrames() throws IOException {
+        final byte[] large = new byte[10_000];
+        Arrays.fill(large, (byte) 7);
+        final Frame reuse = new Frame((byte) 0, new byte[16], 0, 0);
+
+        final Frame frame = FrameCodec.readFrame(new ByteArrayInputStream(FrameCodec.encode((byte) 5, large)), reuse);
+
+        assertSame(reuse, frame);
+        assertArrayEquals(large, payload(frame));
+    }
+
+    @Test
+    void rejectsTruncatedFrames() {
+        final byte[] encoded = FrameCodec.encode((byte) 1, new byte[]{1, 2, 3, 4});
+        final byte[] truncated = Arrays.copyOf(encoded, encoded.length - 1);
+
+        assertThrows(EOFException.class,
+                () -> FrameCodec.readFrame(new ByteArrayInputStream(truncated), new Frame()));
+        assertThrows(EOFException.class,
+                () -> FrameCodec.readFrame(new ByteArrayInputStream(new byte[]{0, 0}), new Frame()));
+    }
+
+    @Test
+    void rejectsLengthsAboveTheMaximum() {
+        final byte[] header = new byte[FrameCodec.HEADER_LENGTH];
+        FrameCodec.writeHeader(header, 0, (byte) 1, FrameCodec.MAX_PAYLOAD_LENGTH + 1);
+        assertThrows(IOException.class, () -> FrameCodec.readLength(header, 0));
+
+        FrameCodec.writeHeader(header, 0, (byte) 1, -1);
+        assertThrows(IOException.class, () -> FrameCodec.readLength(header, 0));
+    }
+
+    @Test
+    void readsHandshakeLinesWithoutConsumingTheFollowingFrame() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(FrameCodec.encodeLine("HELLO 2"));
+        out.write("OK é\r\n".getBytes(StandardCharsets.UTF_8));
+        out.write(FrameCodec.encode((byte) 9, new byte[]{1}));
+        final ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+
+        assertEquals("HELLO 2", FrameCodec.readLine(in));
+        assertEquals("OK é", FrameCodec.readLine(in));
+        final Frame frame = FrameCodec.readFrame(in, new Frame());
+        assertEquals(9, frame.getType());
+        assertArrayEquals(new byte[]{1}, payload(frame));
+        assertNull(FrameCodec.readLine(in));
+    }
+
+    private static byte[] payload(final Frame frame) {
+        return Arrays.copyOfRange(frame.getBuffer(), frame.getOffset(), frame.getOffset() + frame.getLength());
+    }
+}